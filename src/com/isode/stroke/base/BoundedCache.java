@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe map of limited size, for caching the results of expensive
+ * computations on values that recur often.
+ *
+ * <p>Entries are kept in two generations. New entries go into the current
+ * generation; when it is full it becomes the old generation and the previous
+ * old generation is dropped. Entries found in the old generation are copied
+ * back into the current one, so frequently used entries survive while rarely
+ * used ones are eventually forgotten. At most twice the given number of
+ * entries are held. Lookups do not lock.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * @param maxSize number of entries in each generation, must be at least 1
+     */
+    public BoundedCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        maxSize_ = maxSize;
+    }
+
+    /**
+     * @param key key to look up, not null
+     * @return the cached value, or null if there is none
+     */
+    public V get(K key) {
+        V value = current_.get(key);
+        if (value == null) {
+            value = old_.get(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param key key, not null
+     * @param value value, not null
+     */
+    public void put(K key, V value) {
+        ConcurrentHashMap<K, V> current = current_;
+        if (current.size() >= maxSize_) {
+            synchronized (this) {
+                if (current_ == current) {
+                    old_ = current;
+                    current_ = new ConcurrentHashMap<K, V>();
+                }
+                current = current_;
+            }
+        }
+        current.put(key, value);
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        old_ = new ConcurrentHashMap<K, V>();
+        current_ = new ConcurrentHashMap<K, V>();
+    }
+
+    private final int maxSize_;
+    private volatile ConcurrentHashMap<K, V> current_ = new ConcurrentHashMap<K, V>();
+    private volatile ConcurrentHashMap<K, V> old_ = new ConcurrentHashMap<K, V>();
+}
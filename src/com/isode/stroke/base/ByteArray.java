@@ -13,11 +13,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * Maintains an arbitrarily long array of bytes.
+ * <p>The bytes are held in a single array which grows as data are appended.
+ * Copying a ByteArray (e.g. passing data from one stream layer to the next by
+ * wrapping it in a {@link SafeByteArray}) does not copy the bytes: the array
+ * is shared until either copy is next modified.
  */
 public class ByteArray {
 
@@ -37,7 +41,8 @@ public class ByteArray {
      */
     public ByteArray(String s) {
         try {
-            appendInternal(s.getBytes("UTF-8"));
+            data_ = s.getBytes("UTF-8");
+            dataSize_ = data_.length;
         } catch (UnsupportedEncodingException ex) {
             throw new IllegalStateException("JVM has no 'UTF-8' encoding");
         }
@@ -54,8 +59,9 @@ public class ByteArray {
     }
 
     /**
-     * Constructs a new ByteArray object by performing a deep copy of the 
-     * contents of an existing ByteArray
+     * Constructs a new ByteArray object with the same contents as an
+     * existing ByteArray. The bytes are not copied until one of the two
+     * objects is modified.
      * @param b another ByteArray; must not be null
      */
     public ByteArray(ByteArray b) {
@@ -76,25 +82,68 @@ public class ByteArray {
         }
     }*/
 
+    /**
+     * Constructs a new ByteArray containing a range of the bytes in a
+     * user-supplied byte[]
+     * @param c an array of bytes, which must not be null
+     * @param offset index of the first byte to copy
+     * @param length number of bytes to copy
+     */
+    public ByteArray(byte[] c, int offset, int length) {
+        append(c, offset, length);
+    }
+
     /**
      * Returns a byte[] containing the contents of this object.
      * @return array copy of internal data, will never be null, but may
      * contain zero elements.
      */
     public synchronized byte[] getData() {
-        if (dataCopy_ == null) {
-            if (data_.size() == 1) {
-                dataCopy_ = data_.get(0);
-            } else {
-                dataCopy_ = new byte[getSize()];
-                int pos = 0;
-                for (byte[] chunk : data_) {
-                    System.arraycopy(chunk, 0, dataCopy_, pos, chunk.length);
-                    pos += chunk.length;
-                }
-            }
+        if (data_.length != dataSize_) {
+            /* Trim, so that the array can be returned directly next time */
+            data_ = Arrays.copyOf(data_, dataSize_);
+            shared_ = false;
+        }
+        return data_;
+    }
+
+    /**
+     * Returns a view of the contents of this object, without copying them.
+     * The buffer's position is zero and its limit is {@link #getSize()}.
+     * <p>The view must not be modified, and is only valid until this
+     * ByteArray is next modified.
+     * @return a buffer wrapping the internal data, never null
+     */
+    public synchronized ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(data_, 0, dataSize_).slice();
+    }
+
+    /**
+     * Returns a view of part of the contents of this object, without copying
+     * them, as for {@link #asByteBuffer()}.
+     * @param offset index of the first byte of the view
+     * @param length number of bytes in the view
+     * @return a buffer wrapping the requested part of the internal data,
+     * never null
+     */
+    public synchronized ByteBuffer asByteBuffer(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > dataSize_) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside size " + dataSize_);
         }
-        return dataCopy_;
+        return ByteBuffer.wrap(data_, offset, length).slice();
+    }
+
+    /**
+     * Returns a new ByteArray containing a range of the bytes in this one.
+     * @param offset index of the first byte to copy
+     * @param length number of bytes to copy
+     * @return a new ByteArray, never null
+     */
+    public synchronized ByteArray subArray(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > dataSize_) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside size " + dataSize_);
+        }
+        return new ByteArray(data_, offset, length);
     }
 
     /**
@@ -145,11 +194,31 @@ public class ByteArray {
      * @param b an existing ByteArray. Must not be null, but may be empty
      * @return a reference to the updated object 
      */
-    public synchronized ByteArray append(ByteArray b) {
-        dataCopy_ = null; /* Invalidate cache */
-        data_.addAll(b.data_);
-        dataSize_ += b.getSize();
-        return this;
+    public ByteArray append(ByteArray b) {
+        final boolean share = isEmpty();
+        final byte[] data;
+        final int size;
+        synchronized (b) {
+            data = b.data_;
+            size = b.dataSize_;
+            if (share && size != 0) {
+                b.shared_ = true;
+            }
+        }
+        synchronized (this) {
+            if (share && size != 0 && dataSize_ == 0) {
+                /* Share rather than copy; whichever is modified first
+                 * will take a copy of its own
+                 */
+                data_ = data;
+                dataSize_ = size;
+                shared_ = true;
+                return this;
+            }
+            /* Bytes below size are never overwritten in place, so it is safe
+             * to copy them without holding b's lock */
+            return appendInternal(data, 0, size);
+        }
     }
 
     /** 
@@ -167,14 +236,44 @@ public class ByteArray {
 
     /** Mutable add */
     public ByteArray append(byte[] b, int len) {
-        return appendInternal(Arrays.copyOf(b, len));
+        return appendInternal(b, 0, len);
+    }
+
+    /**
+     * Updates the ByteArray by adding a range of the bytes in a byte[] to
+     * the end of the array (mutable add).
+     * @param b an array of bytes. Must not be null.
+     * @param offset index of the first byte to add
+     * @param len number of bytes to add
+     * @return a reference to the updated object
+     */
+    public ByteArray append(byte[] b, int offset, int len) {
+        return appendInternal(b, offset, len);
+    }
+
+    /**
+     * Updates the ByteArray by adding the remaining bytes of a buffer to the
+     * end of the array (mutable add). The buffer's position is advanced to its
+     * limit. The bytes are copied straight into this object, so this is the
+     * cheapest way to add data read from a channel.
+     * @param b a buffer. Must not be null, but may have no bytes remaining.
+     * @return a reference to the updated object
+     */
+    public synchronized ByteArray append(ByteBuffer b) {
+        final int len = b.remaining();
+        ensureCapacity(dataSize_ + len);
+        b.get(data_, dataSize_, len);
+        dataSize_ += len;
+        return this;
     }
 
-    /* Does not copy data - all calls must provide a copy as necessary */
-    private synchronized ByteArray appendInternal(byte[] b) {
-        dataCopy_ = null; /* Invalidate cache */
-        data_.add(b);
-        dataSize_ += b.length;
+    private synchronized ByteArray appendInternal(byte[] b, int offset, int len) {
+        if (offset < 0 || len < 0 || offset + len > b.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + len + " outside size " + b.length);
+        }
+        ensureCapacity(dataSize_ + len);
+        System.arraycopy(b, offset, data_, dataSize_, len);
+        dataSize_ += len;
         return this;
     }
 
@@ -184,8 +283,32 @@ public class ByteArray {
      * @param b a single byte
      * @return a reference to the updated object
      */
-    public ByteArray append(byte b) {
-        return appendInternal(new byte[]{b});
+    public synchronized ByteArray append(byte b) {
+        ensureCapacity(dataSize_ + 1);
+        data_[dataSize_++] = b;
+        return this;
+    }
+
+    /**
+     * Makes sure that the internal array is unshared and can hold at least
+     * the given number of bytes, growing it geometrically if not.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("ByteArray too large");
+        }
+        if (!shared_ && capacity <= data_.length) {
+            return;
+        }
+        int newCapacity = shared_ ? capacity : Math.max(capacity, data_.length + (data_.length >> 1));
+        if (newCapacity < MIN_CAPACITY) {
+            newCapacity = MIN_CAPACITY;
+        }
+        if (newCapacity < 0) {
+            newCapacity = capacity;
+        }
+        data_ = Arrays.copyOf(data_, newCapacity);
+        shared_ = false;
     }
 
     /**
@@ -196,7 +319,8 @@ public class ByteArray {
      */ 
     public ByteArray append(String s) {
         try {
-            return appendInternal(s.getBytes("UTF-8"));
+            final byte[] bytes = s.getBytes("UTF-8");
+            return appendInternal(bytes, 0, bytes.length);
         } catch (UnsupportedEncodingException ex) {
             throw new IllegalStateException("JVM has no 'UTF-8' encoding");
         }
@@ -204,7 +328,11 @@ public class ByteArray {
 
     @Override
     public synchronized int hashCode() {
-        return Arrays.hashCode(getData());
+        int result = 1;
+        for (int i = 0; i < dataSize_; i++) {
+            result = 31 * result + data_[i];
+        }
+        return result;
     }
 
     @Override
@@ -234,10 +362,12 @@ public class ByteArray {
      */
     @Override
     public String toString() {
-        try {
-            return new String(getData(), "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            throw new IllegalStateException("JVM has no 'UTF-8' encoding");
+        synchronized (this) {
+            try {
+                return new String(data_, 0, dataSize_, "UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException("JVM has no 'UTF-8' encoding");
+            }
         }
     }
 
@@ -260,7 +390,7 @@ public class ByteArray {
                 bos.write(fis.read());
             }
             byte[] bytes = bos.toByteArray();
-            appendInternal(bytes);
+            appendInternal(bytes, 0, bytes.length);
         }
         catch (FileNotFoundException e) {
             // Leave things as they were
@@ -289,12 +419,16 @@ public class ByteArray {
      * Clears the contents of this ByteArray, leaving it with zero elements.
      */
     public synchronized void clear() {
-        data_.clear();
+        data_ = EMPTY;
         dataSize_ = 0;
-        dataCopy_ = null;
+        shared_ = false;
     }
-    
-    private final ArrayList<byte[]> data_ = new ArrayList<byte[]>(1);
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_CAPACITY = 64;
+    private byte[] data_ = EMPTY;
     private int dataSize_ = 0;
-    private byte[] dataCopy_ = null;
+    /* True if data_ may also be referenced by another ByteArray, in which
+     * case it must be copied before being modified */
+    private boolean shared_ = false;
 }
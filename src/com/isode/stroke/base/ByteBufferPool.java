@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.base;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of ByteBuffers, for working buffers which are only needed while
+ * there is data passing through them. A connection which acquires its
+ * buffers when data arrives and releases them once they are empty holds no
+ * buffer memory while it is idle.
+ *
+ * <p>Buffers may be of different sizes, though the pool works best when
+ * its users ask for a single size. A pooled buffer which is smaller than
+ * asked for is skipped, and left in the pool for a smaller request. This
+ * class is thread-safe.
+ */
+public class ByteBufferPool {
+
+    /* Most pooled buffers looked at by acquire() before it gives up and
+     * allocates, so that a pool full of small buffers stays cheap to use */
+    private static final int MAXIMUM_BUFFERS_SKIPPED = 4;
+
+    /**
+     * Create a pool of heap buffers.
+     * @param maximumPooled maximum number of released buffers kept for reuse;
+     * any more are left to the garbage collector
+     */
+    public ByteBufferPool(int maximumPooled) {
+        this(maximumPooled, false);
+    }
+
+    /**
+     * Create a pool.
+     * @param maximumPooled maximum number of released buffers kept for reuse;
+     * any more are left to the garbage collector
+     * @param direct true to allocate direct buffers, false for heap buffers
+     */
+    public ByteBufferPool(int maximumPooled, boolean direct) {
+        maximumPooled_ = maximumPooled;
+        direct_ = direct;
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate one if the pool is empty.
+     * @param minimumCapacity the smallest capacity that will do
+     * @return a cleared buffer of at least the given capacity, never null
+     */
+    public ByteBuffer acquire(int minimumCapacity) {
+        ByteBuffer found = null;
+        ByteBuffer[] skipped = null;
+        int skippedCount = 0;
+        ByteBuffer buffer;
+        while ((buffer = pooled_.poll()) != null) {
+            if (buffer.capacity() >= minimumCapacity) {
+                pooledCount_.decrementAndGet();
+                found = buffer;
+                break;
+            }
+            if (skipped == null) {
+                skipped = new ByteBuffer[MAXIMUM_BUFFERS_SKIPPED];
+            }
+            skipped[skippedCount++] = buffer;
+            if (skippedCount == MAXIMUM_BUFFERS_SKIPPED) {
+                break;
+            }
+        }
+        /* Skipped buffers are still counted as pooled */
+        for (int i = 0; i < skippedCount; i++) {
+            pooled_.add(skipped[i]);
+        }
+        if (found != null) {
+            reusedCount_.incrementAndGet();
+            found.clear();
+            return found;
+        }
+        allocatedCount_.incrementAndGet();
+        return direct_ ? ByteBuffer.allocateDirect(minimumCapacity) : ByteBuffer.allocate(minimumCapacity);
+    }
+
+    /**
+     * Return a buffer to the pool. The caller must not use it afterwards.
+     * @param buffer a buffer of the same kind (heap or direct) as this pool
+     * allocates, may be null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct_ || buffer.isReadOnly()) {
+            return;
+        }
+        if (pooledCount_.incrementAndGet() > maximumPooled_) {
+            pooledCount_.decrementAndGet();
+            return;
+        }
+        pooled_.add(buffer);
+    }
+
+    /**
+     * @return number of released buffers waiting to be reused
+     */
+    public int getPooledCount() {
+        return Math.max(0, pooledCount_.get());
+    }
+
+    /**
+     * @return number of buffers this pool has had to allocate
+     */
+    public long getAllocatedCount() {
+        return allocatedCount_.get();
+    }
+
+    /**
+     * @return number of buffers this pool has handed out again after they
+     * were released
+     */
+    public long getReusedCount() {
+        return reusedCount_.get();
+    }
+
+    /**
+     * @return true if this pool allocates direct buffers
+     */
+    public boolean isDirect() {
+        return direct_;
+    }
+
+    private final int maximumPooled_;
+    private final boolean direct_;
+    private final ConcurrentLinkedQueue<ByteBuffer> pooled_ = new ConcurrentLinkedQueue<ByteBuffer>();
+    /* Counted separately, as ConcurrentLinkedQueue.size() is O(n) */
+    private final AtomicInteger pooledCount_ = new AtomicInteger();
+    private final AtomicLong allocatedCount_ = new AtomicLong();
+    private final AtomicLong reusedCount_ = new AtomicLong();
+}
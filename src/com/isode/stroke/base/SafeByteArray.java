@@ -4,6 +4,8 @@
  */
 package com.isode.stroke.base;
 
+import java.nio.ByteBuffer;
+
 import com.isode.stroke.base.SafeByteArray;
 import com.isode.stroke.base.ByteArray;
 
@@ -35,6 +37,17 @@ public class SafeByteArray extends ByteArray {
 		super(c);
 	}
 	
+	/**
+	 * Constructs a new SafeByteArray containing a range of the bytes in a
+	 * user-supplied byte[]
+	 * @param c an array of bytes, which must not be null
+	 * @param offset index of the first byte to copy
+	 * @param length number of bytes to copy
+	 */
+	public SafeByteArray(byte[] c, int offset, int length) {
+		super(c, offset, length);
+	}
+
 	/**
      * Constructs a new {@link SafeByteArray} containing the user supplied byte.
      * @param b a byte.
@@ -70,7 +83,7 @@ public class SafeByteArray extends ByteArray {
 	}
 
 	public SafeByteArray append(SafeByteArray b) {
-		append(b.getData());
+		super.append(b);
 		return this;
 	}
 
@@ -94,6 +107,43 @@ public class SafeByteArray extends ByteArray {
 		return this;
 	}
 
+	/**
+	 * Updates the SafeByteArray by adding a range of the bytes in a byte[]
+	 * to the end of the array (mutable add).
+	 * @param b an array of bytes. Must not be null.
+	 * @param offset index of the first byte to add
+	 * @param len number of bytes to add
+	 * @return a reference to the updated object
+	 */
+	public SafeByteArray append(byte[] b, int offset, int len) {
+		super.append(b, offset, len);
+		return this;
+	}
+
+	/**
+	 * Updates the SafeByteArray by adding the remaining bytes of a buffer to
+	 * the end of the array (mutable add). The buffer's position is advanced
+	 * to its limit.
+	 * @param b a buffer. Must not be null, but may have no bytes remaining.
+	 * @return a reference to the updated object
+	 */
+	public SafeByteArray append(ByteBuffer b) {
+		super.append(b);
+		return this;
+	}
+
+	/**
+	 * Returns a new SafeByteArray containing a range of the bytes in this one.
+	 * @param offset index of the first byte to copy
+	 * @param length number of bytes to copy
+	 * @return a new SafeByteArray, never null
+	 */
+	public SafeByteArray subArray(int offset, int length) {
+		SafeByteArray result = new SafeByteArray();
+		result.append(asByteBuffer(offset, length));
+		return result;
+	}
+
 	/** 
 	 * Updates the SafeByteArray by adding a single byte
 	 * value to the end of the array (mutable add).
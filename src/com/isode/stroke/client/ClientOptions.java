@@ -13,6 +13,7 @@ import com.isode.stroke.tls.TLSOptions;
 import com.isode.stroke.base.URL;
 import com.isode.stroke.base.SafeByteArray;
 import com.isode.stroke.network.HTTPTrafficFilter;
+import com.isode.stroke.sasl.SCRAMSaltedPasswordCache;
 
 /**
  * Options for a client connection
@@ -60,6 +61,55 @@ public class ClientOptions {
      */
     public boolean useAcks;
 
+    /**
+     * With acks in use, request one after this many stanzas have been
+     * sent since the last request. If this, ackRequestByteCount and
+     * ackRequestIntervalMilliseconds are all 0, an ack is requested after
+     * every message.
+     * Default: 0
+     */
+    public int ackRequestStanzaCount;
+
+    /**
+     * With acks in use, request one after this many bytes of stanzas have
+     * been sent since the last request, or 0 not to count bytes. Stanzas
+     * are counted at their serialized size, before compression, TLS or
+     * BOSH framing.
+     * Default: 0
+     */
+    public long ackRequestByteCount;
+
+    /**
+     * With acks in use, request one this long after the first stanza sent
+     * since the last request, or 0 for no time limit.
+     * Default: 0
+     */
+    public long ackRequestIntervalMilliseconds;
+
+    /**
+     * With acks in use, the most stanzas to keep waiting for an ack, or 0
+     * for no limit. Beyond it the oldest are no longer reported as acked.
+     * Default: 0
+     */
+    public int maxUnackedStanzas;
+
+    /**
+     * Race connection attempts to the server's addresses, starting another
+     * each time this many milliseconds pass without a connection (RFC 8305;
+     * {@link com.isode.stroke.network.Connector#RECOMMENDED_CONNECTION_ATTEMPT_DELAY_MILLISECONDS}
+     * is the recommended value), or 0 to try the addresses one at a time.
+     * Default: 0
+     */
+    public int connectionAttemptDelayMilliseconds;
+
+    /**
+     * Cache of salted passwords for SCRAM authentication, which saves
+     * deriving the salted password again on each reconnection. It may be
+     * shared by clients trusted with each other's passwords.
+     * Default: null (no cache)
+     */
+    public SCRAMSaltedPasswordCache saltedPasswordCache;
+
     /**
      * Use Single Sign On.
      * Default: false
@@ -147,6 +197,12 @@ public class ClientOptions {
         useStreamResumption = false;
         forgetPassword = false;
         useAcks = true;
+        ackRequestStanzaCount = 0;
+        ackRequestByteCount = 0;
+        ackRequestIntervalMilliseconds = 0;
+        maxUnackedStanzas = 0;
+        connectionAttemptDelayMilliseconds = 0;
+        saltedPasswordCache = null;
         singleSignOn = false;
         manualHostname = "";
         manualPort = -1;
@@ -41,11 +41,15 @@ import com.isode.stroke.elements.StreamManagementFailed;
 import com.isode.stroke.elements.TLSProceed;
 import com.isode.stroke.idn.IDNConverter;
 import com.isode.stroke.jid.JID;
+import com.isode.stroke.network.TimerFactory;
 import com.isode.stroke.sasl.ClientAuthenticator;
 import com.isode.stroke.sasl.DIGESTMD5ClientAuthenticator;
 import com.isode.stroke.sasl.EXTERNALClientAuthenticator;
 import com.isode.stroke.sasl.PLAINClientAuthenticator;
+import com.isode.stroke.sasl.SCRAMClientAuthenticator;
 import com.isode.stroke.sasl.SCRAMSHA1ClientAuthenticator;
+import com.isode.stroke.sasl.SCRAMSHA256ClientAuthenticator;
+import com.isode.stroke.sasl.SCRAMSaltedPasswordCache;
 import com.isode.stroke.session.SessionStream;
 import com.isode.stroke.signals.Signal;
 import com.isode.stroke.signals.Signal1;
@@ -94,6 +98,12 @@ public class ClientSession {
     private CryptoProvider crypto;
     private boolean singleSignOn;
     private int authenticationPort;
+    private TimerFactory timerFactory;
+    private SCRAMSaltedPasswordCache saltedPasswordCache;
+    private int ackRequestStanzaCount;
+    private long ackRequestByteCount;
+    private long ackRequestInterval;
+    private int maxUnackedStanzas;
 
     public enum State {
 
@@ -184,6 +194,53 @@ public class ClientSession {
         useAcks = use;
     }
 
+    /**
+     * @param cache cache of salted passwords for SCRAM authentication to
+     * use, or null (the default) for none
+     */
+    public void setSaltedPasswordCache(SCRAMSaltedPasswordCache cache) {
+        saltedPasswordCache = cache;
+    }
+
+    /**
+     * Sets the factory for timers, which is needed for
+     * {@link #setAckRequestPolicy(int, long, long)} to use an interval.
+     */
+    public void setTimerFactory(TimerFactory timerFactory) {
+        this.timerFactory = timerFactory;
+    }
+
+    /**
+     * Sets when to request acks from the server once stream management is
+     * enabled. If all are 0 (the default), an ack is requested after every
+     * message. See {@link StanzaAckRequester}.
+     * @param stanzaCount request an ack after this many stanzas, or 0
+     * @param byteCount request an ack after this many bytes of stanzas, or 0
+     * @param intervalMilliseconds request an ack this long after the first
+     * unrequested stanza, or 0. Needs {@link #setTimerFactory(TimerFactory)}.
+     */
+    public void setAckRequestPolicy(int stanzaCount, long byteCount, long intervalMilliseconds) {
+        ackRequestStanzaCount = stanzaCount;
+        ackRequestByteCount = byteCount;
+        ackRequestInterval = intervalMilliseconds;
+    }
+
+    /**
+     * Sets the most stanzas kept waiting for an ack, or 0 for no limit.
+     * See {@link StanzaAckRequester#setMaxUnackedStanzas(int)}.
+     */
+    public void setMaxUnackedStanzas(int count) {
+        maxUnackedStanzas = count;
+    }
+
+    /**
+     * @return the ack requester, for its metrics, or null if stream
+     * management is not enabled
+     */
+    public StanzaAckRequester getStanzaAckRequester() {
+        return stanzaAckRequester_;
+    }
+
     public boolean getStreamManagementEnabled() {
         return stanzaAckRequester_ != null;
     }
@@ -256,7 +313,7 @@ public class ClientSession {
     public void sendStanza(final Stanza stanza) {
         stream.writeElement(stanza);
 	if (stanzaAckRequester_ != null) {
-            stanzaAckRequester_.handleStanzaSent(stanza);
+            stanzaAckRequester_.handleStanzaSent(stanza, stream.getLastElementSize());
 	}
     }
 
@@ -380,17 +437,41 @@ public class ClientSession {
                     state = State.Authenticating;
                     stream.writeElement(new AuthRequest("EXTERNAL",new SafeByteArray("")));
                 }
-                else if (streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1") || streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1-PLUS")) {
+                else if (streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-256") || streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-256-PLUS")
+                        || streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1") || streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1-PLUS")) {
                     ByteArray finishMessage = new ByteArray();
-                    boolean plus = streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1-PLUS");
                     if (stream.isTLSEncrypted()) {
                         finishMessage = stream.getTLSFinishMessage();
-                        plus &= !(finishMessage == null || finishMessage.isEmpty());
                     }
-                    final SCRAMSHA1ClientAuthenticator scramAuthenticator = new SCRAMSHA1ClientAuthenticator(UUID.randomUUID().toString(), plus, idnConverter, crypto);
-                    if (!(finishMessage == null || finishMessage.isEmpty())) {
+                    boolean haveChannelBinding = !(finishMessage == null || finishMessage.isEmpty());
+                    // Channel binding is preferred to a stronger hash, so that offering
+                    // SCRAM-SHA-256 can't be used to avoid it
+                    boolean sha256;
+                    boolean plus;
+                    if (haveChannelBinding && streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-256-PLUS")) {
+                        sha256 = true;
+                        plus = true;
+                    }
+                    else if (haveChannelBinding && streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1-PLUS")) {
+                        sha256 = false;
+                        plus = true;
+                    }
+                    else {
+                        sha256 = streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-256")
+                                || (!streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-1") && streamFeatures.hasAuthenticationMechanism("SCRAM-SHA-256-PLUS"));
+                        plus = false;
+                    }
+                    final SCRAMClientAuthenticator scramAuthenticator;
+                    if (sha256) {
+                        scramAuthenticator = new SCRAMSHA256ClientAuthenticator(UUID.randomUUID().toString(), plus, idnConverter, crypto);
+                    }
+                    else {
+                        scramAuthenticator = new SCRAMSHA1ClientAuthenticator(UUID.randomUUID().toString(), plus, idnConverter, crypto);
+                    }
+                    if (haveChannelBinding) {
                         scramAuthenticator.setTLSChannelBindingData(finishMessage);
                     }
+                    scramAuthenticator.setSaltedPasswordCache(saltedPasswordCache);
                     authenticator = scramAuthenticator;
                     state = State.WaitingForCredentials;
                     onNeedCredentials.emit();
@@ -438,7 +519,11 @@ public class ClientSession {
             finishSession(Error.Type.CompressionFailedError);
         }
         else if (element instanceof StreamManagementEnabled) {
-            stanzaAckRequester_ = new StanzaAckRequester();
+            stanzaAckRequester_ = new StanzaAckRequester(timerFactory);
+            stanzaAckRequester_.setAckRequestStanzaCount(ackRequestStanzaCount);
+            stanzaAckRequester_.setAckRequestByteCount(ackRequestByteCount);
+            stanzaAckRequester_.setAckRequestInterval(timerFactory != null ? ackRequestInterval : 0);
+            stanzaAckRequester_.setMaxUnackedStanzas(maxUnackedStanzas);
             stanzaAckOnRequestConnection_ = stanzaAckRequester_.onRequestAck.connect(new Slot() {
 
                 public void call() {
@@ -601,6 +686,7 @@ public class ClientSession {
 	if (stanzaAckRequester_ != null) {
 		stanzaAckOnRequestConnection_.disconnect();
 		stanzaAckOnAckedConnection_.disconnect();
+		stanzaAckRequester_.setAckRequestInterval(0);
 		stanzaAckRequester_ = null;
 	}
 	if (stanzaAckResponder_ != null) {
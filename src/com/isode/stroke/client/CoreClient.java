@@ -166,6 +166,8 @@ public class CoreClient {
 
         iqRouter_ = new IQRouter(stanzaChannel_);
         iqRouter_.setJID(jid);
+        iqRouter_.setTimerFactory(networkFactories.getTimerFactory());
+        iqRouter_.setEventLoop(networkFactories.getEventLoop());
     }
 
     protected void finalize() throws Throwable {
@@ -290,6 +292,7 @@ public class CoreClient {
             }
         });
         connector_.setTimeoutMilliseconds(2*60*1000);
+        connector_.setConnectionAttemptDelayMilliseconds(o.connectionAttemptDelayMilliseconds);
         connector_.start();
     }
 
@@ -312,6 +315,10 @@ public class CoreClient {
                 break;
         }
         session_.setUseAcks(options.useAcks);
+        session_.setTimerFactory(networkFactories.getTimerFactory());
+        session_.setAckRequestPolicy(options.ackRequestStanzaCount, options.ackRequestByteCount, options.ackRequestIntervalMilliseconds);
+        session_.setMaxUnackedStanzas(options.maxUnackedStanzas);
+        session_.setSaltedPasswordCache(options.saltedPasswordCache);
         stanzaChannel_.setSession(session_);
         sessionFinishedConnection_ = session_.onFinished.connect(new Slot1<com.isode.stroke.base.Error>() {
 
@@ -91,6 +91,8 @@ public class CoreComponent extends Entity {
 		});
 		iqRouter_ = new IQRouter(stanzaChannel_);
 		iqRouter_.setFrom(jid);
+		iqRouter_.setTimerFactory(networkFactories.getTimerFactory());
+		iqRouter_.setEventLoop(networkFactories.getEventLoop());
 	}
 
 	/**
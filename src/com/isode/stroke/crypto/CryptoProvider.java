@@ -10,11 +10,26 @@ import com.isode.stroke.base.SafeByteArray;
 public abstract class CryptoProvider {
 
     public abstract Hash createSHA1();
+    public abstract Hash createSHA256();
     public abstract Hash createMD5();
     public abstract ByteArray getHMACSHA1(final SafeByteArray key, final ByteArray data);
     public abstract ByteArray getHMACSHA1(final ByteArray key, final ByteArray data);
     public abstract boolean isMD5AllowedForCrypto();
 
+    /**
+     * @param key the key, not null
+     * @return an HMAC-SHA1 keyed with key, for computing many HMACs with
+     * the same key
+     */
+    public abstract HMAC createHMACSHA1(final ByteArray key);
+
+    /**
+     * @param key the key, not null
+     * @return an HMAC-SHA256 keyed with key, for computing many HMACs with
+     * the same key
+     */
+    public abstract HMAC createHMACSHA256(final ByteArray key);
+
     // Convenience
     public ByteArray getSHA1Hash(final SafeByteArray data) {
         return createSHA1().update(data).getHash();
@@ -24,6 +39,14 @@ public abstract class CryptoProvider {
         return createSHA1().update(data).getHash();
     }
     
+    public ByteArray getSHA256Hash(final ByteArray data) {
+        return createSHA256().update(data).getHash();
+    }
+
+    public ByteArray getHMACSHA256(final ByteArray key, final ByteArray data) {
+        return createHMACSHA256(key).update(data).getHMAC();
+    }
+
     public ByteArray getMD5Hash(final SafeByteArray data) {
         return createMD5().update(data).getHash();
     }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.crypto;
+
+import com.isode.stroke.base.ByteArray;
+
+/**
+ * An HMAC with its key already set, which can be used for any number of
+ * messages in turn without the cost of setting it up again for each.
+ * Instances are not thread-safe.
+ */
+public interface HMAC {
+    /**
+     * @return length in bytes of the HMACs computed
+     */
+    int getLength();
+
+    HMAC update(final ByteArray data);
+    HMAC update(final byte[] data, int offset, int length);
+
+    /**
+     * Complete the HMAC of the data given since the last one was completed,
+     * and reset for the next message.
+     * @param output array to write the HMAC to, with at least
+     * {@link #getLength()} bytes from offset
+     * @param offset index in output to write the first byte to
+     */
+    void getHMAC(final byte[] output, int offset);
+
+    /**
+     * As {@link #getHMAC(byte[], int)}, returning a new ByteArray.
+     * @return the HMAC, not null
+     */
+    ByteArray getHMAC();
+}
@@ -20,6 +20,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.InvalidKeyException;
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.lang.IllegalStateException;
 
@@ -76,6 +77,75 @@ public class JavaCryptoProvider extends CryptoProvider {
 
 	}
 
+	private static class MacProvider implements HMAC {
+
+		private final Mac mac;
+
+		/**
+		* Constructor, Mac object that implements the algorithm, keyed.
+		*/
+		public MacProvider(String algorithm, ByteArray key) {
+			NotNull.exceptIfNull(key, "key");
+			try {
+				mac = Mac.getInstance(algorithm);
+				mac.init(new SecretKeySpec(key.getData(), algorithm));
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e.getMessage());
+			}
+			catch (InvalidKeyException e) {
+				throw new RuntimeException(e.getMessage());
+			}
+		}
+
+		@Override
+		public int getLength() {
+			return mac.getMacLength();
+		}
+
+		@Override
+		public HMAC update(ByteArray data) {
+			NotNull.exceptIfNull(data, "data");
+			mac.update(data.getData(), 0, data.getSize());
+			return this;
+		}
+
+		@Override
+		public HMAC update(byte[] data, int offset, int length) {
+			mac.update(data, offset, length);
+			return this;
+		}
+
+		@Override
+		public void getHMAC(byte[] output, int offset) {
+			try {
+				mac.doFinal(output, offset);
+			}
+			catch (ShortBufferException e) {
+				throw new IllegalArgumentException(e.getMessage());
+			}
+		}
+
+		@Override
+		public ByteArray getHMAC() {
+			return new ByteArray(mac.doFinal());
+		}
+
+	}
+
+	/* Looking up a Mac is costly, so each thread keeps one to rekey */
+	private static final ThreadLocal<Mac> hmacSHA1 = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA1");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e.getMessage());
+			}
+		}
+	};
+
 	/**
 	* Computes the HMACSHA1 hash computation.
 	* @param key NotNull. Key is used for initializing MAC object.
@@ -87,13 +157,11 @@ public class JavaCryptoProvider extends CryptoProvider {
 		NotNull.exceptIfNull(data, "data");
 		try {
 			SecretKeySpec signingKey = new SecretKeySpec(key.getData(), "HmacSHA1");
-			Mac mac = Mac.getInstance("HmacSHA1");
+			Mac mac = hmacSHA1.get();
 			mac.init(signingKey);
 			mac.update(data.getData());
 			byte[] Hmac = mac.doFinal();
 			return (new ByteArray(Hmac));
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e.getMessage());
 		} catch (InvalidKeyException e) {
 			throw new RuntimeException(e.getMessage());
 		}
@@ -108,6 +176,15 @@ public class JavaCryptoProvider extends CryptoProvider {
 		return new HashProvider("SHA-1");
 	}
 
+	/**
+	* Creates the SHA256Hash object for performing hash computations.
+	* @return SHA256Hash object.
+	*/
+	@Override
+	public Hash createSHA256() {
+		return new HashProvider("SHA-256");
+	}
+
 	/**
 	* Creates the SHA1Hash object for performing hash computations.
 	* @return MD5Hash object.
@@ -137,6 +214,24 @@ public class JavaCryptoProvider extends CryptoProvider {
 		return getHMACSHA1Internal(key, data);
 	}
 
+	/**
+	* @param key, NotNull.
+	* @return HMAC object computing HMACSHA1 with the key.
+	*/
+	@Override
+	public HMAC createHMACSHA1(final ByteArray key) {
+		return new MacProvider("HmacSHA1", key);
+	}
+
+	/**
+	* @param key, NotNull.
+	* @return HMAC object computing HMACSHA256 with the key.
+	*/
+	@Override
+	public HMAC createHMACSHA256(final ByteArray key) {
+		return new MacProvider("HmacSHA256", key);
+	}
+
 	@Override
 	public boolean isMD5AllowedForCrypto() {
 		return true;
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.eventloop;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link EventLoop} with the same use as {@link SimpleEventLoop}, but
+ * intended for events posted at a high rate by many threads. Events are
+ * passed to the loop's thread through a lock-free queue, so posting threads
+ * never wait for each other or for the loop's thread, and the loop's thread
+ * only sleeps when there is nothing to do.
+ *
+ * <p>Only one thread may run the loop at a time.
+ */
+public class ConcurrentEventLoop extends EventLoop {
+
+    private final Queue<Event> events_ = new ConcurrentLinkedQueue<Event>();
+    /* The thread running the loop, while it is waiting for events */
+    private volatile Thread waitingThread_ = null;
+    private volatile boolean isRunning_ = true;
+
+    public ConcurrentEventLoop() {
+    }
+
+    /**
+     * Handle events until {@link #stop()} is called.
+     */
+    public void run() {
+        doRun(false);
+    }
+
+    /**
+     * Wait for events to be posted, then handle them and return.
+     */
+    public void runUntilEvents() {
+        doRun(true);
+    }
+
+    /**
+     * Handle any events that are waiting, without blocking.
+     */
+    public void runOnce() {
+        handlePendingEvents();
+    }
+
+    /**
+     * Stop the loop once the events already posted have been handled.
+     */
+    public void stop() {
+        postEvent(new Event.Callback() {
+            @Override
+            public void run() {
+                isRunning_ = false;
+            }
+        });
+    }
+
+    private void doRun(boolean breakAfterEvents) {
+        while (isRunning_) {
+            waitForEvents();
+            handlePendingEvents();
+            if (breakAfterEvents) {
+                return;
+            }
+        }
+    }
+
+    private void waitForEvents() {
+        while (events_.isEmpty()) {
+            /* Publishing the thread before the final check means that any
+             * event posted after the check will see it and unpark us
+             */
+            waitingThread_ = Thread.currentThread();
+            if (events_.isEmpty()) {
+                LockSupport.park(this);
+            }
+            waitingThread_ = null;
+        }
+    }
+
+    private void handlePendingEvents() {
+        Event event;
+        while ((event = events_.poll()) != null) {
+            handleEvent(event);
+        }
+    }
+
+    @Override
+    protected void post(Event event) {
+        events_.add(event);
+        final Thread waitingThread = waitingThread_;
+        if (waitingThread != null) {
+            LockSupport.unpark(waitingThread);
+        }
+    }
+}
@@ -9,8 +9,13 @@
  */
 package com.isode.stroke.eventloop;
 
-import java.util.ArrayList;
-import java.util.Vector;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An event loop is a seemingly infinite loop (runs for the duration of the use
@@ -46,12 +51,8 @@ public abstract class EventLoop {
      *              {@link EventLoop#removeEventsFromOwner} later.
      */
     public void postEvent(Event.Callback callback, EventOwner owner) {
-        Event event;
-        synchronized (eventsMutex_) {
-            event = new Event(owner, callback, nextEventID_);
-            nextEventID_++;
-            events_.add(event);
-        }
+        Event event = new Event(owner, callback, nextEventID_.getAndIncrement());
+        events_.add(event);
         post(event);
     }
 
@@ -63,14 +64,10 @@ public abstract class EventLoop {
      * @param owner Owner of the event, must not be null
      */
     public void removeEventsFromOwner(EventOwner owner) {
-        synchronized (eventsMutex_) {
-            ArrayList<Event> matches = new ArrayList<Event>();
-            for (Event event : events_) {
-                if (event.owner == owner) {
-                    matches.add(event);
-                }
+        for (Iterator<Event> i = events_.iterator(); i.hasNext();) {
+            if (i.next().owner == owner) {
+                i.remove();
             }
-            events_.removeAll(matches);
         }
     }
 
@@ -92,22 +89,14 @@ public abstract class EventLoop {
             return;
         }
 
-        boolean doCallback = false;
-        synchronized (eventsMutex_) {
-            doCallback = events_.contains(event);
-            if (doCallback) {
-                events_.remove(event);
-            }
-        }
-        if (doCallback) {
+        /* Only succeeds if the event hasn't been removed */
+        if (events_.remove(event)) {
             handlingEvents_ = true;
             event.callback.run();
             // Process events that were passed to handleEvent during the callback
             // (i.e. through recursive calls of handleEvent)
             while (!eventsToHandle_.isEmpty()) {
-                Event nextEvent = eventsToHandle_.firstElement();
-                eventsToHandle_.remove(0);
-                nextEvent.callback.run();
+                eventsToHandle_.poll().callback.run();
             }
             handlingEvents_ = false;
         }
@@ -117,9 +106,9 @@ public abstract class EventLoop {
     //		bool operator()(const Event& event) { return event.owner == owner; }
     //		boost::shared_ptr<EventOwner> owner;
     //	};
-    private final Object eventsMutex_ = new Object();
-    private int nextEventID_ = 0;
-    private Vector<Event> events_ = new Vector<Event>();
+    private final AtomicInteger nextEventID_ = new AtomicInteger();
+    /* Events which have been posted but neither handled nor removed */
+    private final Set<Event> events_ = Collections.newSetFromMap(new ConcurrentHashMap<Event, Boolean>());
     boolean handlingEvents_ = false;
-    private Vector<Event> eventsToHandle_ = new Vector<Event>();
+    private final Queue<Event> eventsToHandle_ = new ArrayDeque<Event>();
 }
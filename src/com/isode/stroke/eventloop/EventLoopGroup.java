@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.eventloop;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of {@link EventLoop}s, each run by a thread of its own, so
+ * that events for different sessions can be handled on different cores.
+ *
+ * <p>A session should be given one loop of the group for its whole life
+ * (see {@link #next()}); its events are then handled in order on that loop's
+ * thread, while sessions on other loops run in parallel. Anything shared by
+ * sessions on different loops must be thread-safe.
+ */
+public class EventLoopGroup {
+
+    /**
+     * Create a group with one loop per available processor.
+     */
+    public EventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a group and start its threads, which are daemon threads.
+     * @param loopCount number of loops, must be at least 1
+     */
+    public EventLoopGroup(int loopCount) {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("loopCount must be at least 1");
+        }
+        loops_ = new ConcurrentEventLoop[loopCount];
+        threads_ = new Thread[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            final ConcurrentEventLoop loop = new ConcurrentEventLoop();
+            loops_[i] = loop;
+            threads_[i] = new Thread(new Runnable() {
+                public void run() {
+                    loop.run();
+                }
+            });
+            threads_[i].setDaemon(true);
+            threads_[i].setName("EventLoopGroup " + i);
+        }
+        for (Thread thread : threads_) {
+            thread.start();
+        }
+    }
+
+    /**
+     * @return the number of loops in the group
+     */
+    public int getEventLoopCount() {
+        return loops_.length;
+    }
+
+    /**
+     * @param index index of the loop, from 0 to {@link #getEventLoopCount()} - 1
+     * @return the loop, never null
+     */
+    public EventLoop getEventLoop(int index) {
+        return loops_[index];
+    }
+
+    /**
+     * @return the loop that the next new session should use, chosen in
+     * round-robin order, never null
+     */
+    public EventLoop next() {
+        return loops_[nextIndex()];
+    }
+
+    /**
+     * @return the index of the loop that the next new session should use
+     */
+    public int nextIndex() {
+        return (nextLoop_.getAndIncrement() & Integer.MAX_VALUE) % loops_.length;
+    }
+
+    /**
+     * @return true if called from the thread of one of the group's loops
+     */
+    public boolean inEventLoop() {
+        final Thread current = Thread.currentThread();
+        for (Thread thread : threads_) {
+            if (thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop every loop once the events already posted to it have been handled.
+     * The group may not be used after this.
+     */
+    public void shutdown() {
+        for (ConcurrentEventLoop loop : loops_) {
+            loop.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopGroup with " + loops_.length + " loops";
+    }
+
+    private final ConcurrentEventLoop[] loops_;
+    private final Thread[] threads_;
+    private final AtomicInteger nextLoop_ = new AtomicInteger();
+}
@@ -11,13 +11,12 @@
 package com.isode.stroke.eventloop;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 public class SimpleEventLoop extends EventLoop {
 
     private boolean isRunning_;
-    private final List<Event> events_ = new ArrayList<Event>();
+    private List<Event> events_ = new ArrayList<Event>();
     private final Object eventsMutex_ = new Object();
     
     public SimpleEventLoop() {
@@ -48,7 +47,7 @@ public class SimpleEventLoop extends EventLoop {
     
     private void doRun(boolean breakAfterEvents) {
         while (isRunning_) {
-            List<Event> events = new ArrayList<Event>();
+            List<Event> events;
             synchronized (eventsMutex_) {
                 while (events_.isEmpty()) {
                     try {
@@ -57,7 +56,7 @@ public class SimpleEventLoop extends EventLoop {
                         // Ignore
                     }
                 }
-                swapCollectionContents(events, events_);
+                events = takeEvents();
             }
             for (Event event : events) {
                 handleEvent(event);
@@ -69,9 +68,9 @@ public class SimpleEventLoop extends EventLoop {
     }
 
     public void runOnce() {
-        List<Event> events = new ArrayList<Event>();
+        List<Event> events;
         synchronized (eventsMutex_) {
-            swapCollectionContents(events, events_);
+            events = takeEvents();
         }
         for (Event event : events) {
             handleEvent(event);
@@ -93,12 +92,14 @@ public class SimpleEventLoop extends EventLoop {
         isRunning_ = false;
     }
 
-    static <T> void swapCollectionContents(Collection<T> coll1, Collection<T> coll2) {
-        Collection<T> temp = new ArrayList<T>(coll1);
-        coll1.clear();
-        coll1.addAll(coll2);
-        coll2.clear();
-        coll2.addAll(temp);
+    /**
+     * Must be called with eventsMutex_ held.
+     * @return the pending events, which are replaced by an empty list
+     */
+    private List<Event> takeEvents() {
+        List<Event> events = events_;
+        events_ = new ArrayList<Event>();
+        return events;
     }
     
     @Override
@@ -13,8 +13,6 @@ package com.isode.stroke.eventloop;
 
 import com.isode.stroke.eventloop.EventLoop;
 import java.util.Vector;
-import java.util.Collection;
-import java.util.ArrayList;
 
 // DESCRIPTION:
 //
@@ -73,9 +71,10 @@ public class SingleThreadedEventLoop extends EventLoop {
 	public void handleEvents() {
 		// Make a copy of the list of events so we don't block any threads that post 
 		// events while we process them.
-		Vector<Event> events = new Vector<Event>();
+		Vector<Event> events;
 		synchronized(eventsMutex_) {
-			swapCollectionContents(events, events_);
+			events = events_;
+			events_ = new Vector<Event>();
 		}
 
 		// Loop through all the events and handle them
@@ -84,14 +83,6 @@ public class SingleThreadedEventLoop extends EventLoop {
 		}
 	}
 
-	static <T> void swapCollectionContents(Collection<T> coll1, Collection<T> coll2) {
-		Collection<T> temp = new ArrayList<T>(coll1);
-		coll1.clear();
-		coll1.addAll(coll2);
-		coll2.clear();
-		coll2.addAll(temp);
-	}
-
 	public void stop() {
 		synchronized(eventsMutex_) {
 			shouldShutDown_ = true;
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.idn;
+
+import java.util.EnumMap;
+
+import com.isode.stroke.base.BoundedCache;
+import com.isode.stroke.base.SafeByteArray;
+
+/**
+ * An {@link IDNConverter} which remembers the results of another converter,
+ * for use where the same strings are prepared over and over again (such as
+ * the parts of JIDs in stanzas).
+ *
+ * <p>Strings made only of printable ASCII characters which a profile would
+ * not change are returned as they are, without calling the other converter.
+ * Other results are kept in a {@link BoundedCache} per profile. Failures
+ * are not cached, and neither are {@link SafeByteArray} results, which are
+ * always passed straight to the other converter.
+ *
+ * <p>This class is thread-safe if the other converter is.
+ */
+public class CachingIDNConverter implements IDNConverter {
+
+    /**
+     * @param converter converter to do the work, not null
+     */
+    public CachingIDNConverter(IDNConverter converter) {
+        this(converter, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param converter converter to do the work, not null
+     * @param cacheSize number of results to keep for each profile
+     * (see {@link BoundedCache}), must be at least 1
+     */
+    public CachingIDNConverter(IDNConverter converter, int cacheSize) {
+        converter_ = converter;
+        for (StringPrepProfile profile : StringPrepProfile.values()) {
+            prepared_.put(profile, new BoundedCache<String, String>(cacheSize));
+        }
+        encoded_ = new BoundedCache<String, String>(cacheSize);
+    }
+
+    public String getStringPrepared(String s, StringPrepProfile profile) throws IllegalArgumentException {
+        if (isUnchangedASCII(s, profile)) {
+            return s;
+        }
+        final BoundedCache<String, String> cache = prepared_.get(profile);
+        String result = cache.get(s);
+        if (result == null) {
+            result = converter_.getStringPrepared(s, profile);
+            cache.put(s, result);
+        }
+        return result;
+    }
+
+    public SafeByteArray getStringPrepared(SafeByteArray s, StringPrepProfile profile) throws IllegalArgumentException {
+        return converter_.getStringPrepared(s, profile);
+    }
+
+    public String getIDNAEncoded(String s) {
+        String result = encoded_.get(s);
+        if (result == null) {
+            result = converter_.getIDNAEncoded(s);
+            encoded_.put(s, result != null ? result : INVALID);
+        }
+        return result != INVALID ? result : null;
+    }
+
+    /**
+     * @return true if s is printable ASCII which the profile neither maps
+     * nor prohibits, so preparing it would return it unchanged
+     */
+    static boolean isUnchangedASCII(String s, StringPrepProfile profile) {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c > 0x7e || c < 0x20) {
+                return false;
+            }
+            switch (profile) {
+                case NamePrep:
+                    /* Case folded; space is allowed by RFC 3491 but kept
+                     * off the fast path to stay on the safe side */
+                    if (c == ' ' || (c >= 'A' && c <= 'Z')) {
+                        return false;
+                    }
+                    break;
+                case XMPPNodePrep:
+                    /* Case folded, and RFC 3920 appendix A.5 prohibits these */
+                    if (c >= 'A' && c <= 'Z') {
+                        return false;
+                    }
+                    switch (c) {
+                        case ' ': case '"': case '&': case '\'': case '/':
+                        case ':': case '<': case '>': case '@':
+                            return false;
+                        default:
+                            break;
+                    }
+                    break;
+                case XMPPResourcePrep:
+                case SASLPrep:
+                    /* Printable ASCII, including space, is left alone */
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+    /* Stands in for a null result in encoded_, which can't hold null */
+    private static final String INVALID = new String("");
+    private final IDNConverter converter_;
+    private final EnumMap<StringPrepProfile, BoundedCache<String, String>> prepared_ =
+            new EnumMap<StringPrepProfile, BoundedCache<String, String>>(StringPrepProfile.class);
+    private final BoundedCache<String, String> encoded_;
+}
@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.isode.stroke.base.NotNull;
+import com.isode.stroke.idn.CachingIDNConverter;
 import com.isode.stroke.idn.ICUConverter;
 import com.isode.stroke.idn.IDNConverter;
 
@@ -45,11 +46,29 @@ public class JID implements Comparable<JID> {
 		WithResource, WithoutResource
 	};
 
-	private boolean valid_ = true;
-	private String node_ = "";
-	private String domain_ = "";
-	private String resource_ = null;
-	private static IDNConverter idnConverter = new ICUConverter();
+	/**
+	 * The parts of a JID, worked out before it is constructed so that its
+	 * fields can be final.
+	 */
+	private static class Components {
+		boolean valid = true;
+		String node = "";
+		String domain = "";
+		String resource = null;
+	}
+
+	private final boolean valid_;
+	private final String node_;
+	private final String domain_;
+	private final String resource_;
+	/* Computed on first use; a JID never changes, so these never need
+	 * resetting. They are volatile so that a JID shared between threads
+	 * is never seen with them half built */
+	private volatile String string_ = null;
+	private int hash_ = 0;
+	private volatile JID bare_ = null;
+	/* JID parts repeat a great deal, so stringprep results are cached */
+	private static IDNConverter idnConverter = new CachingIDNConverter(new ICUConverter());
 
 	/**
 	 * Create an invalid JID.
@@ -80,40 +99,55 @@ public class JID implements Comparable<JID> {
 	 * @param jid String representation. Invalid JID if null or invalid.
 	 */
 	public JID(String jid) {
-		NotNull.exceptIfNull(jid, "jid");
-		initializeFromString(jid);
+		this(initializeFromString(jid));
+	}
+
+	private JID(Components components) {
+		valid_ = components.valid;
+		node_ = components.node;
+		domain_ = components.domain;
+		resource_ = components.resource;
 	}
 
-	private void initializeFromString(String jid) {
+	private static Components initializeFromString(String jid) {
+		NotNull.exceptIfNull(jid, "jid");
 		if (jid.startsWith("@")) {
-			valid_ = false;
-			node_ = "";
-			domain_ = "";
-			resource_ = null;
-			return;
+			Components components = new Components();
+			components.valid = false;
+			return components;
 		}
 
 		String bare;
 		String resource;
-		String[] parts = jid.split("/", 2);
-		if (parts.length > 1) {
-			bare = parts[0];
-			resource = parts[1];
+		int slash = jid.indexOf('/');
+		if (slash >= 0) {
+			bare = jid.substring(0, slash);
+			resource = jid.substring(slash + 1);
 		} else {
 			resource = null;
 			bare = jid;
 		}
-		String[] nodeAndDomain = bare.split("@", 2);
+		int at = bare.indexOf('@');
 		String node;
 		String domain;
-		if (nodeAndDomain.length == 1) {
+		if (at < 0) {
 			node = "";
-			domain = nodeAndDomain[0];
+			domain = bare;
 		} else {
-			node = nodeAndDomain[0];
-			domain = nodeAndDomain[1];
+			node = bare.substring(0, at);
+			domain = bare.substring(at + 1);
 		}
-		nameprepAndSetComponents(node, domain, resource);
+		return nameprepComponents(node, domain, resource);
+	}
+
+	/**
+	 * Create the bare JID of a valid JID, without preparing its parts again.
+	 */
+	private JID(JID jid) {
+		valid_ = true;
+		node_ = jid.node_;
+		domain_ = jid.domain_;
+		resource_ = null;
 	}
 
 	/**
@@ -140,32 +174,37 @@ public class JID implements Comparable<JID> {
 	 * @param resource JID resource part.
 	 */
 	public JID(String node, String domain, String resource) {
+		this(initializeFromComponents(node, domain, resource));
+	}
+
+	private static Components initializeFromComponents(String node, String domain, String resource) {
 		NotNull.exceptIfNull(node, "node");
 		NotNull.exceptIfNull(domain, "domain");
-		nameprepAndSetComponents(node, domain, resource);
+		return nameprepComponents(node, domain, resource);
 	}
 
-	private void nameprepAndSetComponents(String node, String domain, String resource) {
+	private static Components nameprepComponents(String node, String domain, String resource) {
+		Components components = new Components();
 		if (domain.isEmpty() || idnConverter.getIDNAEncoded(domain) == null) {
-			valid_ = false;
-			return;
+			components.valid = false;
+			return components;
 		}
 
 		try {
-			node_ = idnConverter.getStringPrepared(node, IDNConverter.StringPrepProfile.XMPPNodePrep);
-			domain_ = idnConverter.getStringPrepared(domain, IDNConverter.StringPrepProfile.NamePrep);
-			resource_ = resource != null ? idnConverter.getStringPrepared(resource, IDNConverter.StringPrepProfile.XMPPResourcePrep) : null;
+			components.node = idnConverter.getStringPrepared(node, IDNConverter.StringPrepProfile.XMPPNodePrep);
+			components.domain = idnConverter.getStringPrepared(domain, IDNConverter.StringPrepProfile.NamePrep);
+			components.resource = resource != null ? idnConverter.getStringPrepared(resource, IDNConverter.StringPrepProfile.XMPPResourcePrep) : null;
 		} catch (IllegalArgumentException e) {
-			valid_ = false;
-			return;
+			components.valid = false;
+			return components;
 		}
-		if (resource_ != null && resource_.isEmpty()) {
-		    valid_ = false;
+		if (components.resource != null && components.resource.isEmpty()) {
+		    components.valid = false;
 		}
-		if (domain_.isEmpty()) {
-			valid_ = false;
-			return;
+		if (components.domain.isEmpty()) {
+			components.valid = false;
 		}
+		return components;
 	}
 	
 	/**
@@ -212,7 +251,18 @@ public class JID implements Comparable<JID> {
 	 * @return non-null. Invalid if the original is invalid.
 	 */
 	public JID toBare() {
-		return new JID(getNode(), getDomain());
+		if (!valid_) {
+			return new JID(getNode(), getDomain());
+		}
+		if (isBare()) {
+			return this;
+		}
+		JID bare = bare_;
+		if (bare == null) {
+			bare = new JID(this);
+			bare_ = bare;
+		}
+		return bare;
 	}
 
 	static List<Character> escapedChars = Arrays.asList(' ', '"', '&', '\'', '/', '<', '>', '@', ':');
@@ -304,19 +354,28 @@ public class JID implements Comparable<JID> {
 
 	@Override
 	public String toString() {
-		String string = new String();
-		if (node_.length()!=0) {
-			string += node_ + "@";
-		}
-		string += domain_;
-		if (!isBare()) {
-			string += "/" + resource_;
+		String string = string_;
+		if (string == null) {
+			StringBuilder builder = new StringBuilder(node_.length() + domain_.length()
+					+ (resource_ != null ? resource_.length() : 0) + 2);
+			if (node_.length()!=0) {
+				builder.append(node_).append('@');
+			}
+			builder.append(domain_);
+			if (!isBare()) {
+				builder.append('/').append(resource_);
+			}
+			string = builder.toString();
+			string_ = string;
 		}
 		return string;
 	}
 
 	@Override
 	public boolean equals(Object otherObject) {
+    	if (otherObject == this) {
+    	  	return true;
+    	}
     	if (!(otherObject instanceof JID)) {
     	  	return false;
     	}
@@ -353,10 +412,14 @@ public class JID implements Comparable<JID> {
 
 	@Override
 	public int hashCode() {
-		int hash = 5;
-		hash = 73 * hash + (this.node_ != null ? this.node_.hashCode() : 0);
-		hash = 73 * hash + (this.domain_ != null ? this.domain_.hashCode() : 0);
-		hash = 73 * hash + (this.resource_ != null ? this.resource_.hashCode() : 0);
+		int hash = hash_;
+		if (hash == 0) {
+			hash = 5;
+			hash = 73 * hash + (this.node_ != null ? this.node_.hashCode() : 0);
+			hash = 73 * hash + (this.domain_ != null ? this.domain_.hashCode() : 0);
+			hash = 73 * hash + (this.resource_ != null ? this.resource_.hashCode() : 0);
+			hash_ = hash;
+		}
 		return hash;
 	}
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.jid;
+
+import com.isode.stroke.base.BoundedCache;
+import com.isode.stroke.base.NotNull;
+
+/**
+ * A pool of canonical {@link JID} instances, so that equal JIDs used in many
+ * places (for example as map keys for presence or roster state) can share
+ * one instance, and so that the strings of JIDs seen often need not be
+ * parsed and prepared again.
+ *
+ * <p>The pool is bounded (see {@link BoundedCache}), so JIDs that are rarely
+ * used are dropped from it. Two JIDs from the same pool may therefore be
+ * equal without being the same instance; {@link JID#equals} must still be
+ * used to compare them, but is quick when they are the same instance.
+ *
+ * <p>This class is thread-safe.
+ */
+public class JIDPool {
+
+    /**
+     * Create a pool holding up to 2 * 8192 JIDs.
+     */
+    public JIDPool() {
+        this(8192);
+    }
+
+    /**
+     * @param size number of JIDs in each generation of the pool, at least 1
+     */
+    public JIDPool(int size) {
+        bySerialization_ = new BoundedCache<String, JID>(size);
+        canonical_ = new BoundedCache<JID, JID>(size);
+    }
+
+    /**
+     * Parse a JID, returning the pooled instance if the same string has
+     * been parsed recently.
+     * @param jid String representation, not null
+     * @return JID, not null. Invalid JIDs are not pooled.
+     */
+    public JID fromString(String jid) {
+        NotNull.exceptIfNull(jid, "jid");
+        JID result = bySerialization_.get(jid);
+        if (result == null) {
+            result = new JID(jid);
+            if (result.isValid()) {
+                result = intern(result);
+                bySerialization_.put(jid, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param jid JID, not null
+     * @return the pooled JID equal to jid, which is jid itself if there was
+     * none. Invalid JIDs are returned as they are.
+     */
+    public JID intern(JID jid) {
+        NotNull.exceptIfNull(jid, "jid");
+        if (!jid.isValid()) {
+            return jid;
+        }
+        JID result = canonical_.get(jid);
+        if (result == null) {
+            canonical_.put(jid, jid);
+            result = jid;
+        }
+        return result;
+    }
+
+    /**
+     * Remove all JIDs from the pool.
+     */
+    public void clear() {
+        bySerialization_.clear();
+        canonical_.clear();
+    }
+
+    private final BoundedCache<String, JID> bySerialization_;
+    private final BoundedCache<JID, JID> canonical_;
+}
@@ -14,7 +14,6 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.isode.stroke.base.ByteArray;
 import com.isode.stroke.base.Error;
 import com.isode.stroke.base.SafeByteArray;
 import com.isode.stroke.base.URL;
@@ -50,7 +49,7 @@ public class BOSHConnection {
     private String sid_ = "";
     private boolean waitingForStartResponse_ = false;
     private long rid_ = 0;
-    private final SafeByteArray buffer_ = new SafeByteArray();
+    private final HTTPResponseParser responseParser_ = new HTTPResponseParser();
     private boolean pending_ = false;
     private boolean connectionReady_ = false;
     
@@ -103,6 +102,12 @@ public class BOSHConnection {
         boshURL_ = url;
         connector_ = connector;
         parserFactory_ = parserFactory;
+        responseParser_.onResponse.connect(new Slot1<HTTPResponseParser.Response>() {
+            @Override
+            public void call(HTTPResponseParser.Response response) {
+                handleHTTPResponse(response);
+            }
+        });
         if ("https".equals(boshURL_.getScheme())) {
             tlsLayer_ = new TLSLayer(tlsContextFactory, tlsOptions);
             dummyLayer_ = new DummyStreamLayer(tlsLayer_);
@@ -356,7 +361,7 @@ public class BOSHConnection {
                     }
 
                 });
-                tlsLayer_.connect();
+                tlsLayer_.connect(connection_.getRemoteAddress());
             }
             else {
                 connection_.onDataRead.connect(new Slot1<SafeByteArray>() {
@@ -385,52 +390,67 @@ public class BOSHConnection {
     
     private void handleDataRead(SafeByteArray data) {
         onBOSHDataRead.emit(data);
-        buffer_.append(data);
-        String response = buffer_.toString();
-        if (!response.contains("\r\n\r\n")) {
-            onBOSHDataRead.emit(new SafeByteArray("[[Previous read incomplete, pending]]"));
+        if (!responseParser_.parse(data.asByteBuffer())) {
+            logger.warning("Invalid HTTP response from BOSH server\n");
+            responseParser_.reset();
+            onHTTPError.emit("");
             return;
         }
-        int httpCodeIndex = response.indexOf(" ")+1;
-        String httpCode = response.substring(httpCodeIndex,httpCodeIndex+3);
-        if (!"200".equals(httpCode)) {
-            onHTTPError.emit(httpCode);
+        if (!responseParser_.isIdle()) {
+            onBOSHDataRead.emit(new SafeByteArray("[[Previous read incomplete, pending]]"));
+        }
+    }
+
+    private void handleHTTPResponse(HTTPResponseParser.Response response) {
+        if (response.getStatusCode() != 200) {
+            onHTTPError.emit(Integer.toString(response.getStatusCode()));
             return;
         }
-        ByteArray boshData = new ByteArray(response.substring(response.indexOf("\r\n\r\n")));
-        BOSHBodyExtractor parser = new BOSHBodyExtractor(parserFactory_, boshData);
+        BOSHBodyExtractor parser = new BOSHBodyExtractor(parserFactory_, response.getBody());
         BOSHBody boshBody = parser.getBody();
-        if (boshBody != null) {
-            String typeAttribute = boshBody.getAttributes().getAttribute("type");
-            if ( "terminate".equals(typeAttribute) ) {
-                String conditionAttribute = boshBody.getAttributes().getAttribute("condition");
-                BOSHError.Type errorType = parseTerminationCondition(conditionAttribute);
-                onSessionTerminated.emit(errorType == BOSHError.Type.NoError ? null : new BOSHError(errorType));
-            }
-            buffer_.clear();
-            if (waitingForStartResponse_) {
-                waitingForStartResponse_ = false;
-                sid_ = boshBody.getAttributes().getAttribute("sid");
-                String requestsString = boshBody.getAttributes().getAttribute("requests");
-                Integer requests = Integer.valueOf(2);
-                if (requestsString != null && !requestsString.isEmpty()) {
-                    try {
-                        requests = Integer.valueOf(requestsString);
-                    } catch (NumberFormatException e) {
-                        requests = Integer.valueOf(2);
-                    }
+        if (boshBody == null) {
+            logger.warning("BOSH response has no valid body\n");
+            return;
+        }
+        String typeAttribute = boshBody.getAttributes().getAttribute("type");
+        if ( "terminate".equals(typeAttribute) ) {
+            String conditionAttribute = boshBody.getAttributes().getAttribute("condition");
+            BOSHError.Type errorType = parseTerminationCondition(conditionAttribute);
+            onSessionTerminated.emit(errorType == BOSHError.Type.NoError ? null : new BOSHError(errorType));
+        }
+        if (waitingForStartResponse_) {
+            waitingForStartResponse_ = false;
+            sid_ = boshBody.getAttributes().getAttribute("sid");
+            String requestsString = boshBody.getAttributes().getAttribute("requests");
+            Integer requests = Integer.valueOf(2);
+            if (requestsString != null && !requestsString.isEmpty()) {
+                try {
+                    requests = Integer.valueOf(requestsString);
+                } catch (NumberFormatException e) {
+                    requests = Integer.valueOf(2);
                 }
-                onSessionStarted.emit(sid_, requests);
             }
-            
-            SafeByteArray payload = new SafeByteArray(boshBody.getContent());
-            /* Say we're good to go again, so don't add anything after here in the method */
-            pending_ = false;
+            onSessionStarted.emit(sid_, requests);
+        }
+        
+        SafeByteArray payload = new SafeByteArray(boshBody.getContent());
+        if (!response.isKeepAlive()) {
+            /* The server closes the connection after this response, so it
+             * can't carry another request. It stays pending, so nothing more
+             * is written to it, and is closed once the payload has been
+             * handled; the pool opens another connection when it needs one */
             onXMPPDataRead.emit(payload);
+            disconnect();
+            return;
         }
+        /* Say we're good to go again, so don't add anything after here in the method */
+        pending_ = false;
+        onXMPPDataRead.emit(payload);
     }
     
     private void handleDisconnected(Connection.Error error) {
+        responseParser_.handleEndOfStream();
+        responseParser_.reset();
         cancelConnector();
         onDisconnected.emit(error != null ? Boolean.TRUE : Boolean.FALSE);
         sid_ = "";
@@ -9,6 +9,7 @@
  */
 package com.isode.stroke.network;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,6 +27,7 @@ import com.isode.stroke.parser.XMLParserFactory;
 import com.isode.stroke.signals.Signal;
 import com.isode.stroke.signals.Signal1;
 import com.isode.stroke.signals.SignalConnection;
+import com.isode.stroke.signals.Slot;
 import com.isode.stroke.signals.Slot1;
 import com.isode.stroke.signals.Slot2;
 import com.isode.stroke.tls.Certificate;
@@ -45,14 +47,25 @@ public class BOSHConnectionPool {
         = new HashMap<BOSHConnection, Set<SignalConnection>>();
     private String sid_ = "";
     private long rid_;
-    private final List<SafeByteArray> dataQueue_ = new ArrayList<SafeByteArray>();
+    private final ArrayDeque<QueuedData> dataQueue_ = new ArrayDeque<QueuedData>();
+    private int queuedBytes_;
     private boolean pendingTerminate_;
     private String to_;
     private int requestLimit_;
+    private int maxConcurrentRequests_;
+    private long batchingWindow_;
+    private int maxBatchSize_;
+    private Timer batchingTimer_;
+    private boolean batchDue_;
+    private long requestCount_;
+    private long payloadBytesSent_;
+    private long queuedWriteCount_;
+    private long totalQueueLatencyNanos_;
+    private long maximumQueueLatencyNanos_;
     private int restartCount_;
     private boolean pendingRestart_;
     private List<ConnectionFactory> myConnectionFactories_;
-    private final CachingDomainNameResolver resolver_;
+    private final DomainNameResolver resolver_;
     private CertificateWithKey clientCertificate_;
     private TLSContextFactory tlsContextFactory_;
     private TLSOptions tlsOptions_;
@@ -92,6 +105,10 @@ public class BOSHConnectionPool {
         pendingTerminate_ = false;
         to_ = to;
         requestLimit_ = 2;
+        maxConcurrentRequests_ = 0;
+        batchingWindow_ = 0;
+        maxBatchSize_ = 0;
+        batchDue_ = false;
         restartCount_ = 0;
         pendingRestart_ = false;
         tlsContextFactory_ = tlsFactory;
@@ -104,7 +121,7 @@ public class BOSHConnectionPool {
                             boshHTTPConnectProxyAuthID.getData(), 
                             boshHTTPConnectProxyAuthPassword.getData(), trafficFilter);
         }
-        resolver_ = new CachingDomainNameResolver(realResolver, eventLoop);
+        resolver_ = realResolver;
     }
     
     public void open() {
@@ -112,9 +129,123 @@ public class BOSHConnectionPool {
     }
     
     public void write(SafeByteArray data) {
-        dataQueue_.add(data);
+        if (dataQueue_.isEmpty()) {
+            startBatch();
+        }
+        dataQueue_.add(new QueuedData(data));
+        queuedBytes_ += data.getSize();
         tryToSendQueuedData();
     }
+
+    /**
+     * Hold outgoing data for a while before sending it, so that stanzas
+     * written close together go in the same request instead of each
+     * costing a round-trip. Data is sent early once
+     * {@link #setMaxBatchSize(int)} bytes are waiting, and without delay
+     * when the stream is being terminated.
+     * @param milliseconds time from the first write of a batch until it is
+     * sent; 0 (the default) sends as soon as a connection is free
+     */
+    public void setBatchingWindow(long milliseconds) {
+        if (batchingTimer_ != null) {
+            batchingTimer_.stop();
+            batchingTimer_.onTick.disconnectAll();
+            batchingTimer_ = null;
+        }
+        batchingWindow_ = Math.max(0, milliseconds);
+        if (batchingWindow_ > 0) {
+            batchingTimer_ = timerFactory_.createTimer(batchingWindow_);
+            batchingTimer_.onTick.connect(new Slot() {
+                @Override
+                public void call() {
+                    batchDue_ = true;
+                    tryToSendQueuedData();
+                }
+            });
+            if (!dataQueue_.isEmpty()) {
+                startBatch();
+            }
+        }
+        else {
+            tryToSendQueuedData();
+        }
+    }
+
+    public long getBatchingWindow() {
+        return batchingWindow_;
+    }
+
+    /**
+     * Limit the amount of data sent in one request. Larger queues are split
+     * between requests at write boundaries; a single write larger than the
+     * limit is still sent whole.
+     * @param bytes maximum payload per request, or 0 (the default) for no
+     * limit
+     */
+    public void setMaxBatchSize(int bytes) {
+        maxBatchSize_ = Math.max(0, bytes);
+        tryToSendQueuedData();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize_;
+    }
+
+    /**
+     * Use fewer simultaneous requests than the server allows. The server's
+     * "requests" value is the upper bound in any case, and connections
+     * beyond the first are only opened while there is data waiting for
+     * one.
+     * @param requests maximum number of connections to use, or 0 (the
+     * default) to use as many as the server allows
+     */
+    public void setMaxConcurrentRequests(int requests) {
+        maxConcurrentRequests_ = Math.max(0, requests);
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests_;
+    }
+
+    /**
+     * @return number of HTTP requests sent on the session so far, including
+     * empty polls, restarts and termination
+     */
+    public long getRequestCount() {
+        return requestCount_;
+    }
+
+    /**
+     * @return number of bytes of XMPP data sent so far, excluding the BOSH
+     * and HTTP framing. Divided by {@link #getRequestCount()} this gives
+     * the mean payload per request.
+     */
+    public long getPayloadBytesSent() {
+        return payloadBytesSent_;
+    }
+
+    /**
+     * @return number of writes which have been sent
+     */
+    public long getQueuedWriteCount() {
+        return queuedWriteCount_;
+    }
+
+    /**
+     * @return total time writes have spent queued before being sent.
+     * Divided by {@link #getQueuedWriteCount()} this gives the mean queue
+     * latency.
+     */
+    public long getTotalQueueLatencyMilliseconds() {
+        return totalQueueLatencyNanos_ / 1000000;
+    }
+
+    /**
+     * @return longest time any write has spent queued before being sent
+     */
+    public long getMaximumQueueLatencyMilliseconds() {
+        return maximumQueueLatencyNanos_ / 1000000;
+    }
     
     public void writeFooter() {
         pendingTerminate_ = true;
@@ -122,6 +253,9 @@ public class BOSHConnectionPool {
     }
     
     public void close() {
+        if (batchingTimer_ != null) {
+            batchingTimer_.stop();
+        }
         if (!sid_.isEmpty()) {
             writeFooter();
         }
@@ -137,13 +271,14 @@ public class BOSHConnectionPool {
     }
     
     public void restartStream() {
-        BOSHConnection connection = getSuitableConnection();
+        BOSHConnection connection = getSuitableConnection(true);
         if (connection != null) {
             pendingRestart_ = false;
             rid_++;
           connection.setRID(rid_);
           connection.restartStream();
           restartCount_++;
+          requestCount_++;
         }
         else {
             pendingRestart_ = true;
@@ -341,23 +476,20 @@ public class BOSHConnectionPool {
             return;
         }
 
-        BOSHConnection suitableConnection = getSuitableConnection();
-        boolean toSend = !dataQueue_.isEmpty();
+        boolean toSend = !dataQueue_.isEmpty() && isBatchReady();
+        BOSHConnection suitableConnection = getSuitableConnection(toSend);
         if (suitableConnection != null) {
             if (toSend) {
                 rid_++;
                 suitableConnection.setRID(rid_);
-                SafeByteArray data = new SafeByteArray();
-                for(SafeByteArray datum : dataQueue_) {
-                    data.append(datum);
-                }
-                suitableConnection.write(data);
-                dataQueue_.clear();
+                suitableConnection.write(takeBatch());
+                requestCount_++;
             }
-            else if (pendingTerminate_) {
+            else if (pendingTerminate_ && dataQueue_.isEmpty()) {
                 rid_++;
                 suitableConnection.setRID(rid_);
                 suitableConnection.terminateStream();
+                requestCount_++;
                 sid_ = "";
                 close();
             }
@@ -377,6 +509,7 @@ public class BOSHConnectionPool {
                         rid_++;
                         suitableConnection.setRID(rid_);
                         suitableConnection.write(new SafeByteArray());
+                        requestCount_++;
                     }
                     else {
                         // My thought process I went through when writing this, to aid anyone else confused why this can happen...
@@ -395,7 +528,60 @@ public class BOSHConnectionPool {
         }
     }
     
-    private BOSHConnection getSuitableConnection() {
+    private boolean isBatchReady() {
+        return batchingWindow_ == 0 || batchDue_ || pendingTerminate_
+                || (maxBatchSize_ > 0 && queuedBytes_ >= maxBatchSize_);
+    }
+
+    private void startBatch() {
+        batchDue_ = false;
+        if (batchingTimer_ != null) {
+            batchingTimer_.stop();
+            batchingTimer_.start();
+        }
+    }
+
+    /**
+     * Remove the next request's worth of data from the queue.
+     */
+    private SafeByteArray takeBatch() {
+        final long now = System.nanoTime();
+        final SafeByteArray data = new SafeByteArray();
+        do {
+            final QueuedData queued = dataQueue_.poll();
+            data.append(queued.data);
+            queuedBytes_ -= queued.data.getSize();
+            final long latency = now - queued.queuedAt;
+            totalQueueLatencyNanos_ += latency;
+            maximumQueueLatencyNanos_ = Math.max(maximumQueueLatencyNanos_, latency);
+            queuedWriteCount_++;
+        } while (!dataQueue_.isEmpty() && (maxBatchSize_ == 0
+                || data.getSize() + dataQueue_.peek().data.getSize() <= maxBatchSize_));
+        payloadBytesSent_ += data.getSize();
+        if (dataQueue_.isEmpty()) {
+            batchDue_ = false;
+            if (batchingTimer_ != null) {
+                batchingTimer_.stop();
+            }
+        }
+        /* Otherwise the batch's window carries on for what is left: it goes
+         * out once that window ends (at once if it already has), or when it
+         * reaches the size limit itself */
+        return data;
+    }
+
+    private int getEffectiveRequestLimit() {
+        if (maxConcurrentRequests_ > 0) {
+            return Math.min(requestLimit_, maxConcurrentRequests_);
+        }
+        return requestLimit_;
+    }
+
+    /**
+     * @param haveData true if there is data ready to send, which justifies
+     * opening another connection when none is free
+     */
+    private BOSHConnection getSuitableConnection(boolean haveData) {
         BOSHConnection suitableConnection = null;
         for(BOSHConnection connection : connections_) {
             if (connection.isReadyToSend()) {
@@ -404,7 +590,9 @@ public class BOSHConnectionPool {
             }
         }
 
-        if (suitableConnection == null && (connections_.size() < requestLimit_)) {
+        final int limit = getEffectiveRequestLimit();
+        if (suitableConnection == null && (connections_.size() < limit)
+                && (haveData || connections_.isEmpty() || pendingTerminate_)) {
             // This is not a suitable connection because it won't have yet connected and added TLS if needed.
             BOSHConnection newConnection = createConnection();
             newConnection.setSID(sid_);
@@ -413,5 +601,14 @@ public class BOSHConnectionPool {
         assert((suitableConnection == null) || suitableConnection.isReadyToSend());
         return suitableConnection;
     }
+
+    private static class QueuedData {
+        final SafeByteArray data;
+        final long queuedAt = System.nanoTime();
+
+        QueuedData(SafeByteArray data) {
+            this.data = data;
+        }
+    }
     
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2012-2015 Isode Limited.
+ * Copyright (c) 2012-2016 Isode Limited.
  * All rights reserved.
  * See the COPYING file for more information.
  */
@@ -11,28 +11,323 @@
 
 package com.isode.stroke.network;
 
-import com.isode.stroke.network.DomainNameResolver;
-import com.isode.stroke.network.StaticDomainNameResolver;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.isode.stroke.eventloop.Event;
 import com.isode.stroke.eventloop.EventLoop;
+import com.isode.stroke.signals.Slot1;
+import com.isode.stroke.signals.Slot2;
 
-/*
- * FIXME: Does not do any caching yet.
+/**
+ * A resolver which remembers the results of another for a while, so that
+ * the many connections made to the same service, such as when a lot of
+ * sessions reconnect at once, need only one lookup.
+ *
+ * <p>Service records are kept for no longer than their TTL, and no
+ * longer than {@link #setPositiveTTL(long)} allows. The platform resolver
+ * does not report the TTLs of addresses, so they are kept for that time.
+ * Answers that a name does not exist or has no such records are cached
+ * too, for a shorter time; lookups which failed, for example by timing
+ * out, are not cached. While a lookup is in progress, any other query for
+ * the same name waits for its result rather than starting another. The
+ * number of cached names is bounded, least recently used names being
+ * dropped first.
+ *
+ * <p>Like the rest of Stroke, this class is meant to be used from the
+ * event loop thread, and results are emitted there.
  */
 public class CachingDomainNameResolver extends DomainNameResolver {
 
-	private DomainNameResolver realResolver;
+	/** Default longest time to keep results which found something */
+	public static final long DEFAULT_POSITIVE_TTL_MILLISECONDS = 5 * 60 * 1000;
+	/** Default time to keep answers that there is nothing to find */
+	public static final long DEFAULT_NEGATIVE_TTL_MILLISECONDS = 30 * 1000;
+	/** Default number of names cached, of each kind */
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 1024;
+	/* A lookup which has not finished after this long is no longer waited
+	 * on by new queries */
+	private static final long IN_FLIGHT_TIMEOUT_MILLISECONDS = 30 * 1000;
+
+	private static class CacheEntry<T> {
+		final T result;
+		final long expiresAt;
+
+		CacheEntry(T result, long expiresAt) {
+			this.result = result;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static class AddressResult {
+		final List<HostAddress> addresses;
+		final DomainNameResolveError error;
+
+		AddressResult(Collection<HostAddress> addresses, DomainNameResolveError error) {
+			this.addresses = new ArrayList<HostAddress>(addresses);
+			this.error = error;
+		}
+	}
+
+	private static class InFlight<Q> {
+		final List<Q> waiting = new ArrayList<Q>();
+		final long startedAt = now();
+	}
+
+	private class ServiceQuery extends DomainNameServiceQuery {
+		private final String serviceLookupPrefix;
+		private final String domain;
+
+		ServiceQuery(String serviceLookupPrefix, String domain) {
+			this.serviceLookupPrefix = serviceLookupPrefix;
+			this.domain = domain;
+		}
+
+		public void run() {
+			runServiceQuery(this, serviceLookupPrefix, domain);
+		}
+
+		void emitResult(List<Result> results, boolean notFound) {
+			setNotFound(notFound);
+			onResult.emit(new ArrayList<Result>(results));
+		}
+	}
+
+	private class AddressQuery extends DomainNameAddressQuery {
+		private final String name;
+
+		AddressQuery(String name) {
+			this.name = name;
+		}
+
+		public void run() {
+			runAddressQuery(this, name);
+		}
+
+		void emitResult(AddressResult result) {
+			onResult.emit(new ArrayList<HostAddress>(result.addresses), result.error);
+		}
+	}
+
+	private final DomainNameResolver realResolver;
+	private final EventLoop eventLoop;
+	private final int maximumEntries;
+	private long positiveTTL = DEFAULT_POSITIVE_TTL_MILLISECONDS;
+	private long negativeTTL = DEFAULT_NEGATIVE_TTL_MILLISECONDS;
+	private final Map<String, CacheEntry<List<DomainNameServiceQuery.Result>>> serviceCache;
+	private final Map<String, CacheEntry<AddressResult>> addressCache;
+	private final Map<String, InFlight<ServiceQuery>> serviceQueriesInFlight = new HashMap<String, InFlight<ServiceQuery>>();
+	private final Map<String, InFlight<AddressQuery>> addressQueriesInFlight = new HashMap<String, InFlight<AddressQuery>>();
+	private long hitCount;
+	private long missCount;
+	private long coalescedCount;
 
 	public CachingDomainNameResolver(DomainNameResolver realResolver, EventLoop eventLoop) {
+		this(realResolver, eventLoop, DEFAULT_MAXIMUM_ENTRIES);
+	}
+
+	/**
+	 * @param realResolver resolver to do the lookups, not null
+	 * @param eventLoop loop to emit cached results from, not null
+	 * @param maximumEntries most names to cache of each kind (services and
+	 * addresses)
+	 */
+	public CachingDomainNameResolver(DomainNameResolver realResolver, EventLoop eventLoop, int maximumEntries) {
 		this.realResolver = realResolver;
+		this.eventLoop = eventLoop;
+		this.maximumEntries = maximumEntries;
+		serviceCache = createCache();
+		addressCache = createCache();
 	}
 
 	public DomainNameServiceQuery createServiceQuery(final String serviceLookupPrefix, final String domain) {
-		//TODO: Cache
-		return realResolver.createServiceQuery(serviceLookupPrefix, domain);
+		return new ServiceQuery(serviceLookupPrefix, domain);
 	}
 
 	public DomainNameAddressQuery createAddressQuery(final String name) {
-		//TODO: Cache
-		return realResolver.createAddressQuery(name);
+		return new AddressQuery(name);
+	}
+
+	/**
+	 * @param milliseconds longest time to keep results which found
+	 * something, whatever their TTL
+	 */
+	public void setPositiveTTL(long milliseconds) {
+		positiveTTL = milliseconds;
+	}
+
+	/**
+	 * @param milliseconds how long to keep answers that a name does not
+	 * exist or has no such records, or 0 not to cache them
+	 */
+	public void setNegativeTTL(long milliseconds) {
+		negativeTTL = milliseconds;
+	}
+
+	/**
+	 * Forget all cached results. Lookups in progress are unaffected.
+	 */
+	public void clear() {
+		serviceCache.clear();
+		addressCache.clear();
+	}
+
+	/**
+	 * @return number of queries answered from the cache
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return number of queries passed on to the real resolver
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return number of queries which waited for the same lookup as an
+	 * earlier one
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	private void runServiceQuery(final ServiceQuery query, String serviceLookupPrefix, String domain) {
+		final String key = (serviceLookupPrefix + domain).toLowerCase(Locale.ENGLISH);
+		final CacheEntry<List<DomainNameServiceQuery.Result>> cached = lookup(serviceCache, key);
+		if (cached != null) {
+			hitCount++;
+			eventLoop.postEvent(new Event.Callback() {
+				public void run() {
+					query.emitResult(cached.result, cached.result.isEmpty());
+				}
+			});
+			return;
+		}
+		InFlight<ServiceQuery> inFlight = serviceQueriesInFlight.get(key);
+		if (inFlight != null && now() - inFlight.startedAt < IN_FLIGHT_TIMEOUT_MILLISECONDS) {
+			coalescedCount++;
+			inFlight.waiting.add(query);
+			return;
+		}
+		missCount++;
+		final InFlight<ServiceQuery> newInFlight = new InFlight<ServiceQuery>();
+		newInFlight.waiting.add(query);
+		serviceQueriesInFlight.put(key, newInFlight);
+		final DomainNameServiceQuery realQuery = realResolver.createServiceQuery(serviceLookupPrefix, domain);
+		realQuery.onResult.connect(new Slot1<Collection<DomainNameServiceQuery.Result>>() {
+			public void call(Collection<DomainNameServiceQuery.Result> results) {
+				final List<DomainNameServiceQuery.Result> resultList = new ArrayList<DomainNameServiceQuery.Result>(results);
+				final boolean notFound = resultList.isEmpty() && realQuery.isNotFound();
+				if (!resultList.isEmpty()) {
+					store(serviceCache, key, resultList, getServiceTTL(resultList));
+				}
+				else if (notFound) {
+					store(serviceCache, key, resultList, negativeTTL);
+				}
+				if (serviceQueriesInFlight.get(key) == newInFlight) {
+					serviceQueriesInFlight.remove(key);
+				}
+				for (ServiceQuery waiting : newInFlight.waiting) {
+					waiting.emitResult(resultList, notFound);
+				}
+			}
+		});
+		realQuery.run();
+	}
+
+	private void runAddressQuery(final AddressQuery query, String name) {
+		final String key = name.toLowerCase(Locale.ENGLISH);
+		final CacheEntry<AddressResult> cached = lookup(addressCache, key);
+		if (cached != null) {
+			hitCount++;
+			eventLoop.postEvent(new Event.Callback() {
+				public void run() {
+					query.emitResult(cached.result);
+				}
+			});
+			return;
+		}
+		InFlight<AddressQuery> inFlight = addressQueriesInFlight.get(key);
+		if (inFlight != null && now() - inFlight.startedAt < IN_FLIGHT_TIMEOUT_MILLISECONDS) {
+			coalescedCount++;
+			inFlight.waiting.add(query);
+			return;
+		}
+		missCount++;
+		final InFlight<AddressQuery> newInFlight = new InFlight<AddressQuery>();
+		newInFlight.waiting.add(query);
+		addressQueriesInFlight.put(key, newInFlight);
+		DomainNameAddressQuery realQuery = realResolver.createAddressQuery(name);
+		realQuery.onResult.connect(new Slot2<Collection<HostAddress>, DomainNameResolveError>() {
+			public void call(Collection<HostAddress> addresses, DomainNameResolveError error) {
+				final AddressResult result = new AddressResult(addresses, error);
+				if (error == null && !result.addresses.isEmpty()) {
+					store(addressCache, key, result, positiveTTL);
+				}
+				else if (error != null && error.isNotFound()) {
+					store(addressCache, key, result, negativeTTL);
+				}
+				if (addressQueriesInFlight.get(key) == newInFlight) {
+					addressQueriesInFlight.remove(key);
+				}
+				for (AddressQuery waiting : newInFlight.waiting) {
+					waiting.emitResult(result);
+				}
+			}
+		});
+		realQuery.run();
+	}
+
+	private <T> CacheEntry<T> lookup(Map<String, CacheEntry<T>> cache, String key) {
+		final CacheEntry<T> entry = cache.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (now() >= entry.expiresAt) {
+			cache.remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * @return time to keep service records: that of the record which
+	 * expires first, but no longer than the positive TTL
+	 */
+	private long getServiceTTL(List<DomainNameServiceQuery.Result> results) {
+		long ttl = positiveTTL;
+		for (DomainNameServiceQuery.Result result : results) {
+			if (result.ttl >= 0) {
+				ttl = Math.min(ttl, result.ttl * 1000);
+			}
+		}
+		return ttl;
+	}
+
+	private <T> void store(Map<String, CacheEntry<T>> cache, String key, T result, long ttl) {
+		if (ttl > 0) {
+			cache.put(key, new CacheEntry<T>(result, now() + ttl));
+		}
+	}
+
+	private <T> Map<String, CacheEntry<T>> createCache() {
+		return new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+				return size() > maximumEntries;
+			}
+		};
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
 	}
-}
\ No newline at end of file
+}
@@ -27,6 +27,9 @@ public class ChainedConnector {
 	private Vector<ConnectionFactory> connectionFactories = new Vector<ConnectionFactory>();
 	private TimerFactory timerFactory;
 	private int timeoutMilliseconds;
+	private int connectionAttemptDelayMilliseconds;
+	private long startedAt;
+	private long connectNanos = -1;
 	private Vector<ConnectionFactory> connectionFactoryQueue = new Vector<ConnectionFactory>();
 	private Connector currentConnector;
 	private com.isode.stroke.base.Error lastError;
@@ -60,8 +63,27 @@ public class ChainedConnector {
 		timeoutMilliseconds = milliseconds;
 	}
 
+	/**
+	 * @param milliseconds delay between racing connection attempts, or 0
+	 * (the default) to make them one at a time; see
+	 * {@link Connector#setConnectionAttemptDelayMilliseconds(int)}
+	 */
+	public void setConnectionAttemptDelayMilliseconds(int milliseconds) {
+		connectionAttemptDelayMilliseconds = milliseconds;
+	}
+
+	/**
+	 * @return time taken from the last {@link #start()} until it finished,
+	 * over all the connection factories tried, or -1 if it has not finished
+	 */
+	public long getConnectMilliseconds() {
+		return connectNanos < 0 ? -1 : connectNanos / 1000000;
+	}
+
 	public void start() {
 		logger_.fine("Starting queued connector for " + hostname + "\n");
+		startedAt = System.nanoTime();
+		connectNanos = -1;
 
 		connectionFactoryQueue = new Vector<ConnectionFactory>(connectionFactories);
 		tryNextConnectionFactory();
@@ -79,6 +101,7 @@ public class ChainedConnector {
 	public final Signal2<Connection, com.isode.stroke.base.Error> onConnectFinished = new Signal2<Connection, com.isode.stroke.base.Error>();
 
 	private void finish(Connection connection, com.isode.stroke.base.Error error) {
+		connectNanos = System.nanoTime() - startedAt;
 		onConnectFinished.emit(connection, error);
 	}
 
@@ -94,6 +117,7 @@ public class ChainedConnector {
 			connectionFactoryQueue.remove(connectionFactoryQueue.firstElement());
 			currentConnector = Connector.create(hostname, port, serviceLookupPrefix, resolver, connectionFactory, timerFactory);
 			currentConnector.setTimeoutMilliseconds(timeoutMilliseconds);
+			currentConnector.setConnectionAttemptDelayMilliseconds(connectionAttemptDelayMilliseconds);
 			onConnectFinishedConnection = currentConnector.onConnectFinished.connect(new Slot2<Connection, com.isode.stroke.base.Error>() {
 				@Override
 				public void call(Connection connection, com.isode.stroke.base.Error error) {
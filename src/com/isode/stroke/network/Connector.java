@@ -14,11 +14,16 @@ import com.isode.stroke.signals.SignalConnection;
 import com.isode.stroke.signals.Slot;
 import com.isode.stroke.signals.Slot1;
 import com.isode.stroke.signals.Slot2;
+import java.net.Inet6Address;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public class Connector {
 
+    /** Delay between connection attempts recommended by RFC 8305 */
+    public static final int RECOMMENDED_CONNECTION_ATTEMPT_DELAY_MILLISECONDS = 250;
+
     public static Connector create(String hostname, int port, String serviceLookupPrefix, DomainNameResolver resolver, ConnectionFactory connectionFactory, TimerFactory timerFactory) {
         return new Connector(hostname, port, serviceLookupPrefix, resolver, connectionFactory, timerFactory);
     }
@@ -27,13 +32,63 @@ public class Connector {
         timeoutMilliseconds = milliseconds;
     }
 
+    /**
+     * Race connection attempts instead of making them one at a time, as in
+     * RFC 8305 ("Happy Eyeballs"). Each host's addresses are tried
+     * alternating between IPv6 and IPv4, and another attempt is started
+     * whenever this delay passes without a connection, or as soon as an
+     * attempt fails, moving on to the next SRV target once a host's
+     * addresses have all been started. The first attempt to connect is
+     * used and the others are disconnected. The timeout set by
+     * {@link #setTimeoutMilliseconds(int)} applies to each attempt.
+     * @param milliseconds delay between starting attempts, or 0 (the
+     * default) to start each attempt only once the previous one has failed
+     */
+    public void setConnectionAttemptDelayMilliseconds(int milliseconds) {
+        connectionAttemptDelayMilliseconds = Math.max(0, milliseconds);
+    }
+
+    /**
+     * @return time taken from the last {@link #start()} until it finished,
+     * whether or not a connection was made, or -1 if it has not finished
+     */
+    public long getConnectMilliseconds() {
+        return connectNanos < 0 ? -1 : connectNanos / 1000000;
+    }
+
+    /**
+     * @return number of connection attempts made since this was created
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * @return number of connection attempts abandoned because another one
+     * connected first, or the connector was stopped
+     */
+    public int getCancelledAttemptCount() {
+        return cancelledAttemptCount;
+    }
+
     public void start() {
         assert currentConnection == null;
         assert serviceQuery == null;
         assert timer == null;
         queriedAllServices = false;
+        startedAt = System.nanoTime();
+        connectNanos = -1;
         
-        if (timeoutMilliseconds > 0) {
+        if (isRacing()) {
+            attemptDelayTimer = timerFactory.createTimer(connectionAttemptDelayMilliseconds);
+            attemptDelayTimer.onTick.connect(new Slot() {
+                public void call() {
+                    attemptDelayTimerRunning = false;
+                    startNextAttempt();
+                }
+            });
+        }
+        else if (timeoutMilliseconds > 0) {
             timer = timerFactory.createTimer(timeoutMilliseconds);
             timer.onTick.connect(new Slot() {
                 public void call() {
@@ -53,10 +108,13 @@ public class Connector {
         else if (new HostAddress(hostname).isValid()) {
             // hostname is already a valid address; skip name lookup.
             foundSomeDNS = true;
+            // When racing, there is no fallback lookup of the same name
+            queriedAllServices = isRacing();
             addressQueryResults.add(new HostAddress(hostname));
             tryNextAddress();
         }
         else {
+            queriedAllServices = isRacing();
             queryAddress(hostname);
         }
     }
@@ -99,7 +157,10 @@ public class Connector {
     private void handleAddressQueryResult(Collection<HostAddress> addresses, DomainNameResolveError error) {
       	//std::cout << "Connector::handleAddressQueryResult(): Start" << std::endl;
 	addressQuery = null;
-	if (error != null || addresses.isEmpty()) {
+	if (isRacing()) {
+            handleRacingAddressQueryResult(addresses, error);
+	}
+	else if (error != null || addresses.isEmpty()) {
             if (!serviceQueryResults.isEmpty()) {
                 serviceQueryResults.remove(0);
             }
@@ -142,6 +203,14 @@ public class Connector {
     }
 
     private void tryNextAddress() {
+        if (isRacing()) {
+            for (HostAddress address : addressQueryResults) {
+                pendingTargets.add(new HostAddressPort(address, getConnectPort()));
+            }
+            addressQueryResults.clear();
+            startNextAttempt();
+            return;
+        }
        	if (addressQueryResults.isEmpty()) {
 		//std::cout << "Connector::tryNextAddress(): Done trying addresses. Moving on" << std::endl;
 		// Done trying all addresses. Move on to the next host.
@@ -155,12 +224,7 @@ public class Connector {
 		HostAddress address = addressQueryResults.get(0);
 		addressQueryResults.remove(0);
 
-		int connectPort = (port == -1) ? 5222 : port;
-		if (!serviceQueryResults.isEmpty()) {
-			connectPort = serviceQueryResults.get(0).port;
-		}
-
-		tryConnect(new HostAddressPort(address, connectPort));
+		tryConnect(new HostAddressPort(address, getConnectPort()));
 	}
     }
 
@@ -168,6 +232,7 @@ public class Connector {
        	assert currentConnection == null;
 	//std::cout << "Connector::tryConnect() " << target.getAddress().toString() << " " << target.getPort() << std::endl;
 	currentConnection = connectionFactory.createConnection();
+	attemptCount++;
 	currentConnectionConnectFinishedConnection = currentConnection.onConnectFinished.connect(new Slot1<Boolean>() {
             public void call(Boolean p1) {
                 handleConnectionConnectFinished(p1);
@@ -204,6 +269,152 @@ public class Connector {
 	}
     }
 
+    private boolean isRacing() {
+        return connectionAttemptDelayMilliseconds > 0;
+    }
+
+    private int getConnectPort() {
+        if (!serviceQueryResults.isEmpty()) {
+            return serviceQueryResults.get(0).port;
+        }
+        return (port == -1) ? 5222 : port;
+    }
+
+    private void handleRacingAddressQueryResult(Collection<HostAddress> addresses, DomainNameResolveError error) {
+        if (error == null && !addresses.isEmpty()) {
+            foundSomeDNS = true;
+            final int connectPort = getConnectPort();
+            for (HostAddress address : interleaveAddressFamilies(addresses)) {
+                pendingTargets.add(new HostAddressPort(address, connectPort));
+            }
+        }
+        // This host's addresses are now queued, so the next query is for
+        // the next host
+        if (!serviceQueryResults.isEmpty()) {
+            serviceQueryResults.remove(0);
+        }
+        if (pendingTargets.isEmpty() || attempts.isEmpty() || !attemptDelayTimerRunning) {
+            startNextAttempt();
+        }
+    }
+
+    /**
+     * Start an attempt on the next queued address or, when there are none
+     * left, look up the next host. Finishes once there is nothing left to
+     * try and no attempt is still in progress.
+     */
+    private void startNextAttempt() {
+        if (!pendingTargets.isEmpty()) {
+            attemptDelayTimer.start();
+            attemptDelayTimerRunning = true;
+            startAttempt(pendingTargets.remove(0));
+        }
+        else if (addressQuery != null) {
+            // Wait for the lookup to finish
+        }
+        else if (!serviceQueryResults.isEmpty()) {
+            queryAddress(serviceQueryResults.get(0).hostname);
+        }
+        else if (!queriedAllServices) {
+            // Fall back on simple address resolving
+            queriedAllServices = true;
+            queryAddress(hostname);
+        }
+        else if (attempts.isEmpty()) {
+            finish(null);
+        }
+    }
+
+    private void startAttempt(HostAddressPort target) {
+        final Attempt attempt = new Attempt();
+        attempt.connection = connectionFactory.createConnection();
+        attempt.connectFinishedConnection = attempt.connection.onConnectFinished.connect(new Slot1<Boolean>() {
+            public void call(Boolean error) {
+                handleAttemptFinished(attempt, error);
+            }
+        });
+        if (timeoutMilliseconds > 0) {
+            attempt.timer = timerFactory.createTimer(timeoutMilliseconds);
+            attempt.timer.onTick.connect(new Slot() {
+                public void call() {
+                    handleAttemptTimeout(attempt);
+                }
+            });
+            attempt.timer.start();
+        }
+        attempts.add(attempt);
+        attemptCount++;
+        attempt.connection.connect(target);
+    }
+
+    private void handleAttemptFinished(Attempt attempt, boolean error) {
+        closeAttempt(attempt);
+        if (error) {
+            startNextAttempt();
+        }
+        else {
+            currentConnection = attempt.connection;
+            finish(currentConnection);
+        }
+    }
+
+    private void handleAttemptTimeout(Attempt attempt) {
+        closeAttempt(attempt);
+        attempt.connection.disconnect();
+        startNextAttempt();
+    }
+
+    private void closeAttempt(Attempt attempt) {
+        attempt.connectFinishedConnection.disconnect();
+        if (attempt.timer != null) {
+            attempt.timer.stop();
+            attempt.timer.onTick.disconnectAll();
+        }
+        attempts.remove(attempt);
+    }
+
+    private void cancelAttempts() {
+        for (Attempt attempt : new ArrayList<Attempt>(attempts)) {
+            closeAttempt(attempt);
+            attempt.connection.disconnect();
+            cancelledAttemptCount++;
+        }
+        pendingTargets.clear();
+        if (attemptDelayTimer != null) {
+            attemptDelayTimer.stop();
+            attemptDelayTimer.onTick.disconnectAll();
+            attemptDelayTimer = null;
+            attemptDelayTimerRunning = false;
+        }
+    }
+
+    /**
+     * Order addresses alternating between IPv6 and IPv4, starting with
+     * IPv6, and otherwise keeping the resolver's order (RFC 8305 section 4).
+     */
+    static List<HostAddress> interleaveAddressFamilies(Collection<HostAddress> addresses) {
+        final List<HostAddress> ipv6 = new ArrayList<HostAddress>();
+        final List<HostAddress> other = new ArrayList<HostAddress>();
+        for (HostAddress address : addresses) {
+            if (address.getInetAddress() instanceof Inet6Address) {
+                ipv6.add(address);
+            }
+            else {
+                other.add(address);
+            }
+        }
+        final List<HostAddress> result = new ArrayList<HostAddress>(addresses.size());
+        for (int i = 0; i < Math.max(ipv6.size(), other.size()); i++) {
+            if (i < ipv6.size()) {
+                result.add(ipv6.get(i));
+            }
+            if (i < other.size()) {
+                result.add(other.get(i));
+            }
+        }
+        return result;
+    }
+
     private void finish(Connection connection) {
       	if (timer != null) {
 		timer.stop();
@@ -222,6 +433,8 @@ public class Connector {
 		currentConnectionConnectFinishedConnection.disconnect();
 		currentConnectionConnectFinishedConnection = null;
 	}
+	cancelAttempts();
+	connectNanos = System.nanoTime() - startedAt;
 
 	onConnectFinished.emit(connection, (connection != null || foundSomeDNS) ? null : new DomainNameResolveError());
     }
@@ -238,6 +451,12 @@ public class Connector {
     }
 
 
+    private static class Attempt {
+        Connection connection;
+        SignalConnection connectFinishedConnection;
+        Timer timer;
+    }
+
     private String hostname;
     private DomainNameResolver resolver;
     private ConnectionFactory connectionFactory;
@@ -254,4 +473,14 @@ public class Connector {
     private final int port;
     private final String serviceLookupPrefix;
     private boolean foundSomeDNS = false;
+    private int connectionAttemptDelayMilliseconds = 0;
+    /* Attempts in progress when racing, and the addresses not yet tried */
+    private final ArrayList<Attempt> attempts = new ArrayList<Attempt>();
+    private final ArrayList<HostAddressPort> pendingTargets = new ArrayList<HostAddressPort>();
+    private Timer attemptDelayTimer;
+    private boolean attemptDelayTimerRunning;
+    private long startedAt;
+    private long connectNanos = -1;
+    private int attemptCount;
+    private int cancelledAttemptCount;
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010, Isode Limited, London, England.
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
  * All rights reserved.
  */
 /*
@@ -10,4 +10,26 @@ package com.isode.stroke.network;
 
 public class DomainNameResolveError implements com.isode.stroke.base.Error {
 
+    public DomainNameResolveError() {
+        this(false);
+    }
+
+    /**
+     * @param notFound true if the name was answered as not existing or
+     * having no addresses, false if the lookup failed, for example by
+     * timing out
+     */
+    public DomainNameResolveError(boolean notFound) {
+        notFound_ = notFound;
+    }
+
+    /**
+     * @return true if the name was answered as not existing or having no
+     * addresses, so that asking again soon would give the same answer
+     */
+    public boolean isNotFound() {
+        return notFound_;
+    }
+
+    private final boolean notFound_;
 }
@@ -23,22 +23,30 @@ public abstract class DomainNameServiceQuery {
     public static class Result {
 
         public Result() {
-            hostname = "";
-            port = -1;
-            priority = -1;
-            weight = -1;
+            this("", -1, -1, -1);
         }
 
         public Result(String hostname, int port, int priority, int weight) {
+            this(hostname, port, priority, weight, -1);
+        }
+
+        /**
+         * @param ttl time to live of the record, in seconds, or -1 if not
+         * known
+         */
+        public Result(String hostname, int port, int priority, int weight, long ttl) {
             this.hostname = hostname;
             this.port = port;
             this.priority = priority;
             this.weight = weight;
+            this.ttl = ttl;
         }
         public final String hostname;
         public final int port;
         public final int priority;
         public final int weight;
+        /** Time to live of the record, in seconds, or -1 if not known */
+        public final long ttl;
     };
 
     /**
@@ -61,6 +69,25 @@ public abstract class DomainNameServiceQuery {
 
     public abstract void run();
     public final Signal1<Collection<Result>> onResult = new Signal1<Collection<Result>>();
+
+    /**
+     * @return true if the last result emitted was empty because the name
+     * was answered as not existing or having no such records, false if it
+     * was empty because the lookup failed, for example by timing out
+     */
+    public boolean isNotFound() {
+        return notFound;
+    }
+
+    /**
+     * @param notFound whether the result about to be emitted is an answer
+     * that there are no such records (see {@link #isNotFound()})
+     */
+    protected void setNotFound(boolean notFound) {
+        this.notFound = notFound;
+    }
+
+    private boolean notFound;
     
     public static void sortResults(List<Result> queries,RandomGenerator generator) {
         ResultPriorityComparator comparator = new ResultPriorityComparator();
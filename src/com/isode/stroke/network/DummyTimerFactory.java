@@ -59,11 +59,13 @@ public class DummyTimerFactory implements TimerFactory {
 
 	public void setTime(int time) {
 		assert(time > currentTime);
-		for(DummyTimer timer : timers) {
-			if (timer.getAlarmTime() > currentTime && timer.getAlarmTime() <= time && timer.isRunning) {
+		int previousTime = currentTime;
+		// Advance first, so timers restarted from onTick count from the new time
+		currentTime = time;
+		for(DummyTimer timer : new ArrayList<DummyTimer>(timers)) {
+			if (timer.getAlarmTime() > previousTime && timer.getAlarmTime() <= time && timer.isRunning) {
 				timer.onTick.emit();
 			}
 		}
-		currentTime = time;
 	}
 }
\ No newline at end of file
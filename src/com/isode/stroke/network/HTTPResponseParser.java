@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.signals.Signal1;
+
+/**
+ * An incremental parser for a stream of HTTP/1.x responses, as read from a
+ * persistent connection. Data is fed in as it arrives, in pieces of any
+ * size, and each byte is looked at once. {@link #onResponse} is emitted for
+ * each complete response; several pipelined responses may complete in one
+ * call to {@link #parse}.
+ *
+ * <p>Bodies may be delimited by Content-Length, by chunked
+ * Transfer-Encoding, or by the end of the stream (see
+ * {@link #handleEndOfStream()}). Interim (1xx) responses are skipped.
+ */
+public class HTTPResponseParser {
+
+    /**
+     * A complete HTTP response.
+     */
+    public static class Response {
+
+        private Response(String version, int statusCode, String reasonPhrase) {
+            version_ = version;
+            statusCode_ = statusCode;
+            reasonPhrase_ = reasonPhrase;
+            keepAlive_ = !"HTTP/1.0".equals(version);
+        }
+
+        /**
+         * @return the HTTP version, such as "HTTP/1.1"
+         */
+        public String getVersion() {
+            return version_;
+        }
+
+        public int getStatusCode() {
+            return statusCode_;
+        }
+
+        public String getReasonPhrase() {
+            return reasonPhrase_;
+        }
+
+        /**
+         * @param name header name, in any case
+         * @return the header's value, with repeated headers joined by
+         * commas, or null if there is no such header
+         */
+        public String getHeader(String name) {
+            return headers_.get(name.toLowerCase(Locale.ENGLISH));
+        }
+
+        /**
+         * @return the body, which is empty if there was none
+         */
+        public SafeByteArray getBody() {
+            return body_;
+        }
+
+        /**
+         * @return true if the server will keep the connection open for
+         * further requests after this response
+         */
+        public boolean isKeepAlive() {
+            return keepAlive_;
+        }
+
+        private void addHeader(String name, String value) {
+            final String key = name.toLowerCase(Locale.ENGLISH);
+            final String existing = headers_.get(key);
+            headers_.put(key, existing == null ? value : existing + ", " + value);
+            lastHeader_ = key;
+        }
+
+        private final String version_;
+        private final int statusCode_;
+        private final String reasonPhrase_;
+        private final Map<String, String> headers_ = new HashMap<String, String>();
+        private String lastHeader_ = null;
+        private SafeByteArray body_ = new SafeByteArray();
+        private boolean keepAlive_;
+    }
+
+    /**
+     * Emitted for each complete response.
+     */
+    public final Signal1<Response> onResponse = new Signal1<Response>();
+
+    /**
+     * Parse the next part of the stream.
+     * @param data data read from the connection, which is consumed
+     * @return false if the stream is not valid HTTP, in which case nothing
+     * more can be parsed until {@link #reset()} is called
+     */
+    public boolean parse(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            switch (state_) {
+                case StatusLine:
+                case Header:
+                case ChunkSize:
+                case ChunkEnd:
+                case Trailer:
+                    if (!readLine(data)) {
+                        return state_ != State.Failed;
+                    }
+                    final String line = new String(line_, 0, lineLength_, ISO_8859_1);
+                    lineLength_ = 0;
+                    if (!handleLine(line)) {
+                        state_ = State.Failed;
+                        return false;
+                    }
+                    break;
+                case Body:
+                case ChunkData: {
+                    final int length = (int) Math.min(remaining_, data.remaining());
+                    final ByteBuffer part = data.duplicate();
+                    part.limit(part.position() + length);
+                    response_.body_.append(part);
+                    data.position(data.position() + length);
+                    remaining_ -= length;
+                    if (remaining_ == 0) {
+                        if (state_ == State.Body) {
+                            completeResponse();
+                        }
+                        else {
+                            state_ = State.ChunkEnd;
+                        }
+                    }
+                    break;
+                }
+                case BodyUntilClose:
+                    response_.body_.append(data);
+                    break;
+                case Failed:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell the parser that the connection has been closed, which completes
+     * a response whose body runs to the end of the stream.
+     * @return false if the stream ended part way through a response
+     */
+    public boolean handleEndOfStream() {
+        if (state_ == State.BodyUntilClose) {
+            completeResponse();
+            return true;
+        }
+        return isIdle();
+    }
+
+    /**
+     * @return true if the parser is between responses, with no partial
+     * response buffered
+     */
+    public boolean isIdle() {
+        return state_ == State.StatusLine && lineLength_ == 0;
+    }
+
+    /**
+     * Discard any partial response, and expect a new response next.
+     */
+    public void reset() {
+        state_ = State.StatusLine;
+        lineLength_ = 0;
+        response_ = null;
+        remaining_ = 0;
+    }
+
+    /**
+     * Move bytes up to the end of the current line into line_.
+     * @return true if the line is complete, in which case line_ holds it
+     * without its terminating CRLF or LF
+     */
+    private boolean readLine(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            final byte b = data.get();
+            if (b == '\n') {
+                if (lineLength_ > 0 && line_[lineLength_ - 1] == '\r') {
+                    lineLength_--;
+                }
+                return true;
+            }
+            if (lineLength_ == MAX_LINE_LENGTH) {
+                state_ = State.Failed;
+                return false;
+            }
+            if (lineLength_ == line_.length) {
+                line_ = Arrays.copyOf(line_, Math.min(MAX_LINE_LENGTH, line_.length * 2));
+            }
+            line_[lineLength_++] = b;
+        }
+        return false;
+    }
+
+    private boolean handleLine(String line) {
+        switch (state_) {
+            case StatusLine:
+                return handleStatusLine(line);
+            case Header:
+                return line.isEmpty() ? handleEndOfHeaders() : handleHeader(line);
+            case ChunkSize:
+                return handleChunkSize(line);
+            case ChunkEnd:
+                state_ = State.ChunkSize;
+                return line.isEmpty();
+            case Trailer:
+                if (line.isEmpty()) {
+                    completeResponse();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean handleStatusLine(String line) {
+        if (line.isEmpty()) {
+            return true; /* Tolerate stray line ends between responses */
+        }
+        final int firstSpace = line.indexOf(' ');
+        if (!line.startsWith("HTTP/") || firstSpace < 0 || line.length() < firstSpace + 4) {
+            return false;
+        }
+        final int statusCode = parseNumber(line.substring(firstSpace + 1, firstSpace + 4), 10);
+        if (statusCode < 100 || (line.length() > firstSpace + 4 && line.charAt(firstSpace + 4) != ' ')) {
+            return false;
+        }
+        final String reasonPhrase = line.length() > firstSpace + 5 ? line.substring(firstSpace + 5) : "";
+        response_ = new Response(line.substring(0, firstSpace), statusCode, reasonPhrase);
+        state_ = State.Header;
+        return true;
+    }
+
+    private boolean handleHeader(String line) {
+        if (line.charAt(0) == ' ' || line.charAt(0) == '\t') {
+            /* Continuation of the previous header */
+            if (response_.lastHeader_ == null) {
+                return false;
+            }
+            response_.headers_.put(response_.lastHeader_,
+                    response_.headers_.get(response_.lastHeader_) + " " + line.trim());
+            return true;
+        }
+        final int colon = line.indexOf(':');
+        if (colon <= 0) {
+            return false;
+        }
+        response_.addHeader(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        return true;
+    }
+
+    private boolean handleEndOfHeaders() {
+        final Response response = response_;
+        final String connection = response.getHeader("Connection");
+        if (connection != null) {
+            final String value = connection.toLowerCase(Locale.ENGLISH);
+            if (value.contains("close")) {
+                response.keepAlive_ = false;
+            }
+            else if (value.contains("keep-alive")) {
+                response.keepAlive_ = true;
+            }
+        }
+
+        final int statusCode = response.getStatusCode();
+        if (statusCode < 200) {
+            /* Interim response; the real one follows */
+            reset();
+            return true;
+        }
+        if (statusCode == 204 || statusCode == 304) {
+            completeResponse();
+            return true;
+        }
+        final String transferEncoding = response.getHeader("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+            state_ = State.ChunkSize;
+            return true;
+        }
+        final String contentLength = response.getHeader("Content-Length");
+        if (contentLength != null) {
+            final int length = parseNumber(contentLength, 10);
+            if (length < 0) {
+                return false;
+            }
+            if (length == 0) {
+                completeResponse();
+            }
+            else {
+                remaining_ = length;
+                state_ = State.Body;
+            }
+            return true;
+        }
+        response.keepAlive_ = false;
+        state_ = State.BodyUntilClose;
+        return true;
+    }
+
+    private boolean handleChunkSize(String line) {
+        final int extension = line.indexOf(';');
+        final int size = parseNumber((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+        if (size < 0) {
+            return false;
+        }
+        if (size == 0) {
+            state_ = State.Trailer;
+        }
+        else {
+            remaining_ = size;
+            state_ = State.ChunkData;
+        }
+        return true;
+    }
+
+    private void completeResponse() {
+        final Response response = response_;
+        reset();
+        onResponse.emit(response);
+    }
+
+    /**
+     * @return the value, or -1 if the text is not a non-negative number
+     * that fits in an int
+     */
+    private static int parseNumber(String text, int radix) {
+        if (text.isEmpty() || text.charAt(0) == '+' || text.charAt(0) == '-') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(text, radix);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private enum State {
+        StatusLine, Header, Body, ChunkSize, ChunkData, ChunkEnd, Trailer, BodyUntilClose, Failed
+    }
+
+    /* Longest status, header or chunk size line accepted */
+    private static final int MAX_LINE_LENGTH = 16384;
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private State state_ = State.StatusLine;
+    private byte[] line_ = new byte[128];
+    private int lineLength_ = 0;
+    private Response response_ = null;
+    private long remaining_ = 0;
+}
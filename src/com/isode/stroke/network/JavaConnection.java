@@ -386,9 +386,7 @@ public class JavaConnection extends Connection implements EventOwner {
             
             while (count > 0) {
                 byteBuffer.flip();
-                byte[] result = new byte[byteBuffer.remaining()];
-                byteBuffer.get(result);
-                data.append(result);
+                data.append(byteBuffer);
                 byteBuffer.compact();
                 try {
                     count = socketChannel_.read(byteBuffer);
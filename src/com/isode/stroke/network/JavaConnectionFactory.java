@@ -14,13 +14,34 @@ import com.isode.stroke.eventloop.EventLoop;
 
 public class JavaConnectionFactory implements ConnectionFactory {
 
+    /**
+     * Create a factory for {@link JavaConnection}s, each of which uses a
+     * thread of its own.
+     * @param eventLoop the EventLoop for connection events to be posted to
+     */
     public JavaConnectionFactory(EventLoop eventLoop) {
+        this(eventLoop, null);
+    }
+
+    /**
+     * Create a factory for connections which share the threads of the given
+     * selector pool.
+     * @param eventLoop the EventLoop for connection events to be posted to
+     * @param selectorPool pool to be used by all created connections, or null
+     * to create a {@link JavaConnection} with its own thread for each connection
+     */
+    public JavaConnectionFactory(EventLoop eventLoop, JavaSelectorPool selectorPool) {
         this.eventLoop = eventLoop;
+        this.selectorPool = selectorPool;
     }
 
     public Connection createConnection() {
+        if (selectorPool != null) {
+            return PooledJavaConnection.create(eventLoop, selectorPool);
+        }
         return JavaConnection.create(eventLoop);
     }
 
     private final EventLoop eventLoop;
+    private final JavaSelectorPool selectorPool;
 }
@@ -7,6 +7,7 @@ package com.isode.stroke.network;
 import com.isode.stroke.crypto.CryptoProvider;
 import com.isode.stroke.crypto.JavaCryptoProvider;
 import com.isode.stroke.eventloop.EventLoop;
+import com.isode.stroke.eventloop.EventLoopGroup;
 import com.isode.stroke.tls.PlatformTLSFactories;
 import com.isode.stroke.tls.TLSContextFactory;
 import com.isode.stroke.idn.IDNConverter;
@@ -15,14 +16,95 @@ import com.isode.stroke.idn.ICUConverter;
 public class JavaNetworkFactories implements NetworkFactories {
 
     public JavaNetworkFactories(EventLoop eventLoop) {
+        this(eventLoop, null);
+    }
+
+    /**
+     * @param eventLoop the EventLoop for network events to be posted to
+     * @param selectorPool pool of selector threads to be shared by all
+     * connections, or null to give each connection its own thread
+     */
+    public JavaNetworkFactories(EventLoop eventLoop, JavaSelectorPool selectorPool) {
         eventLoop_ = eventLoop;
         timers_ = new JavaTimerFactory(eventLoop_);
-        connections_ = new JavaConnectionFactory(eventLoop_);
+        connections_ = new JavaConnectionFactory(eventLoop_, selectorPool);
         platformTLSFactories_ = new PlatformTLSFactories();
+        tlsContextFactory_ = platformTLSFactories_.getTLSContextFactory(eventLoop_);
         cryptoProvider_ = new JavaCryptoProvider();
         idnConverter_ = new ICUConverter();
-        dns_ = new PlatformDomainNameResolver(idnConverter_, eventLoop_);
+        platformDomainNameResolver_ = new PlatformDomainNameResolver(idnConverter_, eventLoop_);
+        dns_ = platformDomainNameResolver_;
         proxyProvider_ = new JavaProxyProvider();
+        eventLoopGroup_ = null;
+        shards_ = null;
+    }
+
+    /**
+     * Create factories for sessions spread over the loops of a group. These
+     * factories use the group's first loop; use {@link #nextShard()} to get
+     * factories for each new session, so that its timers and connections
+     * post events to the loop it has been given.
+     * @param eventLoopGroup the group whose loops events are posted to, not null
+     * @param selectorPool pool of selector threads to be shared by all
+     * connections, or null to give each connection its own thread
+     */
+    public JavaNetworkFactories(EventLoopGroup eventLoopGroup, JavaSelectorPool selectorPool) {
+        this(eventLoopGroup.getEventLoop(0), selectorPool, eventLoopGroup, null);
+    }
+
+    private JavaNetworkFactories(EventLoop eventLoop, JavaSelectorPool selectorPool,
+            EventLoopGroup eventLoopGroup, JavaNetworkFactories first) {
+        eventLoop_ = eventLoop;
+        timers_ = new JavaTimerFactory(eventLoop_);
+        connections_ = new JavaConnectionFactory(eventLoop_, selectorPool);
+        if (first == null) {
+            platformTLSFactories_ = new PlatformTLSFactories();
+            cryptoProvider_ = new JavaCryptoProvider();
+            idnConverter_ = new ICUConverter();
+            proxyProvider_ = new JavaProxyProvider();
+        }
+        else {
+            /* Everything that doesn't post events is shared by all shards */
+            platformTLSFactories_ = first.platformTLSFactories_;
+            cryptoProvider_ = first.cryptoProvider_;
+            idnConverter_ = first.idnConverter_;
+            proxyProvider_ = first.proxyProvider_;
+        }
+        tlsContextFactory_ = platformTLSFactories_.getTLSContextFactory(eventLoop_);
+        platformDomainNameResolver_ = new PlatformDomainNameResolver(idnConverter_, eventLoop_);
+        dns_ = platformDomainNameResolver_;
+        eventLoopGroup_ = eventLoopGroup;
+        if (first == null) {
+            shards_ = new JavaNetworkFactories[eventLoopGroup.getEventLoopCount()];
+            shards_[0] = this;
+            for (int i = 1; i < shards_.length; i++) {
+                shards_[i] = new JavaNetworkFactories(eventLoopGroup.getEventLoop(i), selectorPool, eventLoopGroup, this);
+            }
+        }
+        else {
+            shards_ = first.shards_;
+        }
+    }
+
+    /**
+     * @return the group these factories were created for, or null if they
+     * were created for a single {@link EventLoop}
+     */
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup_;
+    }
+
+    /**
+     * Choose the factories for a new session. Sessions are spread over the
+     * loops of the group in round-robin order.
+     * @return factories whose events go to a single loop of the group, or
+     * these factories if they were not created for a group
+     */
+    public JavaNetworkFactories nextShard() {
+        if (shards_ == null) {
+            return this;
+        }
+        return shards_[eventLoopGroup_.nextIndex()];
     }
 
     public TimerFactory getTimerFactory() {
@@ -33,12 +115,56 @@ public class JavaNetworkFactories implements NetworkFactories {
         return connections_;
     }
 
+    /**
+     * @return the platform resolver, or a caching resolver in front of it
+     * if {@link #setDomainNameCachingEnabled(boolean)} has been used
+     */
     public DomainNameResolver getDomainNameResolver() {
         return dns_;
     }
+
+    /**
+     * Choose whether the results of lookups are cached, and shared by
+     * everything using these factories (see
+     * {@link CachingDomainNameResolver}). Caching is off by default. This
+     * applies to all the shards, and only to sessions created after it is
+     * called.
+     * @param enabled true to cache the results of lookups
+     */
+    public void setDomainNameCachingEnabled(boolean enabled) {
+        if (shards_ == null) {
+            setDomainNameCachingEnabledForShard(enabled);
+        }
+        else {
+            for (JavaNetworkFactories shard : shards_) {
+                shard.setDomainNameCachingEnabledForShard(enabled);
+            }
+        }
+    }
+
+    private void setDomainNameCachingEnabledForShard(boolean enabled) {
+        if (!enabled) {
+            dns_ = platformDomainNameResolver_;
+        }
+        else if (!(dns_ instanceof CachingDomainNameResolver)) {
+            dns_ = new CachingDomainNameResolver(platformDomainNameResolver_, eventLoop_);
+        }
+    }
     
+    /**
+     * @return a factory for TLS contexts used from this factory's EventLoop,
+     * sharing SSL contexts and buffers with all the shards
+     */
     public TLSContextFactory getTLSContextFactory() {
-        return platformTLSFactories_.getTLSContextFactory();        
+        return tlsContextFactory_;
+    }
+
+    /**
+     * @return the factory shared by all shards, which may be configured,
+     * for example with a delegated task executor
+     */
+    public PlatformTLSFactories getPlatformTLSFactories() {
+        return platformTLSFactories_;
     }
 
     public ProxyProvider getProxyProvider() {
@@ -62,9 +188,13 @@ public class JavaNetworkFactories implements NetworkFactories {
     private final EventLoop eventLoop_;
     private final JavaTimerFactory timers_;
     private final JavaConnectionFactory connections_;
-    private final PlatformDomainNameResolver dns_;
+    private final PlatformDomainNameResolver platformDomainNameResolver_;
+    private DomainNameResolver dns_;
     private final PlatformTLSFactories platformTLSFactories_;
+    private final TLSContextFactory tlsContextFactory_;
     private final ProxyProvider proxyProvider_;
     private final CryptoProvider cryptoProvider_;
     private final IDNConverter idnConverter_;   
+    private final EventLoopGroup eventLoopGroup_;
+    private final JavaNetworkFactories[] shards_;
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A fixed-size pool of selector threads that can be shared by many
+ * {@link PooledJavaConnection}s. Rather than each connection owning a
+ * thread and a {@link Selector}, connections are assigned to one of the
+ * pool's threads in round-robin order and are serviced by that thread for
+ * their whole lifetime.
+ *
+ * <p>All changes to a connection's {@link SelectionKey} are made on the
+ * selector thread that owns it (see {@link SelectorThread#execute}), so no
+ * locking is needed around the selector itself.
+ */
+public class JavaSelectorPool {
+
+    /**
+     * Implemented by anything registered with a {@link SelectorThread}. The
+     * {@link SelectionKey} attachment must be the handler.
+     */
+    interface SelectionHandler {
+        /**
+         * Called on the selector thread when the key has been selected.
+         * @param key the selected key, never null
+         */
+        void handleSelection(SelectionKey key);
+    }
+
+    /**
+     * One thread of the pool, with its own {@link Selector}.
+     */
+    final class SelectorThread implements Runnable {
+
+        private final Selector selector_;
+        private final Queue<Runnable> tasks_ = new ConcurrentLinkedQueue<Runnable>();
+        private final Thread thread_;
+        /* Only ever used from this selector thread, so may be shared by all
+         * of its connections
+         */
+        private final ByteBuffer readBuffer_ = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        private SelectorThread(String name) throws IOException {
+            selector_ = Selector.open();
+            thread_ = new Thread(this);
+            thread_.setDaemon(true);
+            thread_.setName(name);
+        }
+
+        /**
+         * Run a task on this selector thread. May be called from any thread.
+         * If called from the selector thread itself then the task is run
+         * before the next select.
+         * @param task task to run, must not be null
+         */
+        void execute(Runnable task) {
+            tasks_.add(task);
+            if (Thread.currentThread() != thread_) {
+                selector_.wakeup();
+            }
+        }
+
+        /**
+         * @return the selector used by this thread, for channel registration
+         * from within a task passed to {@link #execute}
+         */
+        Selector getSelector() {
+            return selector_;
+        }
+
+        /**
+         * @return buffer that may be used for socket reads by handlers while
+         * they are being called on this thread
+         */
+        ByteBuffer getReadBuffer() {
+            return readBuffer_;
+        }
+
+        boolean isSelectorThread() {
+            return Thread.currentThread() == thread_;
+        }
+
+        public void run() {
+            while (!shutdown_) {
+                runTasks();
+                try {
+                    selector_.select();
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    logger_.log(Level.WARNING, "Select failed on " + thread_.getName(), e);
+                    break;
+                }
+                final Iterator<SelectionKey> keys = selector_.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid()) {
+                            ((SelectionHandler) key.attachment()).handleSelection(key);
+                        }
+                    } catch (CancelledKeyException e) {
+                        // channel has been closed
+                    } catch (RuntimeException e) {
+                        /* Don't let one broken connection take down every
+                         * other connection sharing this thread
+                         */
+                        logger_.log(Level.SEVERE, "Unexpected exception handling selection", e);
+                    }
+                }
+            }
+            runTasks();
+            try {
+                selector_.close();
+            } catch (IOException e) {
+                /* Not much we can do when already shutting down */
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks_.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger_.log(Level.SEVERE, "Unexpected exception in selector task", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a pool with one selector thread per available processor.
+     * @throws IOException if a selector could not be opened
+     */
+    public JavaSelectorPool() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a pool with the given number of selector threads. The threads
+     * are daemon threads and are started immediately.
+     * @param threadCount number of selector threads, must be at least 1
+     * @throws IOException if a selector could not be opened
+     */
+    public JavaSelectorPool(int threadCount) throws IOException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        threads_ = new SelectorThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads_[i] = new SelectorThread("JavaSelectorPool " + i);
+        }
+        for (SelectorThread thread : threads_) {
+            thread.thread_.start();
+        }
+    }
+
+    /**
+     * @return the number of selector threads in the pool
+     */
+    public int getThreadCount() {
+        return threads_.length;
+    }
+
+    /**
+     * Stop all selector threads. Any connections still using the pool will
+     * stop receiving data. The pool may not be used after this.
+     */
+    public void shutdown() {
+        shutdown_ = true;
+        for (SelectorThread thread : threads_) {
+            thread.selector_.wakeup();
+        }
+    }
+
+    /**
+     * @return the selector thread that the next connection should use
+     */
+    SelectorThread nextSelectorThread() {
+        final int index = (nextThread_.getAndIncrement() & Integer.MAX_VALUE) % threads_.length;
+        return threads_[index];
+    }
+
+    @Override
+    public String toString() {
+        return "JavaSelectorPool with " + threads_.length + " threads" + (shutdown_ ? " (shut down)" : "");
+    }
+
+    private static final int READ_BUFFER_SIZE = 16384;
+    private final Logger logger_ = Logger.getLogger(this.getClass().getName());
+    private final SelectorThread[] threads_;
+    private final AtomicInteger nextThread_ = new AtomicInteger();
+    private volatile boolean shutdown_ = false;
+}
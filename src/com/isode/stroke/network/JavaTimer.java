@@ -4,95 +4,106 @@
  * See Documentation/Licenses/GPLv3.txt for more information.
  */
 /*
- * Copyright (c) 2010, Isode Limited, London, England.
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
  * All rights reserved.
  */
 package com.isode.stroke.network;
 
-import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.isode.stroke.eventloop.Event;
 import com.isode.stroke.eventloop.EventLoop;
 
+/**
+ * A timer scheduled on its factory's shared scheduler, so that a pending
+ * timer holds no thread of its own.
+ */
 class JavaTimer extends Timer {
 
-    private class TimerRunnable implements Runnable {
-
-        boolean running_ = true;
-        private final EventLoop eventLoop_;
-        private final long milliseconds_;
-
-        public TimerRunnable(EventLoop eventLoop, long milliseconds) {
-            eventLoop_ = eventLoop;
-            milliseconds_ = milliseconds;
-        }
-
-        public void run() {
-            long endTime = new Date().getTime() + milliseconds_;
-            while (shouldEmit() && new Date().getTime() < endTime) {
-                try {
-                    long timeToWait = endTime - new Date().getTime();
-                    if (timeToWait > 0) {
-                        Thread.sleep(milliseconds_);
-                    }
-                } catch (InterruptedException ex) {
-                    // Needs to be caught, but won't break out of the loop
-                    // unless end time reached or stop() has been called.
-                }
-            } 
-            if (shouldEmit()) {
-                eventLoop_.postEvent(new Event.Callback() {
-                    public void run() {
-                        onTick.emit();
-                    }
-                });
-            }            
-        }
-
-
-        synchronized boolean shouldEmit() {
-            return running_;
-        }
-
-        public synchronized void stop() {
-            running_ = false;
-        }
-    }
-
     /**
      * Create a new JavaTimer
+     * @param factory the factory whose scheduler is used. Should not be null.
      * @param eventLoop the caller's EventLoop. Should not be null.
      * @param milliseconds length of delay.
      */
-    public JavaTimer(EventLoop eventLoop, long milliseconds) {
-        timer_ = new TimerRunnable(eventLoop, milliseconds);
+    JavaTimer(JavaTimerFactory factory, EventLoop eventLoop, long milliseconds) {
+        factory_ = factory;
+        eventLoop_ = eventLoop;
+        milliseconds_ = milliseconds;
     }
 
     /**
      * Start the timer running. The timer will expire and generate a signal
      * after the specified delay, unless {@link #stop()} has been called.
+     * Starting a timer which is already running restarts it.
      */
     @Override
     public void start() {
-        Thread thread = (new Thread(timer_));
-        thread.setDaemon(true);
-        thread.start();
+        final int generation;
+        synchronized (this) {
+            cancelPending();
+            generation = generation_.incrementAndGet();
+            pending_ = factory_.getScheduler().schedule(new Runnable() {
+                public void run() {
+                    expire(generation);
+                }
+            }, milliseconds_, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * Cancel the timer. No signal will be generated.
+     * Cancel the timer. No signal will be generated, even if the timer has
+     * already expired but its signal has not yet been emitted.
      */
     @Override
     public void stop() {
-        timer_.stop();
-        //FIXME: This needs to clear any remaining events out of the EventLoop queue.
+        synchronized (this) {
+            generation_.incrementAndGet();
+            cancelPending();
+        }
+    }
+
+    private void cancelPending() {
+        if (pending_ != null) {
+            if (pending_.cancel(false)) {
+                factory_.timerCancelled();
+            }
+            pending_ = null;
+        }
+    }
+
+    /**
+     * Called on the scheduler thread.
+     */
+    private void expire(final int generation) {
+        if (generation_.get() != generation) {
+            return;
+        }
+        eventLoop_.postEvent(new Event.Callback() {
+            public void run() {
+                /* Not stopped or restarted since the event was posted */
+                if (generation_.get() == generation) {
+                    onTick.emit();
+                }
+            }
+        });
     }
-    
+
     @Override
     public String toString() {
-        return "JavaTimer for " + timer_.milliseconds_ + 
-        " milliseconds " + 
-        (timer_.running_ ? "running" : "not running"); 
+        final ScheduledFuture<?> pending = pending_;
+        return "JavaTimer for " + milliseconds_ +
+        " milliseconds " +
+        (pending != null && !pending.isDone() ? "running" : "not running");
     }
-    private final TimerRunnable timer_;
+
+    private final JavaTimerFactory factory_;
+    private final EventLoop eventLoop_;
+    private final long milliseconds_;
+    /* Incremented by each start and stop, so that an expiry can tell if it
+     * is stale */
+    private final AtomicInteger generation_ = new AtomicInteger();
+    private volatile ScheduledFuture<?> pending_;
 }
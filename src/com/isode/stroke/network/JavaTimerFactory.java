@@ -4,24 +4,102 @@
  * See Documentation/Licenses/GPLv3.txt for more information.
  */
 /*
- * Copyright (c) 2010-2012, Isode Limited, London, England.
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
  * All rights reserved.
  */
 
 package com.isode.stroke.network;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.isode.stroke.eventloop.EventLoop;
 
+/**
+ * Creates timers which all run on one scheduler thread, shared by every
+ * JavaTimerFactory unless another scheduler is given. When a timer expires
+ * its signal is emitted from the factory's EventLoop.
+ */
 public class JavaTimerFactory implements TimerFactory {
 
+    /**
+     * Create a factory using the shared scheduler.
+     * @param eventLoop the EventLoop for timer events to be posted to
+     */
     public JavaTimerFactory(EventLoop eventLoop) {
+        this(eventLoop, getSharedScheduler());
+    }
+
+    /**
+     * @param eventLoop the EventLoop for timer events to be posted to
+     * @param scheduler scheduler for the timers, not null. Only the posting
+     * of events is done on it, so a single thread will serve a great many
+     * timers.
+     */
+    public JavaTimerFactory(EventLoop eventLoop, ScheduledExecutorService scheduler) {
         eventLoop_ = eventLoop;
+        scheduler_ = scheduler;
     }
 
     public Timer createTimer(long milliseconds) {
-        return new JavaTimer(eventLoop_, milliseconds);
+        return new JavaTimer(this, eventLoop_, milliseconds);
+    }
+
+    /**
+     * @return the scheduler used by factories created without one, which
+     * has a single daemon thread
+     */
+    public static synchronized ScheduledExecutorService getSharedScheduler() {
+        if (sharedScheduler_ == null) {
+            sharedScheduler_ = createScheduler(1);
+        }
+        return sharedScheduler_;
+    }
+
+    /**
+     * Create a scheduler suitable for passing to
+     * {@link #JavaTimerFactory(EventLoop, ScheduledExecutorService)}.
+     * @param threads number of daemon threads
+     * @return a new scheduler
+     */
+    public static ScheduledExecutorService createScheduler(int threads) {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count_ = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                thread.setName("JavaTimerFactory-" + count_.incrementAndGet());
+                return thread;
+            }
+        });
+        return scheduler;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler_;
     }
 
+    /**
+     * Called whenever a timer cancels a pending expiry. Cancelled tasks
+     * otherwise stay in the scheduler's queue until they would have run, so
+     * with many timers being restarted the queue would fill with them.
+     */
+    void timerCancelled() {
+        if (cancelledCount_.incrementAndGet() % PURGE_INTERVAL == 0
+                && scheduler_ instanceof ScheduledThreadPoolExecutor) {
+            ((ScheduledThreadPoolExecutor) scheduler_).purge();
+        }
+    }
+
+    /* Number of cancellations between purges of the scheduler's queue */
+    private static final int PURGE_INTERVAL = 1024;
+    private static ScheduledExecutorService sharedScheduler_;
+
     private final EventLoop eventLoop_;
+    private final ScheduledExecutorService scheduler_;
+    private final AtomicInteger cancelledCount_ = new AtomicInteger();
 
 }
@@ -12,75 +12,72 @@ package com.isode.stroke.network;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
-import com.isode.stroke.eventloop.Event.Callback;
 import com.isode.stroke.eventloop.EventLoop;
 
 public class PlatformDomainNameAddressQuery extends DomainNameAddressQuery {
 
     private final String host_;
     private final EventLoop eventLoop_;
+    private final ExecutorService executor_;
+    private final long timeoutMilliseconds_;
     
     public PlatformDomainNameAddressQuery(String host,EventLoop eventLoop) {
-        host_ = host;
-        eventLoop_ = eventLoop;
+        this(host, eventLoop, PlatformDomainNameResolver.getSharedExecutor(),
+                PlatformDomainNameResolver.DEFAULT_QUERY_TIMEOUT_MILLISECONDS);
     }
-    
-    private class QueryRunnable implements Runnable {
-
-        private final List<HostAddress> results_ = 
-                Collections.synchronizedList(new ArrayList<HostAddress>());
-
-        @Override
-        public void run() {
-            try {
-                InetAddress[] inetAddresses = InetAddress.getAllByName(host_);
-                for (InetAddress address : inetAddresses) {
-                    HostAddress result = new HostAddress(address);
-                    results_.add(result);
-                }
-            } catch (UnknownHostException e) {
-                emitError();
-            }
-            emitResults();
-        }
-
-        private void emitError() {
-            eventLoop_.postEvent(new Callback() {
-                
-                @Override
-                public void run() {
-                    onResult.emit(new ArrayList<HostAddress>(),new DomainNameResolveError());
-                }
-                
-            });
-        }
 
-        private void emitResults() {
-            eventLoop_.postEvent(new Callback() {
-                
-                @Override
-                public void run() {
-                    // For thread safety emit a copy of the results
-                    List<HostAddress> resultCopy = new ArrayList<HostAddress>();
-                    synchronized (results_) {
-                        resultCopy.addAll(results_);
-                    }
-                    onResult.emit(results_,null);
-                }
-                
-            });
-        }
-        
+    /**
+     * @param host name to look up
+     * @param eventLoop loop to emit the result from, not null
+     * @param executor executor to run the lookup on, not null
+     * @param timeoutMilliseconds time after which the lookup fails, or 0
+     * for no limit
+     */
+    public PlatformDomainNameAddressQuery(String host, EventLoop eventLoop,
+            ExecutorService executor, long timeoutMilliseconds) {
+        host_ = host;
+        eventLoop_ = eventLoop;
+        executor_ = executor;
+        timeoutMilliseconds_ = timeoutMilliseconds;
     }
 
     @Override
     public void run() {
-        Thread queryThread = new Thread(new QueryRunnable());
-        queryThread.setDaemon(true);
-        queryThread.run();
+        PlatformDomainNameLookup.run(executor_, eventLoop_, timeoutMilliseconds_,
+                new Callable<List<HostAddress>>() {
+                    public List<HostAddress> call() throws Exception {
+                        final List<HostAddress> results = new ArrayList<HostAddress>();
+                        try {
+                            for (InetAddress address : InetAddress.getAllByName(host_)) {
+                                results.add(new HostAddress(address));
+                            }
+                        }
+                        catch (UnknownHostException e) {
+                            /* The name has no addresses; leave "results"
+                             * empty. The platform resolver reports its own
+                             * failures the same way, and caches them as
+                             * such (see networkaddress.cache.negative.ttl) */
+                        }
+                        return results;
+                    }
+                },
+                new PlatformDomainNameLookup.Handler<List<HostAddress>>() {
+                    public void handleResult(List<HostAddress> results) {
+                        if (results == null) {
+                            onResult.emit(new ArrayList<HostAddress>(), new DomainNameResolveError());
+                        }
+                        else if (results.isEmpty()) {
+                            onResult.emit(results, new DomainNameResolveError(true));
+                        }
+                        else {
+                            onResult.emit(results, null);
+                        }
+                    }
+                });
     }
 
 }
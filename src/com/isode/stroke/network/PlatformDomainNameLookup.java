@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.isode.stroke.eventloop.Event.Callback;
+import com.isode.stroke.eventloop.EventLoop;
+
+/**
+ * Runs the blocking lookups of the platform resolver on an executor, so
+ * that the event loop never waits for DNS.
+ */
+final class PlatformDomainNameLookup {
+
+    /**
+     * Receives the outcome of a lookup, on the event loop.
+     */
+    interface Handler<T> {
+        /**
+         * @param result the lookup's result, or null if it failed, could not
+         * be started or timed out
+         */
+        void handleResult(T result);
+    }
+
+    private PlatformDomainNameLookup() {
+    }
+
+    /**
+     * Run a lookup. The handler is called exactly once.
+     * @param executor executor to run the lookup on, not null. If it
+     * rejects the lookup, the lookup fails rather than running on the
+     * caller's thread.
+     * @param eventLoop loop to call the handler from, not null
+     * @param timeoutMilliseconds time after which the lookup is treated as
+     * failed, or 0 to wait as long as it takes
+     * @param lookup the blocking lookup, not null
+     * @param handler handler for the outcome, not null
+     */
+    static <T> void run(ExecutorService executor, final EventLoop eventLoop, long timeoutMilliseconds,
+            final Callable<T> lookup, final Handler<T> handler) {
+        final AtomicBoolean finished = new AtomicBoolean();
+        final AtomicReference<ScheduledFuture<?>> timeout = new AtomicReference<ScheduledFuture<?>>();
+        final AtomicReference<Future<?>> task = new AtomicReference<Future<?>>();
+
+        class Outcome {
+            void finish(final T result) {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                final ScheduledFuture<?> pendingTimeout = timeout.get();
+                if (pendingTimeout != null) {
+                    pendingTimeout.cancel(false);
+                }
+                eventLoop.postEvent(new Callback() {
+                    public void run() {
+                        handler.handleResult(result);
+                    }
+                });
+            }
+        }
+        final Outcome outcome = new Outcome();
+
+        try {
+            task.set(executor.submit(new Runnable() {
+                public void run() {
+                    T result = null;
+                    try {
+                        result = lookup.call();
+                    }
+                    catch (Exception e) {
+                        /* result remains null */
+                    }
+                    outcome.finish(result);
+                }
+            }));
+        }
+        catch (RejectedExecutionException e) {
+            outcome.finish(null);
+            return;
+        }
+        if (timeoutMilliseconds > 0 && !finished.get()) {
+            timeout.set(JavaTimerFactory.getSharedScheduler().schedule(new Runnable() {
+                public void run() {
+                    outcome.finish(null);
+                    /* Frees the thread if the lookup is interruptible, and
+                     * stops it starting if it is still queued */
+                    task.get().cancel(true);
+                }
+            }, timeoutMilliseconds, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Create an executor for lookups. Its threads are daemon threads, which
+     * exit when idle.
+     * @param threads most lookups to run at once
+     * @param queueCapacity most lookups to hold waiting for a thread; any
+     * more fail at once
+     * @return a new executor
+     */
+    static ExecutorService createExecutor(int threads, int queueCapacity) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count_ = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        thread.setName("PlatformDomainNameResolver-" + count_.incrementAndGet());
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
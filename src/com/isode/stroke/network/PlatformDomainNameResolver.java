@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010-2013, Isode Limited, London, England.
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
  * All rights reserved.
  */
 /*
@@ -8,57 +8,48 @@
  */
 package com.isode.stroke.network;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
-import com.isode.stroke.eventloop.Event.Callback;
 import com.isode.stroke.eventloop.EventLoop;
-import com.isode.stroke.eventloop.EventOwner;
 import com.isode.stroke.idn.IDNConverter;
-import com.isode.stroke.idn.ICUConverter;
 
+/**
+ * Resolves names using the JVM's resolver for addresses and dnsjava for
+ * SRV records. The lookups block, so they are run on an executor, which by
+ * default is shared by all resolvers; results are posted to the event
+ * loop.
+ */
 public class PlatformDomainNameResolver extends DomainNameResolver {
 
-    private class AddressQuery extends DomainNameAddressQuery implements EventOwner {
-
-        private class AddressQueryThread extends Thread {
-            @Override
-            public void run() {
-                final Collection<HostAddress> results = new ArrayList<HostAddress>();
-                try {
-                    for (InetAddress result : InetAddress.getAllByName(hostname)) {
-                        results.add(new HostAddress(result));
-                    }
-                } catch (UnknownHostException ex) {
-                    /* results remains empty */
-                }
-                eventLoop.postEvent(new Callback() {
-                    public void run() {
-                        onResult.emit(results, results.isEmpty() ? new DomainNameResolveError() : null);
-                    }
-                });
-            }
-        }
-
-        AddressQuery(String host, EventLoop eventLoop) {
-            hostname = host;
-            this.eventLoop = eventLoop;
-        }
+    /** Default time after which a lookup is treated as failed */
+    public static final long DEFAULT_QUERY_TIMEOUT_MILLISECONDS = 20000;
 
-        public void run() {
-            AddressQueryThread thread = new AddressQueryThread();
-            thread.setDaemon(true);
-            thread.start();
-        }
-        final String hostname;
-        final EventLoop eventLoop;
+    public PlatformDomainNameResolver(IDNConverter idnConverter, EventLoop eventLoop) {
+        this(idnConverter, eventLoop, getSharedExecutor());
     }
 
-    public PlatformDomainNameResolver(IDNConverter idnConverter, EventLoop eventLoop) {
+    /**
+     * @param idnConverter converter for internationalised names, not null
+     * @param eventLoop loop to post results to, not null
+     * @param executor executor to run lookups on, not null. See
+     * {@link #createExecutor(int, int)}.
+     */
+    public PlatformDomainNameResolver(IDNConverter idnConverter, EventLoop eventLoop, ExecutorService executor) {
         this.eventLoop_ = eventLoop;
         this.idnConverter = idnConverter;
+        this.executor_ = executor;
+    }
+
+    /**
+     * @param milliseconds time after which a lookup is treated as failed, or
+     * 0 to wait as long as the platform does
+     */
+    public void setQueryTimeout(long milliseconds) {
+        queryTimeout_ = milliseconds;
+    }
+
+    public long getQueryTimeout() {
+        return queryTimeout_;
     }
 
     @Override
@@ -68,13 +59,42 @@ public class PlatformDomainNameResolver extends DomainNameResolver {
         if (encodedDomain != null) {
             result = serviceLookupPrefix + encodedDomain;
         }        
-        return new PlatformDomainNameServiceQuery(result, eventLoop_);
+        return new PlatformDomainNameServiceQuery(result, eventLoop_, executor_, queryTimeout_);
     }
 
     @Override
     public DomainNameAddressQuery createAddressQuery(String name) {
-        return new AddressQuery(idnConverter.getIDNAEncoded(name), eventLoop_);
+        return new PlatformDomainNameAddressQuery(idnConverter.getIDNAEncoded(name), eventLoop_, executor_, queryTimeout_);
+    }
+
+    /**
+     * @return the executor used by resolvers created without one, which
+     * runs up to 8 lookups at once
+     */
+    public static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor_ == null) {
+            sharedExecutor_ = createExecutor(SHARED_EXECUTOR_THREADS, SHARED_EXECUTOR_QUEUE_CAPACITY);
+        }
+        return sharedExecutor_;
     }
+
+    /**
+     * Create an executor for lookups, with daemon threads.
+     * @param threads most lookups to run at once
+     * @param queueCapacity most lookups to hold waiting for a thread; any
+     * more fail at once rather than blocking the caller
+     * @return a new executor
+     */
+    public static ExecutorService createExecutor(int threads, int queueCapacity) {
+        return PlatformDomainNameLookup.createExecutor(threads, queueCapacity);
+    }
+
+    private static final int SHARED_EXECUTOR_THREADS = 8;
+    private static final int SHARED_EXECUTOR_QUEUE_CAPACITY = 4096;
+    private static ExecutorService sharedExecutor_;
+
     private final EventLoop eventLoop_;
     private IDNConverter idnConverter;
+    private final ExecutorService executor_;
+    private long queryTimeout_ = DEFAULT_QUERY_TIMEOUT_MILLISECONDS;
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010-2013, Isode Limited, London, England.
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
  * All rights reserved.
  */
 /*
@@ -11,6 +11,8 @@
 package com.isode.stroke.network;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.xbill.DNS.Lookup;
 import org.xbill.DNS.Record;
@@ -18,60 +20,86 @@ import org.xbill.DNS.SRVRecord;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
-import com.isode.stroke.eventloop.Event.Callback;
 import com.isode.stroke.eventloop.EventLoop;
 import com.isode.stroke.network.DomainNameServiceQuery;
 
 public class PlatformDomainNameServiceQuery extends DomainNameServiceQuery {
     private final String service;
     private final EventLoop eventLoop;
+    private final ExecutorService executor;
+    private final long timeoutMilliseconds;
 
     public PlatformDomainNameServiceQuery(final String service, final EventLoop eventLoop) {
+        this(service, eventLoop, PlatformDomainNameResolver.getSharedExecutor(),
+                PlatformDomainNameResolver.DEFAULT_QUERY_TIMEOUT_MILLISECONDS);
+    }
+
+    /**
+     * @param service SRV name to look up
+     * @param eventLoop loop to emit the result from, not null
+     * @param executor executor to run the lookup on, not null
+     * @param timeoutMilliseconds time after which the lookup fails, giving
+     * no results, or 0 for no limit
+     */
+    public PlatformDomainNameServiceQuery(final String service, final EventLoop eventLoop,
+            final ExecutorService executor, final long timeoutMilliseconds) {
         this.service = service;
         this.eventLoop = eventLoop;
+        this.executor = executor;
+        this.timeoutMilliseconds = timeoutMilliseconds;
     }
 
-    private class QueryThread extends Thread {
-        @Override
-        public void run() {
-            final Collection<Result> results = new ArrayList<Result>();
-            Lookup request;
-            try {
-                request = new Lookup(service, Type.SRV);
-                final Record[] records = request.run();
-                if (records != null) {
-                    for (final Record record : records) {
-                        /* It's only anticipated that SRVRecords will be
-                         * returned, but check first
-                         */
-                        if (record instanceof SRVRecord) {
-                            final SRVRecord srv = (SRVRecord) record;
-                            final Result result = new Result(srv.getTarget()
-                                .toString(), srv.getPort(), srv.getPriority(),
-                                srv.getWeight());
-                            results.add(result);
-                        }
+    /**
+     * @return the records found, empty if the name does not exist or has no
+     * SRV records, or null if the lookup failed
+     */
+    private Collection<Result> lookup() {
+        final Collection<Result> results = new ArrayList<Result>();
+        Lookup request;
+        try {
+            request = new Lookup(service, Type.SRV);
+            final Record[] records = request.run();
+            if (records != null) {
+                for (final Record record : records) {
+                    /* It's only anticipated that SRVRecords will be
+                     * returned, but check first
+                     */
+                    if (record instanceof SRVRecord) {
+                        final SRVRecord srv = (SRVRecord) record;
+                        final Result result = new Result(srv.getTarget()
+                            .toString(), srv.getPort(), srv.getPriority(),
+                            srv.getWeight(), srv.getTTL());
+                        results.add(result);
                     }
                 }
-            } catch (final TextParseException e) {
-                /* Lookup failed because "service" was not a valid DNS name;
-                 * leave "results" empty 
-                 */
             }
-
-            eventLoop.postEvent(new Callback() {
-                @Override
-                public void run() {
-                    onResult.emit(results);
-                }
-            });
+            else if (request.getResult() != Lookup.HOST_NOT_FOUND
+                    && request.getResult() != Lookup.TYPE_NOT_FOUND) {
+                /* No answer from the name servers, rather than an answer
+                 * that there are no records */
+                return null;
+            }
+        } catch (final TextParseException e) {
+            /* Lookup failed because "service" was not a valid DNS name;
+             * leave "results" empty 
+             */
         }
+        return results;
     }
 
     @Override
     public void run() {
-        final QueryThread thread = new QueryThread();
-        thread.setDaemon(true);
-        thread.start();
+        PlatformDomainNameLookup.run(executor, eventLoop, timeoutMilliseconds,
+                new Callable<Collection<Result>>() {
+                    public Collection<Result> call() {
+                        return lookup();
+                    }
+                },
+                new PlatformDomainNameLookup.Handler<Collection<Result>>() {
+                    public void handleResult(Collection<Result> results) {
+                        setNotFound(results != null && results.isEmpty());
+                        onResult.emit(results != null ? results : new ArrayList<Result>());
+                    }
+                });
     }
 }
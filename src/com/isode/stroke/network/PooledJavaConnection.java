@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.eventloop.Event.Callback;
+import com.isode.stroke.eventloop.EventLoop;
+import com.isode.stroke.eventloop.EventOwner;
+
+/**
+ * A {@link Connection} which, unlike {@link JavaConnection}, does not have a
+ * thread of its own. Connecting, reading and writing are all driven by one of
+ * the threads of a shared {@link JavaSelectorPool}, so that a large number of
+ * connections can be handled by a small number of threads.
+ *
+ * <p>Signals are emitted from the {@link EventLoop} in the same way as for
+ * {@link JavaConnection}.
+ */
+public class PooledJavaConnection extends Connection implements EventOwner, JavaSelectorPool.SelectionHandler {
+
+    private PooledJavaConnection(EventLoop eventLoop, JavaSelectorPool selectorPool, boolean synchroniseReads) {
+        eventLoop_ = eventLoop;
+        selectorThread_ = selectorPool.nextSelectorThread();
+        synchroniseReads_ = synchroniseReads;
+    }
+
+    /**
+     * Creates a new PooledJavaConnection
+     * @param eventLoop the EventLoop for read and write events to be posted to
+     * @param selectorPool the pool whose threads will service the connection
+     * @return a new PooledJavaConnection
+     */
+    public static PooledJavaConnection create(EventLoop eventLoop, JavaSelectorPool selectorPool) {
+        return new PooledJavaConnection(eventLoop, selectorPool, false);
+    }
+
+    /**
+     * Creates a new PooledJavaConnection
+     * @param eventLoop the EventLoop for read and write events to be posted to
+     * @param selectorPool the pool whose threads will service the connection
+     * @param synchroniseReads if true then data will not be read from the connection
+     * until the previous read has been processed by the EventLoop
+     * @return a new PooledJavaConnection
+     */
+    public static PooledJavaConnection create(EventLoop eventLoop, JavaSelectorPool selectorPool, boolean synchroniseReads) {
+        return new PooledJavaConnection(eventLoop, selectorPool, synchroniseReads);
+    }
+
+    /**
+     * Not supported: a PooledJavaConnection is only used for outgoing
+     * client connections.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void listen() {
+        throw new UnsupportedOperationException("PooledJavaConnection does not support listen()");
+    }
+
+    @Override
+    public void connect(final HostAddressPort address) {
+        address_ = address;
+        selectorThread_.execute(new Runnable() {
+            public void run() {
+                doConnect();
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        disconnecting_ = true;
+        selectorThread_.execute(new Runnable() {
+            public void run() {
+                if (writeBuffer_.isEmpty()) {
+                    close(null);
+                }
+                /* Otherwise the channel is closed once the write buffer drains */
+            }
+        });
+    }
+
+    @Override
+    public void write(SafeByteArray data) {
+        writeBuffer_.add(ByteBuffer.wrap(data.getData()));
+        selectorThread_.execute(new Runnable() {
+            public void run() {
+                setInterestOp(SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    @Override
+    public HostAddressPort getLocalAddress() {
+        final SocketChannel socketChannel = socketChannel_;
+        if (socketChannel == null) {
+            return null;
+        }
+        Socket socket = socketChannel.socket();
+        if (socket == null) {
+            return null;
+        }
+        return new HostAddressPort(new HostAddress(socket.getLocalAddress()), socket.getLocalPort());
+    }
+
+    @Override
+    public HostAddressPort getRemoteAddress() {
+        return address_;
+    }
+
+    /**
+     * Called on the selector thread.
+     */
+    public void handleSelection(SelectionKey key) {
+        final int ops = key.readyOps() & key.interestOps();
+        if ((ops & SelectionKey.OP_CONNECT) != 0) {
+            finishConnect();
+            return;
+        }
+        if ((ops & SelectionKey.OP_WRITE) != 0) {
+            doWrite();
+        }
+        if ((ops & SelectionKey.OP_READ) != 0 && !closed_) {
+            doRead();
+        }
+    }
+
+    /**
+     * Called on the selector thread.
+     */
+    private void doConnect() {
+        try {
+            socketChannel_ = SocketChannel.open();
+            socketChannel_.configureBlocking(false);
+            final boolean connected = socketChannel_.connect(
+                    new InetSocketAddress(address_.getAddress().getInetAddress(), address_.getPort()));
+            selectionKey_ = socketChannel_.register(selectorThread_.getSelector(),
+                    connected ? initialOps() : SelectionKey.OP_CONNECT, this);
+            if (connected) {
+                handleConnected(false);
+            }
+        } catch (IOException e) { // includes ClosedChannelException
+            closeChannel();
+            handleConnected(true);
+        }
+    }
+
+    /**
+     * Called on the selector thread.
+     */
+    private void finishConnect() {
+        try {
+            socketChannel_.finishConnect();
+            selectionKey_.interestOps(initialOps());
+        } catch (IOException e) {
+            closeChannel();
+            handleConnected(true);
+            return;
+        }
+        handleConnected(false);
+        if (disconnecting_ && writeBuffer_.isEmpty()) {
+            close(null);
+        }
+    }
+
+    private int initialOps() {
+        int ops = SelectionKey.OP_READ;
+        if (!writeBuffer_.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE; // could have been queued before connecting finished
+        }
+        return ops;
+    }
+
+    /**
+     * Called on the selector thread. Writes as much of the write buffer as
+     * the socket will take.
+     */
+    private void doWrite() {
+        boolean somethingWasWritten = false;
+        try {
+            ByteBuffer buffer;
+            while ((buffer = writeBuffer_.peek()) != null) {
+                /*
+                 * Because the SocketChannel is non-blocking, we have to
+                 * be prepared to cope with the write operation not
+                 * consuming all (or any!) of the data
+                 */
+                if (socketChannel_.write(buffer) > 0) {
+                    somethingWasWritten = true;
+                }
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                writeBuffer_.poll();
+            }
+        } catch (IOException e) {
+            close(Error.WriteError);
+            return;
+        }
+        if (somethingWasWritten) {
+            eventLoop_.postEvent(new Callback() {
+                public void run() {
+                    onDataWritten.emit();
+                }
+            });
+        }
+        if (writeBuffer_.isEmpty()) {
+            clearInterestOp(SelectionKey.OP_WRITE);
+            if (disconnecting_) {
+                close(null);
+            }
+        }
+    }
+
+    /**
+     * Called on the selector thread. Reads everything currently available on
+     * the socket, using the selector thread's shared read buffer.
+     */
+    private void doRead() {
+        final ByteBuffer byteBuffer = selectorThread_.getReadBuffer();
+        final SafeByteArray data = new SafeByteArray();
+        boolean closed = false;
+        try {
+            int count;
+            byteBuffer.clear();
+            while ((count = socketChannel_.read(byteBuffer)) > 0) {
+                byteBuffer.flip();
+                data.append(byteBuffer);
+                byteBuffer.clear();
+            }
+            /* socketChannel input has reached "end-of-stream", which
+             * we regard as meaning that the socket has been closed
+             */
+            closed = (count == -1);
+        } catch (IOException e) {
+            closed = true;
+        }
+        if (!data.isEmpty()) {
+            handleDataRead(data);
+        }
+        if (closed) {
+            close(Error.ReadError);
+        }
+    }
+
+    /**
+     * Called on the selector thread.
+     */
+    private void setInterestOp(int op) {
+        final SelectionKey key = selectionKey_;
+        if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            try {
+                key.interestOps(key.interestOps() | op);
+            } catch (CancelledKeyException e) {
+                // channel has been closed
+            }
+        }
+    }
+
+    /**
+     * Called on the selector thread.
+     */
+    private void clearInterestOp(int op) {
+        final SelectionKey key = selectionKey_;
+        if (key != null && key.isValid()) {
+            try {
+                key.interestOps(key.interestOps() & ~op);
+            } catch (CancelledKeyException e) {
+                // channel has been closed
+            }
+        }
+    }
+
+    /**
+     * Called on the selector thread. Closes the channel and emits
+     * onDisconnected if this has not already been done.
+     * @param error error to report, or null for a requested disconnect
+     */
+    private void close(Error error) {
+        if (closed_) {
+            return;
+        }
+        closeChannel();
+        writeBuffer_.clear();
+        handleDisconnected(error);
+    }
+
+    private void closeChannel() {
+        closed_ = true;
+        if (selectionKey_ != null) {
+            selectionKey_.cancel();
+        }
+        if (socketChannel_ != null) {
+            try {
+                socketChannel_.close();
+            } catch (IOException e) {
+                /* Do we need to return an error if we're already trying to close? */
+            }
+        }
+    }
+
+    private void handleConnected(final boolean error) {
+        eventLoop_.postEvent(new Callback() {
+            public void run() {
+                onConnectFinished.emit(Boolean.valueOf(error));
+            }
+        });
+    }
+
+    private void handleDisconnected(final Error error) {
+        eventLoop_.postEvent(new Callback() {
+            public void run() {
+                onDisconnected.emit(error);
+            }
+        });
+    }
+
+    private void handleDataRead(final SafeByteArray data) {
+        if (synchroniseReads_) {
+            clearInterestOp(SelectionKey.OP_READ);
+        }
+        eventLoop_.postEvent(new Callback() {
+            public void run() {
+                onDataRead.emit(data);
+                if (synchroniseReads_) {
+                    selectorThread_.execute(new Runnable() {
+                        public void run() {
+                            setInterestOp(SelectionKey.OP_READ);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "PooledJavaConnection " +
+        (socketChannel_ == null ? "with no socket configured" : "for " + getLocalAddress()) +
+        (disconnecting_ ? " (disconnecting)" : "");
+    }
+
+    private final EventLoop eventLoop_;
+    private final JavaSelectorPool.SelectorThread selectorThread_;
+    private final boolean synchroniseReads_;
+    private final Queue<ByteBuffer> writeBuffer_ = new ConcurrentLinkedQueue<ByteBuffer>();
+    private volatile HostAddressPort address_;
+    private volatile boolean disconnecting_ = false;
+    private volatile SocketChannel socketChannel_;
+    /* Only used on the selector thread */
+    private SelectionKey selectionKey_;
+    private boolean closed_ = false;
+}
@@ -59,6 +59,7 @@ public class StaticDomainNameResolver extends DomainNameResolver {
 		}
 
 		public void emitOnResult(Vector<DomainNameServiceQuery.Result> results) {
+			setNotFound(results.isEmpty());
 			onResult.emit(results);
 		}
 
@@ -93,7 +94,7 @@ public class StaticDomainNameResolver extends DomainNameResolver {
 				eventLoop.postEvent(new Event.Callback() {
 					@Override					
 					public void run() {
-						emitOnResult(new Vector<HostAddress>(), new DomainNameResolveError());
+						emitOnResult(new Vector<HostAddress>(), new DomainNameResolveError(true));
 					}
 				});
 			}
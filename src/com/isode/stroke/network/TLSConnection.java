@@ -141,7 +141,13 @@ public class TLSConnection extends Connection {
 			onConnectFinished.emit(true);
 		}
 		else {
-			context.connect();
+			HostAddressPort peer = connection.getRemoteAddress();
+			if (peer != null && peer.isValid()) {
+				context.connect(peer.getAddress().toString(), peer.getPort());
+			}
+			else {
+				context.connect();
+			}
 		}
 	}
 
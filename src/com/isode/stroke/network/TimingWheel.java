@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.network;
+
+import com.isode.stroke.signals.Slot;
+
+/**
+ * A hashed timing wheel, for when a large number of timeouts are needed
+ * which are almost always cancelled before they expire (such as one per
+ * outstanding request). All the timeouts share a single {@link Timer},
+ * which only runs while at least one timeout is pending. Scheduling and
+ * cancelling a timeout take constant time.
+ *
+ * <p>Timeouts expire on a tick of the wheel, so may fire up to one tick
+ * later than asked for. Like the rest of Stroke, this class is meant to be
+ * used from the event loop thread only.
+ */
+public class TimingWheel {
+
+    /**
+     * A scheduled timeout.
+     */
+    public final class Timeout {
+        private final Slot action_;
+        private int remainingRounds_;
+        private int slot_ = -1;
+        private Timeout previous_;
+        private Timeout next_;
+
+        private Timeout(Slot action) {
+            action_ = action;
+        }
+
+        /**
+         * Stop the timeout from firing. Does nothing if it has already fired
+         * or been cancelled.
+         */
+        public void cancel() {
+            if (slot_ >= 0) {
+                unlink(this);
+            }
+        }
+
+        /**
+         * @return true if the timeout has neither fired nor been cancelled
+         */
+        public boolean isPending() {
+            return slot_ >= 0;
+        }
+    }
+
+    /**
+     * @param timerFactory factory for the wheel's timer, not null
+     * @param tickMilliseconds time between ticks, which is the precision of
+     * timeouts, must be positive
+     * @param wheelSize number of slots; timeouts of up to wheelSize ticks are
+     * visited only once, longer ones once per revolution. Must be positive.
+     */
+    public TimingWheel(TimerFactory timerFactory, long tickMilliseconds, int wheelSize) {
+        if (tickMilliseconds <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMilliseconds and wheelSize must be positive");
+        }
+        tickMilliseconds_ = tickMilliseconds;
+        slots_ = new Timeout[wheelSize];
+        timer_ = timerFactory.createTimer(tickMilliseconds);
+        timer_.onTick.connect(new Slot() {
+            public void call() {
+                handleTick();
+            }
+        });
+    }
+
+    /**
+     * Schedule a timeout.
+     * @param delayMilliseconds time until the action is called; a value
+     * below one tick is rounded up to one tick
+     * @param action called when the timeout expires, not null
+     * @return the timeout, which may be used to cancel it
+     */
+    public Timeout schedule(long delayMilliseconds, Slot action) {
+        final long ticks = Math.max(1, (delayMilliseconds + tickMilliseconds_ - 1) / tickMilliseconds_);
+        final Timeout timeout = new Timeout(action);
+        timeout.remainingRounds_ = (int) Math.min(Integer.MAX_VALUE, (ticks - 1) / slots_.length);
+        link(timeout, (int) ((cursor_ + ticks) % slots_.length));
+        if (!timerRunning_) {
+            timerRunning_ = true;
+            timer_.start();
+        }
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts that have neither fired nor been cancelled
+     */
+    public int getPendingCount() {
+        return pendingCount_;
+    }
+
+    /**
+     * @return time between ticks
+     */
+    public long getTickMilliseconds() {
+        return tickMilliseconds_;
+    }
+
+    private void handleTick() {
+        timerRunning_ = false;
+        cursor_ = (cursor_ + 1) % slots_.length;
+        /* Unlink everything that has expired before calling any actions, as
+         * they may well schedule or cancel other timeouts */
+        Timeout expired = null;
+        Timeout timeout = slots_[cursor_];
+        while (timeout != null) {
+            final Timeout next = timeout.next_;
+            if (timeout.remainingRounds_ == 0) {
+                unlink(timeout);
+                timeout.next_ = expired;
+                expired = timeout;
+            }
+            else {
+                timeout.remainingRounds_--;
+            }
+            timeout = next;
+        }
+        if (pendingCount_ > 0 && !timerRunning_) {
+            timerRunning_ = true;
+            timer_.start();
+        }
+        while (expired != null) {
+            final Timeout next = expired.next_;
+            expired.next_ = null;
+            expired.action_.call();
+            expired = next;
+        }
+    }
+
+    private void link(Timeout timeout, int slot) {
+        timeout.slot_ = slot;
+        timeout.previous_ = null;
+        timeout.next_ = slots_[slot];
+        if (slots_[slot] != null) {
+            slots_[slot].previous_ = timeout;
+        }
+        slots_[slot] = timeout;
+        pendingCount_++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous_ != null) {
+            timeout.previous_.next_ = timeout.next_;
+        }
+        else {
+            slots_[timeout.slot_] = timeout.next_;
+        }
+        if (timeout.next_ != null) {
+            timeout.next_.previous_ = timeout.previous_;
+        }
+        timeout.previous_ = null;
+        timeout.next_ = null;
+        timeout.slot_ = -1;
+        pendingCount_--;
+    }
+
+    private final long tickMilliseconds_;
+    private final Timeout[] slots_;
+    private final Timer timer_;
+    private int cursor_ = 0;
+    private int pendingCount_ = 0;
+    private boolean timerRunning_ = false;
+}
@@ -32,16 +32,26 @@ class AaltoXMLParser extends XMLParser {
      */
     @Override
     public boolean parse(String data) {
-        if (data.isEmpty()) {
+        final byte[] xmlBytes = new ByteArray(data).getData();
+        return parse(xmlBytes, 0, xmlBytes.length);
+    }
+
+    /**
+     * Feed the bytes straight to the parser, without decoding them first.
+     * Aalto keeps hold of any partial UTF-8 sequence at the end of the chunk
+     * until the rest of it arrives.
+     */
+    @Override
+    public boolean parse(byte[] data, int offset, int length) {
+        if (length == 0) {
             return false;
         }
         final AsyncInputFeeder inputFeeder = xmlReader_.getInputFeeder();
-        final byte[] xmlBytes = new ByteArray(data).getData();
         int type = 0;
         boolean error = false;
 
         try {
-            inputFeeder.feedInput(xmlBytes, 0, xmlBytes.length);
+            inputFeeder.feedInput(data, offset, length);
         } catch (XMLStreamException ex) {
             error = true;
             /* This is an unexpected error */
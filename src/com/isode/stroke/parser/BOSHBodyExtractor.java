@@ -9,8 +9,6 @@
  */
 package com.isode.stroke.parser;
 
-import java.util.Arrays;
-
 import com.isode.stroke.base.ByteArray;
 
 public class BOSHBodyExtractor {
@@ -106,14 +104,13 @@ public class BOSHBodyExtractor {
         body = new BOSHBody();
 
         if (!endElementSeen) {
-            byte[] rawBodyContent =
-                    Arrays.copyOfRange(rawData, i, j+1);
-            body.content = (new ByteArray(rawBodyContent)).toString();
+            body.content = (new ByteArray(rawData, i, j+1-i)).toString();
         }
 
         BOSHBodyParserClient parserClient = new BOSHBodyParserClient(this);
         XMLParser parser = parserFactory.createParser(parserClient);
-        String stringToParse = data.toString().substring(0, i);
+        /* Only the start tag is needed, so don't decode the content */
+        String stringToParse = (new ByteArray(rawData, 0, i)).toString();
         if(!parser.parse(stringToParse)) {
             body = null;
         }
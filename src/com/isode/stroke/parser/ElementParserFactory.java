@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+/**
+ * Create a parser for a top-level stream element, such as a stanza.
+ */
+public interface ElementParserFactory {
+    /**
+     * @param payloadParserFactories factories for any payloads the element
+     * may contain, not null
+     * @return a new parser, never null
+     */
+    ElementParser createElementParser(PayloadParserFactoryCollection payloadParserFactories);
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the name and namespace of top-level stream elements to the factories
+ * for their parsers. A collection may be shared by many {@link XMPPParser}s,
+ * and lookups do not lock.
+ *
+ * <p>A factory registered with an empty namespace handles the element in any
+ * namespace for which no other factory has been registered.
+ */
+public class ElementParserFactoryCollection {
+
+    private final Object lock_ = new Object();
+    /* Never modified once published; changes replace the whole map */
+    private volatile Map<String, Map<String, ElementParserFactory>> factories_ =
+            new HashMap<String, Map<String, ElementParserFactory>>();
+
+    /**
+     * Register a factory, replacing any already registered for the same
+     * element and namespace.
+     * @param element element name, not null
+     * @param ns namespace, or "" for any namespace, not null
+     * @param factory factory to use, not null
+     */
+    public void addFactory(String element, String ns, ElementParserFactory factory) {
+        synchronized (lock_) {
+            final Map<String, Map<String, ElementParserFactory>> factories = copyFactories();
+            Map<String, ElementParserFactory> byNamespace = factories.get(element);
+            if (byNamespace == null) {
+                byNamespace = new HashMap<String, ElementParserFactory>();
+                factories.put(element, byNamespace);
+            }
+            byNamespace.put(ns, factory);
+            factories_ = factories;
+        }
+    }
+
+    /**
+     * Remove the factory registered for an element and namespace, if any.
+     * @param element element name, not null
+     * @param ns namespace as given to {@link #addFactory}, not null
+     */
+    public void removeFactory(String element, String ns) {
+        synchronized (lock_) {
+            final Map<String, Map<String, ElementParserFactory>> factories = copyFactories();
+            final Map<String, ElementParserFactory> byNamespace = factories.get(element);
+            if (byNamespace != null) {
+                byNamespace.remove(ns);
+                if (byNamespace.isEmpty()) {
+                    factories.remove(element);
+                }
+            }
+            factories_ = factories;
+        }
+    }
+
+    /**
+     * @param element element name
+     * @param ns element namespace
+     * @return the factory for the element, or null if there is none
+     */
+    public ElementParserFactory getElementParserFactory(String element, String ns) {
+        final Map<String, ElementParserFactory> byNamespace = factories_.get(element);
+        if (byNamespace == null) {
+            return null;
+        }
+        final ElementParserFactory factory = byNamespace.get(ns);
+        return factory != null ? factory : byNamespace.get("");
+    }
+
+    private Map<String, Map<String, ElementParserFactory>> copyFactories() {
+        final Map<String, Map<String, ElementParserFactory>> copy = new HashMap<String, Map<String, ElementParserFactory>>();
+        for (Map.Entry<String, Map<String, ElementParserFactory>> entry : factories_.entrySet()) {
+            copy.put(entry.getKey(), new HashMap<String, ElementParserFactory>(entry.getValue()));
+        }
+        return copy;
+    }
+}
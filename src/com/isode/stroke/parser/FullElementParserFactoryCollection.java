@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+/**
+ * Parser factories for all of the top-level elements of client, server and
+ * component streams.
+ */
+public class FullElementParserFactoryCollection extends ElementParserFactoryCollection {
+
+    private static final String STREAMS_NS = "http://etherx.jabber.org/streams";
+    private static final String SASL_NS = "urn:ietf:params:xml:ns:xmpp-sasl";
+    private static final String SM_NS = "urn:xmpp:sm:2";
+
+    private static final FullElementParserFactoryCollection defaultCollection_ =
+            new FullElementParserFactoryCollection();
+
+    /**
+     * Get the collection shared by parsers that are not given one of their
+     * own. It must not be changed; create a new collection to add or
+     * remove factories.
+     * @return the shared collection, not null
+     */
+    public static FullElementParserFactoryCollection getDefault() {
+        return defaultCollection_;
+    }
+
+    public FullElementParserFactoryCollection() {
+        addFactory("presence", "", new ElementParserFactory() {
+            public ElementParser createElementParser(PayloadParserFactoryCollection payloadParserFactories) {
+                return new PresenceParser(payloadParserFactories);
+            }
+        });
+        addFactory("iq", "", new ElementParserFactory() {
+            public ElementParser createElementParser(PayloadParserFactoryCollection payloadParserFactories) {
+                return new IQParser(payloadParserFactories);
+            }
+        });
+        addFactory("message", "", new ElementParserFactory() {
+            public ElementParser createElementParser(PayloadParserFactoryCollection payloadParserFactories) {
+                return new MessageParser(payloadParserFactories);
+            }
+        });
+        addFactory("features", STREAMS_NS, new GenericElementParserFactory(StreamFeaturesParser.class));
+        addFactory("error", STREAMS_NS, new GenericElementParserFactory(StreamErrorParser.class));
+        addFactory("auth", "", new GenericElementParserFactory(AuthRequestParser.class));
+        addFactory("success", "", new GenericElementParserFactory(AuthSuccessParser.class));
+        addFactory("failure", SASL_NS, new GenericElementParserFactory(AuthFailureParser.class));
+        addFactory("challenge", SASL_NS, new GenericElementParserFactory(AuthChallengeParser.class));
+        addFactory("response", SASL_NS, new GenericElementParserFactory(AuthResponseParser.class));
+        addFactory("starttls", "", new GenericElementParserFactory(StartTLSParser.class));
+        addFactory("failure", "urn:ietf:params:xml:ns:xmpp-tls", new GenericElementParserFactory(StartTLSFailureParser.class));
+        addFactory("compress", "", new GenericElementParserFactory(CompressParser.class));
+        addFactory("compressed", "", new GenericElementParserFactory(CompressedParser.class));
+        addFactory("failure", "http://jabber.org/protocol/compress", new GenericElementParserFactory(CompressFailureParser.class));
+        addFactory("proceed", "", new GenericElementParserFactory(TLSProceedParser.class));
+        addFactory("enable", SM_NS, new GenericElementParserFactory(EnableStreamManagementParser.class));
+        addFactory("enabled", SM_NS, new GenericElementParserFactory(StreamManagementEnabledParser.class));
+        addFactory("failed", SM_NS, new GenericElementParserFactory(StreamManagementFailedParser.class));
+        addFactory("resume", SM_NS, new GenericElementParserFactory(StreamResumeParser.class));
+        addFactory("resumed", SM_NS, new GenericElementParserFactory(StreamResumedParser.class));
+        addFactory("a", SM_NS, new GenericElementParserFactory(StanzaAckParser.class));
+        addFactory("r", SM_NS, new GenericElementParserFactory(StanzaAckRequestParser.class));
+        addFactory("handshake", "", new GenericElementParserFactory(ComponentHandshakeParser.class));
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+/**
+ * Creates parsers of a given class, which must have a public no-argument
+ * constructor.
+ */
+public class GenericElementParserFactory implements ElementParserFactory {
+
+    private final Class<? extends ElementParser> parserClass_;
+
+    public GenericElementParserFactory(final Class<? extends ElementParser> parserClass) {
+        parserClass_ = parserClass;
+    }
+
+    public ElementParser createElementParser(PayloadParserFactoryCollection payloadParserFactories) {
+        try {
+            return parserClass_.newInstance();
+        } catch (InstantiationException ex) {
+            /* Fatal */
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            /* Fatal */
+            throw new RuntimeException(ex);
+        }
+    }
+}
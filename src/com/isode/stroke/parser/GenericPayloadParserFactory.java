@@ -4,7 +4,7 @@
  */
 package com.isode.stroke.parser;
 
-public class GenericPayloadParserFactory<T extends PayloadParser> implements PayloadParserFactory {
+public class GenericPayloadParserFactory<T extends PayloadParser> implements KeyedPayloadParserFactory {
 
     private final String tag_;
     private final String xmlns_;
@@ -24,6 +24,14 @@ public class GenericPayloadParserFactory<T extends PayloadParser> implements Pay
         return (tag_.isEmpty() ? true : tag_.equals(element)) && (xmlns_.isEmpty() ? true : xmlns_.equals(ns));
     }
 
+    public String getElement() {
+        return tag_;
+    }
+
+    public String getNamespace() {
+        return xmlns_;
+    }
+
     public final PayloadParser createPayloadParser() {
         try {
             return (PayloadParser) payloadClass_.newInstance();
@@ -11,7 +11,7 @@ package com.isode.stroke.parser;
 
 import java.lang.reflect.InvocationTargetException;
 
-public class GenericPayloadParserFactory2<T extends PayloadParser> implements PayloadParserFactory {
+public class GenericPayloadParserFactory2<T extends PayloadParser> implements KeyedPayloadParserFactory {
     
     /**
      * Construct a parser factory that can parse the given top-level tag in the given namespace.
@@ -24,7 +24,15 @@ public class GenericPayloadParserFactory2<T extends PayloadParser> implements Pa
     }
     
     public boolean canParse(String element, String ns, AttributeMap attributes) {
-        return (tag_.isEmpty() ? true : element == tag_) && (xmlns_.isEmpty() ? true : xmlns_ == ns);
+        return (tag_.isEmpty() ? true : tag_.equals(element)) && (xmlns_.isEmpty() ? true : xmlns_.equals(ns));
+    }
+
+    public String getElement() {
+        return tag_;
+    }
+
+    public String getNamespace() {
+        return xmlns_;
     }
     
     public PayloadParser createPayloadParser() {
@@ -13,7 +13,7 @@ import com.isode.stroke.elements.Element;
 import com.isode.stroke.elements.Stanza;
 
 public class GenericStanzaParser<T extends Stanza> extends StanzaParser {
-    private final T stanza_;
+    private T stanza_;
     public GenericStanzaParser(PayloadParserFactoryCollection collection, T blankStanza) {
         super(collection);
         stanza_ = blankStanza;
@@ -26,4 +26,14 @@ public class GenericStanzaParser<T extends Stanza> extends StanzaParser {
     public T getStanzaGeneric() {
         return stanza_;
     }
+
+    /**
+     * Start parsing a new stanza into blankStanza, leaving the previous
+     * stanza untouched.
+     * @param blankStanza stanza to parse into, not null
+     */
+    protected void reset(T blankStanza) {
+        resetState();
+        stanza_ = blankStanza;
+    }
 }
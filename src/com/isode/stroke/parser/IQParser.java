@@ -10,12 +10,16 @@ package com.isode.stroke.parser;
 
 import com.isode.stroke.elements.IQ;
 
-public class IQParser extends GenericStanzaParser<IQ> {
+public class IQParser extends GenericStanzaParser<IQ> implements ResettableElementParser {
 
     public IQParser(PayloadParserFactoryCollection factories) {
         super(factories, new IQ());
     }
 
+    public void reset() {
+        reset(new IQ());
+    }
+
     @Override
     void handleStanzaAttributes(AttributeMap attributes) {
         String type = attributes.getAttribute("type");
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+/**
+ * A {@link PayloadParserFactory} which can parse exactly one element name
+ * and/or namespace, regardless of attributes. {@link PayloadParserFactoryCollection}
+ * indexes such factories by their element and namespace, so that finding one
+ * does not involve calling {@link #canParse} on every registered factory.
+ *
+ * <p>{@link #canParse} must return true exactly when the element and
+ * namespace match those returned here.
+ */
+public interface KeyedPayloadParserFactory extends PayloadParserFactory {
+    /**
+     * @return the element name this factory parses, or "" for any element
+     */
+    String getElement();
+
+    /**
+     * @return the namespace this factory parses, or "" for any namespace
+     */
+    String getNamespace();
+}
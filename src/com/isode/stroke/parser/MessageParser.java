@@ -10,12 +10,16 @@ package com.isode.stroke.parser;
 
 import com.isode.stroke.elements.Message;
 
-public class MessageParser extends GenericStanzaParser<Message> {
+public class MessageParser extends GenericStanzaParser<Message> implements ResettableElementParser {
 
     public MessageParser(PayloadParserFactoryCollection factories) {
         super(factories, new Message());
     }
 
+    public void reset() {
+        reset(new Message());
+    }
+
     @Override
     void handleStanzaAttributes(AttributeMap attributes) {
         String type = attributes.getAttribute("type");
@@ -8,25 +8,40 @@
  */
 package com.isode.stroke.parser;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Collection of parser factories.
+ *
+ * <p>When more than one factory can parse an element, the one that was added
+ * first is used. Factories implementing {@link KeyedPayloadParserFactory} are
+ * found through an index on element name and namespace; only the remaining
+ * factories have {@link PayloadParserFactory#canParse} called on them.
+ * Lookups do not lock, so may run concurrently with each other and with
+ * changes to the collection.
  */
 public class PayloadParserFactoryCollection {
 
-    private final Vector<PayloadParserFactory> factories_ = new Vector<PayloadParserFactory>();
+    private final List<PayloadParserFactory> factories_ = new ArrayList<PayloadParserFactory>();
+    private volatile Index index_ = new Index(factories_);
     private PayloadParserFactory defaultFactory_ = null;
 
     public void addFactory(PayloadParserFactory factory) {
         synchronized (factories_) {
             factories_.add(factory);
+            index_ = new Index(factories_);
         }
     }
 
     public void removeFactory(PayloadParserFactory factory) {
-        while(factories_.contains(factory)) {
-            factories_.remove(factory);
+        synchronized (factories_) {
+            while (factories_.remove(factory)) {
+                /* Remove every registration of the factory */
+            }
+            index_ = new Index(factories_);
         }
     }
 
@@ -35,13 +50,100 @@ public class PayloadParserFactoryCollection {
     }
 
     public PayloadParserFactory getPayloadParserFactory(String element, String ns, AttributeMap attributes) {
-        synchronized(factories_) {
-            for (PayloadParserFactory factory : factories_) {
-                if (factory.canParse(element, ns, attributes)) {
-                    return factory;
+        final Entry entry = index_.find(element, ns, attributes);
+        return entry != null ? entry.factory : defaultFactory_;
+    }
+
+    /**
+     * A factory with its position in the collection, so that the first added
+     * of several matching factories can be chosen.
+     */
+    private static final class Entry {
+        final PayloadParserFactory factory;
+        final int position;
+
+        Entry(PayloadParserFactory factory, int position) {
+            this.factory = factory;
+            this.position = position;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the collection. Each map holds only the first
+     * factory registered for a key, as later ones can never be chosen.
+     */
+    private static final class Index {
+        private final Map<String, Map<String, Entry>> byElementAndNamespace_ = new HashMap<String, Map<String, Entry>>();
+        private final Map<String, Entry> byElement_ = new HashMap<String, Entry>();
+        private final Map<String, Entry> byNamespace_ = new HashMap<String, Entry>();
+        private final Entry matchesAll_;
+        private final Entry[] unkeyed_;
+
+        Index(List<PayloadParserFactory> factories) {
+            Entry matchesAll = null;
+            final List<Entry> unkeyed = new ArrayList<Entry>();
+            for (int i = 0; i < factories.size(); i++) {
+                final PayloadParserFactory factory = factories.get(i);
+                final Entry entry = new Entry(factory, i);
+                if (!(factory instanceof KeyedPayloadParserFactory)) {
+                    unkeyed.add(entry);
+                    continue;
                 }
+                final KeyedPayloadParserFactory keyed = (KeyedPayloadParserFactory) factory;
+                final String element = keyed.getElement();
+                final String ns = keyed.getNamespace();
+                if (!element.isEmpty() && !ns.isEmpty()) {
+                    Map<String, Entry> byNamespace = byElementAndNamespace_.get(element);
+                    if (byNamespace == null) {
+                        byNamespace = new HashMap<String, Entry>();
+                        byElementAndNamespace_.put(element, byNamespace);
+                    }
+                    putIfAbsent(byNamespace, ns, entry);
+                } else if (!element.isEmpty()) {
+                    putIfAbsent(byElement_, element, entry);
+                } else if (!ns.isEmpty()) {
+                    putIfAbsent(byNamespace_, ns, entry);
+                } else if (matchesAll == null) {
+                    matchesAll = entry;
+                }
+            }
+            matchesAll_ = matchesAll;
+            unkeyed_ = unkeyed.toArray(new Entry[unkeyed.size()]);
+        }
+
+        Entry find(String element, String ns, AttributeMap attributes) {
+            Entry best = matchesAll_;
+            final Map<String, Entry> byNamespace = byElementAndNamespace_.get(element);
+            if (byNamespace != null) {
+                best = earliest(best, byNamespace.get(ns));
+            }
+            best = earliest(best, byElement_.get(element));
+            best = earliest(best, byNamespace_.get(ns));
+            for (Entry entry : unkeyed_) {
+                if (best != null && best.position < entry.position) {
+                    break;
+                }
+                if (entry.factory.canParse(element, ns, attributes)) {
+                    return entry;
+                }
+            }
+            return best;
+        }
+
+        private static void putIfAbsent(Map<String, Entry> map, String key, Entry entry) {
+            if (!map.containsKey(key)) {
+                map.put(key, entry);
+            }
+        }
+
+        private static Entry earliest(Entry a, Entry b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
             }
+            return a.position < b.position ? a : b;
         }
-        return defaultFactory_;
     }
 }
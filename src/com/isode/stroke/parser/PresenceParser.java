@@ -10,12 +10,16 @@ package com.isode.stroke.parser;
 
 import com.isode.stroke.elements.Presence;
 
-public class PresenceParser extends GenericStanzaParser<Presence> {
+public class PresenceParser extends GenericStanzaParser<Presence> implements ResettableElementParser {
 
     public PresenceParser(PayloadParserFactoryCollection factories) {
         super(factories, new Presence());
     }
 
+    public void reset() {
+        reset(new Presence());
+    }
+
     @Override
     void handleStanzaAttributes(AttributeMap attributes) {
         String type = attributes.getAttribute("type");
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.parser;
+
+/**
+ * An {@link ElementParser} which can be reused for more than one element.
+ * {@link XMPPParser} keeps such parsers for the life of the stream rather
+ * than creating one per element.
+ */
+public interface ResettableElementParser extends ElementParser {
+    /**
+     * Prepare to parse another element. The element previously returned by
+     * {@link #getElement()} is not changed; a new one is started.
+     */
+    void reset();
+}
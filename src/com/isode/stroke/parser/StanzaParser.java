@@ -25,6 +25,15 @@ public abstract class StanzaParser implements ElementParser {
     void handleStanzaAttributes(AttributeMap map) {
     }
 
+    /**
+     * Discard any partly parsed payload and return to the state of a new
+     * parser, so that another stanza can be parsed.
+     */
+    protected void resetState() {
+        currentDepth_ = 0;
+        currentPayloadParser_ = null;
+    }
+
     public Stanza getStanza() {
         return (Stanza) getElement();
     }
@@ -9,6 +9,9 @@
 
 package com.isode.stroke.parser;
 
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
 public abstract class XMLParser {
     private final XMLParserClient client_;
 
@@ -18,6 +21,45 @@ public abstract class XMLParser {
 
     public abstract boolean parse(String data);
 
+    /**
+     * Parse a chunk of UTF-8 encoded data. The chunk need not end on a
+     * character boundary; any incomplete sequence at the end is completed
+     * by the next chunk.
+     * <p>This implementation decodes the data and passes it to
+     * {@link #parse(String)}, so does not cope with characters split across
+     * chunks; parsers which can consume bytes directly should override it.
+     * @param data array holding the data, must not be null
+     * @param offset index of the first byte to parse
+     * @param length number of bytes to parse
+     * @return false if a parse error occurred
+     */
+    public boolean parse(byte[] data, int offset, int length) {
+        try {
+            return parse(new String(data, offset, length, "UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("JVM has no 'UTF-8' encoding");
+        }
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer of UTF-8 encoded data, as for
+     * {@link #parse(byte[], int, int)}. The buffer's position is advanced to
+     * its limit.
+     * @param data buffer holding the data, must not be null
+     * @return false if a parse error occurred
+     */
+    public boolean parse(ByteBuffer data) {
+        final int length = data.remaining();
+        if (data.hasArray()) {
+            final int offset = data.arrayOffset() + data.position();
+            data.position(data.limit());
+            return parse(data.array(), offset, length);
+        }
+        final byte[] bytes = new byte[length];
+        data.get(bytes);
+        return parse(bytes, 0, length);
+    }
+
     protected XMLParserClient getClient() {
         return client_;
     }
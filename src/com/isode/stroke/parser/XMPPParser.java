@@ -5,6 +5,9 @@
 package com.isode.stroke.parser;
 
 import com.isode.stroke.elements.ProtocolHeader;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class XMPPParser implements XMLParserClient {
@@ -12,6 +15,10 @@ public class XMPPParser implements XMLParserClient {
     private XMLParser xmlParser_;
     private XMPPParserClient client_;
     private PayloadParserFactoryCollection payloadParserFactories_;
+    private final ElementParserFactoryCollection elementParserFactories_;
+    /* Parsers kept for reuse on this stream, by the factory that created them */
+    private final Map<ElementParserFactory, ResettableElementParser> reusableParsers_ =
+            new IdentityHashMap<ElementParserFactory, ResettableElementParser>();
     private int level_ = 0;
     private ElementParser currentElementParser_ = null;
     private boolean parseErrorOccurred_ = false;
@@ -22,9 +29,23 @@ public class XMPPParser implements XMLParserClient {
 
     public XMPPParser(XMPPParserClient parserClient,
             PayloadParserFactoryCollection payloadParserFactories) {
+        this(parserClient, payloadParserFactories, FullElementParserFactoryCollection.getDefault());
+    }
+
+    /**
+     * Create a parser which uses the given factories for top-level
+     * elements, rather than those of {@link FullElementParserFactoryCollection}.
+     * @param parserClient client to be told of parsed elements, not null
+     * @param payloadParserFactories factories for stanza payloads, not null
+     * @param elementParserFactories factories for top-level elements, not null
+     */
+    public XMPPParser(XMPPParserClient parserClient,
+            PayloadParserFactoryCollection payloadParserFactories,
+            ElementParserFactoryCollection elementParserFactories) {
         xmlParser_ = null;
         client_ = parserClient;
         payloadParserFactories_ = payloadParserFactories;
+        elementParserFactories_ = elementParserFactories;
         level_ = 0;
         currentElementParser_ = null;
         parseErrorOccurred_ = false;
@@ -35,6 +56,29 @@ public class XMPPParser implements XMLParserClient {
         boolean xmlParseResult = xmlParser_.parse(data);
         return xmlParseResult && !parseErrorOccurred_;
     }
+
+    /**
+     * Parse a chunk of UTF-8 encoded stream data, which need not end on a
+     * character boundary.
+     * @param data array holding the data, must not be null
+     * @param offset index of the first byte to parse
+     * @param length number of bytes to parse
+     * @return false if a parse error occurred
+     */
+    public boolean parse(byte[] data, int offset, int length) {
+        boolean xmlParseResult = xmlParser_.parse(data, offset, length);
+        return xmlParseResult && !parseErrorOccurred_;
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer of UTF-8 encoded stream data.
+     * @param data buffer holding the data, must not be null
+     * @return false if a parse error occurred
+     */
+    public boolean parse(ByteBuffer data) {
+        boolean xmlParseResult = xmlParser_.parse(data);
+        return xmlParseResult && !parseErrorOccurred_;
+    }
     
     public void handleStartElement(String element, String ns,
             AttributeMap attributes) {
@@ -94,62 +138,19 @@ public class XMPPParser implements XMLParserClient {
     }
 
     private ElementParser createElementParser(String element, String xmlns) {
-        if (element.equals("presence")) {
-            return new PresenceParser(payloadParserFactories_);
-        } else if (element.equals("iq")) {
-            return new IQParser(payloadParserFactories_);
-        } else if (element.equals("message")) {
-            return new MessageParser(payloadParserFactories_);
-        } else if (element.equals("features")
-                && xmlns.equals("http://etherx.jabber.org/streams")) {
-            return new StreamFeaturesParser();
-        } else if (element.equals("error") && xmlns.equals("http://etherx.jabber.org/streams")) {
-            return new StreamErrorParser();
-        } else if (element.equals("auth")) {
-            return new AuthRequestParser();
-        } else if (element.equals("success")) {
-            return new AuthSuccessParser();
-        } else if (element.equals("failure")
-                && xmlns.equals("urn:ietf:params:xml:ns:xmpp-sasl")) {
-            return new AuthFailureParser();
-        } else if (element.equals("challenge")
-                && xmlns.equals("urn:ietf:params:xml:ns:xmpp-sasl")) {
-            return new AuthChallengeParser();
-        } else if (element.equals("response")
-                && xmlns.equals("urn:ietf:params:xml:ns:xmpp-sasl")) {
-            return new AuthResponseParser();
-        } else if (element.equals("starttls")) {
-            return new StartTLSParser();
-        } else if (element.equals("failure")
-                && xmlns.equals("urn:ietf:params:xml:ns:xmpp-tls")) {
-            return new StartTLSFailureParser();
-        } else if (element.equals("compress")) {
-            return new CompressParser();
-        } else if (element.equals("compressed")) {
-            return new CompressedParser();
-        } else if (element.equals("failure")
-                && xmlns.equals("http://jabber.org/protocol/compress")) {
-            return new CompressFailureParser();
-        } else if (element.equals("proceed")) {
-            return new TLSProceedParser();
-        } else if (element.equals("enable") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new EnableStreamManagementParser();
-        } else if (element.equals("enabled") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StreamManagementEnabledParser();
-        } else if (element.equals("failed") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StreamManagementFailedParser();
-        } else if (element.equals("resume") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StreamResumeParser();
-        } else if (element.equals("resumed") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StreamResumedParser();
-        } else if (element.equals("a") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StanzaAckParser();
-        } else if (element.equals("r") && xmlns.equals("urn:xmpp:sm:2")) {
-            return new StanzaAckRequestParser();
-        } else if (element.equals("handshake")) {
-            return new ComponentHandshakeParser();
+        final ElementParserFactory factory = elementParserFactories_.getElementParserFactory(element, xmlns);
+        if (factory == null) {
+            return new UnknownElementParser();
+        }
+        ResettableElementParser parser = reusableParsers_.get(factory);
+        if (parser != null) {
+            parser.reset();
+            return parser;
+        }
+        final ElementParser newParser = factory.createElementParser(payloadParserFactories_);
+        if (newParser instanceof ResettableElementParser) {
+            reusableParsers_.put(factory, (ResettableElementParser) newParser);
         }
-        return new UnknownElementParser();
-        
+        return newParser;
     }
 }
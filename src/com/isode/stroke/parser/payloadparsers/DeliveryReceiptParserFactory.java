@@ -11,9 +11,9 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 
-class DeliveryReceiptParserFactory implements PayloadParserFactory {
+class DeliveryReceiptParserFactory implements KeyedPayloadParserFactory {
 
     public DeliveryReceiptParserFactory() {
     }
@@ -23,6 +23,16 @@ class DeliveryReceiptParserFactory implements PayloadParserFactory {
         return "urn:xmpp:receipts".equals(ns) && "received".equals(element);
     }
 
+    @Override
+    public String getElement() {
+        return "received";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "urn:xmpp:receipts";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new DeliveryReceiptParser();
@@ -11,9 +11,9 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 
-class DeliveryReceiptRequestParserFactory implements PayloadParserFactory {
+class DeliveryReceiptRequestParserFactory implements KeyedPayloadParserFactory {
 
     public DeliveryReceiptRequestParserFactory() {
     }
@@ -23,6 +23,16 @@ class DeliveryReceiptRequestParserFactory implements PayloadParserFactory {
         return "urn:xmpp:receipts".equals(ns) && "request".equals(element);
     }
     
+    @Override
+    public String getElement() {
+        return "request";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "urn:xmpp:receipts";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new DeliveryReceiptRequestParser();
@@ -11,13 +11,13 @@ package com.isode.stroke.parser.payloadparsers;
 import com.isode.stroke.elements.ErrorPayload;
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 
 /**
  * Parser factory for {@link ErrorPayload}
  *
  */
-public class ErrorParserFactory implements PayloadParserFactory {    
+public class ErrorParserFactory implements KeyedPayloadParserFactory {    
     private FullPayloadParserFactoryCollection factories_;
     
     /**
@@ -33,6 +33,16 @@ public class ErrorParserFactory implements PayloadParserFactory {
         return element.equals("error");
     }
     
+    @Override
+    public String getElement() {
+        return "error";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new ErrorParser(factories_);
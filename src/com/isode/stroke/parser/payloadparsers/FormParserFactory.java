@@ -12,12 +12,12 @@ package com.isode.stroke.parser.payloadparsers;
 import com.isode.stroke.elements.Form;
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 
 /**
  * Parser factory for {@link Form} element.
  */
-public class FormParserFactory implements PayloadParserFactory {
+public class FormParserFactory implements KeyedPayloadParserFactory {
     /**
      * Constructor
      */
@@ -39,6 +39,14 @@ public class FormParserFactory implements PayloadParserFactory {
         return ns.equals("jabber:x:data");
     }
 
+    public String getElement() {
+        return "";
+    }
+
+    public String getNamespace() {
+        return "jabber:x:data";
+    }
+
     public PayloadParser createPayloadParser() {
         return new FormParser();
     }
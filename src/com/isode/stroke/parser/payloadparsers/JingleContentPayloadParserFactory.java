@@ -14,12 +14,12 @@ package com.isode.stroke.parser.payloadparsers;
 import com.isode.stroke.parser.GenericPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 import com.isode.stroke.parser.payloadparsers.JingleContentPayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
 import com.isode.stroke.base.NotNull;
 
-public class JingleContentPayloadParserFactory implements PayloadParserFactory {
+public class JingleContentPayloadParserFactory implements KeyedPayloadParserFactory {
 
 	private PayloadParserFactoryCollection factories;
 
@@ -41,6 +41,14 @@ public class JingleContentPayloadParserFactory implements PayloadParserFactory {
 		return element.equals("content") && ns.equals("urn:xmpp:jingle:1");
 	}
 
+	public String getElement() {
+		return "content";
+	}
+
+	public String getNamespace() {
+		return "urn:xmpp:jingle:1";
+	}
+
 	/**
 	* @return PayloadParser()
 	*/
@@ -19,12 +19,12 @@ package com.isode.stroke.parser.payloadparsers;
 import com.isode.stroke.parser.GenericPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 import com.isode.stroke.parser.payloadparsers.JingleFileTransferDescriptionParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
 import com.isode.stroke.base.NotNull;
 
-public class JingleFileTransferDescriptionParserFactory implements PayloadParserFactory {
+public class JingleFileTransferDescriptionParserFactory implements KeyedPayloadParserFactory {
 
 	private PayloadParserFactoryCollection factories;
 
@@ -46,6 +46,14 @@ public class JingleFileTransferDescriptionParserFactory implements PayloadParser
 		return element.equals("description") && ns.equals("urn:xmpp:jingle:apps:file-transfer:4");
 	}
 
+	public String getElement() {
+		return "description";
+	}
+
+	public String getNamespace() {
+		return "urn:xmpp:jingle:apps:file-transfer:4";
+	}
+
 	/**
 	* @return PayloadParser()
 	*/
@@ -14,12 +14,12 @@ package com.isode.stroke.parser.payloadparsers;
 import com.isode.stroke.parser.GenericPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 import com.isode.stroke.parser.payloadparsers.JingleParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
 import com.isode.stroke.base.NotNull;
 
-public class JingleParserFactory implements PayloadParserFactory {
+public class JingleParserFactory implements KeyedPayloadParserFactory {
 
 	private PayloadParserFactoryCollection factories;
 
@@ -41,6 +41,14 @@ public class JingleParserFactory implements PayloadParserFactory {
 		return element.equals("jingle") && ns.equals("urn:xmpp:jingle:1");
 	}
 
+	public String getElement() {
+		return "jingle";
+	}
+
+	public String getNamespace() {
+		return "urn:xmpp:jingle:1";
+	}
+
 	/**
 	* @return PayloadParser()
 	*/
@@ -10,14 +10,14 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 
 /**
  * Factory for MUC Owner Payload Parser
  *
  */
-public class MUCOwnerPayloadParserFactory implements PayloadParserFactory {
+public class MUCOwnerPayloadParserFactory implements KeyedPayloadParserFactory {
     
     private PayloadParserFactoryCollection factories;
     
@@ -34,6 +34,16 @@ public class MUCOwnerPayloadParserFactory implements PayloadParserFactory {
         return "query".equals(element) && "http://jabber.org/protocol/muc#owner".equals(ns);
     }
 
+    @Override
+    public String getElement() {
+        return "query";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "http://jabber.org/protocol/muc#owner";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new MUCOwnerPayloadParser(factories);
@@ -10,14 +10,14 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 
 /**
  * Factory for MUC User Payload Parser
  *
  */
-public class MUCUserPayloadParserFactory implements PayloadParserFactory {
+public class MUCUserPayloadParserFactory implements KeyedPayloadParserFactory {
     
     private PayloadParserFactoryCollection factories;
     
@@ -34,6 +34,16 @@ public class MUCUserPayloadParserFactory implements PayloadParserFactory {
         return "x".equals(element) && "http://jabber.org/protocol/muc#user".equals(ns);
     }
 
+    @Override
+    public String getElement() {
+        return "x";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "http://jabber.org/protocol/muc#user";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new MUCUserPayloadParser(factories);
@@ -6,10 +6,10 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 
-public class PrivateStorageParserFactory implements PayloadParserFactory {
+public class PrivateStorageParserFactory implements KeyedPayloadParserFactory {
 
     private PayloadParserFactoryCollection factories;
 
@@ -22,6 +22,16 @@ public class PrivateStorageParserFactory implements PayloadParserFactory {
         return "query".equals(element) && "jabber:iq:private".equals(ns);
     }
 
+    @Override
+    public String getElement() {
+        return "query";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "jabber:iq:private";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new PrivateStorageParser(factories);
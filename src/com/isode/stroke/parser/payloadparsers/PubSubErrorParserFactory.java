@@ -11,15 +11,25 @@ package com.isode.stroke.parser.payloadparsers;
 
 import com.isode.stroke.parser.AttributeMap;
 import com.isode.stroke.parser.PayloadParser;
-import com.isode.stroke.parser.PayloadParserFactory;
+import com.isode.stroke.parser.KeyedPayloadParserFactory;
 
-public class PubSubErrorParserFactory implements PayloadParserFactory {
+public class PubSubErrorParserFactory implements KeyedPayloadParserFactory {
     
     @Override
     public boolean canParse(String element, String ns, AttributeMap attributes) {
         return ns.equals("http://jabber.org/protocol/pubsub#errors");
     }
     
+    @Override
+    public String getElement() {
+        return "";
+    }
+
+    @Override
+    public String getNamespace() {
+        return "http://jabber.org/protocol/pubsub#errors";
+    }
+
     @Override
     public PayloadParser createPayloadParser() {
         return new PubSubErrorParser();
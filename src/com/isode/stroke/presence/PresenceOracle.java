@@ -6,23 +6,52 @@ package com.isode.stroke.presence;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.isode.stroke.client.StanzaChannel;
 import com.isode.stroke.elements.Presence;
 import com.isode.stroke.elements.StatusShow;
 import com.isode.stroke.jid.JID;
+import com.isode.stroke.network.Timer;
+import com.isode.stroke.network.TimerFactory;
 import com.isode.stroke.roster.XMPPRoster;
 import com.isode.stroke.signals.Signal1;
 import com.isode.stroke.signals.SignalConnection;
+import com.isode.stroke.signals.Slot;
 import com.isode.stroke.signals.Slot1;
 
+/**
+ * Tracks the presences received for each contact.
+ *
+ * <p>Presences are received on the event loop thread, but the getters may
+ * be called from any thread. The active and highest priority presences of
+ * each contact are worked out once when its presence changes, rather than
+ * on each call.
+ */
 public class PresenceOracle {
-	private final Map<JID,Map<JID,Presence>> entries_ = new HashMap<JID,Map<JID,Presence>>();
+
+	/**
+	 * The presences of one bare JID, which are never changed once
+	 * published; an update replaces the whole entry.
+	 */
+	private static class Entry {
+		final Map<JID,Presence> presences;
+		final Presence activePresence;
+		final Presence highestPriorityPresence;
+
+		Entry(Map<JID,Presence> presences) {
+			this.presences = Collections.unmodifiableMap(presences);
+			activePresence = getActivePresence(presences.values());
+			highestPriorityPresence = findHighestPriorityPresence(presences.values());
+		}
+	}
+
+	private final Map<JID,Entry> entries_ = new ConcurrentHashMap<JID,Entry>();
 	private final StanzaChannel stanzaChannel_;
 	private final SignalConnection onPresenceReceivedSignal;
 	private final SignalConnection onAvailableChangedSignal;
@@ -30,7 +59,30 @@ public class PresenceOracle {
 
 
 	public final Signal1<Presence> onPresenceChange = new Signal1<Presence>();
+
+	/**
+	 * Emitted, with the new active presence, when the active presence of a
+	 * bare JID (see {@link #getAccountPresence(JID)}) changes. Unlike
+	 * {@link #onPresenceChange} this is not emitted for presences which
+	 * leave it the same, such as from another, less available, resource or
+	 * a repeat of the current one. Only the sender, type, show, status and
+	 * priority are compared.
+	 */
+	public final Signal1<Presence> onActivePresenceChange = new Signal1<Presence>();
+
+	/**
+	 * Emitted at the end of each coalescing window (see
+	 * {@link #setCoalescingWindow(TimerFactory, long)}) with the latest
+	 * presence from each JID that changed during it, in the order they
+	 * first changed.
+	 */
+	public final Signal1<Collection<Presence>> onPresencesChanged = new Signal1<Collection<Presence>>();
     private final SignalConnection onJIDRemovedConnection;
+    private Timer coalescingTimer_;
+    /* Latest presence per sender, while coalescing */
+    private final Map<JID,Presence> pendingPresences_ = new LinkedHashMap<JID,Presence>();
+    /* Entry per bare JID as it was when the coalescing window began */
+    private final Map<JID,Entry> windowStartEntries_ = new LinkedHashMap<JID,Entry>();
 
 	public PresenceOracle(StanzaChannel stanzaChannel, XMPPRoster xmppRoster) {
 	    stanzaChannel_ = stanzaChannel;
@@ -61,10 +113,45 @@ public class PresenceOracle {
 		onPresenceReceivedSignal.disconnect();
 		onAvailableChangedSignal.disconnect();
 		onJIDRemovedConnection.disconnect();
+		setCoalescingWindow(null, 0);
+	}
+
+	/**
+	 * Coalesce presence notifications, such as the flood of presences that
+	 * arrives on login. Once a presence arrives, any others received within
+	 * the window are gathered up. At the end of the window the last
+	 * presence from each JID is reported in one {@link #onPresencesChanged},
+	 * followed by {@link #onActivePresenceChange} for each contact whose
+	 * active presence differs from before the window. While coalescing,
+	 * {@link #onPresenceChange} is not emitted. The getters are always up
+	 * to date.
+	 * @param timerFactory factory for the window's timer; may be null when
+	 * turning coalescing off
+	 * @param milliseconds length of the window, or 0 (the default) to emit
+	 * a notification for each presence as it arrives. Turning coalescing
+	 * off reports anything already gathered.
+	 */
+	public void setCoalescingWindow(TimerFactory timerFactory, long milliseconds) {
+		flushPendingPresences();
+		if (coalescingTimer_ != null) {
+			coalescingTimer_.stop();
+			coalescingTimer_.onTick.disconnectAll();
+			coalescingTimer_ = null;
+		}
+		if (milliseconds > 0) {
+			coalescingTimer_ = timerFactory.createTimer(milliseconds);
+			coalescingTimer_.onTick.connect(new Slot() {
+				@Override
+				public void call() {
+					flushPendingPresences();
+				}
+			});
+		}
 	}
 
 	void handleStanzaChannelAvailableChanged(boolean available) {
 		if (available) {
+			flushPendingPresences();
 			entries_.clear();
 		}
 	}
@@ -83,8 +170,9 @@ public class PresenceOracle {
 				passedPresence.setFrom(bareJID);
 				passedPresence.setStatus(presence.getStatus());
 			}
-			Map<JID,Presence> jidMap = entries_.get(bareJID);
-			if (jidMap == null) jidMap = new HashMap<JID,Presence>();
+			final Entry previous = entries_.get(bareJID);
+			Map<JID,Presence> jidMap = previous == null
+					? new HashMap<JID,Presence>() : new HashMap<JID,Presence>(previous.presences);
 			if (passedPresence.getFrom().isBare() && Presence.Type.Unavailable.equals(presence.getType())) {
 				/* Have a bare-JID only presence of offline */
 				jidMap.clear();
@@ -97,10 +185,63 @@ public class PresenceOracle {
 			} else {
 				jidMap.put(passedPresence.getFrom(), passedPresence);
 			}
-			entries_.put(bareJID, jidMap);
-			onPresenceChange.emit(passedPresence);
+			final Entry entry = new Entry(jidMap);
+			entries_.put(bareJID, entry);
+			handlePresenceChanged(passedPresence, previous, entry);
+		}
+	}
+
+	private void handlePresenceChanged(Presence presence, Entry previous, Entry current) {
+		if (coalescingTimer_ == null) {
+			onPresenceChange.emit(presence);
+			emitIfActivePresenceChanged(previous, current);
+			return;
+		}
+		if (pendingPresences_.isEmpty()) {
+			coalescingTimer_.start();
+		}
+		pendingPresences_.put(presence.getFrom(), presence);
+		final JID bareJID = presence.getFrom().toBare();
+		if (!windowStartEntries_.containsKey(bareJID)) {
+			windowStartEntries_.put(bareJID, previous);
 		}
 	}
+
+	private void flushPendingPresences() {
+		if (coalescingTimer_ != null) {
+			coalescingTimer_.stop();
+		}
+		if (pendingPresences_.isEmpty()) {
+			return;
+		}
+		final Collection<Presence> presences = new ArrayList<Presence>(pendingPresences_.values());
+		final Map<JID,Entry> windowStartEntries = new LinkedHashMap<JID,Entry>(windowStartEntries_);
+		pendingPresences_.clear();
+		windowStartEntries_.clear();
+		onPresencesChanged.emit(Collections.unmodifiableCollection(presences));
+		for (Map.Entry<JID,Entry> start : windowStartEntries.entrySet()) {
+			emitIfActivePresenceChanged(start.getValue(), entries_.get(start.getKey()));
+		}
+	}
+
+	private void emitIfActivePresenceChanged(Entry previous, Entry current) {
+		final Presence before = previous == null ? null : previous.activePresence;
+		final Presence after = current == null ? null : current.activePresence;
+		if (after != null && (before == null || !isSamePresence(before, after))) {
+			onActivePresenceChange.emit(after);
+		}
+	}
+
+	private static boolean isSamePresence(Presence a, Presence b) {
+		if (a == b) {
+			return true;
+		}
+		return a.getFrom().equals(b.getFrom())
+				&& a.getType() == b.getType()
+				&& a.getShow() == b.getShow()
+				&& a.getPriority() == b.getPriority()
+				&& a.getStatus().equals(b.getStatus());
+	}
 	
 	private void handleJIDRemoved(JID removedJID) {
 	    // 3921bis says that we don't follow up with an unavailable, so simulate this ourselves
@@ -108,20 +249,23 @@ public class PresenceOracle {
 	    unavailablePresence.setType(Presence.Type.Unavailable);
 	    unavailablePresence.setFrom(removedJID);
 
-	    if (entries_.containsKey(removedJID.toBare())) {
-	        Map<JID,Presence> presenceMap = entries_.get(removedJID.toBare());
-	        presenceMap.clear();
+	    final Entry previous = entries_.get(removedJID.toBare());
+	    Entry entry = null;
+	    if (previous != null) {
+	        Map<JID,Presence> presenceMap = new HashMap<JID,Presence>();
 	        presenceMap.put(removedJID, unavailablePresence);
+	        entry = new Entry(presenceMap);
+	        entries_.put(removedJID.toBare(), entry);
 	    }
 
-	    onPresenceChange.emit(unavailablePresence);
+	    handlePresenceChanged(unavailablePresence, previous, entry);
 	}
 
 	public Presence getLastPresence(final JID jid) {
-		Map<JID,Presence> presenceMap = entries_.get(jid.toBare());
-		if (presenceMap == null) return null;
+		Entry entry = entries_.get(jid.toBare());
+		if (entry == null) return null;
 		
-		Presence i = presenceMap.get(jid);
+		Presence i = entry.presences.get(jid);
 		if (i != null) {
 			return i;
 		} else {
@@ -132,10 +276,10 @@ public class PresenceOracle {
 	public Collection<Presence> getAllPresence(final JID bareJID) {
 		Collection<Presence> results = new ArrayList<Presence>();
 		
-		Map<JID,Presence> presenceMap = entries_.get(bareJID);
-		if (presenceMap == null) return results;
+		Entry entry = entries_.get(bareJID);
+		if (entry == null) return results;
 		
-		results.addAll(presenceMap.values());
+		results.addAll(entry.presences.values());
 		return results;
 	}
 	
@@ -175,6 +319,8 @@ public class PresenceOracle {
 	    }
 
 	}
+
+	private static final PresenceAccountCmp ACCOUNT_COMPARATOR = new PresenceAccountCmp();
 	
 	/**
      * Returns the relevant presence for a list of resource presences.
@@ -199,49 +345,36 @@ public class PresenceOracle {
 	 * @return The relevant presence.
      */
 	public static Presence getActivePresence(Collection<? extends Presence> presences) {
-		
-		PresenceAccountCmp comparator = new PresenceAccountCmp();
-		int size = presences.size();
-		if (size < 1) size = 1;
-        
-	    PriorityQueue<Presence> online = new PriorityQueue<Presence>(size, comparator);
-	    PriorityQueue<Presence> away = new PriorityQueue<Presence>(size, comparator);
-	    PriorityQueue<Presence> offline = new PriorityQueue<Presence>(size, comparator);
-
+	    Presence accountPresence = null;
+	    int accountGroup = -1;
 	    for (Presence presence : presences) {
-	        switch (presence.getShow()) {
-	        case Online:
-	            online.add(presence);
-	            break;
-	        case Away:
-	            away.add(presence);
-	            break;
-	        case FFC:
-                online.add(presence);
-                break;
-	        case XA:
-	            away.add(presence);
-                break;
-	        case DND:
-	            away.add(presence);
-	            break;
-	        case None:
-	            offline.add(presence);
-	            break;
+	        final int group = availabilityGroup(presence.getShow());
+	        if (group > accountGroup
+	                || (group == accountGroup && ACCOUNT_COMPARATOR.compare(presence, accountPresence) < 0)) {
+	            accountPresence = presence;
+	            accountGroup = group;
 	        }
 	    }
+	    return accountPresence;
+	}
 
-	    Presence accountPresence = null;
-	    if (!online.isEmpty()) {
-	        accountPresence = online.peek();
-	    }
-	    else if (!away.isEmpty()) {
-	        accountPresence = away.peek();
-	    }
-	    else if (!offline.isEmpty()) {
-	        accountPresence = offline.peek();
+	/**
+	 * @return 2 for online, 1 for away and 0 for offline show types
+	 */
+	private static int availabilityGroup(StatusShow.Type showType) {
+	    switch (showType) {
+	    case Online:
+	    case FFC:
+	        return 2;
+	    case Away:
+	    case XA:
+	    case DND:
+	        return 1;
+	    case None:
+	        return 0;
 	    }
-	    return accountPresence;
+	    assert(false);
+	    return -1;
 	}
 	
 	/**
@@ -252,17 +385,18 @@ public class PresenceOracle {
 	 * @return The value returned by {@link #getActivePresence(List)} 
      */
     public Presence getAccountPresence(JID jid) {
-        Collection<Presence> allPresences = getAllPresence(jid.toBare());
-        Presence accountPresence = getActivePresence(allPresences);
-        return accountPresence;
+        Entry entry = entries_.get(jid.toBare());
+        return entry == null ? null : entry.activePresence;
     }
 
 	public Presence getHighestPriorityPresence(final JID bareJID) {
-		Map<JID,Presence> presenceMap = entries_.get(bareJID);
-		if (presenceMap == null) return null;
+		Entry entry = entries_.get(bareJID);
+		return entry == null ? null : entry.highestPriorityPresence;
+	}
 
+	private static Presence findHighestPriorityPresence(Collection<Presence> presences) {
 		Presence highest = null;
-		for (Presence current : presenceMap.values()) {
+		for (Presence current : presences) {
 			if (highest == null
 					|| current.getPriority() > highest.getPriority()
 					|| (current.getPriority() == highest.getPriority()
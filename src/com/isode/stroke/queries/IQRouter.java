@@ -4,13 +4,20 @@
  */
 package com.isode.stroke.queries;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import com.isode.stroke.elements.ErrorPayload;
 import com.isode.stroke.elements.IQ;
+import com.isode.stroke.eventloop.Event;
+import com.isode.stroke.eventloop.EventLoop;
+import com.isode.stroke.network.TimerFactory;
+import com.isode.stroke.network.TimingWheel;
+import com.isode.stroke.signals.Signal;
+import com.isode.stroke.signals.Slot;
 import com.isode.stroke.signals.Slot1;
 import com.isode.stroke.jid.JID;
-import java.util.Collections;
 
 /**
  * This class is responsible for routing all IQ stanzas to the handlers. It's
@@ -19,15 +26,55 @@ import java.util.Collections;
  * responsible bit of code, replied to, etc. and when it's an outgoing IQ, it
  * needs to be tracked such that when the reply comes in, the callback is
  * called.
+ *
+ * <p>Handlers waiting for the reply to an IQ with a particular ID should be
+ * added with {@link #addResponseHandler}, so that replies can be routed to
+ * them directly however many are outstanding. Other handlers are tried in
+ * turn, most recently added first.
+ *
+ * <p>Once {@link #setTimerFactory} has been called, requests can be given a
+ * timeout (see {@link #setDefaultRequestTimeout} and
+ * {@link Request#setTimeout}). The number of requests awaiting replies can
+ * also be limited with {@link #setMaxPendingRequests}; once
+ * {@link #setEventLoop} has been called, requests rejected by the limit
+ * fail from the event loop, after {@link Request#send} has returned.
  */
 public class IQRouter {
 
     private Vector<IQHandler> handlers_ = new Vector<IQHandler>();
+    /* Guarded by handlers_ */
+    private final Map<String, Vector<IQHandler>> responseHandlers_ = new HashMap<String, Vector<IQHandler>>();
     private IQChannel channel_;
     private JID jid_ = new JID();
     private JID from_ = new JID();
     private Vector<IQHandler> queuedRemoves_ = new Vector<IQHandler>();
     private boolean queueRemoves_;
+    private TimingWheel requestTimeouts_ = null;
+    private EventLoop eventLoop_ = null;
+    private long defaultRequestTimeout_ = 0;
+    private int maxPendingRequests_ = 0;
+    /* Guarded by handlers_ */
+    private int pendingRequestCount_ = 0;
+    private long completedRequestCount_ = 0;
+    private long timedOutRequestCount_ = 0;
+    private long rejectedRequestCount_ = 0;
+
+    /**
+     * Emitted when the number of requests awaiting replies reaches the limit
+     * set by {@link #setMaxPendingRequests}. Further requests fail until
+     * {@link #onPendingRequestLimitCleared} is emitted.
+     */
+    public final Signal onPendingRequestLimitReached = new Signal();
+
+    /**
+     * Emitted when the number of requests awaiting replies drops back below
+     * the limit after {@link #onPendingRequestLimitReached}.
+     */
+    public final Signal onPendingRequestLimitCleared = new Signal();
+
+    /* Time between ticks of the request timeout wheel, and its size */
+    private static final long REQUEST_TIMEOUT_TICK_MILLISECONDS = 500;
+    private static final int REQUEST_TIMEOUT_WHEEL_SIZE = 128;
 
     public IQRouter(IQChannel channel) {
         channel_ = channel;
@@ -57,6 +104,193 @@ public class IQRouter {
         }
     }
 
+    /**
+     * Add a handler for the result or error reply to the IQ with the given
+     * ID. Only replies with that ID are passed to it, before any handlers
+     * added with {@link #addHandler}.
+     * @param id ID of the IQ that was sent, not null
+     * @param handler handler, not null
+     */
+    public void addResponseHandler(String id, IQHandler handler) {
+        boolean limitReached;
+        synchronized (handlers_) {
+            Vector<IQHandler> handlers = responseHandlers_.get(id);
+            if (handlers == null) {
+                handlers = new Vector<IQHandler>(1);
+                responseHandlers_.put(id, handlers);
+            }
+            handlers.add(handler);
+            pendingRequestCount_++;
+            limitReached = maxPendingRequests_ > 0 && pendingRequestCount_ == maxPendingRequests_;
+        }
+        if (limitReached) {
+            onPendingRequestLimitReached.emit();
+        }
+    }
+
+    /**
+     * Remove a handler added with {@link #addResponseHandler}. This may be
+     * called from within the handler.
+     * @param id ID the handler was added with, not null
+     * @param handler handler, not null
+     */
+    public void removeResponseHandler(String id, IQHandler handler) {
+        boolean limitCleared = false;
+        synchronized (handlers_) {
+            Vector<IQHandler> handlers = responseHandlers_.get(id);
+            if (handlers != null && handlers.remove(handler)) {
+                if (handlers.isEmpty()) {
+                    responseHandlers_.remove(id);
+                }
+                limitCleared = maxPendingRequests_ > 0 && pendingRequestCount_ == maxPendingRequests_;
+                pendingRequestCount_--;
+            }
+        }
+        if (limitCleared) {
+            onPendingRequestLimitCleared.emit();
+        }
+    }
+
+    /**
+     * Enable request timeouts, which are driven by timers from the given
+     * factory. All requests share a single {@link TimingWheel}, so
+     * timeouts are accurate to about half a second.
+     * @param timerFactory factory for timers, or null to disable timeouts
+     */
+    public void setTimerFactory(TimerFactory timerFactory) {
+        requestTimeouts_ = timerFactory != null
+                ? new TimingWheel(timerFactory, REQUEST_TIMEOUT_TICK_MILLISECONDS, REQUEST_TIMEOUT_WHEEL_SIZE)
+                : null;
+    }
+
+    /**
+     * Set the loop from which requests rejected by the limit set with
+     * {@link #setMaxPendingRequests} are failed. This should be the loop
+     * that timers and replies are delivered from.
+     * @param eventLoop the loop, or null to fail rejected requests from
+     * within {@link Request#send}
+     */
+    public void setEventLoop(EventLoop eventLoop) {
+        eventLoop_ = eventLoop;
+    }
+
+    /**
+     * Set the timeout for requests which do not set their own. Has no effect
+     * unless {@link #setTimerFactory} has been called.
+     * @param milliseconds time to wait for a reply, or 0 to wait for ever
+     * (the default)
+     */
+    public void setDefaultRequestTimeout(long milliseconds) {
+        defaultRequestTimeout_ = milliseconds;
+    }
+
+    public long getDefaultRequestTimeout() {
+        return defaultRequestTimeout_;
+    }
+
+    /**
+     * Limit the number of requests awaiting replies. Requests sent while at
+     * the limit fail with a resource-constraint error, from the event loop
+     * if {@link #setEventLoop} has been called.
+     * @param maxPendingRequests the limit, or 0 for no limit (the default)
+     */
+    public void setMaxPendingRequests(int maxPendingRequests) {
+        synchronized (handlers_) {
+            maxPendingRequests_ = maxPendingRequests;
+        }
+    }
+
+    public int getMaxPendingRequests() {
+        return maxPendingRequests_;
+    }
+
+    /**
+     * @return true if a request sent now would not exceed the limit set by
+     * {@link #setMaxPendingRequests}
+     */
+    public boolean canSendRequest() {
+        synchronized (handlers_) {
+            return maxPendingRequests_ <= 0 || pendingRequestCount_ < maxPendingRequests_;
+        }
+    }
+
+    /**
+     * @return number of requests awaiting replies
+     */
+    public int getPendingRequestCount() {
+        synchronized (handlers_) {
+            return pendingRequestCount_;
+        }
+    }
+
+    /**
+     * @return number of requests which have had a reply
+     */
+    public long getCompletedRequestCount() {
+        synchronized (handlers_) {
+            return completedRequestCount_;
+        }
+    }
+
+    /**
+     * @return number of requests which gave up waiting for a reply
+     */
+    public long getTimedOutRequestCount() {
+        synchronized (handlers_) {
+            return timedOutRequestCount_;
+        }
+    }
+
+    /**
+     * @return number of requests which failed because too many others were
+     * awaiting replies
+     */
+    public long getRejectedRequestCount() {
+        synchronized (handlers_) {
+            return rejectedRequestCount_;
+        }
+    }
+
+    /**
+     * Schedule the timeout of a request.
+     * @param milliseconds timeout, or 0 to use the default timeout
+     * @param action called if the timeout expires
+     * @return the timeout, or null if there is none
+     */
+    TimingWheel.Timeout scheduleRequestTimeout(long milliseconds, Slot action) {
+        final long timeout = milliseconds > 0 ? milliseconds : defaultRequestTimeout_;
+        if (requestTimeouts_ == null || timeout <= 0) {
+            return null;
+        }
+        return requestTimeouts_.schedule(timeout, action);
+    }
+
+    void handleRequestTimedOut() {
+        synchronized (handlers_) {
+            timedOutRequestCount_++;
+        }
+    }
+
+    /**
+     * Count a request rejected by the limit, and fail it from the event
+     * loop if there is one, otherwise straight away.
+     * @param failure called to fail the request, not null
+     */
+    void handleRequestRejected(final Slot failure) {
+        synchronized (handlers_) {
+            rejectedRequestCount_++;
+        }
+        if (eventLoop_ == null) {
+            failure.call();
+            return;
+        }
+        eventLoop_.postEvent(new Event.Callback() {
+            public void run() {
+                failure.call();
+            }
+        });
+    }
+
     public void sendIQ(IQ iq) {
         if (from_.isValid() && !iq.getFrom().isValid()) {
             iq.setFrom(from_);
@@ -85,14 +319,15 @@ public class IQRouter {
 	private void handleIQ(IQ iq) {
         queueRemoves_ = true;
         boolean handled = false;
-        Vector<IQHandler> i = new Vector<IQHandler>();
-        i.addAll(handlers_);
-        Collections.reverse(i);
         synchronized (handlers_) {
-            for (IQHandler handler : i) {
-                handled |= handler.handleIQ(iq);
-                if (handled) {
-                    break;
+            if (iq.getType().equals(IQ.Type.Result) || iq.getType().equals(IQ.Type.Error)) {
+                handled = handleResponse(iq);
+            }
+            /* Newest first. Handlers added meanwhile go on the end and are
+             * skipped; removals are queued until we're done */
+            for (int i = handlers_.size() - 1; i >= 0 && !handled; i--) {
+                if (i < handlers_.size()) {
+                    handled = handlers_.get(i).handleIQ(iq);
                 }
             }
         }
@@ -104,6 +339,24 @@ public class IQRouter {
         queueRemoves_ = false;
     }
 
+    /**
+     * Must be called with handlers_ held.
+     */
+    private boolean handleResponse(IQ iq) {
+        final Vector<IQHandler> handlers = responseHandlers_.get(iq.getID());
+        if (handlers == null) {
+            return false;
+        }
+        /* Handlers normally remove themselves once they have their reply */
+        for (int i = handlers.size() - 1; i >= 0; i--) {
+            if (i < handlers.size() && handlers.get(i).handleIQ(iq)) {
+                completedRequestCount_++;
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void processPendingRemoves() {
         synchronized(handlers_) {
             for(IQHandler handler : queuedRemoves_) {
@@ -15,6 +15,8 @@ import com.isode.stroke.elements.IQ.Type;
 import com.isode.stroke.elements.Payload;
 import com.isode.stroke.elements.RawXMLPayload;
 import com.isode.stroke.jid.JID;
+import com.isode.stroke.network.TimingWheel;
+import com.isode.stroke.signals.Slot;
 import java.util.logging.Logger;
 
 /**
@@ -28,6 +30,8 @@ public abstract class Request implements IQHandler {
     private boolean sent_;
     private Payload payload_;
     private String id_ = "";
+    private long timeout_ = 0;
+    private TimingWheel.Timeout pendingTimeout_;
 	private Logger logger_ = Logger.getLogger(this.getClass().getName());
 
 	/**
@@ -77,12 +81,42 @@ public abstract class Request implements IQHandler {
 		id_ = router_.getNewIQID();
 		iq.setID(id_);
 
-		router_.addHandler(this);
+		if (!router_.canSendRequest()) {
+			router_.handleRequestRejected(new Slot() {
+				public void call() {
+					handleResponse(null, new ErrorPayload(ErrorPayload.Condition.ResourceConstraint, ErrorPayload.Type.Wait));
+				}
+			});
+			return id_;
+		}
+		router_.addResponseHandler(id_, this);
+		pendingTimeout_ = router_.scheduleRequestTimeout(timeout_, new Slot() {
+			public void call() {
+				handleTimeout();
+			}
+		});
 
 		router_.sendIQ(iq);
     	return id_;
     }
 
+	/**
+	 * Sets how long to wait for a reply before failing with a
+	 * remote-server-timeout error. Must be called before send(), and has no
+	 * effect unless the router has a timer factory.
+	 * @param milliseconds time to wait, or 0 to use the router's default
+	 */
+	public void setTimeout(long milliseconds) {
+		timeout_ = milliseconds;
+	}
+
+	private void handleTimeout() {
+		pendingTimeout_ = null;
+		router_.removeResponseHandler(id_, this);
+		router_.handleRequestTimedOut();
+		handleResponse(null, new ErrorPayload(ErrorPayload.Condition.RemoteServerTimeout, ErrorPayload.Type.Cancel));
+	}
+
     protected void setPayload(Payload payload) {
         payload_ = payload;
     }
@@ -98,7 +132,11 @@ public abstract class Request implements IQHandler {
         if (iq.getType() == IQ.Type.Result || iq.getType() == IQ.Type.Error) {
 	        if (sent_ && iq.getID().equals(id_)) {
 		    	if (isCorrectSender(iq.getFrom())) {
-			
+					if (pendingTimeout_ != null) {
+						pendingTimeout_.cancel();
+						pendingTimeout_ = null;
+					}
+
 					if (iq.getType().equals(IQ.Type.Result)) {
 						Payload payload = iq.getPayload(payload_);
 						if (payload == null && (payload_ instanceof RawXMLPayload) && !iq.getPayloads().isEmpty()) {
@@ -113,7 +151,7 @@ public abstract class Request implements IQHandler {
 							handleResponse(null, new ErrorPayload(ErrorPayload.Condition.UndefinedCondition));
 			    		}
 					}
-					router_.removeHandler(this);
+					router_.removeResponseHandler(id_, this);
 					handled = true;
 		    	}
 			}
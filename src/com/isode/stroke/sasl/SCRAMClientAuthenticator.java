@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2010-2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+/*
+ * Copyright (c) 2010, Remko Tronçon.
+ * All rights reserved.
+ */
+package com.isode.stroke.sasl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.crypto.HMAC;
+import com.isode.stroke.idn.IDNConverter;
+import com.isode.stroke.stringcodecs.Base64;
+import com.isode.stroke.stringcodecs.PBKDF2;
+
+/**
+ * The client side of a SCRAM mechanism (RFC 5802), with the hash function
+ * provided by a subclass.
+ */
+public abstract class SCRAMClientAuthenticator extends ClientAuthenticator {
+
+    static String escape(String s) {
+        String result = "";
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) == ',') {
+                result += "=2C";
+            } else if (s.charAt(i) == '=') {
+                result += "=3D";
+            } else {
+                result += s.charAt(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param mechanism name of the mechanism without "-PLUS", such as
+     * "SCRAM-SHA-1"
+     */
+    protected SCRAMClientAuthenticator(String mechanism, String nonce, boolean useChannelBinding, IDNConverter idnConverter, CryptoProvider crypto) {
+        super(useChannelBinding ? mechanism + "-PLUS" : mechanism);
+        this.mechanism = mechanism;
+        step = Step.Initial;
+        clientnonce = nonce;
+        this.useChannelBinding = useChannelBinding;
+        this.idnConverter = idnConverter;
+        this.crypto = crypto;
+    }
+
+    public void setTLSChannelBindingData(ByteArray channelBindingData) {
+        tlsChannelBindingData = channelBindingData;
+    }
+
+    /**
+     * Share salted passwords through a cache, so that authenticating again
+     * with the same password, salt and iteration count does not repeat the
+     * costly key derivation.
+     * @param cache cache to use, or null (the default) for none
+     */
+    public void setSaltedPasswordCache(SCRAMSaltedPasswordCache cache) {
+        saltedPasswordCache = cache;
+    }
+
+    /**
+     * @return the crypto provider this authenticator was created with
+     */
+    protected CryptoProvider getCrypto() {
+        return crypto;
+    }
+
+    /**
+     * @param key the key
+     * @return an HMAC using this mechanism's hash function, keyed with key
+     */
+    protected abstract HMAC createHMAC(ByteArray key);
+
+    /**
+     * @param data data to hash
+     * @return the hash of data using this mechanism's hash function
+     */
+    protected abstract ByteArray getHash(ByteArray data);
+
+    public SafeByteArray getResponse() {
+        if (step.equals(Step.Initial)) {
+            return new SafeByteArray(getGS2Header().append(getInitialBareClientMessage()));
+        } else if (step.equals(Step.Proof)) {
+            ByteArray clientKey = createHMAC(saltedPassword).update(new ByteArray("Client Key")).getHMAC();
+            ByteArray storedKey = getHash(clientKey);
+            ByteArray clientSignature = createHMAC(storedKey).update(authMessage).getHMAC();
+            ByteArray clientProof = clientKey;
+            byte[] clientProofData = clientProof.getData();
+            for (int i = 0; i < clientProofData.length; ++i) {
+                clientProofData[i] ^= clientSignature.getData()[i];
+            }
+            clientProof = new ByteArray(clientProofData);
+            ByteArray result = getFinalMessageWithoutProof().append(",p=").append(Base64.encode(clientProof));
+            return new SafeByteArray(result);
+        } else {
+            return null;
+        }
+    }
+
+    public boolean setChallenge(ByteArray challenge) {
+        if (step.equals(Step.Initial)) {
+            if (challenge == null) {
+                return false;
+            }
+            initialServerMessage = challenge;
+
+            Map<Character, String> keys = parseMap(initialServerMessage.toString());
+
+            // Extract the salt
+            ByteArray salt = Base64.decode(keys.get('s'));
+
+            // Extract the server nonce
+            String clientServerNonce = keys.get('r');
+            if (clientServerNonce.length() <= clientnonce.length()) {
+                return false;
+            }
+            String receivedClientNonce = clientServerNonce.substring(0, clientnonce.length());
+            if (!receivedClientNonce.equals(clientnonce)) {
+                return false;
+            }
+            serverNonce = new ByteArray(clientServerNonce.substring(clientnonce.length()));
+
+
+            // Extract the number of iterations
+            int iterations = 0;
+            try {
+                iterations = Integer.parseInt(keys.get('i'));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (iterations <= 0) {
+                return false;
+            }
+
+            //Not Sure, why this here.
+            ByteArray channelBindData = new ByteArray();
+            if (useChannelBinding && tlsChannelBindingData != null) {
+                channelBindData = tlsChannelBindingData;
+            }
+
+            // Compute all the values needed for the server signature
+            try {
+                saltedPassword = getSaltedPassword(idnConverter.getStringPrepared(getPassword(), IDNConverter.StringPrepProfile.SASLPrep), salt, iterations);
+            } catch (IllegalArgumentException e) {
+
+            }
+            authMessage = getInitialBareClientMessage().append(",").append(initialServerMessage).append(",").append(getFinalMessageWithoutProof());
+            ByteArray serverKey = createHMAC(saltedPassword).update(new ByteArray("Server Key")).getHMAC();
+            serverSignature = createHMAC(serverKey).update(authMessage).getHMAC();
+
+            step = Step.Proof;
+            return true;
+        } else if (step.equals(step.Proof)) {
+            ByteArray result = new ByteArray("v=").append(new ByteArray(Base64.encode(serverSignature)));
+            step = Step.Final;
+            return challenge != null && challenge.equals(result);
+        } else {
+            return true;
+        }
+    }
+
+    private ByteArray getSaltedPassword(SafeByteArray password, ByteArray salt, int iterations) {
+        if (saltedPasswordCache == null) {
+            return PBKDF2.encode(createHMAC(password), salt, iterations);
+        }
+        ByteArray key = SCRAMSaltedPasswordCache.createKey(mechanism, password, salt, iterations, crypto);
+        ByteArray result = saltedPasswordCache.get(key);
+        if (result == null) {
+            result = PBKDF2.encode(createHMAC(password), salt, iterations);
+            saltedPasswordCache.put(key, result);
+        }
+        return result;
+    }
+
+    private Map<Character, String> parseMap(String s) {
+        HashMap<Character, String> result = new HashMap<Character, String>();
+        if (s.length() > 0) {
+            char key = '~'; /* initialise so it'll compile */
+            String value = "";
+            int i = 0;
+            boolean expectKey = true;
+            while (i < s.length()) {
+                if (expectKey) {
+                    key = s.charAt(i);
+                    expectKey = false;
+                    i++;
+                } else if (s.charAt(i) == ',') {
+                    result.put(key, value);
+                    value = "";
+                    expectKey = true;
+                } else {
+                    value += s.charAt(i);
+                }
+                i++;
+            }
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    private ByteArray getInitialBareClientMessage() {
+        String authenticationID = "";
+        try {
+            authenticationID = idnConverter.getStringPrepared(getAuthenticationID(), IDNConverter.StringPrepProfile.SASLPrep);
+        } catch (IllegalArgumentException e) {
+
+        }
+        return new ByteArray("n=" + escape(authenticationID) + ",r=" + clientnonce);
+    }
+
+    private ByteArray getGS2Header() {
+
+        ByteArray channelBindingHeader = new ByteArray("n");
+	if (tlsChannelBindingData != null) {
+		if (useChannelBinding) {
+			channelBindingHeader = new ByteArray("p=tls-unique");
+		}
+		else {
+			channelBindingHeader = new ByteArray("y");
+		}
+	}
+	return new ByteArray().append(channelBindingHeader).append(",").append(getAuthorizationID().isEmpty() ? new ByteArray() : new ByteArray("a=" + escape(getAuthorizationID()))).append(",");
+    }
+
+    private ByteArray getFinalMessageWithoutProof() {
+        ByteArray channelBindData = new ByteArray();
+	if (useChannelBinding && tlsChannelBindingData != null) {
+		channelBindData = tlsChannelBindingData;
+	}
+	return new ByteArray("c=" + Base64.encode(new ByteArray(getGS2Header()).append(channelBindData)) + ",r=" + clientnonce).append(serverNonce);
+    }
+
+    private enum Step {
+
+        Initial,
+        Proof,
+        Final
+    };
+    private final String mechanism;
+    private Step step;
+    private String clientnonce = "";
+    private ByteArray initialServerMessage = new ByteArray();
+    private ByteArray serverNonce = new ByteArray();
+    private ByteArray authMessage = new ByteArray();
+    private ByteArray saltedPassword = new ByteArray();
+    private ByteArray serverSignature = new ByteArray();
+    private boolean useChannelBinding;
+    private ByteArray tlsChannelBindingData;
+    private IDNConverter idnConverter;
+    private final CryptoProvider crypto;
+    private SCRAMSaltedPasswordCache saltedPasswordCache;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.sasl;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.crypto.HMAC;
+import com.isode.stroke.idn.IDNConverter;
+
+/**
+ * SCRAM-SHA-256 (RFC 7677).
+ */
+public class SCRAMSHA256ClientAuthenticator extends SCRAMClientAuthenticator {
+
+    public SCRAMSHA256ClientAuthenticator(String nonce, boolean useChannelBinding, IDNConverter idnConverter, CryptoProvider crypto) {
+        super("SCRAM-SHA-256", nonce, useChannelBinding, idnConverter, crypto);
+    }
+
+    @Override
+    protected HMAC createHMAC(ByteArray key) {
+        return getCrypto().createHMACSHA256(key);
+    }
+
+    @Override
+    protected ByteArray getHash(ByteArray data) {
+        return getCrypto().getSHA256Hash(data);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.sasl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.stringcodecs.Base64;
+
+/**
+ * Remembers the salted passwords computed by SCRAM authenticators, which
+ * take thousands of HMAC iterations each, so that authenticating again with
+ * the same password, salt and iteration count (such as when a client
+ * reconnects) needs none.
+ *
+ * <p>A salted password is as good as the password for authenticating with
+ * SCRAM, so a cache should only be shared between clients trusted with each
+ * other's passwords. Entries are found by a hash of the password and other
+ * parameters, so the password itself is not kept. The number of entries is
+ * bounded, least recently used entries being dropped first. Instances are
+ * thread-safe.
+ */
+public class SCRAMSaltedPasswordCache {
+
+    /** Default number of salted passwords kept */
+    public static final int DEFAULT_MAXIMUM_ENTRIES = 1024;
+
+    public SCRAMSaltedPasswordCache() {
+        this(DEFAULT_MAXIMUM_ENTRIES);
+    }
+
+    /**
+     * @param maximumEntries most salted passwords to keep
+     */
+    public SCRAMSaltedPasswordCache(final int maximumEntries) {
+        entries_ = new LinkedHashMap<ByteArray, ByteArray>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArray, ByteArray> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    /**
+     * Forget all salted passwords.
+     */
+    public synchronized void clear() {
+        entries_.clear();
+    }
+
+    /**
+     * @return number of salted passwords kept
+     */
+    public synchronized int size() {
+        return entries_.size();
+    }
+
+    /**
+     * @return number of salted passwords found in the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount_;
+    }
+
+    /**
+     * @return number of salted passwords not found, which had to be
+     * computed
+     */
+    public synchronized long getMissCount() {
+        return missCount_;
+    }
+
+    /**
+     * @param mechanism SCRAM mechanism without "-PLUS", since the salted
+     * password depends on the hash function
+     * @return the key to find a salted password by
+     */
+    static ByteArray createKey(String mechanism, SafeByteArray password, ByteArray salt, int iterations, CryptoProvider crypto) {
+        SafeByteArray keyData = new SafeByteArray(mechanism + "\0" + iterations + "\0" + Base64.encode(salt) + "\0");
+        keyData.append(password);
+        return crypto.getSHA256Hash(keyData);
+    }
+
+    synchronized ByteArray get(ByteArray key) {
+        ByteArray saltedPassword = entries_.get(key);
+        if (saltedPassword == null) {
+            missCount_++;
+            return null;
+        }
+        hitCount_++;
+        return new ByteArray(saltedPassword);
+    }
+
+    synchronized void put(ByteArray key, ByteArray saltedPassword) {
+        entries_.put(key, new ByteArray(saltedPassword));
+    }
+
+    private final Map<ByteArray, ByteArray> entries_;
+    private long hitCount_;
+    private long missCount_;
+}
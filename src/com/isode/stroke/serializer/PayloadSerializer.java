@@ -10,6 +10,7 @@
 package com.isode.stroke.serializer;
 
 import com.isode.stroke.elements.Payload;
+import com.isode.stroke.serializer.xml.XMLWriter;
 
 /**
  * Serialise a particular payload.
@@ -17,4 +18,15 @@ import com.isode.stroke.elements.Payload;
 public abstract class PayloadSerializer {
     public abstract boolean canSerialize(Payload payload);
     public abstract String serialize(Payload payload);
+
+    /**
+     * Serialise the payload straight into a writer. This implementation
+     * appends the result of {@link #serialize(Payload)}; serialisers that can
+     * write their output directly should override it.
+     * @param payload payload to serialise, must not be null
+     * @param writer writer to append to, must not be null
+     */
+    public void serialize(Payload payload, XMLWriter writer) {
+        writer.append(serialize(payload));
+    }
 }
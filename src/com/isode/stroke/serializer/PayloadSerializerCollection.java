@@ -10,31 +10,68 @@ package com.isode.stroke.serializer;
 
 import com.isode.stroke.elements.Payload;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Collection of payload serializers.
+ *
+ * <p>The serializer chosen for a payload is remembered against the payload's
+ * class, so {@link PayloadSerializer#canSerialize} must give the same answer
+ * for all payloads of one class (as it does for every
+ * {@link GenericPayloadSerializer}). Once a class has been seen, lookups for
+ * it do not lock.
+ */
 public class PayloadSerializerCollection {
 
     private final Vector<PayloadSerializer> serializers_ = new Vector<PayloadSerializer>();
+    private volatile ConcurrentHashMap<Class<?>, PayloadSerializer> serializersByClass_ =
+            new ConcurrentHashMap<Class<?>, PayloadSerializer>();
+
+    /* Stands in for "no serializer" in serializersByClass_, which can't hold null */
+    private static final PayloadSerializer NO_SERIALIZER = new PayloadSerializer() {
+        public boolean canSerialize(Payload payload) {
+            return false;
+        }
+
+        public String serialize(Payload payload) {
+            return "";
+        }
+    };
 
     public void addSerializer(PayloadSerializer serializer) {
         synchronized (serializers_) {
             serializers_.add(serializer);
+            serializersByClass_ = new ConcurrentHashMap<Class<?>, PayloadSerializer>();
         }
     }
 
     public void removeSerializer(PayloadSerializer serializer) {
-        while(serializers_.contains(serializer)) {
-            serializers_.remove(serializer);
+        synchronized (serializers_) {
+            while(serializers_.contains(serializer)) {
+                serializers_.remove(serializer);
+            }
+            serializersByClass_ = new ConcurrentHashMap<Class<?>, PayloadSerializer>();
         }
     }
 
     public PayloadSerializer getPayloadSerializer(Payload payload) {
-        synchronized (serializers_) {
-            for (PayloadSerializer serializer : serializers_) {
-                if (serializer.canSerialize(payload)) {
-                    return serializer;
+        final ConcurrentHashMap<Class<?>, PayloadSerializer> serializersByClass = serializersByClass_;
+        PayloadSerializer result = serializersByClass.get(payload.getClass());
+        if (result == null) {
+            result = NO_SERIALIZER;
+            synchronized (serializers_) {
+                for (PayloadSerializer serializer : serializers_) {
+                    if (serializer.canSerialize(payload)) {
+                        result = serializer;
+                        break;
+                    }
                 }
             }
+            /* If the collection changed meanwhile, this goes into the
+             * discarded map and is harmless
+             */
+            serializersByClass.put(payload.getClass(), result);
         }
-        return null;
+        return result == NO_SERIALIZER ? null : result;
     }
 }
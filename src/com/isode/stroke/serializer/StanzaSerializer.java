@@ -8,11 +8,11 @@ import com.isode.stroke.elements.Element;
 import com.isode.stroke.elements.Payload;
 import com.isode.stroke.elements.Stanza;
 import com.isode.stroke.serializer.xml.XMLElement;
-import com.isode.stroke.serializer.xml.XMLRawTextNode;
+import com.isode.stroke.serializer.xml.XMLWriter;
 import java.util.logging.Logger;
 import com.isode.stroke.base.SafeByteArray;
 
-public abstract class StanzaSerializer implements ElementSerializer {
+public abstract class StanzaSerializer implements StreamingElementSerializer {
 
     private final String tag_;
     private final PayloadSerializerCollection payloadSerializers_;
@@ -39,6 +39,16 @@ public abstract class StanzaSerializer implements ElementSerializer {
     }
 
     public SafeByteArray serialize(Element element, String xmlns) {
+        XMLWriter writer = new XMLWriter();
+        serialize(element, xmlns, writer);
+        return writer.toSafeByteArray();
+    }
+
+    public void serialize(Element element, XMLWriter writer) {
+        serialize(element, (explicitDefaultNS_ != null) ? explicitDefaultNS_ : "", writer);
+    }
+
+    public void serialize(Element element, String xmlns, XMLWriter writer) {
         assert element != null;
         assert payloadSerializers_ != null;
         Stanza stanza = (Stanza) element;
@@ -54,11 +64,19 @@ public abstract class StanzaSerializer implements ElementSerializer {
         }
         setStanzaSpecificAttributes(stanza, stanzaElement);
 
-        StringBuilder serializedPayloads = new StringBuilder();
+        /* The element has no children, so is written as an empty element
+         * tag ending in "/>"; reopen it if any payloads produce output */
+        stanzaElement.serialize(writer);
+        if (stanza.getPayloads().isEmpty()) {
+            return;
+        }
+        writer.truncate(writer.getSize() - 2);
+        writer.append(">");
+        final int payloadsStart = writer.getSize();
         for (Payload payload : stanza.getPayloads()) {
             PayloadSerializer serializer = payloadSerializers_.getPayloadSerializer(payload);
             if (serializer != null) {
-                serializedPayloads.append(serializer.serialize(payload));
+                serializer.serialize(payload, writer);
             } else {
                 /*TODO: port*/
                 assert false;
@@ -66,10 +84,13 @@ public abstract class StanzaSerializer implements ElementSerializer {
                 //std::cerr << "Could not find serializer for " << typeid(*(payload.get())).name() << std::endl;
             }
         }
-        if (serializedPayloads.toString().length()!=0) {
-            stanzaElement.addNode(new XMLRawTextNode(serializedPayloads.toString()));
+        if (writer.getSize() == payloadsStart) {
+            writer.truncate(payloadsStart - 1);
+            writer.append("/>");
+        }
+        else {
+            writer.append("</").append(tag_).append(">");
         }
-        return new SafeByteArray(stanzaElement.serialize());
     }
 
     public abstract void setStanzaSpecificAttributes(Element element, XMLElement xmlElement);
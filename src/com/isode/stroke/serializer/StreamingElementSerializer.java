@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+
+package com.isode.stroke.serializer;
+
+import com.isode.stroke.elements.Element;
+import com.isode.stroke.serializer.xml.XMLWriter;
+
+/**
+ * An {@link ElementSerializer} which can write its output straight into an
+ * {@link XMLWriter}, rather than building a {@link com.isode.stroke.base.SafeByteArray}
+ * for each element.
+ */
+public interface StreamingElementSerializer extends ElementSerializer {
+    /**
+     * Serialise the element into a writer. The output must be the same as
+     * that of {@link #serialize(Element)}.
+     * @param element element to serialise, must not be null
+     * @param writer writer to append to, must not be null
+     */
+    void serialize(Element element, XMLWriter writer);
+}
@@ -13,6 +13,7 @@ import com.isode.stroke.elements.ProtocolHeader;
 import com.isode.stroke.elements.StreamType;
 import java.util.Vector;
 import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.serializer.xml.XMLWriter;
 
 public class XMPPSerializer {
 
@@ -91,4 +92,25 @@ public class XMPPSerializer {
         //assert false; /* UNKNOWN ELEMENT */
         //return "";
     }
+
+    /**
+     * Serialise an element into a writer, without building an intermediate
+     * SafeByteArray when the element's serialiser supports streaming.
+     * @param element element to serialise, must not be null
+     * @param writer writer to append to, must not be null
+     */
+    public void serializeElement(Element element, XMLWriter writer) {
+        for (ElementSerializer serializer : serializers_) {
+            if (serializer.canSerialize(element)) {
+                if (serializer instanceof StreamingElementSerializer) {
+                    ((StreamingElementSerializer) serializer).serialize(element, writer);
+                }
+                else {
+                    writer.append(serializer.serialize(element));
+                }
+                return;
+            }
+        }
+        throw new IllegalStateException("Trying to send an unknown element");
+    }
 }
@@ -9,8 +9,10 @@
 package com.isode.stroke.serializer.payloadserializers;
 
 import com.isode.stroke.elements.Body;
+import com.isode.stroke.elements.Payload;
 import com.isode.stroke.serializer.GenericPayloadSerializer;
 import com.isode.stroke.serializer.xml.XMLTextNode;
+import com.isode.stroke.serializer.xml.XMLWriter;
 
 /**
  * Body to String.
@@ -26,4 +28,10 @@ public class BodySerializer extends GenericPayloadSerializer<Body> {
         XMLTextNode textNode = new XMLTextNode(body.getText());
         return "<body>" + textNode.serialize() + "</body>";
     }
+
+    @Override
+    public void serialize(Payload payload, XMLWriter writer) {
+        String text = ((Body)payload).getText();
+        writer.append("<body>").appendEscapedText(text != null ? text : "").append("</body>");
+    }
 }
@@ -38,31 +38,52 @@ public class XMLElement implements XMLNode {
 
     public String serialize() {
         StringBuilder result = new StringBuilder();
+        serialize(result);
+        return result.toString();
+    }
+
+    /* Child elements append to the same builder rather than each building
+     * a String of their own */
+    private void serialize(StringBuilder result) {
         result.append("<").append(tag_);
-        for (String key : attributes_.keySet()) {
-            result.append(" ").append(key).append("=\"").append(attributes_.get(key)).append("\"");
+        for (Map.Entry<String, String> attribute : attributes_.entrySet()) {
+            result.append(" ").append(attribute.getKey()).append("=\"").append(attribute.getValue()).append("\"");
         }
 
         if (childNodes_.size() > 0) {
             result.append(">");
             for (XMLNode node : childNodes_) {
-                result.append(node.serialize());
+                if (node instanceof XMLElement) {
+                    ((XMLElement) node).serialize(result);
+                } else {
+                    result.append(node.serialize());
+                }
             }
             result.append("</").append(tag_).append(">");
         } else {
             result.append("/>");
         }
-        return result.toString();
+    }
+
+    public void serialize(XMLWriter writer) {
+        writer.append("<").append(tag_);
+        for (Map.Entry<String, String> attribute : attributes_.entrySet()) {
+            writer.append(" ").append(attribute.getKey()).append("=\"").append(attribute.getValue()).append("\"");
+        }
+
+        if (childNodes_.size() > 0) {
+            writer.append(">");
+            for (XMLNode node : childNodes_) {
+                node.serialize(writer);
+            }
+            writer.append("</").append(tag_).append(">");
+        } else {
+            writer.append("/>");
+        }
     }
 
     public void setAttribute(String attribute, String value) {
-        String escapedValue = value;
-        escapedValue = escapedValue.replaceAll("&", "&amp;");
-        escapedValue = escapedValue.replaceAll("<", "&lt;");
-        escapedValue = escapedValue.replaceAll(">", "&gt;");
-        escapedValue = escapedValue.replaceAll("'", "&apos;");
-        escapedValue = escapedValue.replaceAll("\"", "&quot;");
-        attributes_.put(attribute, escapedValue);
+        attributes_.put(attribute, XMLWriter.escapeAttributeValue(value));
     }
 
     public void addNode(XMLNode node) {
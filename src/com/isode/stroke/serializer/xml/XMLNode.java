@@ -11,4 +11,11 @@ package com.isode.stroke.serializer.xml;
 
 public interface XMLNode {
     public String serialize();
+
+    /**
+     * Write the serialized node to a writer. The output must be the same as
+     * that of {@link #serialize()}.
+     * @param writer writer to append to, must not be null
+     */
+    public void serialize(XMLWriter writer);
 }
@@ -19,4 +19,8 @@ public class XMLRawTextNode implements XMLNode {
     public String serialize() {
         return text_;
     }
+
+    public void serialize(XMLWriter writer) {
+        writer.append(text_);
+    }
 }
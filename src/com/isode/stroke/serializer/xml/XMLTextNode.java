@@ -9,16 +9,17 @@ public class XMLTextNode implements XMLNode {
     private String text_;
 
     public XMLTextNode(String text) {
-        text_ = text != null ? text : "";
-        text_ = text_.replaceAll("&", "&amp;"); // Should come first
-        text_ = text_.replaceAll("<", "&lt;");
-        text_ = text_.replaceAll(">", "&gt;");
+        text_ = text != null ? XMLWriter.escapeText(text) : "";
     }
 
     public String serialize() {
         return text_;
     }
 
+    public void serialize(XMLWriter writer) {
+        writer.append(text_);
+    }
+
     /**
      * Create new object.
      * 
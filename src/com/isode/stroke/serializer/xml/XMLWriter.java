@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016, Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.serializer.xml;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.SafeByteArray;
+
+/**
+ * A sink for serialized XML which encodes straight to UTF-8 into a buffer
+ * that can be reused for many elements. Text written through the escaping
+ * methods is escaped in the same pass as it is encoded.
+ *
+ * <p>Instances are not thread-safe; a typical use is one writer per stream,
+ * cleared after each element has been taken with {@link #toSafeByteArray()}.
+ */
+public class XMLWriter {
+
+    /**
+     * Create a new, empty writer
+     */
+    public XMLWriter() {
+    }
+
+    /**
+     * Append markup or already-escaped text without escaping it.
+     * @param raw text to append, must not be null
+     * @return this writer
+     */
+    public XMLWriter append(String raw) {
+        final int length = raw.length();
+        ensureCapacity(size_ + length);
+        for (int i = 0; i < length; i++) {
+            final char c = raw.charAt(i);
+            if (c < 0x80 && size_ < buffer_.length) {
+                buffer_[size_++] = (byte) c;
+            } else {
+                i = appendChar(raw, i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append bytes which are already UTF-8 encoded markup.
+     * @param data bytes to append, must not be null
+     * @return this writer
+     */
+    public XMLWriter append(ByteArray data) {
+        final ByteBuffer bytes = data.asByteBuffer();
+        final int length = bytes.remaining();
+        ensureCapacity(size_ + length);
+        bytes.get(buffer_, size_, length);
+        size_ += length;
+        return this;
+    }
+
+    /**
+     * Append character data, escaping '&amp;', '&lt;' and '&gt;'.
+     * @param text text to append, must not be null
+     * @return this writer
+     */
+    public XMLWriter appendEscapedText(String text) {
+        return appendEscaped(text, false);
+    }
+
+    /**
+     * Append an attribute value, escaping quotes as well as the characters
+     * escaped by {@link #appendEscapedText(String)}. The surrounding quotes
+     * are not written.
+     * @param value value to append, must not be null
+     * @return this writer
+     */
+    public XMLWriter appendEscapedAttributeValue(String value) {
+        return appendEscaped(value, true);
+    }
+
+    /**
+     * @return number of bytes written since the writer was created or last
+     * cleared
+     */
+    public int getSize() {
+        return size_;
+    }
+
+    /**
+     * Discard everything written after the first <em>size</em> bytes.
+     * @param size number of bytes to keep, no more than {@link #getSize()}
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > size_) {
+            throw new IndexOutOfBoundsException("Cannot truncate " + size_ + " bytes to " + size);
+        }
+        size_ = size;
+    }
+
+    /**
+     * Discard everything written, keeping the buffer for reuse.
+     */
+    public void clear() {
+        size_ = 0;
+    }
+
+    /**
+     * @return a copy of everything written, never null
+     */
+    public SafeByteArray toSafeByteArray() {
+        return new SafeByteArray(buffer_, 0, size_);
+    }
+
+    /**
+     * @return everything written, decoded as a String
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(buffer_, 0, size_, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("JVM has no 'UTF-8' encoding");
+        }
+    }
+
+    /**
+     * Escape character data in a single pass.
+     * @param text text to escape, must not be null
+     * @return the escaped text, which is <em>text</em> itself if nothing
+     * needed escaping
+     */
+    public static String escapeText(String text) {
+        return escape(text, false);
+    }
+
+    /**
+     * Escape an attribute value in a single pass.
+     * @param value value to escape, must not be null
+     * @return the escaped value, which is <em>value</em> itself if nothing
+     * needed escaping
+     */
+    public static String escapeAttributeValue(String value) {
+        return escape(value, true);
+    }
+
+    private static String escape(String text, boolean attribute) {
+        final int length = text.length();
+        int i = 0;
+        while (i < length && getEscape(text.charAt(i), attribute) == null) {
+            i++;
+        }
+        if (i == length) {
+            return text;
+        }
+        final StringBuilder result = new StringBuilder(length + 16);
+        result.append(text, 0, i);
+        for (; i < length; i++) {
+            final char c = text.charAt(i);
+            final String escape = getEscape(c, attribute);
+            if (escape != null) {
+                result.append(escape);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String getEscape(char c, boolean attribute) {
+        switch (c) {
+            case '&': return "&amp;";
+            case '<': return "&lt;";
+            case '>': return "&gt;";
+            case '\'': return attribute ? "&apos;" : null;
+            case '"': return attribute ? "&quot;" : null;
+            default: return null;
+        }
+    }
+
+    private XMLWriter appendEscaped(String text, boolean attribute) {
+        final int length = text.length();
+        ensureCapacity(size_ + length);
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            final String escape = getEscape(c, attribute);
+            if (escape != null) {
+                append(escape);
+            } else if (c < 0x80 && size_ < buffer_.length) {
+                buffer_[size_++] = (byte) c;
+            } else {
+                i = appendChar(text, i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Encode the character at index i (and the following low surrogate, if
+     * it is a high surrogate) as UTF-8.
+     * @return index of the last char consumed
+     */
+    private int appendChar(String s, int i) {
+        int codePoint = s.charAt(i);
+        if (Character.isHighSurrogate((char) codePoint) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+            codePoint = Character.toCodePoint((char) codePoint, s.charAt(i + 1));
+            i++;
+        } else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            codePoint = '?'; /* Unpaired surrogate, as String.getBytes would do */
+        }
+        ensureCapacity(size_ + 4);
+        if (codePoint < 0x80) {
+            buffer_[size_++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer_[size_++] = (byte) (0xc0 | (codePoint >> 6));
+            buffer_[size_++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            buffer_[size_++] = (byte) (0xe0 | (codePoint >> 12));
+            buffer_[size_++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer_[size_++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+            buffer_[size_++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer_[size_++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer_[size_++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer_[size_++] = (byte) (0x80 | (codePoint & 0x3f));
+        }
+        return i;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer_.length) {
+            buffer_ = Arrays.copyOf(buffer_, Math.max(capacity, buffer_.length * 2));
+        }
+    }
+
+    private byte[] buffer_ = new byte[256];
+    private int size_ = 0;
+}
@@ -238,6 +238,11 @@ public class BOSHSessionStream extends SessionStream implements EventOwner {
         xmppLayer_.writeElement(element);
     }
 
+    @Override
+    public int getLastElementSize() {
+        return xmppLayer_.getLastElementSize();
+    }
+
     @Override
     public void writeData(String data) {
         assert(available_);
@@ -135,6 +135,11 @@ public class BasicSessionStream extends SessionStream {
         xmppLayer.writeElement(element);
     }
 
+    @Override
+    public int getLastElementSize() {
+        return xmppLayer.getLastElementSize();
+    }
+
     public void writeFooter() {
         assert available;
         xmppLayer.writeFooter();
@@ -176,7 +181,7 @@ public class BasicSessionStream extends SessionStream {
                     handleTLSConnected();
                 }
             });
-            tlsLayer.connect();
+            tlsLayer.connect(connection.getRemoteAddress());
         }
     }
 
@@ -52,6 +52,18 @@ public abstract class SessionStream {
 
     public abstract void writeData(String data);
 
+    /**
+     * @return size in bytes of the element last written with
+     * {@link #writeElement(Element)}, as serialized, before any
+     * compression, encryption or transport framing, or 0 if not known.
+     * Unlike {@link #onDataWritten}, this does not depend on how the
+     * stream is carried, so can be used to count the bytes of stanzas
+     * over BOSH as well as TCP.
+     */
+    public int getLastElementSize() {
+        return 0;
+    }
+
     public abstract boolean supportsZLibCompression();
 
     public abstract void addZLibCompression();
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2011 Isode Limited, London, England.
+ * Copyright (c) 2011-2016 Isode Limited, London, England.
  * All rights reserved.
  */
 /*
@@ -10,46 +10,282 @@ package com.isode.stroke.streammanagement;
 
 import com.isode.stroke.elements.Message;
 import com.isode.stroke.elements.Stanza;
+import com.isode.stroke.network.Timer;
+import com.isode.stroke.network.TimerFactory;
 import com.isode.stroke.signals.Signal;
 import com.isode.stroke.signals.Signal1;
-import java.util.ArrayList;
-import java.util.List;
+import com.isode.stroke.signals.Slot;
 
+/**
+ * Keeps the stanzas sent on a stream until the server acknowledges them,
+ * and decides when to ask it to (XEP-0198).
+ *
+ * <p>By default an ack is requested after every {@link Message}. Setting
+ * any of {@link #setAckRequestStanzaCount(int)},
+ * {@link #setAckRequestByteCount(long)} or
+ * {@link #setAckRequestInterval(long)} replaces that with a request once
+ * the given number of stanzas or bytes has been sent, or the given time
+ * has passed, since the last request; whichever comes first.
+ */
 public class StanzaAckRequester {
 
     static final long MAX_HANDLED_STANZA_COUNT = Long.parseLong("4294967295"); //boost::numeric_cast<unsigned int>((1ULL<<32) - 1);
 
     public StanzaAckRequester() {
+        this(null);
+    }
+
+    /**
+     * @param timerFactory factory for the timer used by
+     * {@link #setAckRequestInterval(long)}, may be null if that is not used
+     */
+    public StanzaAckRequester(TimerFactory timerFactory) {
         this.lastHandledStanzasCount = 0L;
+        this.timerFactory = timerFactory;
+    }
+
+    /**
+     * @param count request an ack once this many stanzas have been sent
+     * since the last request, or 0 not to count stanzas
+     */
+    public void setAckRequestStanzaCount(int count) {
+        ackRequestStanzaCount = Math.max(0, count);
+    }
+
+    /**
+     * @param bytes request an ack once this many bytes of stanzas have been
+     * sent since the last request, or 0 not to count bytes
+     */
+    public void setAckRequestByteCount(long bytes) {
+        ackRequestByteCount = Math.max(0, bytes);
+    }
+
+    /**
+     * @param milliseconds request an ack this long after the first stanza
+     * sent since the last request, or 0 for no time limit. Needs a
+     * TimerFactory to have been given to the constructor.
+     */
+    public void setAckRequestInterval(long milliseconds) {
+        if (milliseconds > 0 && timerFactory == null) {
+            throw new IllegalStateException("An ack request interval needs a TimerFactory");
+        }
+        if (intervalTimer != null) {
+            intervalTimer.stop();
+            intervalTimer.onTick.disconnectAll();
+            intervalTimer = null;
+        }
+        ackRequestInterval = Math.max(0, milliseconds);
+        if (ackRequestInterval > 0) {
+            intervalTimer = timerFactory.createTimer(ackRequestInterval);
+            intervalTimer.onTick.connect(new Slot() {
+                public void call() {
+                    if (stanzasSinceRequest > 0) {
+                        requestAck();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Limit the number of stanzas kept waiting for an ack. When the limit
+     * is reached an ack is requested; if more stanzas are sent before it
+     * arrives the oldest are forgotten, and will not be reported by
+     * {@link #onStanzaAcked}.
+     * @param count maximum number of unacked stanzas kept, or 0 (the
+     * default) for no limit
+     */
+    public void setMaxUnackedStanzas(int count) {
+        maxUnackedStanzas = Math.max(0, count);
+        while (maxUnackedStanzas > 0 && unackedCount > maxUnackedStanzas) {
+            dropOldest();
+        }
     }
 
     public void handleStanzaSent(Stanza stanza) {
-        unackedStanzas.add(stanza);
-        if (stanza instanceof Message) {
-            onRequestAck.emit();
+        handleStanzaSent(stanza, 0);
+    }
+
+    /**
+     * @param stanza the stanza sent
+     * @param bytes size of the stanza as written to the stream, used by
+     * {@link #setAckRequestByteCount(long)}
+     */
+    public void handleStanzaSent(Stanza stanza, int bytes) {
+        if (maxUnackedStanzas > 0 && unackedCount == maxUnackedStanzas) {
+            dropOldest();
+        }
+        push(stanza);
+        maximumUnackedCount = Math.max(maximumUnackedCount, unackedCount);
+        if (stanzasSinceRequest++ == 0 && intervalTimer != null) {
+            intervalTimer.start();
+        }
+        bytesSinceRequest += bytes;
+
+        boolean request;
+        if (ackRequestStanzaCount == 0 && ackRequestByteCount == 0 && ackRequestInterval == 0) {
+            request = stanza instanceof Message;
+        }
+        else {
+            request = (ackRequestStanzaCount > 0 && stanzasSinceRequest >= ackRequestStanzaCount)
+                    || (ackRequestByteCount > 0 && bytesSinceRequest >= ackRequestByteCount);
+        }
+        if (!request && maxUnackedStanzas > 0 && unackedCount == maxUnackedStanzas && ackRequestedAt == 0) {
+            /* Full, so ask the server to let us free some space */
+            request = true;
+        }
+        if (request) {
+            requestAck();
         }
     }
 
     public void handleAckReceived(long handledStanzasCount) {
+        if (ackRequestedAt != 0) {
+            final long roundTrip = System.nanoTime() - ackRequestedAt;
+            ackRoundTripCount++;
+            totalAckRoundTripNanos += roundTrip;
+            maximumAckRoundTripNanos = Math.max(maximumAckRoundTripNanos, roundTrip);
+            ackRequestedAt = 0;
+        }
         long i = lastHandledStanzasCount;
         while (i != handledStanzasCount) {
-            if (unackedStanzas.isEmpty()) {
+            if (droppedUnackedCount > 0) {
+                droppedUnackedCount--;
+            }
+            else if (unackedCount == 0) {
                 System.err.println("Warning: Server acked more stanzas than we sent");
                 break;
             }
-            Stanza ackedStanza = unackedStanzas.get(0);
-            unackedStanzas.remove(0);
-            onStanzaAcked.emit(ackedStanza);
+            else {
+                onStanzaAcked.emit(pop());
+            }
             i = (i == MAX_HANDLED_STANZA_COUNT ? 0 : i + 1);
         }
         lastHandledStanzasCount = handledStanzasCount;
     }
 
+    /**
+     * @return number of stanzas waiting to be acked
+     */
+    public int getUnackedCount() {
+        return unackedCount;
+    }
+
+    /**
+     * @return largest number of stanzas that have been waiting to be acked
+     * at once
+     */
+    public int getMaximumUnackedCount() {
+        return maximumUnackedCount;
+    }
+
+    /**
+     * @return number of unacked stanzas forgotten because of
+     * {@link #setMaxUnackedStanzas(int)}
+     */
+    public long getDroppedStanzaCount() {
+        return droppedStanzaCount;
+    }
+
+    /**
+     * @return number of acks requested
+     */
+    public long getAckRequestCount() {
+        return ackRequestCount;
+    }
+
+    /**
+     * @return number of acks received in answer to a request
+     */
+    public long getAckRoundTripCount() {
+        return ackRoundTripCount;
+    }
+
+    /**
+     * @return total time from the oldest unanswered ack request to the ack
+     * answering it. Divided by {@link #getAckRoundTripCount()} this gives
+     * the mean round-trip time.
+     */
+    public long getTotalAckRoundTripMilliseconds() {
+        return totalAckRoundTripNanos / 1000000;
+    }
+
+    /**
+     * @return longest time any ack request has waited for an answer
+     */
+    public long getMaximumAckRoundTripMilliseconds() {
+        return maximumAckRoundTripNanos / 1000000;
+    }
+
+    private void requestAck() {
+        stanzasSinceRequest = 0;
+        bytesSinceRequest = 0;
+        if (intervalTimer != null) {
+            intervalTimer.stop();
+        }
+        if (ackRequestedAt == 0) {
+            ackRequestedAt = System.nanoTime();
+        }
+        ackRequestCount++;
+        onRequestAck.emit();
+    }
+
+    private void push(Stanza stanza) {
+        if (unackedCount == unackedStanzas.length) {
+            final Stanza[] grown = new Stanza[unackedStanzas.length * 2];
+            for (int i = 0; i < unackedCount; i++) {
+                grown[i] = unackedStanzas[(unackedHead + i) % unackedStanzas.length];
+            }
+            unackedStanzas = grown;
+            unackedHead = 0;
+        }
+        unackedStanzas[(unackedHead + unackedCount) % unackedStanzas.length] = stanza;
+        unackedCount++;
+    }
+
+    private Stanza pop() {
+        final Stanza stanza = unackedStanzas[unackedHead];
+        unackedStanzas[unackedHead] = null;
+        unackedHead = (unackedHead + 1) % unackedStanzas.length;
+        unackedCount--;
+        return stanza;
+    }
+
+    private void dropOldest() {
+        pop();
+        droppedUnackedCount++;
+        droppedStanzaCount++;
+    }
+
     public Signal onRequestAck = new Signal();
 
     public Signal1<Stanza> onStanzaAcked = new Signal1<Stanza>();
 
     long lastHandledStanzasCount;
 
-    List<Stanza> unackedStanzas = new ArrayList<Stanza>();
+    private final TimerFactory timerFactory;
+    private Timer intervalTimer;
+    private int ackRequestStanzaCount;
+    private long ackRequestByteCount;
+    private long ackRequestInterval;
+    private int maxUnackedStanzas;
+
+    /* Ring buffer of unacked stanzas, oldest at unackedHead */
+    private Stanza[] unackedStanzas = new Stanza[16];
+    private int unackedHead;
+    private int unackedCount;
+    /* Stanzas the server has yet to ack which have been dropped from the
+     * front of the ring */
+    private long droppedUnackedCount;
+
+    private int stanzasSinceRequest;
+    private long bytesSinceRequest;
+    private long ackRequestedAt;
+
+    private int maximumUnackedCount;
+    private long droppedStanzaCount;
+    private long ackRequestCount;
+    private long ackRoundTripCount;
+    private long totalAckRoundTripNanos;
+    private long maximumAckRoundTripNanos;
 }
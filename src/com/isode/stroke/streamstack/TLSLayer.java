@@ -12,6 +12,7 @@ package com.isode.stroke.streamstack;
 import java.util.List;
 
 import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.network.HostAddressPort;
 import com.isode.stroke.signals.Signal;
 import com.isode.stroke.signals.Signal1;
 import com.isode.stroke.signals.Slot1;
@@ -47,6 +48,15 @@ public class TLSLayer extends StreamLayer {
         context.connect();
     }
 
+    public void connect(HostAddressPort peer) {
+        if (peer != null && peer.isValid()) {
+            context.connect(peer.getAddress().toString(), peer.getPort());
+        }
+        else {
+            context.connect();
+        }
+    }
+
     public void writeData(SafeByteArray data) {
         context.handleDataFromApplication(data);
     }
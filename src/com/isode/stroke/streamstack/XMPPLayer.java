@@ -8,11 +8,14 @@ import com.isode.stroke.base.SafeByteArray;
 import com.isode.stroke.elements.Element;
 import com.isode.stroke.elements.ProtocolHeader;
 import com.isode.stroke.elements.StreamType;
+import com.isode.stroke.parser.ElementParserFactoryCollection;
+import com.isode.stroke.parser.FullElementParserFactoryCollection;
 import com.isode.stroke.parser.PayloadParserFactoryCollection;
 import com.isode.stroke.parser.XMPPParser;
 import com.isode.stroke.parser.XMPPParserClient;
 import com.isode.stroke.serializer.PayloadSerializerCollection;
 import com.isode.stroke.serializer.XMPPSerializer;
+import com.isode.stroke.serializer.xml.XMLWriter;
 import com.isode.stroke.signals.Signal;
 import com.isode.stroke.signals.Signal1;
 
@@ -30,11 +33,15 @@ public class XMPPLayer implements HighLayer, XMPPParserClient {
     public final Signal onError = new Signal();
 
     private PayloadParserFactoryCollection payloadParserFactories_;
+    private final ElementParserFactoryCollection elementParserFactories_;
     private XMPPParser xmppParser_;
     private PayloadSerializerCollection payloadSerializers_;
     private XMPPSerializer xmppSerializer_;
+    /* Reused for every outgoing element */
+    private final XMLWriter elementWriter_ = new XMLWriter();
     private boolean resetParserAfterParse_;
     private boolean inParser_;
+    private int lastElementSize_;
     private boolean setExplictNSonTopLevelElements_;
 
     public XMPPLayer(
@@ -49,12 +56,23 @@ public class XMPPLayer implements HighLayer, XMPPParserClient {
             PayloadSerializerCollection payloadSerializers,
             StreamType streamType,
             boolean setExplictNSonTopLevelElements) {
+        this(payloadParserFactories, FullElementParserFactoryCollection.getDefault(), payloadSerializers,
+                streamType, setExplictNSonTopLevelElements);
+    }
+
+    public XMPPLayer(
+            PayloadParserFactoryCollection payloadParserFactories,
+            ElementParserFactoryCollection elementParserFactories,
+            PayloadSerializerCollection payloadSerializers,
+            StreamType streamType,
+            boolean setExplictNSonTopLevelElements) {
         payloadParserFactories_ = payloadParserFactories;
+        elementParserFactories_ = elementParserFactories;
         payloadSerializers_ = payloadSerializers;
         setExplictNSonTopLevelElements_ = setExplictNSonTopLevelElements;
         resetParserAfterParse_ = false;
         inParser_ = false;
-        xmppParser_ = new XMPPParser(this, payloadParserFactories_);
+        xmppParser_ = new XMPPParser(this, payloadParserFactories_, elementParserFactories_);
         xmppSerializer_ = new XMPPSerializer(payloadSerializers_, streamType, setExplictNSonTopLevelElements);
     }
 
@@ -67,7 +85,20 @@ public class XMPPLayer implements HighLayer, XMPPParserClient {
     }
 
     public void writeElement(Element element) {
-        writeDataInternal(new SafeByteArray(xmppSerializer_.serializeElement(element)));
+        elementWriter_.clear();
+        xmppSerializer_.serializeElement(element, elementWriter_);
+        SafeByteArray data = elementWriter_.toSafeByteArray();
+        lastElementSize_ = data.getSize();
+        writeDataInternal(data);
+    }
+
+    /**
+     * @return size in bytes of the element last written with
+     * {@link #writeElement(Element)}, as serialized, before any
+     * compression, encryption or transport framing
+     */
+    public int getLastElementSize() {
+        return lastElementSize_;
     }
 
     public void writeData(String data) {
@@ -108,7 +139,7 @@ public class XMPPLayer implements HighLayer, XMPPParserClient {
     }
 
     private void doResetParser() {
-        xmppParser_ = new XMPPParser(this, payloadParserFactories_);
+        xmppParser_ = new XMPPParser(this, payloadParserFactories_, elementParserFactories_);
         resetParserAfterParse_ = false;
     }
     
@@ -127,7 +158,8 @@ public class XMPPLayer implements HighLayer, XMPPParserClient {
     private void handleDataReadInternal(SafeByteArray data) {
         onDataRead.emit(data);
         inParser_ = true;
-        if(!xmppParser_.parse(data.toString())) {
+        final byte[] bytes = data.getData();
+        if(!xmppParser_.parse(bytes, 0, bytes.length)) {
             inParser_ = false;
             onError.emit();
             return;
@@ -8,25 +8,44 @@
  */
 package com.isode.stroke.stringcodecs;
 
+import java.util.Arrays;
+
 import com.isode.stroke.base.ByteArray;
 import com.isode.stroke.base.SafeByteArray;
 import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.crypto.HMAC;
 
 public class PBKDF2 {
 
     public static ByteArray encode(SafeByteArray password, ByteArray salt, int iterations, CryptoProvider crypto) {
-        ByteArray u = crypto.getHMACSHA1(password, ByteArray.plus(salt, new ByteArray("\0\0\0\1")));
-        ByteArray result = new ByteArray(u);
-        byte[] resultData = result.getData();
-        int i = 1;
-        while (i < iterations) {
-            u = crypto.getHMACSHA1(password, u);
-            for (int j = 0; j < u.getSize(); ++j) {
-                resultData[j] ^= u.getData()[j];
+        return encode(crypto.createHMACSHA1(password), salt, iterations);
+    }
+
+    /**
+     * Compute the first block of PBKDF2, which is all SCRAM uses. Each
+     * iteration reuses the HMAC and the same two buffers.
+     * @param prf HMAC keyed with the password, not null
+     * @param salt the salt, not null
+     * @param iterations number of iterations, at least 1
+     * @return the derived key, as long as the HMAC's output
+     */
+    public static ByteArray encode(HMAC prf, ByteArray salt, int iterations) {
+        final int length = prf.getLength();
+        final byte[] u = new byte[length];
+        prf.update(salt);
+        prf.update(FIRST_BLOCK_INDEX, 0, FIRST_BLOCK_INDEX.length);
+        prf.getHMAC(u, 0);
+        final byte[] result = u.clone();
+        for (int i = 1; i < iterations; ++i) {
+            prf.update(u, 0, length);
+            prf.getHMAC(u, 0);
+            for (int j = 0; j < length; ++j) {
+                result[j] ^= u[j];
             }
-            ++i;
         }
-        result = new ByteArray(resultData);
-        return result;
+        Arrays.fill(u, (byte) 0);
+        return new ByteArray(result);
     }
+
+    private static final byte[] FIRST_BLOCK_INDEX = {0, 0, 0, 1};
 }
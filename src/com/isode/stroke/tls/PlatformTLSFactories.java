@@ -8,6 +8,7 @@
  */
 package com.isode.stroke.tls;
 
+import com.isode.stroke.eventloop.EventLoop;
 import com.isode.stroke.tls.java.JSSEContextFactory;
 
 public class PlatformTLSFactories {
@@ -18,6 +19,15 @@ public class PlatformTLSFactories {
         return contextFactory;
     }
 
+    /**
+     * @param eventLoop the EventLoop from which the contexts will be used
+     * @return a factory for contexts used from the EventLoop, sharing
+     * everything with those from {@link #getTLSContextFactory()}
+     */
+    public TLSContextFactory getTLSContextFactory(EventLoop eventLoop) {
+        return contextFactory.forEventLoop(eventLoop);
+    }
+
     public CertificateFactory getCertificateFactory() {
         return certificateFactory;
     }
@@ -21,6 +21,17 @@ public abstract class TLSContext {
 
     public abstract void connect();
 
+    /**
+     * Start the handshake with a known peer. Implementations may use the
+     * peer to resume a session from an earlier connection to it. By
+     * default the peer is ignored.
+     * @param peerHost host name or address of the peer, may be null
+     * @param peerPort port of the peer
+     */
+    public void connect(String peerHost, int peerPort) {
+        connect();
+    }
+
     public abstract boolean setClientCertificate(CertificateWithKey cert);
 
     public abstract void handleDataFromNetwork(SafeByteArray data);
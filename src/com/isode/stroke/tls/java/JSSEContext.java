@@ -15,10 +15,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
@@ -27,10 +30,13 @@ import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,10 +48,14 @@ import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.X509ExtendedKeyManager;
 
 import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.ByteBufferPool;
 import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.eventloop.Event;
+import com.isode.stroke.eventloop.EventLoop;
 import com.isode.stroke.tls.CAPICertificate;
 import com.isode.stroke.tls.Certificate;
 import com.isode.stroke.tls.CertificateVerificationError;
@@ -135,8 +145,24 @@ public class JSSEContext extends TLSContext {
         }       
     }
 
+    /**
+     * Start the handshake with a known peer. The SSLEngine is created with
+     * the peer's host and port, so that if this context came from a
+     * {@link JSSEContextFactory} a session from an earlier connection to the
+     * same peer can be resumed.
+     * @param peerHost host name or address of the peer, may be null
+     * @param peerPort port of the peer
+     */
+    @Override
+    public void connect(String peerHost, int peerPort) {
+        peerHost_ = peerHost;
+        peerPort_ = peerPort;
+        connect();
+    }
+
 
     private void doSetup() throws SSLException {
+        handshakeStartNanos_ = System.nanoTime();
         SSLContext sslContext = getSSLContext();
         
         if (sslContext == null) {
@@ -145,7 +171,12 @@ public class JSSEContext extends TLSContext {
         
         sslEngine = null;
         try {
-            sslEngine = sslContext.createSSLEngine();
+            if (peerHost_ != null) {
+                sslEngine = sslContext.createSSLEngine(peerHost_, peerPort_);
+            }
+            else {
+                sslEngine = sslContext.createSSLEngine();
+            }
         }
         catch (UnsupportedOperationException e) {
             /* "the underlying provider does not implement the operation" */
@@ -194,16 +225,17 @@ public class JSSEContext extends TLSContext {
          * "handleDataFromNetwork()".
          */        
         netBufferSize = sslEngine.getSession().getPacketBufferSize();
+
+        /* Plaintext buffers are given a little more room than appBufferSize.
+         * All buffers start the same size, so that any buffer released to
+         * the pool will do for any other use */
+        bufferSize = Math.max(appBufferSize + 50, netBufferSize);
         
         /* All buffers are normally in "write" mode. Access to all of them
-         * must be synchronized
+         * must be synchronized. They are acquired when first needed, and
+         * if there is a buffer pool they go back to it whenever they are
+         * empty, so that an idle context holds no buffers
          */
-        plainToSend = ByteBuffer.allocate(appBufferSize + 50);
-        wrappedToSend = ByteBuffer.allocate(netBufferSize);
-        
-        encryptedReceived = ByteBuffer.allocate(netBufferSize);
-
-        unwrappedReceived = ByteBuffer.allocate(appBufferSize + 50); 
 
        
         /* Note that calling beginHandshake might not actually do anything; 
@@ -243,6 +275,8 @@ public class JSSEContext extends TLSContext {
         SafeByteArray byteArray = null;
 
         synchronized(recvMutex) {
+            encryptedReceived = ensureBuffer(encryptedReceived, bufferSize);
+            unwrappedReceived = ensureBuffer(unwrappedReceived, bufferSize);
             try {
                 encryptedReceived.flip();
                 
@@ -250,7 +284,13 @@ public class JSSEContext extends TLSContext {
                 do {
                     int positionBeforeUnwrap = encryptedReceived.position();
                     bytesToUnwrap = encryptedReceived.remaining();
-                    sslEngineResult = sslEngine.unwrap(encryptedReceived, unwrappedReceived);
+                    handshakingContext.set(this);
+                    try {
+                        sslEngineResult = sslEngine.unwrap(encryptedReceived, unwrappedReceived);
+                    }
+                    finally {
+                        handshakingContext.remove();
+                    }
                     status = sslEngineResult.getStatus();
                     handshakeStatus = sslEngineResult.getHandshakeStatus();
                     /*
@@ -279,6 +319,7 @@ public class JSSEContext extends TLSContext {
 
                         handshakeCompleted = true;
                         wrapAndSendData();
+                        handleHandshakeCompleted();
                         onConnected.emit();
                         status = sslEngineResult.getStatus();
                     }
@@ -350,14 +391,14 @@ public class JSSEContext extends TLSContext {
                 return bytesConsumed;
             }
 
-            if (bytesProduced > 0) {
+            if (unwrappedReceived.position() > 0) {
                 unwrappedReceived.flip();
-                byte[] result = new byte[unwrappedReceived.remaining()];
-                unwrappedReceived.get(result);
+                byteArray = new SafeByteArray();
+                byteArray.append(unwrappedReceived);
                 unwrappedReceived.compact();
-                byteArray = new SafeByteArray(result);
             }
-
+            encryptedReceived = releaseIfEmpty(encryptedReceived);
+            unwrappedReceived = releaseIfEmpty(unwrappedReceived);
         }
         
         /* Now out of synchronized block */
@@ -392,13 +433,15 @@ public class JSSEContext extends TLSContext {
              * TODO: is this required? I don't think anything gets put in
              * wrappedToSend apart from in here?
              */
-            wrappedToSend.flip();
-            if (wrappedToSend.hasRemaining()) {
-                byte[] b = new byte[(wrappedToSend.remaining())];
-                wrappedToSend.get(b);
-                byteArray = new SafeByteArray(b);
+            if (wrappedToSend != null) {
+                wrappedToSend.flip();
+                if (wrappedToSend.hasRemaining()) {
+                    byteArray = new SafeByteArray();
+                    byteArray.append(wrappedToSend);
+                }
+                wrappedToSend.compact();
+                wrappedToSend = releaseIfEmpty(wrappedToSend);
             }
-            wrappedToSend.compact();
         } /* end synchronized */
 
         if (byteArray != null ) {
@@ -412,6 +455,8 @@ public class JSSEContext extends TLSContext {
          * encrypting
          */
         synchronized(sendMutex) {
+            plainToSend = ensureBuffer(plainToSend, bufferSize);
+            wrappedToSend = ensureBuffer(wrappedToSend, bufferSize);
             plainToSend.flip();
 	    /* It does no harm to call SSLEngine.wrap if there is nothing in
 	     * "plainToSend" and this will be required in at least two
@@ -425,7 +470,13 @@ public class JSSEContext extends TLSContext {
 	    try {
                 boolean wrapDone = false;
                 do {
-                    sslEngineResult = sslEngine.wrap(plainToSend, wrappedToSend);
+                    handshakingContext.set(this);
+                    try {
+                        sslEngineResult = sslEngine.wrap(plainToSend, wrappedToSend);
+                    }
+                    finally {
+                        handshakingContext.remove();
+                    }
                     handshakeStatus = sslEngineResult.getHandshakeStatus();
                     status = sslEngineResult.getStatus();
                     
@@ -480,9 +531,8 @@ public class JSSEContext extends TLSContext {
                  */  
                 wrappedToSend.flip();
                 if (wrappedToSend.hasRemaining()) {
-                    byte[] b = new byte[(wrappedToSend.remaining())];
-                    wrappedToSend.get(b);
-                    byteArray = new SafeByteArray(b);
+                    byteArray = new SafeByteArray();
+                    byteArray.append(wrappedToSend);
                 }
                 wrappedToSend.compact();
                 break;
@@ -496,10 +546,13 @@ public class JSSEContext extends TLSContext {
                 return bytesSentToSocket;
 
             }
+            plainToSend = releaseIfEmpty(plainToSend);
+            wrappedToSend = releaseIfEmpty(wrappedToSend);
         } /* end synchronized */
         
         if (handshakeFinished) {
             handshakeCompleted = true;
+            handleHandshakeCompleted();
             onConnected.emit();
         }
         
@@ -535,12 +588,11 @@ public class JSSEContext extends TLSContext {
              */
             return false;
         case NEED_TASK:
-            runDelegatedTasks(false); /* false==don't create separate threads */ 
-            
             /* after tasks have run, need to come back here and check
-             * handshake status again
+             * handshake status again. If they have been handed to the
+             * executor, the handshake carries on when they have finished
              */
-            return true;
+            return runDelegatedTasks();
             
         case NEED_WRAP:
             /* SSLEngine wants some data that it can wrap for sending to the
@@ -585,40 +637,195 @@ public class JSSEContext extends TLSContext {
         int newSize = bb.capacity() + growBy;
         logger_.fine("Buffer " + bufferName + 
                 " growing from " + bb.capacity() + " to " + newSize);
-        ByteBuffer temp = ByteBuffer.allocate(newSize);
+        ByteBuffer temp = (bufferPool_ != null ? 
+                bufferPool_.acquire(newSize) : ByteBuffer.allocate(newSize));
         bb.flip();
         temp.put(bb);
+        if (bufferPool_ != null) {
+            bufferPool_.release(bb);
+        }
         return temp;
     }
+
+    /**
+     * Get a buffer ready to be written to.
+     * @param bb an existing buffer, or null
+     * @param size capacity for a new buffer
+     * @return <em>bb</em> if it is not null, otherwise a new empty buffer
+     * taken from the buffer pool if there is one
+     */
+    private ByteBuffer ensureBuffer(ByteBuffer bb, int size) {
+        if (bb != null) {
+            return bb;
+        }
+        return (bufferPool_ != null ? 
+                bufferPool_.acquire(size) : ByteBuffer.allocate(size));
+    }
+
+    /**
+     * Give a buffer back to the buffer pool if there's nothing in it.
+     * Without a pool, buffers are kept for the life of the context.
+     * @param bb a buffer in "write" mode, or null
+     * @return null if the buffer was released, otherwise <em>bb</em>
+     */
+    private ByteBuffer releaseIfEmpty(ByteBuffer bb) {
+        if (bufferPool_ == null || bb == null || bb.position() != 0) {
+            return bb;
+        }
+        bufferPool_.release(bb);
+        return null;
+    }
     
     /**
-     * Create and start running delegated tasks for all pending delegated tasks
-     * @param createThreads <em>true</em> to run tasks in separate threads,
-     * <em>false</em> to run them all in series in the current thread
+     * Run all pending delegated tasks. If the factory has a delegated task
+     * executor and this context knows the EventLoop driving it, the tasks
+     * are handed to the executor and this method returns at once; when
+     * they have finished, the handshake is resumed by an event posted to
+     * the EventLoop, which is the thread that TLSContext signals are
+     * expected to come from. Otherwise the tasks are run in series in the
+     * current thread.
+     * @return <em>true</em> if the tasks have been run, <em>false</em> if
+     * they are still running on the executor
      */
-    private void runDelegatedTasks(boolean createThreads)    
+    private boolean runDelegatedTasks()    
     {
-        Runnable nextTask = sslEngine.getDelegatedTask();
-        
-        while (nextTask != null) {
-            final Runnable task = nextTask;
-            Thread delegatedTaskThread = new Thread() {
-                public void run() {
-                    task.run();
+        final ExecutorService executor = 
+            (factory_ == null || eventLoop_ == null ? null : factory_.getDelegatedTaskExecutor());
+
+        if (executor == null) {
+            runDelegatedTasksNow();
+            return true;
+        }
+
+        delegatedTasksRunning_ = true;
+        factory_.delegatedTaskQueued();
+        final Runnable job = new Runnable() {
+            public void run() {
+                factory_.delegatedTaskStarted();
+                try {
+                    runDelegatedTasksNow();
+                }
+                finally {
+                    eventLoop_.postEvent(new Event.Callback() {
+                        public void run() {
+                            handleDelegatedTasksDone();
+                        }
+                    });
                 }
-            };
-            
-            if (createThreads) {
-                delegatedTaskThread.setDaemon(true);
-                delegatedTaskThread.start();
             }
-            else {
-                delegatedTaskThread.run();
+        };
+        try {
+            /* If the executor's queue is full, a factory executor runs the
+             * job in this thread, which slows down new handshakes rather 
+             * than queueing without limit; the handshake is still resumed 
+             * from the EventLoop
+             */
+            executor.execute(job);
+        }
+        catch (RejectedExecutionException e) {
+            /* Executor has been shut down */
+            job.run();
+        }
+        return false;
+    }
+
+    /**
+     * Run pending delegated tasks in series in the current thread.
+     */
+    private void runDelegatedTasksNow() {
+        handshakingContext.set(this);
+        try {
+            Runnable nextTask = sslEngine.getDelegatedTask();
+            while (nextTask != null) {
+                nextTask.run();
+                nextTask = sslEngine.getDelegatedTask();
             }
-            nextTask = sslEngine.getDelegatedTask();
-        } 
+        }
+        finally {
+            handshakingContext.remove();
+        }
+    }
+
+    /**
+     * Called from the EventLoop once delegated tasks run by the executor
+     * have finished, to carry on with the handshake, and with any data that
+     * arrived from either side meanwhile.
+     */
+    private void handleDelegatedTasksDone() {
+        delegatedTasksRunning_ = false;
+        if (hasError()) {
+            return;
+        }
+        do {
+            /* */
+        } while (processHandshakeStatus());
+        if (delegatedTasksRunning_) {
+            return;
+        }
+
+        unwrapPendingData();
+        do {
+            /* */
+        } while (processHandshakeStatus());
+        if (delegatedTasksRunning_) {
+            return;
+        }
+        if (closeNotifyReceived) {
+            emitError(null, "SSL Close notify received");
+            return;
+        }
+
+        boolean havePlainToSend;
+        synchronized(sendMutex) {
+            havePlainToSend = (plainToSend != null && plainToSend.position() > 0);
+        }
+        if (havePlainToSend) {
+            wrapAndSendData();
+            do {
+                /* */
+            } while (processHandshakeStatus());
+        }
     }
     
+    /**
+     * Called when a handshake completes. A resumed session skips certificate
+     * verification, so the result of verifying the peer is kept in the
+     * session and restored from there when it is resumed.
+     */
+    private void handleHandshakeCompleted() {
+        if (factory_ != null && handshakeStartNanos_ != 0) {
+            factory_.handshakeCompleted(System.nanoTime() - handshakeStartNanos_);
+        }
+        handshakeStartNanos_ = 0;
+        SSLSession session = sslEngine.getSession();
+        if (session == null) {
+            return;
+        }
+        if (peerCertificateChain != null) {
+            session.putValue(PEER_VERIFICATION_KEY, new PeerVerification(
+                    peerCertificateChain, peerCertificateVerificationError));
+        }
+        else {
+            Object value = session.getValue(PEER_VERIFICATION_KEY);
+            if (value instanceof PeerVerification) {
+                PeerVerification peerVerification = (PeerVerification)value;
+                peerCertificateChain = peerVerification.chain;
+                peerCertificateVerificationError = peerVerification.error;
+            }
+        }
+    }
+
+    /**
+     * Get the JSSEContext whose SSLEngine is being driven by the current
+     * thread. This lets a trust manager shared by many contexts report to
+     * the right one.
+     * @return the context, or null if the current thread is not running
+     * an SSLEngine operation for any JSSEContext
+     */
+    static JSSEContext getHandshakingContext() {
+        return handshakingContext.get();
+    }
+
     /**
      * This method must be called to inform the JSSEContext object of the 
      * certificate(s) which were presented by the peer during the handshake.
@@ -667,6 +874,28 @@ public class JSSEContext extends TLSContext {
         
     }
     
+    /**
+     * Digest a PKCS#12 file and its password, so that contexts using the
+     * same identity can share an SSLContext without the password or the
+     * private key being kept as the key it is shared under.
+     * @param p12Bytes contents of the PKCS#12 file
+     * @param password password for the file
+     * @return SHA-256 digest of both
+     * @throws NoSuchAlgorithmException if SHA-256 is not available
+     */
+    private static ByteArray getPKCS12Digest(byte[] p12Bytes, char[] password)
+            throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(p12Bytes);
+        digest.update((byte) 0);
+        ByteBuffer passwordBytes = Charset.forName("UTF-8").encode(CharBuffer.wrap(password));
+        digest.update(passwordBytes);
+        if (passwordBytes.hasArray()) {
+            Arrays.fill(passwordBytes.array(), (byte) 0);
+        }
+        return new ByteArray(digest.digest());
+    }
+
     /**
      * Private method to handle PKCS12Certificate case for setClientCertificate
      */
@@ -710,6 +939,7 @@ public class JSSEContext extends TLSContext {
             
             /* Just take the first one (there probably will only be one) */
             myKeyManager_ = keyManagers[0];
+            sslContextKey_ = Arrays.<Object>asList("PKCS12", getPKCS12Digest(p12Bytes, p12Cert.getPassword()));
                         
             return true;
             
@@ -873,6 +1103,7 @@ public class JSSEContext extends TLSContext {
                          */
                         ckm.setEngineClientAlias(keyStoreAndAlias.alias);
                         myKeyManager_ = ckm;
+                        sslContextKey_ = Arrays.<Object>asList("CAPI", x509Cert, keyStoreAndAlias.alias);
                         return true;
                     }
                 }
@@ -931,17 +1162,18 @@ public class JSSEContext extends TLSContext {
          * larger than the value of "netBufferMax" that was used to size the
          * encryptedReceived buffer 
          */
-        byte[] b = data.getData();
+        ByteBuffer b = data.asByteBuffer();
         
         /* We need to deal with arbitrarily large ByteArrays here; specifically
          * it may be that the number of bytes from the network is
          * larger than the value of "netBufferMax" that was used to size the
          * encryptedReceived buffer 
          */
-        int remaining = b.length;
+        int remaining = b.remaining();
         int chunkPos = 0;
         while (remaining > 0) {                
             synchronized(recvMutex) {
+                encryptedReceived = ensureBuffer(encryptedReceived, bufferSize);
                 int chunkSize = encryptedReceived.remaining();
                 if (chunkSize == 0) {
                     encryptedReceived = getLargerBuffer(
@@ -954,7 +1186,8 @@ public class JSSEContext extends TLSContext {
                     chunkSize = remaining;
                 }
                 try {
-                    encryptedReceived.put(b, chunkPos, chunkSize);
+                    b.limit(chunkPos + chunkSize);
+                    encryptedReceived.put(b);
                     remaining = (remaining - chunkSize);
                     chunkPos = (chunkPos + chunkSize);
                 }
@@ -973,6 +1206,11 @@ public class JSSEContext extends TLSContext {
                 }
             }
 
+            if (delegatedTasksRunning_) {
+                /* The data is kept until the tasks have finished */
+                continue;
+            }
+
             unwrapPendingData();
 
             /* Now keep checking SSLEngine until no more handshakes are required */
@@ -1010,15 +1248,16 @@ public class JSSEContext extends TLSContext {
 	    emitError(null,
 	      "handleDataFromApplication called after SSLEngine closed");
 	}
-        byte[] b = data.getData();
+        ByteBuffer b = data.asByteBuffer();
 
         /* Need to cope in the case that the application sends a ByteArray
          * with more data than will fit in the "plainToSend" buffer
          */
-        int remaining = b.length;
+        int remaining = b.remaining();
         int chunkPos = 0;
         while (remaining > 0) {
             synchronized(sendMutex) {
+                plainToSend = ensureBuffer(plainToSend, bufferSize);
                 int chunkSize = plainToSend.remaining();
                 if (chunkSize == 0) {              
                     plainToSend = getLargerBuffer("plainToSend", plainToSend, appBufferSize);
@@ -1035,7 +1274,8 @@ public class JSSEContext extends TLSContext {
                      * in there
                      */
                     
-                    plainToSend.put(b, chunkPos, chunkSize);
+                    b.limit(chunkPos + chunkSize);
+                    plainToSend.put(b);
                     remaining = (remaining - chunkSize);
                     chunkPos = (chunkPos + chunkSize);
                 }
@@ -1053,6 +1293,11 @@ public class JSSEContext extends TLSContext {
                 }
             }
 
+            if (delegatedTasksRunning_) {
+                /* The data is kept until the tasks have finished */
+                continue;
+            }
+
             int sentBytes = wrapAndSendData();
 
             /* Now keep checking SSLEngine until no more handshakes are required */
@@ -1120,10 +1365,105 @@ public class JSSEContext extends TLSContext {
      * enabled for this context. Null means no restriction
      */
     public JSSEContext(Set<String> restrictedCipherSuites) {
+        this(restrictedCipherSuites, null);
+    }
+
+    /**
+     * Construct a new JSSEContext object which shares its SSLContext, and
+     * so its TLS session cache, with other contexts from the same factory.
+     * @param restrictedCipherSuites a list of cipher suites that are to be
+     * enabled for this context. Null means no restriction
+     * @param factory factory holding the shared SSLContexts. Null means
+     * that this context will create an SSLContext of its own.
+     */
+    JSSEContext(Set<String> restrictedCipherSuites, JSSEContextFactory factory) {
+        this(restrictedCipherSuites, factory, null);
+    }
+
+    /**
+     * Construct a new JSSEContext object from a factory, which will be
+     * driven from the given EventLoop.
+     * @param restrictedCipherSuites a list of cipher suites that are to be
+     * enabled for this context. Null means no restriction
+     * @param factory factory holding the shared SSLContexts. Null means
+     * that this context will create an SSLContext of its own.
+     * @param eventLoop the EventLoop from whose thread this context is
+     * used, to which the handshake is handed back after delegated tasks
+     * have run on the factory's executor. Null means that delegated tasks
+     * are always run in the thread driving the context.
+     */
+    JSSEContext(Set<String> restrictedCipherSuites, JSSEContextFactory factory, EventLoop eventLoop) {
         if (restrictedCipherSuites != null) {
             this.restrictedCipherSuites = new HashSet<String>(restrictedCipherSuites);
         }
+        factory_ = factory;
+        eventLoop_ = eventLoop;
+        bufferPool_ = (factory == null ? null : factory.getBufferPool());
+    }
+
+    /**
+     * The certificate chain and verification error for a peer, as kept in
+     * an SSLSession.
+     */
+    private static class PeerVerification {
+        final List<Certificate> chain;
+        final CertificateVerificationError error;
+        PeerVerification(List<Certificate> chain, CertificateVerificationError error) {
+            this.chain = chain;
+            this.error = error;
+        }
     }
+
+    /**
+     * Name under which a {@link PeerVerification} is kept in an SSLSession
+     */
+    private static final String PEER_VERIFICATION_KEY = "com.isode.stroke.tls.java.PeerVerification";
+
+    /**
+     * The JSSEContext for which the current thread is running an SSLEngine
+     * operation, if any
+     */
+    private static final ThreadLocal<JSSEContext> handshakingContext = new ThreadLocal<JSSEContext>();
+
+    /**
+     * Factory whose shared SSLContexts are used, or null
+     */
+    private final JSSEContextFactory factory_;
+
+    /**
+     * EventLoop driving this context, or null
+     */
+    private final EventLoop eventLoop_;
+
+    /**
+     * Whether delegated tasks are running on the executor, during which
+     * data from either side is only buffered
+     */
+    private boolean delegatedTasksRunning_ = false;
+
+    /**
+     * Pool that the buffers come from, or null to allocate them for the
+     * life of this context
+     */
+    private final ByteBufferPool bufferPool_;
+
+    /**
+     * Identifies the client certificate set up in setClientCertificate(),
+     * which decides which shared SSLContext can be used
+     */
+    private Object sslContextKey_ = "default";
+
+    /**
+     * Peer passed to connect(String, int), or null
+     */
+    private String peerHost_ = null;
+    private int peerPort_ = -1;
+
+    /**
+     * When the current handshake started, as given by System.nanoTime(),
+     * or 0 if no handshake is in progress
+     */
+    private long handshakeStartNanos_ = 0;
     
 
     /**
@@ -1154,6 +1494,12 @@ public class JSSEContext extends TLSContext {
      * Initial size of buffer used for encrypted data to/from SSL.
      */
     private int netBufferSize;
+
+    /**
+     * Initial size of all buffers: the larger of the plaintext and
+     * encrypted sizes
+     */
+    private int bufferSize;
     
     /**
      * Contains encrypted information produced by the SSLEngine which is
@@ -1207,11 +1553,35 @@ public class JSSEContext extends TLSContext {
      * an error will have been emitted.
      */
     private SSLContext getSSLContext()
+    {
+        if (factory_ != null) {
+            SSLContext sslContext = factory_.getSharedSSLContext(sslContextKey_);
+            if (sslContext == null) {
+                sslContext = createSSLContext();
+                if (sslContext != null) {
+                    sslContext = factory_.putSharedSSLContext(sslContextKey_, sslContext);
+                }
+            }
+            return sslContext;
+        }
+        return createSSLContext();
+    }
+
+    /**
+     * Create and initialise a new SSLContext. If the SSLContext is to be
+     * shared, its trust manager reports to whichever JSSEContext is
+     * handshaking rather than to this one.
+     *
+     * @return an SSLContext, or null if one cannot be created. In this case,
+     * an error will have been emitted.
+     */
+    private SSLContext createSSLContext()
     {
         JavaTrustManager[] tm = null;
         
         try {
-            tm = new JavaTrustManager[] { new JavaTrustManager(this)};
+            tm = new JavaTrustManager[] { 
+                    factory_ != null ? new JavaTrustManager() : new JavaTrustManager(this)};
         }
         catch (SSLException e) {
             emitError(e, "Couldn't create JavaTrustManager");
@@ -12,6 +12,19 @@ package com.isode.stroke.tls.java;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+import com.isode.stroke.base.ByteBufferPool;
+import com.isode.stroke.eventloop.EventLoop;
 
 import com.isode.stroke.tls.TLSContext;
 import com.isode.stroke.tls.TLSOptions;
@@ -25,6 +38,25 @@ import com.isode.stroke.tls.TLSContextFactory;
  * <a href=http://docs.oracle.com/javase/7/docs/technotes/guides/security/StandardNames.html#ciphersuites>
  * Oracle's "Java Cryptography Architecture Standard Algorithm Name Documentation"</a>.
  * 
+ * <p>TLSContexts from the same factory share their SSLContexts: one for
+ * contexts with no client certificate, and one for each client certificate
+ * used. As JSSE keeps its TLS session cache in the SSLContext, a context
+ * connected with {@link TLSContext#connect(String, int)} can resume the
+ * session of an earlier connection to the same peer, avoiding a full
+ * handshake.
+ * 
+ * <p>The CPU-heavy parts of handshakes (the SSLEngine's delegated tasks)
+ * are normally run by whichever thread is driving the TLSContext. For
+ * contexts from {@link #forEventLoop}, an executor set with
+ * {@link #setDelegatedTaskExecutor} can be used instead, so that the
+ * EventLoop's thread carries on with other sessions meanwhile, and so as to
+ * limit how many of them run at once, however many sessions are
+ * handshaking.
+ * 
+ * <p>The working buffers of TLSContexts come from a {@link ByteBufferPool}
+ * shared by the factory, and are returned to it whenever they are empty, so
+ * idle sessions hold no buffers.
+ * 
  */
 public class JSSEContextFactory implements TLSContextFactory {
 
@@ -35,8 +67,201 @@ public class JSSEContextFactory implements TLSContextFactory {
 
     @Override
     public TLSContext createTLSContext(TLSOptions tlsOptions) {
-        return new JSSEContext(restrictedCipherSuites);
+        return new JSSEContext(restrictedCipherSuites, this);
+    }
+
+    /**
+     * Get a factory for TLSContexts which will be driven from the thread of
+     * the given EventLoop. They share everything with contexts from this
+     * factory, but their delegated tasks can be run on the
+     * {@link #setDelegatedTaskExecutor delegated task executor} without
+     * holding up the EventLoop.
+     * @param eventLoop the EventLoop, not null
+     * @return a factory for contexts used from the EventLoop, not null
+     */
+    public TLSContextFactory forEventLoop(final EventLoop eventLoop) {
+        return new TLSContextFactory() {
+            public boolean canCreate() {
+                return JSSEContextFactory.this.canCreate();
+            }
+
+            public TLSContext createTLSContext(TLSOptions tlsOptions) {
+                return new JSSEContext(restrictedCipherSuites, JSSEContextFactory.this, eventLoop);
+            }
+        };
     }
+
+    /**
+     * Discard the shared SSLContexts, along with their session caches. 
+     * Contexts created from now on will use new SSLContexts, which will pick
+     * up any changes to the default trust store.
+     */
+    public void clearSharedSSLContexts() {
+        sslContexts_.clear();
+    }
+
+    /**
+     * @param key identifies the client certificate configuration
+     * @return the shared SSLContext for the key, or null if there is none yet
+     */
+    SSLContext getSharedSSLContext(Object key) {
+        return sslContexts_.get(key);
+    }
+
+    /**
+     * @return the keys under which SSLContexts are shared
+     */
+    Set<Object> getSharedSSLContextKeys() {
+        return sslContexts_.keySet();
+    }
+
+    /**
+     * Share an SSLContext, unless another one was shared for the same key
+     * meanwhile.
+     * @param key identifies the client certificate configuration
+     * @param sslContext initialised SSLContext
+     * @return the SSLContext which is now shared for the key
+     */
+    SSLContext putSharedSSLContext(Object key, SSLContext sslContext) {
+        SSLContext existing = sslContexts_.putIfAbsent(key, sslContext);
+        return existing != null ? existing : sslContext;
+    }
+
+    /**
+     * Set the pool from which TLSContexts created from now on take their
+     * buffers. By default a pool of heap buffers is used, keeping up to
+     * {@link #DEFAULT_POOLED_BUFFERS} buffers for reuse.
+     * @param bufferPool the pool, which may allocate direct buffers; or null
+     * for each TLSContext to allocate its own buffers and keep them for its
+     * lifetime
+     */
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        bufferPool_ = bufferPool;
+    }
+
+    /**
+     * @return the pool from which TLSContexts take their buffers, may be null
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool_;
+    }
+
+    /**
+     * Number of released buffers kept by the default buffer pool
+     */
+    public static final int DEFAULT_POOLED_BUFFERS = 256;
+
+    /**
+     * Set the executor to run the delegated tasks of handshakes for 
+     * TLSContexts from {@link #forEventLoop}. The handshake of such a
+     * context is suspended while its tasks run, and resumed from its
+     * EventLoop when they have finished, so the EventLoop's thread is never
+     * blocked waiting for them. A bounded executor such as one from
+     * {@link #createDelegatedTaskExecutor} limits the number of handshake
+     * computations running at once. Contexts from
+     * {@link #createTLSContext} always run their tasks in the thread
+     * driving them.
+     * 
+     * @param executor the executor, or null (the default) to run delegated
+     * tasks in the thread driving the TLSContext. The caller is responsible
+     * for shutting it down.
+     */
+    public void setDelegatedTaskExecutor(ExecutorService executor) {
+        delegatedTaskExecutor_ = executor;
+    }
+
+    ExecutorService getDelegatedTaskExecutor() {
+        return delegatedTaskExecutor_;
+    }
+
+    /**
+     * Create an executor suitable for {@link #setDelegatedTaskExecutor}. Its
+     * threads are daemon threads which exit when idle. When the queue is
+     * full, tasks are run by the submitting thread, which slows down the
+     * starting of new handshakes rather than letting the queue grow without
+     * limit.
+     * 
+     * @param threads maximum number of delegated tasks to run at once, must
+     * be positive
+     * @param queueCapacity maximum number of delegated tasks to queue, must
+     * be positive
+     * @return a new executor, not null
+     */
+    public static ExecutorService createDelegatedTaskExecutor(int threads, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count_ = new AtomicInteger();
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, 
+                                "JSSE delegated task " + count_.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return number of delegated tasks which have been handed to the
+     * delegated task executor but have not started running
+     */
+    public int getQueuedDelegatedTaskCount() {
+        return queuedDelegatedTasks_.get();
+    }
+
+    /**
+     * @return number of handshakes completed by TLSContexts from this
+     * factory
+     */
+    public long getHandshakeCount() {
+        return handshakeCount_.get();
+    }
+
+    /**
+     * @return total time taken by the handshakes counted by
+     * {@link #getHandshakeCount()}, in milliseconds, measured from the start
+     * of the handshake to its completion
+     */
+    public long getTotalHandshakeMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis(handshakeNanoseconds_.get());
+    }
+
+    /**
+     * @return the longest time taken by any one handshake, in milliseconds
+     */
+    public long getMaximumHandshakeMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis(maximumHandshakeNanoseconds_.get());
+    }
+
+    void delegatedTaskQueued() {
+        queuedDelegatedTasks_.incrementAndGet();
+    }
+
+    void delegatedTaskStarted() {
+        queuedDelegatedTasks_.decrementAndGet();
+    }
+
+    void handshakeCompleted(long nanoseconds) {
+        handshakeCount_.incrementAndGet();
+        handshakeNanoseconds_.addAndGet(nanoseconds);
+        long maximum = maximumHandshakeNanoseconds_.get();
+        while (nanoseconds > maximum && 
+                !maximumHandshakeNanoseconds_.compareAndSet(maximum, nanoseconds)) {
+            maximum = maximumHandshakeNanoseconds_.get();
+        }
+    }
+
+    private final ConcurrentHashMap<Object, SSLContext> sslContexts_ = 
+            new ConcurrentHashMap<Object, SSLContext>();
+    private volatile ExecutorService delegatedTaskExecutor_ = null;
+    private volatile ByteBufferPool bufferPool_ = new ByteBufferPool(DEFAULT_POOLED_BUFFERS);
+    private final AtomicInteger queuedDelegatedTasks_ = new AtomicInteger();
+    private final AtomicLong handshakeCount_ = new AtomicLong();
+    private final AtomicLong handshakeNanoseconds_ = new AtomicLong();
+    private final AtomicLong maximumHandshakeNanoseconds_ = new AtomicLong();
     
     private static Set<String> restrictedCipherSuites = null;
     
@@ -40,7 +40,23 @@ public class JavaTrustManager implements X509TrustManager {
             throw new NullPointerException("JSSEContext may not be null");
         }
         this.jsseContext = jsseContext;
+        initPkixTrustManager();
+    }
 
+    /**
+     * Construct a new object which may be shared by many JSSEContexts.
+     * Certificates are reported to whichever JSSEContext is handshaking on
+     * the calling thread.
+     * 
+     * @throws SSLException if it was not possible to initialise the
+     * TrustManager or KeyStore
+     */
+    JavaTrustManager() throws SSLException {
+        this.jsseContext = null;
+        initPkixTrustManager();
+    }
+
+    private void initPkixTrustManager() throws SSLException {
         try {
             TrustManagerFactory tmf =
                     TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
@@ -102,7 +118,11 @@ public class JavaTrustManager implements X509TrustManager {
     		}
     	}
 
-    	jsseContext.setPeerCertificateInfo(chain, certificateException);
+    	JSSEContext context = 
+    	        (jsseContext != null ? jsseContext : JSSEContext.getHandshakingContext());
+    	if (context != null) {
+    	    context.setPeerCertificateInfo(chain, certificateException);
+    	}
         
     }
 
@@ -119,7 +139,8 @@ public class JavaTrustManager implements X509TrustManager {
     X509TrustManager pkixTrustManager;
     
     /**
-     * The object who wants to know what server certificates appear 
+     * The object who wants to know what server certificates appear, or null
+     * if this trust manager is shared
      */
-    JSSEContext jsseContext;
+    final JSSEContext jsseContext;
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testGet() {
+		BoundedCache<String, Integer> testling = new BoundedCache<String, Integer>(10);
+		assertNull(testling.get("a"));
+		testling.put("a", 1);
+		assertEquals(Integer.valueOf(1), testling.get("a"));
+	}
+
+	@Test
+	public void testRarelyUsedEntriesEvicted() {
+		BoundedCache<String, Integer> testling = new BoundedCache<String, Integer>(2);
+		testling.put("a", 1);
+		testling.put("b", 2);
+		testling.put("c", 3);
+		/* "a" is in the old generation, and moves back to the current one */
+		assertEquals(Integer.valueOf(1), testling.get("a"));
+		testling.put("d", 4);
+		testling.put("e", 5);
+
+		assertEquals(Integer.valueOf(1), testling.get("a"));
+		assertNull(testling.get("b"));
+		assertEquals(Integer.valueOf(5), testling.get("e"));
+	}
+
+	@Test
+	public void testClear() {
+		BoundedCache<String, Integer> testling = new BoundedCache<String, Integer>(2);
+		testling.put("a", 1);
+		testling.clear();
+		assertNull(testling.get("a"));
+	}
+}
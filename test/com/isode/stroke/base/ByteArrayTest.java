@@ -5,6 +5,7 @@
 package com.isode.stroke.base;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,6 +63,63 @@ public class ByteArrayTest {
         assertArrayEquals(target, new ByteArray(string).getData());
     }
 
+    @Test
+    public void testAppend_ManySingleBytes() {
+        ByteArray testling = new ByteArray();
+        for (int i = 0; i < 1000; i++) {
+            testling.append((byte)i);
+        }
+        assertEquals(1000, testling.getSize());
+        byte[] data = testling.getData();
+        assertEquals(1000, data.length);
+        assertEquals((byte)999, data[999]);
+    }
+
+    @Test
+    public void testCopy_IsIndependentOfOriginal() {
+        ByteArray original = new ByteArray("abc");
+        ByteArray copy = new ByteArray(original);
+        copy.append("def");
+        original.append("xyz");
+        assertEquals("abcdef", copy.toString());
+        assertEquals("abcxyz", original.toString());
+    }
+
+    @Test
+    public void testAppend_ByteBuffer() {
+        ByteArray testling = new ByteArray("ab");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        buffer.put((byte)'c').put((byte)'d').flip();
+        testling.append(buffer);
+        assertEquals("abcd", testling.toString());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testAsByteBuffer() {
+        ByteArray testling = new ByteArray("abcdef");
+        ByteBuffer view = testling.asByteBuffer(2, 3);
+        assertEquals(3, view.remaining());
+        assertEquals((byte)'c', view.get(0));
+        assertEquals(6, testling.asByteBuffer().remaining());
+    }
+
+    @Test
+    public void testSubArray() {
+        SafeByteArray testling = new SafeByteArray("abcdef");
+        assertEquals(new SafeByteArray("bcd"), testling.subArray(1, 3));
+        assertEquals(new ByteArray("def"), new ByteArray(testling.getData(), 3, 3));
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        ByteArray a = new ByteArray("ab");
+        a.append((byte)'c');
+        ByteArray b = new ByteArray("abc");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
     private byte[] byteify(int[] ints) {
         byte[] bytes = new byte[ints.length];
         for (int i = 0; i < ints.length; i++) {
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	@Test
+	public void testReleasedBufferIsReused() {
+		ByteBufferPool testling = new ByteBufferPool(4);
+		ByteBuffer buffer = testling.acquire(100);
+		buffer.put((byte) 1);
+		testling.release(buffer);
+		assertEquals(1, testling.getPooledCount());
+
+		ByteBuffer reused = testling.acquire(100);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(reused.capacity(), reused.limit());
+		assertEquals(0, testling.getPooledCount());
+		assertEquals(1, testling.getAllocatedCount());
+	}
+
+	@Test
+	public void testSmallBufferIsNotReturned() {
+		ByteBufferPool testling = new ByteBufferPool(4);
+		ByteBuffer small = testling.acquire(10);
+		testling.release(small);
+
+		ByteBuffer large = testling.acquire(100);
+		assertNotSame(small, large);
+		assertTrue(large.capacity() >= 100);
+		assertEquals(1, testling.getPooledCount());
+		assertSame(small, testling.acquire(10));
+	}
+
+	@Test
+	public void testLargeBufferIsFoundBehindSmallOnes() {
+		ByteBufferPool testling = new ByteBufferPool(4);
+		ByteBuffer small = testling.acquire(10);
+		ByteBuffer large = testling.acquire(100);
+		testling.release(small);
+		testling.release(large);
+
+		assertSame(large, testling.acquire(100));
+		assertEquals(1, testling.getPooledCount());
+		assertEquals(2, testling.getAllocatedCount());
+		assertEquals(1, testling.getReusedCount());
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		ByteBufferPool testling = new ByteBufferPool(2);
+		testling.release(ByteBuffer.allocate(10));
+		testling.release(ByteBuffer.allocate(10));
+		testling.release(ByteBuffer.allocate(10));
+
+		assertEquals(2, testling.getPooledCount());
+	}
+
+	@Test
+	public void testDirectPool() {
+		ByteBufferPool testling = new ByteBufferPool(2, true);
+		ByteBuffer buffer = testling.acquire(64);
+		assertTrue(buffer.isDirect());
+
+		testling.release(ByteBuffer.allocate(64));
+		assertEquals(0, testling.getPooledCount());
+		testling.release(buffer);
+		assertEquals(1, testling.getPooledCount());
+		assertFalse(testling.acquire(64) == null);
+	}
+}
@@ -156,7 +156,7 @@ public class ClientSessionTest {
 		}
 
 		public ByteArray getTLSFinishMessage() {
-			return new ByteArray();
+			return tlsFinishMessage;
 		}
 
 		public Certificate getPeerCertificate() {
@@ -244,6 +244,14 @@ public class ClientSessionTest {
 			onElementReceived.emit(streamFeatures);
 		}
 
+		public void sendStreamFeaturesWithAuthentication(String... mechanisms) {
+			StreamFeatures streamFeatures = new StreamFeatures();
+			for (String mechanism : mechanisms) {
+				streamFeatures.addAuthenticationMechanism(mechanism);
+			}
+			onElementReceived.emit(streamFeatures);
+		}
+
 		public void sendStreamFeaturesWithUnknownAuthentication() {
 			StreamFeatures streamFeatures = new StreamFeatures();
 			streamFeatures.addAuthenticationMechanism("UNKNOWN");
@@ -342,6 +350,7 @@ public class ClientSessionTest {
 		public boolean available;
 		public boolean canTLSEncrypt;
 		public boolean tlsEncrypted;
+		public ByteArray tlsFinishMessage = new ByteArray();
 		public boolean compressed;
 		public boolean whitespacePingEnabled;
 		public String bindID = "";
@@ -526,6 +535,37 @@ public class ClientSessionTest {
 		session.finish();
 	}
 
+	@Test
+	public void testAuthenticate_SCRAMPrefersChannelBinding() {
+		assertEquals("SCRAM-SHA-256-PLUS", authenticateWithSCRAM(true,
+				"SCRAM-SHA-1", "SCRAM-SHA-1-PLUS", "SCRAM-SHA-256", "SCRAM-SHA-256-PLUS"));
+		assertEquals("SCRAM-SHA-1-PLUS", authenticateWithSCRAM(true,
+				"SCRAM-SHA-1", "SCRAM-SHA-1-PLUS", "SCRAM-SHA-256"));
+		assertEquals("SCRAM-SHA-256", authenticateWithSCRAM(false,
+				"SCRAM-SHA-1", "SCRAM-SHA-1-PLUS", "SCRAM-SHA-256", "SCRAM-SHA-256-PLUS"));
+		assertEquals("SCRAM-SHA-256", authenticateWithSCRAM(true,
+				"SCRAM-SHA-1", "SCRAM-SHA-256"));
+		assertEquals("SCRAM-SHA-1", authenticateWithSCRAM(true, "SCRAM-SHA-1"));
+	}
+
+	private String authenticateWithSCRAM(boolean haveFinishMessage, String... mechanisms) {
+		server = new MockSessionStream();
+		server.tlsEncrypted = true;
+		if (haveFinishMessage) {
+			server.tlsFinishMessage = new ByteArray("finished");
+		}
+		ClientSession session = createSession();
+		session.start();
+		server.receiveStreamStart();
+		server.sendStreamStart();
+		server.sendStreamFeaturesWithAuthentication(mechanisms);
+		assertEquals(ClientSession.State.WaitingForCredentials, session.getState());
+		session.sendCredentials(new SafeByteArray("mypass"));
+		MockSessionStream.Event event = server.popEvent();
+		session.finish();
+		return ((AuthRequest)event.element).getMechanism();
+	}
+
 	@Test
 	public void testAuthenticate_Unauthorized() {
 		ClientSession session = createSession();
@@ -114,4 +114,34 @@ public class JavaCryptoProviderTest {
 		ByteArray returned = provider.getHMACSHA1(new ByteArray("---------|---------|---------|---------|---------|----------|---------|"), new ByteArray("foobar"));
 		assertEquals("d66e8f507c31d32c0620b9e367678ecf205d2b0a", Hexify.hexify(returned));
 	}
+
+	@Test
+	public void testCreateHMACSHA1_Reused() {
+		HMAC hmac = provider.createHMACSHA1(new ByteArray("foo"));
+		assertEquals(20, hmac.getLength());
+		hmac.update(new ByteArray("foo")).update(new ByteArray("bar"));
+		assertEquals("a4eeba8e633d778869f568d05a1b3dc72bfd04dd", Hexify.hexify(hmac.getHMAC()));
+
+		byte[] output = new byte[22];
+		byte[] data = new ByteArray("xfoobarx").getData();
+		hmac.update(data, 1, 6);
+		hmac.getHMAC(output, 2);
+		assertEquals("a4eeba8e633d778869f568d05a1b3dc72bfd04dd", Hexify.hexify(new ByteArray(output).subArray(2, 20)));
+	}
+
+	////////////////////////////////////////////////////////////
+	// SHA-256
+	////////////////////////////////////////////////////////////
+
+	@Test
+	public void testGetSHA256Hash() {
+		ByteArray returned = provider.getSHA256Hash(new ByteArray("abc"));
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Hexify.hexify(returned));
+	}
+
+	@Test
+	public void testGetHMACSHA256() {
+		ByteArray returned = provider.getHMACSHA256(new ByteArray("Jefe"), new ByteArray("what do ya want for nothing?"));
+		assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843", Hexify.hexify(returned));
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.eventloop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.Vector;
+
+public class ConcurrentEventLoopTest {
+
+	private Vector<Integer> events_ = new Vector<Integer>();
+
+	private class MyEventOwner implements EventOwner {};
+
+	@Before
+	public void setUp() {
+		events_.clear();
+	}
+
+	@Test
+	public void testPost() {
+		ConcurrentEventLoop testling = new ConcurrentEventLoop();
+		postLogEvent(testling, 1, null);
+		postLogEvent(testling, 2, null);
+		testling.stop();
+		testling.run();
+
+		assertEquals(2, events_.size());
+		assertEquals(Integer.valueOf(1), events_.get(0));
+		assertEquals(Integer.valueOf(2), events_.get(1));
+	}
+
+	@Test
+	public void testRemove() {
+		ConcurrentEventLoop testling = new ConcurrentEventLoop();
+		MyEventOwner eventOwner1 = new MyEventOwner();
+		MyEventOwner eventOwner2 = new MyEventOwner();
+		postLogEvent(testling, 1, eventOwner1);
+		postLogEvent(testling, 2, eventOwner2);
+		postLogEvent(testling, 3, eventOwner1);
+		postLogEvent(testling, 4, eventOwner2);
+		testling.removeEventsFromOwner(eventOwner2);
+		testling.runOnce();
+
+		assertEquals(2, events_.size());
+		assertEquals(Integer.valueOf(1), events_.get(0));
+		assertEquals(Integer.valueOf(3), events_.get(1));
+	}
+
+	@Test
+	public void testPostFromManyThreads() throws InterruptedException {
+		final ConcurrentEventLoop testling = new ConcurrentEventLoop();
+		final int threadCount = 8;
+		final int eventsPerThread = 10000;
+		final int[] lastSeen = new int[threadCount];
+		final boolean[] outOfOrder = new boolean[1];
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int thread = t;
+			lastSeen[t] = -1;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < eventsPerThread; i++) {
+						final int sequence = i;
+						testling.postEvent(new Event.Callback() {
+							public void run() {
+								if (lastSeen[thread] != sequence - 1) {
+									outOfOrder[0] = true;
+								}
+								lastSeen[thread] = sequence;
+							}
+						});
+					}
+				}
+			});
+		}
+		Thread loopThread = new Thread(new Runnable() {
+			public void run() {
+				testling.run();
+			}
+		});
+		loopThread.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		testling.stop();
+		loopThread.join(10000);
+
+		assertFalse(loopThread.isAlive());
+		assertFalse(outOfOrder[0]);
+		for (int t = 0; t < threadCount; t++) {
+			assertEquals(eventsPerThread - 1, lastSeen[t]);
+		}
+	}
+
+	private void postLogEvent(EventLoop loop, final int i, EventOwner owner) {
+		loop.postEvent(new Event.Callback() {
+			public void run() {
+				events_.add(i);
+			}
+		}, owner);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.eventloop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventLoopGroupTest {
+
+	private EventLoopGroup testling;
+
+	@Before
+	public void setUp() {
+		testling = new EventLoopGroup(2);
+	}
+
+	@After
+	public void tearDown() {
+		testling.shutdown();
+	}
+
+	@Test
+	public void testNext_RoundRobin() {
+		EventLoop first = testling.next();
+		EventLoop second = testling.next();
+		assertNotSame(first, second);
+		assertSame(first, testling.next());
+		assertEquals(2, testling.getEventLoopCount());
+	}
+
+	@Test
+	public void testEventsForOneLoopRunInOrderOnOneThread() throws InterruptedException {
+		final int eventCount = 1000;
+		final EventLoop loop = testling.getEventLoop(1);
+		final Thread[] threads = new Thread[eventCount];
+		final int[] order = new int[eventCount];
+		final int[] handled = new int[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		for (int i = 0; i < eventCount; i++) {
+			final int sequence = i;
+			loop.postEvent(new Event.Callback() {
+				public void run() {
+					threads[sequence] = Thread.currentThread();
+					order[handled[0]++] = sequence;
+					assertTrue(testling.inEventLoop());
+					if (handled[0] == eventCount) {
+						done.countDown();
+					}
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < eventCount; i++) {
+			assertEquals(i, order[i]);
+			assertSame(threads[0], threads[i]);
+		}
+		assertFalse(testling.inEventLoop());
+	}
+
+	@Test
+	public void testLoopsRunInParallel() throws InterruptedException {
+		final CountDownLatch bothRunning = new CountDownLatch(2);
+		final CountDownLatch done = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			testling.getEventLoop(i).postEvent(new Event.Callback() {
+				public void run() {
+					bothRunning.countDown();
+					try {
+						if (bothRunning.await(10, TimeUnit.SECONDS)) {
+							done.countDown();
+						}
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+}
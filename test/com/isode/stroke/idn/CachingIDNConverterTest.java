@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.idn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import com.isode.stroke.base.SafeByteArray;
+
+public class CachingIDNConverterTest {
+
+	private CountingConverter converter;
+	private CachingIDNConverter testling;
+
+	@Before
+	public void setUp() {
+		converter = new CountingConverter();
+		testling = new CachingIDNConverter(converter);
+	}
+
+	@Test
+	public void testGetStringPrepared_UnchangedASCIINotPrepared() {
+		String domain = "example.com";
+		assertSame(domain, testling.getStringPrepared(domain, IDNConverter.StringPrepProfile.NamePrep));
+		assertEquals("alice", testling.getStringPrepared("alice", IDNConverter.StringPrepProfile.XMPPNodePrep));
+		assertEquals("Tea Party/2", testling.getStringPrepared("Tea Party/2", IDNConverter.StringPrepProfile.XMPPResourcePrep));
+		assertEquals(0, converter.prepareCount);
+	}
+
+	@Test
+	public void testGetStringPrepared_ResultsCached() {
+		assertEquals("alice", testling.getStringPrepared("Alice", IDNConverter.StringPrepProfile.XMPPNodePrep));
+		assertEquals("alice", testling.getStringPrepared("Alice", IDNConverter.StringPrepProfile.XMPPNodePrep));
+		assertEquals(1, converter.prepareCount);
+
+		assertEquals("tronçon", testling.getStringPrepared("tronçon", IDNConverter.StringPrepProfile.NamePrep));
+		assertEquals("tronçon", testling.getStringPrepared("tronçon", IDNConverter.StringPrepProfile.NamePrep));
+		assertEquals(2, converter.prepareCount);
+	}
+
+	@Test
+	public void testGetStringPrepared_ProhibitedNotCached() {
+		for (int i = 0; i < 2; i++) {
+			try {
+				testling.getStringPrepared("a@b", IDNConverter.StringPrepProfile.XMPPNodePrep);
+				assertTrue("Expected IllegalArgumentException", false);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		assertEquals(2, converter.prepareCount);
+	}
+
+	@Test
+	public void testGetIDNAEncoded_InvalidCached() {
+		assertNull(testling.getIDNAEncoded("www.foo,bar.com"));
+		assertNull(testling.getIDNAEncoded("www.foo,bar.com"));
+		assertEquals("www.swift.im", testling.getIDNAEncoded("www.swift.im"));
+		assertEquals("www.swift.im", testling.getIDNAEncoded("www.swift.im"));
+		assertEquals(2, converter.encodeCount);
+	}
+
+	@Test
+	public void testIsUnchangedASCII() {
+		assertTrue(CachingIDNConverter.isUnchangedASCII("", IDNConverter.StringPrepProfile.XMPPNodePrep));
+		assertFalse(CachingIDNConverter.isUnchangedASCII("Example.com", IDNConverter.StringPrepProfile.NamePrep));
+		assertFalse(CachingIDNConverter.isUnchangedASCII("a b", IDNConverter.StringPrepProfile.XMPPNodePrep));
+		assertFalse(CachingIDNConverter.isUnchangedASCII("a\tb", IDNConverter.StringPrepProfile.XMPPResourcePrep));
+		assertTrue(CachingIDNConverter.isUnchangedASCII("Home@Office", IDNConverter.StringPrepProfile.XMPPResourcePrep));
+	}
+
+	private static class CountingConverter implements IDNConverter {
+		private final ICUConverter converter = new ICUConverter();
+		int prepareCount;
+		int encodeCount;
+
+		public String getStringPrepared(String s, StringPrepProfile profile) {
+			prepareCount++;
+			return converter.getStringPrepared(s, profile);
+		}
+
+		public SafeByteArray getStringPrepared(SafeByteArray s, StringPrepProfile profile) {
+			prepareCount++;
+			return converter.getStringPrepared(s, profile);
+		}
+
+		public String getIDNAEncoded(String s) {
+			encodeCount++;
+			return converter.getIDNAEncoded(s);
+		}
+	}
+}
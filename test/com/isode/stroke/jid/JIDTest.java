@@ -13,6 +13,7 @@ package com.isode.stroke.jid;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -458,4 +459,42 @@ public class JIDTest {
 		assertEquals("c:\\cool stuff", new JID("c\\3a\\cool\\20stuff@example.com").getUnescapedNode());
 		assertEquals("c:\\5commas", new JID("c\\3a\\5c5commas@example.com").getUnescapedNode());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testToBare_Cached() {
+		JID testling = new JID("foo@bar/baz");
+
+		assertSame(testling.toBare(), testling.toBare());
+		assertEquals(new JID("foo@bar"), testling.toBare());
+		assertEquals(new JID("foo@bar").hashCode(), testling.toBare().hashCode());
+		assertSame(testling.toBare(), testling.toBare().toBare());
+	}
+
+	@Test
+	public void testToString_Cached() {
+		JID testling = new JID("foo@bar/baz");
+
+		assertEquals("foo@bar/baz", testling.toString());
+		assertSame(testling.toString(), testling.toString());
+	}
+
+	@Test
+	public void testJIDPool_FromString() {
+		JIDPool testling = new JIDPool();
+
+		JID jid = testling.fromString("foo@bar/baz");
+		assertSame(jid, testling.fromString("foo@bar/baz"));
+		assertSame(jid, testling.fromString("Foo@bar/baz"));
+		assertFalse(testling.fromString("@bar").isValid());
+	}
+
+	@Test
+	public void testJIDPool_Intern() {
+		JIDPool testling = new JIDPool();
+
+		JID jid = new JID("foo@bar");
+		assertSame(jid, testling.intern(jid));
+		assertSame(jid, testling.intern(new JID("foo@bar")));
+		assertSame(jid, testling.intern(new JID("foo@bar/baz").toBare()));
+	}
+}
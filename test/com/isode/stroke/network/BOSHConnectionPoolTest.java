@@ -46,7 +46,7 @@ public class BOSHConnectionPoolTest {
     private List<String> boshDataWritten = new ArrayList<String>();
     private PlatformXMLParserFactory parserFactory = new PlatformXMLParserFactory();
     private StaticDomainNameResolver resolver = new StaticDomainNameResolver(eventLoop);
-    private TimerFactory timerFactory = new DummyTimerFactory();
+    private DummyTimerFactory timerFactory = new DummyTimerFactory();
     private String to = "wonderland.lit";
     private String path = "/http-bind";
     private String port = "5280";
@@ -312,7 +312,103 @@ public class BOSHConnectionPoolTest {
         int bodyPosition = response.indexOf("\r\n\r\n");
         assertEquals(fullBody,response.substring(bodyPosition+4));
     }
-    
+
+    @Test
+    public void testBatchingWindow() {
+        BOSHConnectionPool testling = createTestling();
+        testling.setBatchingWindow(100);
+        MockConnection c0 = connectionFactory.connections.get(0);
+        readResponse(initial, c0);
+        eventLoop.processEvents();
+        assertEquals(1,boshDataWritten.size());
+
+        testling.write(new SafeByteArray("<blah/>"));
+        testling.write(new SafeByteArray("<bleh/>"));
+        eventLoop.processEvents();
+        assertEquals(1,boshDataWritten.size()); // Held for the window
+
+        timerFactory.setTime(100);
+        eventLoop.processEvents();
+        assertEquals(2,boshDataWritten.size());
+        assertEquals("<body rid='" + (initialRID + 1) + "' sid='" + sid
+                + "' xmlns='http://jabber.org/protocol/httpbind'><blah/><bleh/></body>", lastBody());
+        assertEquals(1,connectionFactory.connections.size());
+        assertEquals(1,testling.getRequestCount());
+        assertEquals(14,testling.getPayloadBytesSent());
+        assertEquals(2,testling.getQueuedWriteCount());
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        BOSHConnectionPool testling = createTestling();
+        testling.setBatchingWindow(100);
+        testling.setMaxBatchSize(14);
+        MockConnection c0 = connectionFactory.connections.get(0);
+        readResponse(initial, c0);
+        eventLoop.processEvents();
+
+        testling.write(new SafeByteArray("<blah/>"));
+        eventLoop.processEvents();
+        assertEquals(1,boshDataWritten.size());
+        testling.write(new SafeByteArray("<bleh/>"));
+        eventLoop.processEvents();
+        assertEquals(2,boshDataWritten.size()); // Full, so sent without waiting
+        assertTrue(lastBody().contains("><blah/><bleh/></body>"));
+
+        testling.write(new SafeByteArray("<blih/>"));
+        testling.write(new SafeByteArray("<bloh/>"));
+        testling.write(new SafeByteArray("<bluh/>"));
+        readResponse("<body/>", c0);
+        eventLoop.processEvents();
+        assertEquals(3,boshDataWritten.size());
+        assertTrue(lastBody().contains("><blih/><bloh/></body>"));
+        assertEquals(4,testling.getQueuedWriteCount()); // <bluh/> waits for the next request
+    }
+
+    @Test
+    public void testConnectionClosedByServer() {
+        BOSHConnectionPool testling = createTestling();
+        MockConnection c0 = connectionFactory.connections.get(0);
+        readResponse(initial, c0);
+        eventLoop.processEvents();
+        testling.write(new SafeByteArray("<blah/>"));
+        eventLoop.processEvents();
+        assertEquals(2,boshDataWritten.size());
+
+        String body = "<body/>";
+        c0.pending = false;
+        c0.onDataRead.emit(new SafeByteArray("HTTP/1.1 200 OK\r\n"
+            +"Connection: close\r\n"
+            +"Content-Length: " + body.length() + "\r\n\r\n" + body));
+        assertTrue(c0.disconnected);
+
+        eventLoop.processEvents();
+        assertEquals(2,connectionFactory.connections.size());
+        testling.write(new SafeByteArray("<bleh/>"));
+        eventLoop.processEvents();
+        assertEquals(3,boshDataWritten.size());
+        assertTrue(lastBody().contains("><bleh/></body>"));
+    }
+
+    @Test
+    public void testMaxConcurrentRequests() {
+        BOSHConnectionPool testling = createTestling();
+        testling.setMaxConcurrentRequests(1);
+        readResponse(initial, connectionFactory.connections.get(0));
+        eventLoop.processEvents();
+        testling.write(new SafeByteArray("<blah/>"));
+        eventLoop.processEvents();
+        testling.write(new SafeByteArray("<bleh/>"));
+        eventLoop.processEvents();
+        eventLoop.processEvents();
+        assertEquals(1,connectionFactory.connections.size());
+        assertEquals(2,boshDataWritten.size());
+
+        readResponse("<body/>", connectionFactory.connections.get(0));
+        eventLoop.processEvents();
+        assertEquals(3,boshDataWritten.size());
+        assertTrue(lastBody().contains("><bleh/></body>"));
+    }
 
     private static class MockConnection extends Connection {
 
@@ -171,6 +171,45 @@ public class BoshConnectionTest {
         assertEquals("<blah/>",dataRead.toString());
     }
     
+    @Test
+    public void testRead_ConnectionClose() {
+        BOSHConnection testling = createTestling();
+        testling.connect();
+        eventLoop.processEvents();
+        testling.setSID("mySID");
+        testling.write(new SafeByteArray("<mypayload/>"));
+        MockConnection connection = connectionFactory.connections.get(0);
+        String body = "<body><blah/></body>";
+        connection.onDataRead.emit(new SafeByteArray(
+            "HTTP/1.1 200 OK\r\n"+
+            "Connection: close\r\n"+
+            "Content-Length: " + body.length() + "\r\n\r\n" + body));
+
+        assertEquals("<blah/>",dataRead.toString());
+        assertTrue(connection.disconnected);
+        assertTrue(disconnected);
+        assertFalse(disconnectedError);
+        assertFalse(testling.isReadyToSend());
+    }
+
+    @Test
+    public void testRead_HTTP10() {
+        BOSHConnection testling = createTestling();
+        testling.connect();
+        eventLoop.processEvents();
+        testling.setSID("mySID");
+        testling.write(new SafeByteArray("<mypayload/>"));
+        MockConnection connection = connectionFactory.connections.get(0);
+        String body = "<body><blah/></body>";
+        connection.onDataRead.emit(new SafeByteArray(
+            "HTTP/1.0 200 OK\r\n"+
+            "Content-Length: " + body.length() + "\r\n\r\n" + body));
+
+        assertEquals("<blah/>",dataRead.toString());
+        assertTrue(connection.disconnected);
+        assertFalse(testling.isReadyToSend());
+    }
+
     @Test
     public void testHTTPRequest() {
         String data = "<blah/>";
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.signals.Slot1;
+import com.isode.stroke.signals.Slot2;
+
+public class CachingDomainNameResolverTest {
+
+	private DummyEventLoop eventLoop_;
+	private StaticDomainNameResolver staticResolver_;
+	private int realQueries_;
+	private CachingDomainNameResolver testling_;
+	private List<Collection<HostAddress>> addressResults_;
+	private List<DomainNameResolveError> addressErrors_;
+	private List<Collection<DomainNameServiceQuery.Result>> serviceResults_;
+
+	@Before
+	public void setUp() {
+		eventLoop_ = new DummyEventLoop();
+		staticResolver_ = new StaticDomainNameResolver(eventLoop_);
+		staticResolver_.addAddress("xmpp.example.com", new HostAddress("10.0.0.1"));
+		staticResolver_.addXMPPClientService("example.com", "xmpp.example.com", 5222);
+		realQueries_ = 0;
+		DomainNameResolver countingResolver = new DomainNameResolver() {
+			public DomainNameServiceQuery createServiceQuery(String serviceLookupPrefix, String domain) {
+				realQueries_++;
+				return staticResolver_.createServiceQuery(serviceLookupPrefix, domain);
+			}
+
+			public DomainNameAddressQuery createAddressQuery(String name) {
+				realQueries_++;
+				if (name.equals("failing.example.com")) {
+					return new DomainNameAddressQuery() {
+						public void run() {
+							onResult.emit(new ArrayList<HostAddress>(), new DomainNameResolveError());
+						}
+					};
+				}
+				return staticResolver_.createAddressQuery(name);
+			}
+		};
+		testling_ = new CachingDomainNameResolver(countingResolver, eventLoop_, 2);
+		addressResults_ = new ArrayList<Collection<HostAddress>>();
+		addressErrors_ = new ArrayList<DomainNameResolveError>();
+		serviceResults_ = new ArrayList<Collection<DomainNameServiceQuery.Result>>();
+	}
+
+	private void resolveAddress(String name) {
+		DomainNameAddressQuery query = testling_.createAddressQuery(name);
+		query.onResult.connect(new Slot2<Collection<HostAddress>, DomainNameResolveError>() {
+			public void call(Collection<HostAddress> addresses, DomainNameResolveError error) {
+				addressResults_.add(addresses);
+				addressErrors_.add(error);
+			}
+		});
+		query.run();
+	}
+
+	private void resolveService(String domain) {
+		DomainNameServiceQuery query = testling_.createServiceQuery("_xmpp-client._tcp.", domain);
+		query.onResult.connect(new Slot1<Collection<DomainNameServiceQuery.Result>>() {
+			public void call(Collection<DomainNameServiceQuery.Result> results) {
+				serviceResults_.add(results);
+			}
+		});
+		query.run();
+	}
+
+	@Test
+	public void testAddressIsCached() {
+		resolveAddress("xmpp.example.com");
+		eventLoop_.processEvents();
+		resolveAddress("XMPP.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(1, realQueries_);
+		assertEquals(2, addressResults_.size());
+		assertEquals(1, addressResults_.get(1).size());
+		assertNull(addressErrors_.get(1));
+		assertEquals(1, testling_.getHitCount());
+		assertEquals(1, testling_.getMissCount());
+	}
+
+	@Test
+	public void testServiceIsCached() {
+		resolveService("example.com");
+		eventLoop_.processEvents();
+		resolveService("example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(1, realQueries_);
+		assertEquals(2, serviceResults_.size());
+		assertEquals("xmpp.example.com", serviceResults_.get(1).iterator().next().hostname);
+	}
+
+	@Test
+	public void testConcurrentQueriesAreCoalesced() {
+		resolveAddress("xmpp.example.com");
+		resolveAddress("xmpp.example.com");
+		resolveAddress("xmpp.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(1, realQueries_);
+		assertEquals(3, addressResults_.size());
+		assertEquals(2, testling_.getCoalescedCount());
+	}
+
+	@Test
+	public void testNegativeCaching() {
+		resolveAddress("nowhere.example.com");
+		eventLoop_.processEvents();
+		resolveAddress("nowhere.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(1, realQueries_);
+		assertNotNull(addressErrors_.get(1));
+		assertEquals(0, addressResults_.get(1).size());
+
+		testling_.setNegativeTTL(0);
+		testling_.clear();
+		resolveAddress("nowhere.example.com");
+		eventLoop_.processEvents();
+		resolveAddress("nowhere.example.com");
+		eventLoop_.processEvents();
+		assertEquals(3, realQueries_);
+	}
+
+	@Test
+	public void testFailedLookupIsNotCached() {
+		resolveAddress("failing.example.com");
+		eventLoop_.processEvents();
+		resolveAddress("failing.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(2, realQueries_);
+		assertNotNull(addressErrors_.get(1));
+		assertEquals(0, testling_.getHitCount());
+	}
+
+	@Test
+	public void testServiceNotFoundIsCached() {
+		resolveService("nowhere.example.com");
+		eventLoop_.processEvents();
+		resolveService("nowhere.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(1, realQueries_);
+		assertEquals(0, serviceResults_.get(1).size());
+	}
+
+	@Test
+	public void testServiceRecordTTLIsHonoured() {
+		staticResolver_.addService("_xmpp-client._tcp.short.example.com",
+				new DomainNameServiceQuery.Result("xmpp.example.com", 5222, 0, 0, 0));
+		staticResolver_.addService("_xmpp-client._tcp.long.example.com",
+				new DomainNameServiceQuery.Result("xmpp.example.com", 5222, 0, 0, 3600));
+		resolveService("short.example.com");
+		resolveService("long.example.com");
+		eventLoop_.processEvents();
+		resolveService("short.example.com");
+		resolveService("long.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(3, realQueries_);
+		assertEquals(4, serviceResults_.size());
+		assertEquals(1, testling_.getHitCount());
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		testling_.setPositiveTTL(10);
+		resolveAddress("xmpp.example.com");
+		eventLoop_.processEvents();
+		Thread.sleep(50);
+		resolveAddress("xmpp.example.com");
+		eventLoop_.processEvents();
+
+		assertEquals(2, realQueries_);
+		assertEquals(2, addressResults_.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsDropped() {
+		resolveAddress("a.example.com");
+		resolveAddress("b.example.com");
+		eventLoop_.processEvents();
+		resolveAddress("a.example.com");
+		resolveAddress("c.example.com");
+		eventLoop_.processEvents();
+		assertEquals(3, realQueries_);
+
+		resolveAddress("a.example.com");
+		eventLoop_.processEvents();
+		assertEquals(3, realQueries_);
+		resolveAddress("b.example.com");
+		eventLoop_.processEvents();
+		assertEquals(4, realQueries_);
+	}
+}
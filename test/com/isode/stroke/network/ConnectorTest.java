@@ -47,9 +47,10 @@ public class ConnectorTest {
 
 	private class MockConnection extends Connection {
 
-		public MockConnection(final Vector<HostAddressPort> failingPorts, boolean isResponsive, EventLoop eventLoop) {
+		public MockConnection(final Vector<HostAddressPort> failingPorts, final Vector<HostAddressPort> unresponsivePorts, boolean isResponsive, EventLoop eventLoop) {
 			this.eventLoop = eventLoop;
 			this.failingPorts = failingPorts;
+			this.unresponsivePorts = unresponsivePorts;
 			this.isResponsive = isResponsive;
 		}
 
@@ -57,7 +58,7 @@ public class ConnectorTest {
 
 		public void connect(final HostAddressPort address) {
 			hostAddressPort = address;
-			if(isResponsive) {
+			if(isResponsive && !unresponsivePorts.contains(address)) {
 				final boolean fail = failingPorts.contains(address);
 				eventLoop.postEvent(new Event.Callback() {
 					@Override
@@ -75,14 +76,16 @@ public class ConnectorTest {
 		    return new HostAddressPort();
 		}
 
-		public void disconnect() { assert(false); }
+		public void disconnect() { disconnected = true; }
 				
 		public void write(final SafeByteArray data) { assert(false); }
 
 		public EventLoop eventLoop;
 		public HostAddressPort hostAddressPort;
 		public Vector<HostAddressPort> failingPorts = new Vector<HostAddressPort>();
+		public Vector<HostAddressPort> unresponsivePorts = new Vector<HostAddressPort>();
 		public boolean isResponsive;
+		public boolean disconnected;
 	};
 
 	private class MockConnectionFactory implements ConnectionFactory {
@@ -92,12 +95,16 @@ public class ConnectorTest {
 		}
 
 		public Connection createConnection() {
-			return new MockConnection(failingPorts, isResponsive, eventLoop);
+			MockConnection connection = new MockConnection(failingPorts, unresponsivePorts, isResponsive, eventLoop);
+			createdConnections.add(connection);
+			return connection;
 		}
 
 		public EventLoop eventLoop;
 		public boolean isResponsive;
 		public Vector<HostAddressPort> failingPorts = new Vector<HostAddressPort>();
+		public Vector<HostAddressPort> unresponsivePorts = new Vector<HostAddressPort>();
+		public Vector<MockConnection> createdConnections = new Vector<MockConnection>();
 	};
 
 	private Connector createConnector() {
@@ -189,6 +196,22 @@ public class ConnectorTest {
 		assertNull((DomainNameResolveError)(error));
 	}
 
+	@Test
+	public void testConnect_NoServiceLookups_Fails() {
+		Connector testling = createConnector(4321, null);
+		resolver.addAddress("foo.com", host3.getAddress());
+		connectionFactory.failingPorts.add(new HostAddressPort(host3.getAddress(), 4321));
+
+		testling.start();
+		eventLoop.processEvents();
+
+		/* As in Swiften, the name is looked up and tried again before giving up */
+		assertEquals(2, connectionFactory.createdConnections.size());
+		assertEquals(1, (connections.size()));
+		assertNull(connections.get(0));
+		assertNull((DomainNameResolveError)(error));
+	}
+
 	@Test
 	public void testConnect_NoSRVHost() {
 		Connector testling = createConnector();
@@ -404,4 +427,158 @@ public class ConnectorTest {
 		assertEquals(1, (connections.size()));
 		assertNull(connections.get(0));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testConnect_Racing_StaggersAttempts() {
+		Connector testling = createConnector();
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		HostAddress address1 = new HostAddress("1.1.1.1");
+		HostAddress address2 = new HostAddress("2.2.2.2");
+		resolver.addXMPPClientService("foo.com", "host-foo.com", 1234);
+		resolver.addAddress("host-foo.com", address1);
+		resolver.addAddress("host-foo.com", address2);
+		connectionFactory.unresponsivePorts.add(new HostAddressPort(address1, 1234));
+
+		testling.start();
+		eventLoop.processEvents();
+
+		assertEquals(0, connections.size());
+		assertEquals(1, connectionFactory.createdConnections.size());
+
+		timerFactory.setTime(250);
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertEquals(new HostAddressPort(address2, 1234), connections.get(0).hostAddressPort);
+		assertNull(error);
+		assertEquals(2, connectionFactory.createdConnections.size());
+		assertTrue(connectionFactory.createdConnections.get(0).disconnected);
+		assertFalse(connections.get(0).disconnected);
+		assertEquals(2, testling.getAttemptCount());
+		assertEquals(1, testling.getCancelledAttemptCount());
+		assertTrue(testling.getConnectMilliseconds() >= 0);
+	}
+
+	@Test
+	public void testConnect_Racing_FailureStartsNextAttempt() {
+		Connector testling = createConnector();
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		HostAddress address1 = new HostAddress("1.1.1.1");
+		HostAddress address2 = new HostAddress("2.2.2.2");
+		resolver.addXMPPClientService("foo.com", "host-foo.com", 1234);
+		resolver.addAddress("host-foo.com", address1);
+		resolver.addAddress("host-foo.com", address2);
+		connectionFactory.failingPorts.add(new HostAddressPort(address1, 1234));
+
+		testling.start();
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertEquals(new HostAddressPort(address2, 1234), connections.get(0).hostAddressPort);
+		assertEquals(0, testling.getCancelledAttemptCount());
+	}
+
+	@Test
+	public void testConnect_Racing_MovesOnFromUnresponsiveSRVHost() {
+		Connector testling = createConnector();
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		testling.setTimeoutMilliseconds(10000);
+		resolver.addService("_xmpp-client._tcp.foo.com", new DomainNameServiceQuery.Result("host1-foo.com", 1234, 0, 0));
+		resolver.addService("_xmpp-client._tcp.foo.com", new DomainNameServiceQuery.Result("host2-foo.com", 2345, 1, 0));
+		resolver.addAddress("host1-foo.com", host1.getAddress());
+		resolver.addAddress("host2-foo.com", host2.getAddress());
+		connectionFactory.unresponsivePorts.add(host1);
+
+		testling.start();
+		eventLoop.processEvents();
+		timerFactory.setTime(250);
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertEquals(host2, connections.get(0).hostAddressPort);
+		assertTrue(connectionFactory.createdConnections.get(0).disconnected);
+	}
+
+	@Test
+	public void testConnect_Racing_AllFail() {
+		Connector testling = createConnector();
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		resolver.addXMPPClientService("foo.com", host1);
+		resolver.addAddress("foo.com", host3.getAddress());
+		connectionFactory.failingPorts.add(host1);
+		connectionFactory.failingPorts.add(host3);
+
+		testling.start();
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertNull(connections.get(0));
+		assertNull(error);
+		assertEquals(2, testling.getAttemptCount());
+	}
+
+	@Test
+	public void testConnect_Racing_TimeoutDuringConnectToOnlyCandidate() {
+		Connector testling = createConnector(-1, null);
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		testling.setTimeoutMilliseconds(1000);
+		resolver.addAddress("foo.com", host3.getAddress());
+		connectionFactory.isResponsive = false;
+
+		testling.start();
+		eventLoop.processEvents();
+		timerFactory.setTime(250);
+		eventLoop.processEvents();
+		assertEquals(0, connections.size());
+
+		timerFactory.setTime(1000);
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertNull(connections.get(0));
+		assertTrue(connectionFactory.createdConnections.get(0).disconnected);
+	}
+
+	@Test
+	public void testStop_Racing() {
+		Connector testling = createConnector();
+		testling.setConnectionAttemptDelayMilliseconds(250);
+		resolver.addXMPPClientService("foo.com", host1);
+		connectionFactory.isResponsive = false;
+
+		testling.start();
+		eventLoop.processEvents();
+		testling.stop();
+		timerFactory.setTime(250);
+		eventLoop.processEvents();
+
+		assertEquals(1, connections.size());
+		assertNull(connections.get(0));
+		assertTrue(connectionFactory.createdConnections.get(0).disconnected);
+		assertEquals(1, testling.getCancelledAttemptCount());
+	}
+
+	@Test
+	public void testInterleaveAddressFamilies() {
+		HostAddress v4a = new HostAddress("1.1.1.1");
+		HostAddress v4b = new HostAddress("2.2.2.2");
+		HostAddress v4c = new HostAddress("3.3.3.3");
+		HostAddress v6a = new HostAddress("2001:db8::1");
+		HostAddress v6b = new HostAddress("2001:db8::2");
+		Vector<HostAddress> addresses = new Vector<HostAddress>();
+		addresses.add(v4a);
+		addresses.add(v4b);
+		addresses.add(v4c);
+		addresses.add(v6a);
+		addresses.add(v6b);
+
+		java.util.List<HostAddress> result = Connector.interleaveAddressFamilies(addresses);
+
+		assertEquals(5, result.size());
+		assertEquals(v6a, result.get(0));
+		assertEquals(v4a, result.get(1));
+		assertEquals(v6b, result.get(2));
+		assertEquals(v4b, result.get(3));
+		assertEquals(v4c, result.get(4));
+	}
+}
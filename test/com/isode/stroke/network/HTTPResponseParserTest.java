@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.signals.Slot1;
+
+public class HTTPResponseParserTest {
+
+	private HTTPResponseParser testling_;
+	private List<HTTPResponseParser.Response> responses_;
+
+	@Before
+	public void setUp() {
+		testling_ = new HTTPResponseParser();
+		responses_ = new ArrayList<HTTPResponseParser.Response>();
+		testling_.onResponse.connect(new Slot1<HTTPResponseParser.Response>() {
+			public void call(HTTPResponseParser.Response response) {
+				responses_.add(response);
+			}
+		});
+	}
+
+	private boolean parse(String data) {
+		return testling_.parse(new SafeByteArray(data).asByteBuffer());
+	}
+
+	@Test
+	public void testContentLength() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: 5\r\n\r\nhello"));
+
+		assertEquals(1, responses_.size());
+		HTTPResponseParser.Response response = responses_.get(0);
+		assertEquals(200, response.getStatusCode());
+		assertEquals("OK", response.getReasonPhrase());
+		assertEquals("text/xml", response.getHeader("content-type"));
+		assertEquals("hello", response.getBody().toString());
+		assertTrue(response.isKeepAlive());
+		assertTrue(testling_.isIdle());
+	}
+
+	@Test
+	public void testByteAtATime() {
+		String data = "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc";
+		for (int i = 0; i < data.length(); i++) {
+			assertEquals(0, responses_.size());
+			assertTrue(parse(data.substring(i, i + 1)));
+		}
+		assertEquals(1, responses_.size());
+		assertEquals("abc", responses_.get(0).getBody().toString());
+	}
+
+	@Test
+	public void testChunked() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "4;ext=1\r\n<bod\r\n"));
+		assertEquals(0, responses_.size());
+		assertTrue(parse("9\r\ny></body>\r\n0\r\nX-Trailer: 1\r\n\r\n"));
+
+		assertEquals(1, responses_.size());
+		assertEquals("<body></body>", responses_.get(0).getBody().toString());
+	}
+
+	@Test
+	public void testPipelined() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: 1\r\n\r\na"
+				+ "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n"
+				+ "HTTP/1.1 200 OK\r\nContent-Length: 1\r\n\r\nc"));
+
+		assertEquals(3, responses_.size());
+		assertEquals("a", responses_.get(0).getBody().toString());
+		assertEquals(404, responses_.get(1).getStatusCode());
+		assertEquals("c", responses_.get(2).getBody().toString());
+	}
+
+	@Test
+	public void testInterimResponseSkipped() {
+		assertTrue(parse("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 204 No Content\r\n\r\n"));
+
+		assertEquals(1, responses_.size());
+		assertEquals(204, responses_.get(0).getStatusCode());
+	}
+
+	@Test
+	public void testBodyUntilClose() {
+		assertTrue(parse("HTTP/1.0 200 OK\r\n\r\nsome"));
+		assertTrue(parse(" data"));
+		assertEquals(0, responses_.size());
+
+		assertTrue(testling_.handleEndOfStream());
+		assertEquals(1, responses_.size());
+		assertEquals("some data", responses_.get(0).getBody().toString());
+		assertFalse(responses_.get(0).isKeepAlive());
+	}
+
+	@Test
+	public void testConnectionClose() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"));
+
+		assertFalse(responses_.get(0).isKeepAlive());
+		assertNull(responses_.get(0).getHeader("Content-Type"));
+	}
+
+	@Test
+	public void testTruncatedResponse() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nabc"));
+		assertFalse(testling_.handleEndOfStream());
+	}
+
+	@Test
+	public void testInvalid() {
+		assertFalse(parse("FOO 200 OK\r\n\r\n"));
+		assertFalse(parse("HTTP/1.1 200 OK\r\n\r\n"));
+
+		testling_.reset();
+		assertFalse(parse("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n"));
+		testling_.reset();
+		assertFalse(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"));
+		assertEquals(0, responses_.size());
+	}
+}
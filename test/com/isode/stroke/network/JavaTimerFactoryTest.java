@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.signals.Slot;
+
+public class JavaTimerFactoryTest {
+
+	private DummyEventLoop eventLoop_;
+	private ScheduledExecutorService scheduler_;
+	private JavaTimerFactory testling_;
+	private int ticks_;
+
+	@Before
+	public void setUp() {
+		eventLoop_ = new DummyEventLoop();
+		scheduler_ = JavaTimerFactory.createScheduler(1);
+		testling_ = new JavaTimerFactory(eventLoop_, scheduler_);
+		ticks_ = 0;
+	}
+
+	@After
+	public void tearDown() {
+		scheduler_.shutdownNow();
+	}
+
+	private Timer createTimer(long milliseconds) {
+		Timer timer = testling_.createTimer(milliseconds);
+		timer.onTick.connect(new Slot() {
+			public void call() {
+				ticks_++;
+			}
+		});
+		return timer;
+	}
+
+	private void processEventsFor(long milliseconds) throws InterruptedException {
+		long end = System.currentTimeMillis() + milliseconds;
+		while (System.currentTimeMillis() < end) {
+			eventLoop_.processEvents();
+			Thread.sleep(5);
+		}
+		eventLoop_.processEvents();
+	}
+
+	@Test
+	public void testTick() throws Exception {
+		Timer timer = createTimer(10);
+		timer.start();
+		assertEquals(0, ticks_);
+
+		processEventsFor(200);
+		assertEquals(1, ticks_);
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		Timer timer = createTimer(50);
+		timer.start();
+		timer.stop();
+
+		processEventsFor(200);
+		assertEquals(0, ticks_);
+	}
+
+	@Test
+	public void testStopAfterExpiryBeforeTick() throws Exception {
+		Timer timer = createTimer(1);
+		timer.start();
+		Thread.sleep(100);
+		assertTrue(eventLoop_.hasEvents());
+		timer.stop();
+
+		eventLoop_.processEvents();
+		assertEquals(0, ticks_);
+	}
+
+	@Test
+	public void testRestart() throws Exception {
+		Timer timer = createTimer(10);
+		timer.start();
+		timer.start();
+
+		processEventsFor(200);
+		assertEquals(1, ticks_);
+	}
+
+	/* Churn of the kind a per-stanza timeout causes, over many sessions */
+	@Test
+	public void testChurnDoesNotFillScheduler() throws Exception {
+		List<Timer> timers = new ArrayList<Timer>();
+		for (int i = 0; i < 10000; i++) {
+			timers.add(createTimer(60000));
+		}
+		for (int round = 0; round < 10; round++) {
+			for (Timer timer : timers) {
+				timer.start();
+			}
+		}
+		for (Timer timer : timers) {
+			timer.stop();
+		}
+
+		assertTrue(((ScheduledThreadPoolExecutor) scheduler_).getQueue().size() < 1024);
+		assertEquals(0, ticks_);
+	}
+}
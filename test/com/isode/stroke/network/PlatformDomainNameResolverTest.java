@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.signals.Slot2;
+
+public class PlatformDomainNameResolverTest {
+
+	private DummyEventLoop eventLoop_;
+	private ExecutorService executor_;
+	private CountDownLatch release_;
+	private List<String> results_;
+
+	@Before
+	public void setUp() {
+		eventLoop_ = new DummyEventLoop();
+		executor_ = PlatformDomainNameResolver.createExecutor(1, 1);
+		release_ = new CountDownLatch(1);
+		results_ = new ArrayList<String>();
+	}
+
+	@After
+	public void tearDown() {
+		release_.countDown();
+		executor_.shutdownNow();
+	}
+
+	private Callable<String> blockingLookup(final String result) {
+		return new Callable<String>() {
+			public String call() throws Exception {
+				release_.await();
+				return result;
+			}
+		};
+	}
+
+	private PlatformDomainNameLookup.Handler<String> recordResult() {
+		return new PlatformDomainNameLookup.Handler<String>() {
+			public void handleResult(String result) {
+				results_.add(result);
+			}
+		};
+	}
+
+	private void waitForResults(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (results_.size() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+			eventLoop_.processEvents();
+		}
+	}
+
+	@Test
+	public void testResultIsPostedToEventLoop() throws Exception {
+		PlatformDomainNameLookup.run(executor_, eventLoop_, 0, blockingLookup("a"), recordResult());
+		assertEquals(0, results_.size());
+
+		release_.countDown();
+		waitForResults(1);
+		assertEquals(1, results_.size());
+		assertEquals("a", results_.get(0));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		PlatformDomainNameLookup.run(executor_, eventLoop_, 50, blockingLookup("a"), recordResult());
+		waitForResults(1);
+		assertEquals(1, results_.size());
+		assertNull(results_.get(0));
+
+		/* The lookup finishing later doesn't give a second result */
+		release_.countDown();
+		Thread.sleep(50);
+		eventLoop_.processEvents();
+		assertEquals(1, results_.size());
+	}
+
+	@Test
+	public void testFullExecutorFailsWithoutBlocking() throws Exception {
+		PlatformDomainNameLookup.run(executor_, eventLoop_, 0, blockingLookup("a"), recordResult());
+		PlatformDomainNameLookup.run(executor_, eventLoop_, 0, blockingLookup("b"), recordResult());
+		PlatformDomainNameLookup.run(executor_, eventLoop_, 0, blockingLookup("c"), recordResult());
+		eventLoop_.processEvents();
+		assertEquals(1, results_.size());
+		assertNull(results_.get(0));
+
+		release_.countDown();
+		waitForResults(3);
+		assertEquals(3, results_.size());
+		assertTrue(results_.contains("a"));
+		assertTrue(results_.contains("b"));
+	}
+
+	@Test
+	public void testAddressQuery() throws Exception {
+		PlatformDomainNameAddressQuery query = new PlatformDomainNameAddressQuery("127.0.0.1", eventLoop_, executor_, 5000);
+		final List<DomainNameResolveError> errors = new ArrayList<DomainNameResolveError>();
+		final List<Collection<HostAddress>> addresses = new ArrayList<Collection<HostAddress>>();
+		query.onResult.connect(new Slot2<Collection<HostAddress>, DomainNameResolveError>() {
+			public void call(Collection<HostAddress> result, DomainNameResolveError error) {
+				addresses.add(result);
+				errors.add(error);
+				results_.add("done");
+			}
+		});
+		query.run();
+		waitForResults(1);
+
+		assertEquals(1, addresses.size());
+		assertNull(errors.get(0));
+		assertEquals("127.0.0.1", addresses.get(0).iterator().next().toString());
+	}
+}
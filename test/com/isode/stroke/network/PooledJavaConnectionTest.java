@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.signals.Slot;
+import com.isode.stroke.signals.Slot1;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+public class PooledJavaConnectionTest {
+
+	private DummyEventLoop eventLoop;
+	private JavaSelectorPool selectorPool;
+	private ServerSocket server;
+	private Vector<Boolean> connectFinished = new Vector<Boolean>();
+	private Vector<Connection.Error> disconnected = new Vector<Connection.Error>();
+	private StringBuilder dataRead = new StringBuilder();
+	private int dataWritten;
+
+	@Before
+	public void setUp() throws IOException {
+		eventLoop = new DummyEventLoop();
+		selectorPool = new JavaSelectorPool(1);
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		connectFinished.clear();
+		disconnected.clear();
+		dataRead.setLength(0);
+		dataWritten = 0;
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+		selectorPool.shutdown();
+	}
+
+	@Test
+	public void testConnectWriteAndRead() throws IOException {
+		PooledJavaConnection testling = createConnection();
+		testling.connect(getServerAddress());
+		Socket peer = server.accept();
+		waitFor(new Condition() { public boolean isTrue() { return !connectFinished.isEmpty(); } });
+		assertEquals(Boolean.FALSE, connectFinished.get(0));
+
+		testling.write(new SafeByteArray("<stream>"));
+		InputStream input = peer.getInputStream();
+		byte[] received = new byte[8];
+		int count = 0;
+		while (count < received.length) {
+			count += input.read(received, count, received.length - count);
+		}
+		assertEquals("<stream>", new String(received, "UTF-8"));
+
+		OutputStream output = peer.getOutputStream();
+		output.write("<features/>".getBytes("UTF-8"));
+		output.flush();
+		waitFor(new Condition() { public boolean isTrue() { return dataRead.length() == 11; } });
+		assertEquals("<features/>", dataRead.toString());
+		assertTrue(dataWritten > 0);
+		peer.close();
+	}
+
+	@Test
+	public void testManyConnectionsShareOneThread() throws IOException {
+		final int connectionCount = 20;
+		Vector<PooledJavaConnection> connections = new Vector<PooledJavaConnection>();
+		Vector<Socket> peers = new Vector<Socket>();
+		for (int i = 0; i < connectionCount; i++) {
+			PooledJavaConnection connection = createConnection();
+			connection.connect(getServerAddress());
+			connections.add(connection);
+			peers.add(server.accept());
+		}
+		waitFor(new Condition() { public boolean isTrue() { return connectFinished.size() == connectionCount; } });
+		assertFalse(connectFinished.contains(Boolean.TRUE));
+
+		for (Socket peer : peers) {
+			peer.getOutputStream().write('x');
+			peer.getOutputStream().flush();
+		}
+		waitFor(new Condition() { public boolean isTrue() { return dataRead.length() == connectionCount; } });
+
+		for (Socket peer : peers) {
+			peer.close();
+		}
+		waitFor(new Condition() { public boolean isTrue() { return disconnected.size() == connectionCount; } });
+		assertEquals(Connection.Error.ReadError, disconnected.get(0));
+	}
+
+	@Test
+	public void testDisconnect() throws IOException {
+		PooledJavaConnection testling = createConnection();
+		testling.connect(getServerAddress());
+		Socket peer = server.accept();
+		waitFor(new Condition() { public boolean isTrue() { return !connectFinished.isEmpty(); } });
+
+		testling.write(new SafeByteArray("</stream>"));
+		testling.disconnect();
+		waitFor(new Condition() { public boolean isTrue() { return !disconnected.isEmpty(); } });
+		assertNull(disconnected.get(0));
+
+		InputStream input = peer.getInputStream();
+		StringBuilder received = new StringBuilder();
+		int c;
+		while ((c = input.read()) != -1) {
+			received.append((char) c);
+		}
+		assertEquals("</stream>", received.toString());
+		peer.close();
+	}
+
+	@Test
+	public void testConnectFailure() throws IOException {
+		HostAddressPort address = getServerAddress();
+		server.close();
+		PooledJavaConnection testling = createConnection();
+		testling.connect(address);
+		waitFor(new Condition() { public boolean isTrue() { return !connectFinished.isEmpty(); } });
+		assertEquals(Boolean.TRUE, connectFinished.get(0));
+	}
+
+	private interface Condition {
+		boolean isTrue();
+	}
+
+	private void waitFor(Condition condition) {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.isTrue()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+			}
+			eventLoop.processEvents();
+		}
+	}
+
+	private HostAddressPort getServerAddress() {
+		return new HostAddressPort(new HostAddress(server.getInetAddress()), server.getLocalPort());
+	}
+
+	private PooledJavaConnection createConnection() {
+		PooledJavaConnection connection = PooledJavaConnection.create(eventLoop, selectorPool);
+		connection.onConnectFinished.connect(new Slot1<Boolean>() {
+			@Override
+			public void call(Boolean error) {
+				connectFinished.add(error);
+			}
+		});
+		connection.onDisconnected.connect(new Slot1<Connection.Error>() {
+			@Override
+			public void call(Connection.Error error) {
+				disconnected.add(error);
+			}
+		});
+		connection.onDataRead.connect(new Slot1<SafeByteArray>() {
+			@Override
+			public void call(SafeByteArray data) {
+				dataRead.append(data.toString());
+			}
+		});
+		connection.onDataWritten.connect(new Slot() {
+			@Override
+			public void call() {
+				dataWritten++;
+			}
+		});
+		return connection;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.signals.Slot;
+
+public class TimingWheelTest {
+
+	private DummyTimerFactory timerFactory_;
+	private TimingWheel testling_;
+	private List<String> fired_;
+
+	@Before
+	public void setUp() {
+		timerFactory_ = new DummyTimerFactory();
+		testling_ = new TimingWheel(timerFactory_, 100, 8);
+		fired_ = new ArrayList<String>();
+	}
+
+	private Slot record(final String name) {
+		return new Slot() {
+			public void call() {
+				fired_.add(name);
+			}
+		};
+	}
+
+	/* DummyTimerFactory only fires each timer once per setTime call */
+	private void advanceTo(int time) {
+		for (int t = 100; t <= time; t += 100) {
+			timerFactory_.setTime(t);
+		}
+	}
+
+	@Test
+	public void testFiresOnTheTickAfterTheDelay() {
+		testling_.schedule(250, record("a"));
+		testling_.schedule(100, record("b"));
+
+		timerFactory_.setTime(100);
+		assertEquals(1, fired_.size());
+		assertEquals("b", fired_.get(0));
+		timerFactory_.setTime(200);
+		assertEquals(1, fired_.size());
+		timerFactory_.setTime(300);
+		assertEquals(2, fired_.size());
+		assertEquals("a", fired_.get(1));
+		assertEquals(0, testling_.getPendingCount());
+	}
+
+	@Test
+	public void testCancel() {
+		TimingWheel.Timeout timeout = testling_.schedule(200, record("a"));
+		testling_.schedule(200, record("b"));
+		assertTrue(timeout.isPending());
+
+		timeout.cancel();
+		assertFalse(timeout.isPending());
+		assertEquals(1, testling_.getPendingCount());
+
+		advanceTo(200);
+		assertEquals(1, fired_.size());
+		assertEquals("b", fired_.get(0));
+	}
+
+	@Test
+	public void testDelayLongerThanOneRevolution() {
+		testling_.schedule(2000, record("a"));
+
+		advanceTo(1900);
+		assertEquals(0, fired_.size());
+		timerFactory_.setTime(2000);
+		assertEquals(1, fired_.size());
+	}
+
+	@Test
+	public void testScheduleFromAction() {
+		testling_.schedule(100, new Slot() {
+			public void call() {
+				testling_.schedule(100, record("again"));
+			}
+		});
+
+		advanceTo(200);
+		assertEquals(1, fired_.size());
+		assertEquals("again", fired_.get(0));
+	}
+}
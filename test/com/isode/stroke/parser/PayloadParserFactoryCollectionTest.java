@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.parser;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import com.isode.stroke.parser.payloadparsers.BodyParser;
+import com.isode.stroke.parser.payloadparsers.ChatStateParser;
+import com.isode.stroke.parser.payloadparsers.ErrorParser;
+import com.isode.stroke.parser.payloadparsers.FormParser;
+import com.isode.stroke.parser.payloadparsers.FullPayloadParserFactoryCollection;
+import com.isode.stroke.parser.payloadparsers.MUCUserPayloadParser;
+import com.isode.stroke.parser.payloadparsers.PriorityParser;
+import com.isode.stroke.parser.payloadparsers.RawXMLPayloadParser;
+
+public class PayloadParserFactoryCollectionTest {
+
+	private final AttributeMap attributes = new AttributeMap();
+
+	@Test
+	public void testGetPayloadParserFactory_ElementAndNamespace() {
+		PayloadParserFactoryCollection testling = new PayloadParserFactoryCollection();
+		PayloadParserFactory body = new GenericPayloadParserFactory<BodyParser>("body", "jabber:client", BodyParser.class);
+		PayloadParserFactory priority = new GenericPayloadParserFactory<PriorityParser>("priority", "jabber:client", PriorityParser.class);
+		testling.addFactory(body);
+		testling.addFactory(priority);
+
+		assertSame(body, testling.getPayloadParserFactory("body", "jabber:client", attributes));
+		assertSame(priority, testling.getPayloadParserFactory("priority", "jabber:client", attributes));
+		assertNull(testling.getPayloadParserFactory("body", "jabber:server", attributes));
+	}
+
+	@Test
+	public void testGetPayloadParserFactory_FirstAddedWins() {
+		PayloadParserFactoryCollection testling = new PayloadParserFactoryCollection();
+		PayloadParserFactory anyBody = new GenericPayloadParserFactory<BodyParser>("body", BodyParser.class);
+		PayloadParserFactory clientBody = new GenericPayloadParserFactory<BodyParser>("body", "jabber:client", BodyParser.class);
+		PayloadParserFactory unkeyed = new TestFactory("body");
+		testling.addFactory(unkeyed);
+		testling.addFactory(anyBody);
+		testling.addFactory(clientBody);
+
+		assertSame(unkeyed, testling.getPayloadParserFactory("body", "jabber:client", attributes));
+
+		testling.removeFactory(unkeyed);
+		assertSame(anyBody, testling.getPayloadParserFactory("body", "jabber:client", attributes));
+
+		testling.removeFactory(anyBody);
+		assertSame(clientBody, testling.getPayloadParserFactory("body", "jabber:client", attributes));
+	}
+
+	@Test
+	public void testGetPayloadParserFactory_UnkeyedAfterKeyed() {
+		PayloadParserFactoryCollection testling = new PayloadParserFactoryCollection();
+		PayloadParserFactory namespaced = new GenericPayloadParserFactory<BodyParser>("", "jabber:client", BodyParser.class);
+		PayloadParserFactory unkeyed = new TestFactory("body");
+		testling.addFactory(namespaced);
+		testling.addFactory(unkeyed);
+
+		assertSame(namespaced, testling.getPayloadParserFactory("body", "jabber:client", attributes));
+		assertSame(unkeyed, testling.getPayloadParserFactory("body", "jabber:server", attributes));
+	}
+
+	@Test
+	public void testGetPayloadParserFactory_Default() {
+		PayloadParserFactoryCollection testling = new PayloadParserFactoryCollection();
+		PayloadParserFactory defaultFactory = new TestFactory("");
+		testling.setDefaultFactory(defaultFactory);
+
+		assertSame(defaultFactory, testling.getPayloadParserFactory("foo", "bar", attributes));
+	}
+
+	@Test
+	public void testGetPayloadParserFactory_FullCollection() {
+		FullPayloadParserFactoryCollection testling = new FullPayloadParserFactoryCollection();
+
+		assertTrue(createParser(testling, "body", "jabber:client") instanceof BodyParser);
+		assertTrue(createParser(testling, "error", "jabber:client") instanceof ErrorParser);
+		assertTrue(createParser(testling, "x", "jabber:x:data") instanceof FormParser);
+		assertTrue(createParser(testling, "active", "http://jabber.org/protocol/chatstates") instanceof ChatStateParser);
+		assertTrue(createParser(testling, "x", "http://jabber.org/protocol/muc#user") instanceof MUCUserPayloadParser);
+		assertTrue(createParser(testling, "foo", "urn:example") instanceof RawXMLPayloadParser);
+	}
+
+	private PayloadParser createParser(PayloadParserFactoryCollection factories, String element, String ns) {
+		return factories.getPayloadParserFactory(element, ns, attributes).createPayloadParser();
+	}
+
+	private static class TestFactory implements PayloadParserFactory {
+		private final String element;
+
+		TestFactory(String element) {
+			this.element = element;
+		}
+
+		public boolean canParse(String element, String ns, AttributeMap attributes) {
+			return this.element.equals(element);
+		}
+
+		public PayloadParser createPayloadParser() {
+			return new BodyParser();
+		}
+	}
+}
@@ -8,6 +8,7 @@
  */
 package com.isode.stroke.parser;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -256,6 +257,39 @@ public class XMLParserTest {
         assertEquals("presence", client_.events.get(2).data);
     }
 
+    @Test
+    public void testParse_BytesWithCharacterSplitAcrossChunks() throws Exception {
+        XMLParser testling = parser();
+        byte[] data = "<body>\u00DF\u0410</body>".getBytes("UTF-8");
+
+        /* Split in the middle of the two-byte encoding of \u00DF */
+        assertTrue(testling.parse(data, 0, 7));
+        assertTrue(testling.parse(data, 7, data.length - 7));
+
+        StringBuilder text = new StringBuilder();
+        for (Client.Event event : client_.events) {
+            if (event.type == Client.Type.CharacterData) {
+                text.append(event.data);
+            }
+        }
+        assertEquals("\u00DF\u0410", text.toString());
+        assertEquals(Client.Type.EndElement, client_.events.get(client_.events.size() - 1).type);
+    }
+
+    @Test
+    public void testParse_ByteBuffer() throws Exception {
+        XMLParser testling = parser();
+        ByteBuffer buffer = ByteBuffer.wrap("xx<presence/>".getBytes("UTF-8"));
+        buffer.position(2);
+
+        assertTrue(testling.parse(buffer.slice()));
+
+        assertEquals(2, client_.events.size());
+        assertEquals(Client.Type.StartElement, client_.events.get(0).type);
+        assertEquals("presence", client_.events.get(0).data);
+        assertEquals(Client.Type.EndElement, client_.events.get(1).type);
+    }
+
     private static class Client implements XMLParserClient {
 
         public enum Type {
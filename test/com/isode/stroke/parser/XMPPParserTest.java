@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import com.isode.stroke.elements.Body;
+import com.isode.stroke.elements.Element;
+import com.isode.stroke.elements.Message;
+import com.isode.stroke.elements.ProtocolHeader;
+import com.isode.stroke.elements.StanzaAck;
+import com.isode.stroke.elements.StreamFeatures;
+import com.isode.stroke.elements.UnknownElement;
+import com.isode.stroke.parser.payloadparsers.FullPayloadParserFactoryCollection;
+import java.util.Vector;
+
+public class XMPPParserTest {
+
+	private final FullPayloadParserFactoryCollection factories = new FullPayloadParserFactoryCollection();
+
+	@Test
+	public void testParse_ElementsOfEachKind() {
+		Client client = new Client();
+		XMPPParser testling = new XMPPParser(client, factories);
+
+		assertTrue(testling.parse("<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'>"));
+		assertTrue(testling.parse("<stream:features/>"));
+		assertTrue(testling.parse("<a xmlns='urn:xmpp:sm:2' h='4'/>"));
+		assertTrue(testling.parse("<failure xmlns='urn:example'/>"));
+
+		assertEquals(3, client.elements.size());
+		assertTrue(client.elements.get(0) instanceof StreamFeatures);
+		assertTrue(client.elements.get(1) instanceof StanzaAck);
+		assertTrue(client.elements.get(2) instanceof UnknownElement);
+	}
+
+	@Test
+	public void testParse_StanzaParserReused() {
+		Client client = new Client();
+		XMPPParser testling = new XMPPParser(client, factories);
+
+		assertTrue(testling.parse("<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'>"));
+		assertTrue(testling.parse("<message type='chat' id='1'><body>one</body></message>"));
+		assertTrue(testling.parse("<message id='2'><body>two</body></message>"));
+
+		assertEquals(2, client.elements.size());
+		Message first = (Message) client.elements.get(0);
+		Message second = (Message) client.elements.get(1);
+		assertNotSame(first, second);
+		assertEquals("1", first.getID());
+		assertEquals(Message.Type.Chat, first.getType());
+		assertEquals("one", first.getPayload(new Body()).getText());
+		assertEquals(1, first.getPayloads().size());
+		assertEquals("2", second.getID());
+		assertEquals(Message.Type.Normal, second.getType());
+		assertEquals("two", second.getPayload(new Body()).getText());
+		assertEquals(1, second.getPayloads().size());
+	}
+
+	@Test
+	public void testParse_CustomElementParser() {
+		Client client = new Client();
+		ElementParserFactoryCollection elementFactories = new FullElementParserFactoryCollection();
+		elementFactories.addFactory("handshake", "jabber:component:accept", new GenericElementParserFactory(StreamFeaturesParser.class));
+		elementFactories.removeFactory("a", "urn:xmpp:sm:2");
+		XMPPParser testling = new XMPPParser(client, factories, elementFactories);
+
+		assertTrue(testling.parse("<stream:stream xmlns='jabber:component:accept' xmlns:stream='http://etherx.jabber.org/streams'>"));
+		assertTrue(testling.parse("<handshake/>"));
+		assertTrue(testling.parse("<a xmlns='urn:xmpp:sm:2' h='4'/>"));
+
+		assertEquals(2, client.elements.size());
+		assertTrue(client.elements.get(0) instanceof StreamFeatures);
+		assertTrue(client.elements.get(1) instanceof UnknownElement);
+	}
+
+	private static class Client implements XMPPParserClient {
+		final Vector<Element> elements = new Vector<Element>();
+
+		public void handleStreamStart(ProtocolHeader header) {
+		}
+
+		public void handleElement(Element element) {
+			elements.add(element);
+		}
+
+		public void handleStreamEnd() {
+		}
+	}
+}
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +27,7 @@ import com.isode.stroke.client.DummyStanzaChannel;
 import com.isode.stroke.elements.Presence;
 import com.isode.stroke.elements.StatusShow;
 import com.isode.stroke.jid.JID;
+import com.isode.stroke.network.DummyTimerFactory;
 import com.isode.stroke.roster.XMPPRoster;
 import com.isode.stroke.roster.XMPPRosterImpl;
 import com.isode.stroke.signals.Slot1;
@@ -269,5 +271,120 @@ public class PresenceOracleTest {
             assertEquals(new JID("alice@wonderland.lit/resourceA"), PresenceOracle.getActivePresence(presenceList).getFrom());
         }
     }
-	
+
+	@Test
+	public void testActivePresenceChange() {
+		final List<Presence> activeChanges = new ArrayList<Presence>();
+		oracle_.onActivePresenceChange.connect(new Slot1<Presence>() {
+			@Override
+			public void call(Presence p) {
+				activeChanges.add(p);
+			}
+		});
+		JID bareJID = new JID("alice@wonderland.lit");
+		Presence awayA = createPresence(new JID("alice@wonderland.lit/resourceA"), 0,
+				Presence.Type.Available, StatusShow.Type.Away);
+		Presence onlineB = createPresence(new JID("alice@wonderland.lit/resourceB"), 0,
+				Presence.Type.Available, StatusShow.Type.Online);
+
+		stanzaChannel_.onPresenceReceived.emit(onlineB);
+		assertEquals(1, activeChanges.size());
+		assertEquals(onlineB, oracle_.getAccountPresence(bareJID));
+
+		/* A less available resource, and a repeat, leave it unchanged */
+		stanzaChannel_.onPresenceReceived.emit(awayA);
+		stanzaChannel_.onPresenceReceived.emit(createPresence(new JID("alice@wonderland.lit/resourceB"), 0,
+				Presence.Type.Available, StatusShow.Type.Online));
+		assertEquals(1, activeChanges.size());
+		assertEquals(3, changes.size());
+
+		stanzaChannel_.onPresenceReceived.emit(makeOffline("/resourceB"));
+		assertEquals(2, activeChanges.size());
+		assertEquals(awayA, activeChanges.get(1));
+		assertEquals(awayA, oracle_.getAccountPresence(bareJID));
+	}
+
+	@Test
+	public void testReadsFromOtherThread() throws Exception {
+		final JID bareJID = new JID("alice@wonderland.lit");
+		final AtomicBoolean stop = new AtomicBoolean();
+		final Throwable[] failure = new Throwable[1];
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (!stop.get()) {
+						oracle_.getAccountPresence(bareJID);
+						oracle_.getHighestPriorityPresence(bareJID);
+						oracle_.getAllPresence(bareJID);
+					}
+				}
+				catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 2000; i++) {
+			stanzaChannel_.onPresenceReceived.emit(makeOnline("r" + (i % 10), i % 3));
+			if (i % 7 == 0) {
+				stanzaChannel_.onPresenceReceived.emit(makeOffline("/r" + (i % 10)));
+			}
+		}
+		stop.set(true);
+		reader.join();
+		assertNull(failure[0]);
+	}
+
+	@Test
+	public void testCoalescing() {
+		final List<Collection<Presence>> bulkChanges = new ArrayList<Collection<Presence>>();
+		oracle_.onPresencesChanged.connect(new Slot1<Collection<Presence>>() {
+			@Override
+			public void call(Collection<Presence> p) {
+				bulkChanges.add(p);
+			}
+		});
+		final List<Presence> activeChanges = new ArrayList<Presence>();
+		oracle_.onActivePresenceChange.connect(new Slot1<Presence>() {
+			@Override
+			public void call(Presence p) {
+				activeChanges.add(p);
+			}
+		});
+		DummyTimerFactory timerFactory = new DummyTimerFactory();
+		oracle_.setCoalescingWindow(timerFactory, 100);
+
+		Presence fiveOn = makeOnline("blah", 5);
+		Presence tenOn = makeOnline("bert", 10);
+		Presence tenOnThree = makeOnline("bert", 3);
+		Presence user2Presence = createPresence(user2);
+		stanzaChannel_.onPresenceReceived.emit(fiveOn);
+		stanzaChannel_.onPresenceReceived.emit(tenOn);
+		stanzaChannel_.onPresenceReceived.emit(user2Presence);
+		stanzaChannel_.onPresenceReceived.emit(tenOnThree);
+
+		assertEquals(0, changes.size());
+		assertEquals(0, bulkChanges.size());
+		assertEquals(fiveOn, oracle_.getHighestPriorityPresence(new JID("alice@wonderland.lit")));
+
+		timerFactory.setTime(100);
+		assertEquals(0, changes.size());
+		assertEquals(1, bulkChanges.size());
+		List<Presence> bulk = new ArrayList<Presence>(bulkChanges.get(0));
+		assertEquals(3, bulk.size());
+		assertEquals(fiveOn, bulk.get(0));
+		assertEquals(tenOnThree, bulk.get(1));
+		assertEquals(user2Presence, bulk.get(2));
+		assertEquals(2, activeChanges.size());
+
+		/* Nothing more to report until another presence arrives */
+		timerFactory.setTime(200);
+		assertEquals(1, bulkChanges.size());
+
+		oracle_.setCoalescingWindow(null, 0);
+		stanzaChannel_.onPresenceReceived.emit(fiveOn);
+		assertEquals(1, changes.size());
+		assertEquals(1, bulkChanges.size());
+	}
 }
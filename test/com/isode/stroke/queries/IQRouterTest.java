@@ -183,4 +183,53 @@ public class IQRouterTest {
 
 		assertEquals(new JID("foo@bar.com/baz"), channel_.iqs_.get(0).getFrom());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testHandleIQ_ResponseRoutedByID() {
+		IQRouter testling = new IQRouter(channel_);
+		DummyIQHandler chainHandler = new DummyIQHandler(false, testling);
+		DummyIQHandler responseHandler1 = new DummyIQHandler(true, testling);
+		responseHandler1.delete();
+		DummyIQHandler responseHandler2 = new DummyIQHandler(true, testling);
+		responseHandler2.delete();
+		testling.addResponseHandler("id1", responseHandler1);
+		testling.addResponseHandler("id2", responseHandler2);
+
+		channel_.onIQReceived.emit(IQ.createResult(new JID("foo@bar.com"), "id2"));
+
+		assertEquals(0, responseHandler1.called);
+		assertEquals(1, responseHandler2.called);
+		assertEquals(0, chainHandler.called);
+	}
+
+	@Test
+	public void testHandleIQ_UnhandledResponseFallsBackToHandlers() {
+		IQRouter testling = new IQRouter(channel_);
+		DummyIQHandler chainHandler = new DummyIQHandler(true, testling);
+		DummyIQHandler responseHandler = new DummyIQHandler(false, testling);
+		responseHandler.delete();
+		testling.addResponseHandler("id1", responseHandler);
+
+		channel_.onIQReceived.emit(IQ.createResult(new JID("foo@bar.com"), "id1"));
+		testling.removeResponseHandler("id1", responseHandler);
+		channel_.onIQReceived.emit(IQ.createResult(new JID("foo@bar.com"), "id1"));
+
+		assertEquals(1, responseHandler.called);
+		assertEquals(2, chainHandler.called);
+	}
+
+	@Test
+	public void testHandleIQ_ResponseHandlerNotUsedForRequests() {
+		IQRouter testling = new IQRouter(channel_);
+		DummyIQHandler responseHandler = new DummyIQHandler(true, testling);
+		responseHandler.delete();
+		testling.addResponseHandler("id1", responseHandler);
+
+		IQ iq = new IQ(IQ.Type.Get);
+		iq.setID("id1");
+		channel_.onIQReceived.emit(iq);
+
+		assertEquals(0, responseHandler.called);
+		assertEquals(1, channel_.iqs_.size());
+	}
+}
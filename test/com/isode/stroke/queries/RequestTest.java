@@ -26,6 +26,9 @@ import com.isode.stroke.elements.IQ;
 import com.isode.stroke.elements.ErrorPayload;
 import com.isode.stroke.elements.Payload;
 import com.isode.stroke.elements.RawXMLPayload;
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.network.DummyTimerFactory;
+import com.isode.stroke.signals.Slot;
 import com.isode.stroke.signals.Signal2;
 import com.isode.stroke.signals.Slot2;
 import java.util.Vector;
@@ -444,4 +447,111 @@ public class RequestTest {
 		assertEquals(0, (receivedErrors.size()));
 		assertEquals(1, (channel_.iqs_.size()));
 	}
+
+	@Test
+	public void testTimeout() {
+		DummyTimerFactory timerFactory = new DummyTimerFactory();
+		router_.setTimerFactory(timerFactory);
+		MyRequest testling = new MyRequest(IQ.Type.Get, new JID("foo@bar.com/baz"), payload_, router_);
+		testling.onResponse.connect(new Slot2<Payload, ErrorPayload>() {
+			@Override
+			public void call(Payload p, ErrorPayload e) {
+				handleResponse(p, e);
+			}
+		});
+		testling.setTimeout(2000);
+		testling.send();
+
+		timerFactory.setTime(500);
+		timerFactory.setTime(1000);
+		timerFactory.setTime(1500);
+		assertEquals(0, (receivedErrors.size()));
+		assertEquals(1, router_.getPendingRequestCount());
+
+		timerFactory.setTime(2000);
+		assertEquals(1, (receivedErrors.size()));
+		assertEquals(ErrorPayload.Condition.RemoteServerTimeout, receivedErrors.get(0).getCondition());
+		assertEquals(0, router_.getPendingRequestCount());
+		assertEquals(1, router_.getTimedOutRequestCount());
+
+		// A late reply is ignored
+		channel_.onIQReceived.emit(createResponse(new JID("foo@bar.com/baz"),"test-id"));
+		assertEquals(0, responsesReceived_);
+		assertEquals(0, router_.getCompletedRequestCount());
+	}
+
+	@Test
+	public void testDefaultTimeout_ReplyCancelsTimeout() {
+		DummyTimerFactory timerFactory = new DummyTimerFactory();
+		router_.setTimerFactory(timerFactory);
+		router_.setDefaultRequestTimeout(1000);
+		MyRequest testling = new MyRequest(IQ.Type.Get, new JID("foo@bar.com/baz"), payload_, router_);
+		testling.onResponse.connect(new Slot2<Payload, ErrorPayload>() {
+			@Override
+			public void call(Payload p, ErrorPayload e) {
+				handleResponse(p, e);
+			}
+		});
+		testling.send();
+
+		channel_.onIQReceived.emit(createResponse(new JID("foo@bar.com/baz"),"test-id"));
+		timerFactory.setTime(5000);
+
+		assertEquals(1, responsesReceived_);
+		assertEquals(0, (receivedErrors.size()));
+		assertEquals(1, router_.getCompletedRequestCount());
+		assertEquals(0, router_.getTimedOutRequestCount());
+	}
+
+	@Test
+	public void testMaxPendingRequests() {
+		final int[] limitSignals = new int[2];
+		router_.onPendingRequestLimitReached.connect(new Slot() {
+			@Override
+			public void call() {
+				limitSignals[0]++;
+			}
+		});
+		router_.onPendingRequestLimitCleared.connect(new Slot() {
+			@Override
+			public void call() {
+				limitSignals[1]++;
+			}
+		});
+		DummyEventLoop eventLoop = new DummyEventLoop();
+		router_.setEventLoop(eventLoop);
+		router_.setMaxPendingRequests(1);
+		MyRequest first = new MyRequest(IQ.Type.Get, new JID("foo@bar.com/baz"), payload_, router_);
+		first.onResponse.connect(new Slot2<Payload, ErrorPayload>() {
+			@Override
+			public void call(Payload p, ErrorPayload e) {
+				handleResponse(p, e);
+			}
+		});
+		MyRequest second = new MyRequest(IQ.Type.Get, new JID("foo@bar.com/baz"), payload_, router_);
+		second.onResponse.connect(new Slot2<Payload, ErrorPayload>() {
+			@Override
+			public void call(Payload p, ErrorPayload e) {
+				handleResponse(p, e);
+			}
+		});
+
+		first.send();
+		assertEquals(1, limitSignals[0]);
+		assertFalse(router_.canSendRequest());
+
+		second.send();
+		assertEquals(1, (channel_.iqs_.size()));
+		assertEquals(0, (receivedErrors.size()));
+		assertEquals(1, router_.getRejectedRequestCount());
+
+		eventLoop.processEvents();
+		assertEquals(1, (receivedErrors.size()));
+		assertEquals(ErrorPayload.Condition.ResourceConstraint, receivedErrors.get(0).getCondition());
+
+		channel_.onIQReceived.emit(createResponse(new JID("foo@bar.com/baz"),"test-id"));
+		assertEquals(1, responsesReceived_);
+		assertEquals(1, limitSignals[1]);
+		assertTrue(router_.canSendRequest());
+	}
 }
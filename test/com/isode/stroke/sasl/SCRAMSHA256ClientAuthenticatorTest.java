@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.sasl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.crypto.JavaCryptoProvider;
+import com.isode.stroke.idn.ICUConverter;
+import com.isode.stroke.idn.IDNConverter;
+
+public class SCRAMSHA256ClientAuthenticatorTest {
+
+	/* The example exchange from RFC 7677 */
+	private static final String NONCE = "rOprNGfwEbeRWgbNEkqO";
+	private static final String SERVER_FIRST = "r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,s=W22ZaJ0SNY7soEsUEjb6gQ==,i=4096";
+
+	private IDNConverter idnConverter;
+	private CryptoProvider crypto;
+
+	@Before
+	public void setUp() {
+		idnConverter = new ICUConverter();
+		crypto = new JavaCryptoProvider();
+	}
+
+	@Test
+	public void testGetName() {
+		assertEquals("SCRAM-SHA-256", new SCRAMSHA256ClientAuthenticator(NONCE, false, idnConverter, crypto).getName());
+		assertEquals("SCRAM-SHA-256-PLUS", new SCRAMSHA256ClientAuthenticator(NONCE, true, idnConverter, crypto).getName());
+	}
+
+	@Test
+	public void testGetInitialResponse() {
+		SCRAMSHA256ClientAuthenticator testling = new SCRAMSHA256ClientAuthenticator(NONCE, false, idnConverter, crypto);
+		testling.setCredentials("user", new SafeByteArray("pencil"), "");
+
+		assertEquals(new SafeByteArray("n,,n=user,r=rOprNGfwEbeRWgbNEkqO"), testling.getResponse());
+	}
+
+	@Test
+	public void testGetFinalResponse() {
+		SCRAMSHA256ClientAuthenticator testling = new SCRAMSHA256ClientAuthenticator(NONCE, false, idnConverter, crypto);
+		testling.setCredentials("user", new SafeByteArray("pencil"), "");
+		assertTrue(testling.setChallenge(new ByteArray(SERVER_FIRST)));
+
+		SafeByteArray response = testling.getResponse();
+
+		assertEquals(new SafeByteArray("c=biws,r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,p=dHzbZapWIk4jUhN+Ute9ytag9zjfMHgsqmmiz7AndVQ="), response);
+	}
+
+	@Test
+	public void testSetFinalChallenge() {
+		SCRAMSHA256ClientAuthenticator testling = new SCRAMSHA256ClientAuthenticator(NONCE, false, idnConverter, crypto);
+		testling.setCredentials("user", new SafeByteArray("pencil"), "");
+		testling.setChallenge(new ByteArray(SERVER_FIRST));
+
+		assertTrue(testling.setChallenge(new ByteArray("v=6rriTRBi23WpRR/wtup+mMhUZUn/dB5nLTJRsjl95G4=")));
+	}
+
+	@Test
+	public void testSetFinalChallenge_WrongSignature() {
+		SCRAMSHA256ClientAuthenticator testling = new SCRAMSHA256ClientAuthenticator(NONCE, false, idnConverter, crypto);
+		testling.setCredentials("user", new SafeByteArray("pencil"), "");
+		testling.setChallenge(new ByteArray(SERVER_FIRST));
+
+		assertFalse(testling.setChallenge(new ByteArray("v=Dd+Q20knZs9jeeK0pi1Mx1Se+yo=")));
+	}
+}
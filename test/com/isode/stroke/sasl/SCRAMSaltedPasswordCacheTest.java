@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.sasl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isode.stroke.base.ByteArray;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.crypto.CryptoProvider;
+import com.isode.stroke.crypto.JavaCryptoProvider;
+import com.isode.stroke.idn.ICUConverter;
+import com.isode.stroke.idn.IDNConverter;
+
+public class SCRAMSaltedPasswordCacheTest {
+
+	private IDNConverter idnConverter;
+	private CryptoProvider crypto;
+	private SCRAMSaltedPasswordCache cache;
+
+	@Before
+	public void setUp() {
+		idnConverter = new ICUConverter();
+		crypto = new JavaCryptoProvider();
+		cache = new SCRAMSaltedPasswordCache(2);
+	}
+
+	private SafeByteArray authenticate(SCRAMClientAuthenticator authenticator, String password, String challenge) {
+		authenticator.setSaltedPasswordCache(cache);
+		authenticator.setCredentials("user", new SafeByteArray(password), "");
+		authenticator.setChallenge(new ByteArray(challenge));
+		return authenticator.getResponse();
+	}
+
+	@Test
+	public void testCachedResponseMatches() {
+		SCRAMSHA1ClientAuthenticator reference = new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto);
+		reference.setCredentials("user", new SafeByteArray("pass"), "");
+		reference.setChallenge(new ByteArray("r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096"));
+		SafeByteArray uncached = reference.getResponse();
+
+		SafeByteArray first = authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096");
+		SafeByteArray second = authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096");
+
+		assertEquals(uncached, first);
+		assertEquals(uncached, second);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testDistinguishesParameters() {
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096");
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass2", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096");
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4095");
+		authenticate(new SCRAMSHA256ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=4096");
+
+		assertEquals(4, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testBounded() {
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass1", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=1");
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass2", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=1");
+		authenticate(new SCRAMSHA1ClientAuthenticator("abcdefgh", false, idnConverter, crypto), "pass3", "r=abcdefghABCDEFGH,s=MTIzNDU2NzgK,i=1");
+
+		assertEquals(2, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+
+package com.isode.stroke.serializer;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import com.isode.stroke.elements.Body;
+import com.isode.stroke.elements.Subject;
+import com.isode.stroke.serializer.payloadserializers.BodySerializer;
+import com.isode.stroke.serializer.payloadserializers.SubjectSerializer;
+
+public class PayloadSerializerCollectionTest {
+
+	@Test
+	public void testGetPayloadSerializer() {
+		PayloadSerializerCollection testling = new PayloadSerializerCollection();
+		PayloadSerializer body = new BodySerializer();
+		PayloadSerializer subject = new SubjectSerializer();
+		testling.addSerializer(body);
+		testling.addSerializer(subject);
+
+		assertSame(body, testling.getPayloadSerializer(new Body("a")));
+		assertSame(body, testling.getPayloadSerializer(new Body("b")));
+		assertSame(subject, testling.getPayloadSerializer(new Subject("c")));
+	}
+
+	@Test
+	public void testGetPayloadSerializer_AfterChange() {
+		PayloadSerializerCollection testling = new PayloadSerializerCollection();
+		PayloadSerializer body = new BodySerializer();
+		assertNull(testling.getPayloadSerializer(new Body("a")));
+
+		testling.addSerializer(body);
+		assertSame(body, testling.getPayloadSerializer(new Body("a")));
+
+		testling.removeSerializer(body);
+		assertNull(testling.getPayloadSerializer(new Body("a")));
+	}
+}
@@ -13,9 +13,14 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import com.isode.stroke.elements.IQ;
+import com.isode.stroke.elements.Message;
+import com.isode.stroke.elements.Payload;
 import com.isode.stroke.elements.ProtocolHeader;
 import com.isode.stroke.elements.StreamType;
+import com.isode.stroke.jid.JID;
 import com.isode.stroke.serializer.payloadserializers.FullPayloadSerializerCollection;
+import com.isode.stroke.serializer.xml.XMLWriter;
 
 /**
  * 
@@ -73,6 +78,43 @@ public class XMPPSerializerTest {
                 testling.serializeHeader(protocolHeader));
     }
     
+    @Test
+    public void testSerializeElement_Writer() {
+        XMPPSerializer testling = createSerializer(StreamType.ClientStreamType);
+        Message message = new Message();
+        message.setTo(new JID("foo@bar.com/baz"));
+        message.setID("id&1");
+        message.setBody("Hello <world> \u00DF");
+        XMLWriter writer = new XMLWriter();
+
+        testling.serializeElement(message, writer);
+
+        assertEquals("<message id=\"id&amp;1\" to=\"foo@bar.com/baz\" type=\"chat\">"
+                + "<body>Hello &lt;world&gt; \u00DF</body></message>", writer.toString());
+        assertEquals(testling.serializeElement(message), writer.toSafeByteArray());
+    }
+
+    @Test
+    public void testSerializeElement_WriterWithEmptyPayload() {
+        PayloadSerializerCollection serializers = new PayloadSerializerCollection();
+        serializers.addSerializer(new PayloadSerializer() {
+            public boolean canSerialize(Payload payload) {
+                return true;
+            }
+
+            public String serialize(Payload payload) {
+                return "";
+            }
+        });
+        XMPPSerializer testling = new XMPPSerializer(serializers, StreamType.ClientStreamType, false);
+        IQ iq = IQ.createResult(new JID("foo@bar.com"), "myid", new Payload());
+        XMLWriter writer = new XMLWriter();
+
+        testling.serializeElement(iq, writer);
+
+        assertEquals("<iq id=\"myid\" to=\"foo@bar.com\" type=\"result\"/>", writer.toString());
+    }
+
     private XMPPSerializer createSerializer(StreamType type) {
         return new XMPPSerializer(payloadSerializerCollection, type, false);
     }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016 Isode Limited, London, England.
+ * All rights reserved.
+ */
+package com.isode.stroke.serializer.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.isode.stroke.base.ByteArray;
+
+public class XMLWriterTest {
+
+    @Test
+    public void testAppendEscapedText() {
+        XMLWriter testling = new XMLWriter();
+        testling.append("<a>").appendEscapedText("x&y<z>'\"").append("</a>");
+
+        assertEquals("<a>x&amp;y&lt;z&gt;'\"</a>", testling.toString());
+    }
+
+    @Test
+    public void testAppendEscapedAttributeValue() {
+        XMLWriter testling = new XMLWriter();
+        testling.appendEscapedAttributeValue("a&'\"<");
+
+        assertEquals("a&amp;&apos;&quot;&lt;", testling.toString());
+    }
+
+    @Test
+    public void testAppend_NonASCII() throws Exception {
+        String text = "\u00DF\u0410\u20AC\uD834\uDD1E";
+        XMLWriter testling = new XMLWriter();
+        testling.appendEscapedText(text);
+
+        assertArrayEquals(text.getBytes("UTF-8"), testling.toSafeByteArray().getData());
+    }
+
+    @Test
+    public void testAppend_GrowsBuffer() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("abc&");
+        }
+        XMLWriter testling = new XMLWriter();
+        testling.appendEscapedText(text.toString());
+
+        assertEquals(XMLWriter.escapeText(text.toString()), testling.toString());
+    }
+
+    @Test
+    public void testAppend_ByteArray() {
+        XMLWriter testling = new XMLWriter();
+        testling.append("<a>").append(new ByteArray("<b/>")).append("</a>");
+
+        assertEquals("<a><b/></a>", testling.toString());
+    }
+
+    @Test
+    public void testTruncateAndClear() {
+        XMLWriter testling = new XMLWriter();
+        testling.append("<a/>");
+        testling.truncate(2);
+        testling.append("/>");
+        assertEquals("<a/>", testling.toString());
+
+        testling.clear();
+        testling.append("<b/>");
+        assertEquals("<b/>", testling.toString());
+        assertEquals(4, testling.getSize());
+    }
+
+    @Test
+    public void testEscape_NothingToEscape() {
+        String text = "plain text";
+        assertSame(text, XMLWriter.escapeText(text));
+        assertSame(text, XMLWriter.escapeAttributeValue(text));
+    }
+
+    @Test
+    public void testSerializeElement() {
+        XMLElement element = new XMLElement("foo", "http://example.com");
+        element.setAttribute("myatt", "my\"val");
+        XMLElement bar = new XMLElement("bar");
+        bar.addNode(new XMLTextNode("Bl\u00F6&"));
+        element.addNode(bar);
+        element.addNode(new XMLElement("baz"));
+
+        XMLWriter testling = new XMLWriter();
+        element.serialize(testling);
+
+        assertEquals(element.serialize(), testling.toString());
+    }
+}
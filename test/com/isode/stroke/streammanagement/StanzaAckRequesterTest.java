@@ -22,6 +22,7 @@ import com.isode.stroke.elements.IQ;
 import com.isode.stroke.elements.Presence;
 import com.isode.stroke.elements.Message;
 import com.isode.stroke.elements.Stanza;
+import com.isode.stroke.network.DummyTimerFactory;
 import com.isode.stroke.signals.Slot1;
 import com.isode.stroke.signals.Slot;
 import java.util.Vector;
@@ -50,7 +51,11 @@ public class StanzaAckRequesterTest {
 	}
 
 	private StanzaAckRequester createRequester() {
-		StanzaAckRequester requester = new StanzaAckRequester();
+		return createRequester(null);
+	}
+
+	private StanzaAckRequester createRequester(DummyTimerFactory timerFactory) {
+		StanzaAckRequester requester = new StanzaAckRequester(timerFactory);
 		requester.onRequestAck.connect(new Slot() {
 			@Override
 			public void call() {
@@ -172,4 +177,86 @@ public class StanzaAckRequesterTest {
 		assertEquals(("m1"), ackedStanzas.get(0).getID());
 		assertEquals(("m2"), ackedStanzas.get(1).getID());
 	}
+
+	@Test
+	public void testAckRequestStanzaCount() {
+		StanzaAckRequester testling = createRequester();
+		testling.setAckRequestStanzaCount(3);
+		testling.handleStanzaSent(createMessage("m1"));
+		testling.handleStanzaSent(createMessage("m2"));
+		assertEquals(0, acksRequested);
+
+		testling.handleStanzaSent(createIQ("iq1"));
+		assertEquals(1, acksRequested);
+		testling.handleStanzaSent(createMessage("m3"));
+		assertEquals(1, acksRequested);
+	}
+
+	@Test
+	public void testAckRequestByteCount() {
+		StanzaAckRequester testling = createRequester();
+		testling.setAckRequestByteCount(100);
+		testling.handleStanzaSent(createMessage("m1"), 60);
+		assertEquals(0, acksRequested);
+
+		testling.handleStanzaSent(createMessage("m2"), 60);
+		assertEquals(1, acksRequested);
+	}
+
+	@Test
+	public void testAckRequestInterval() {
+		DummyTimerFactory timerFactory = new DummyTimerFactory();
+		StanzaAckRequester testling = createRequester(timerFactory);
+		testling.setAckRequestInterval(1000);
+		timerFactory.setTime(1000);
+		assertEquals(0, acksRequested); // Nothing to ack
+
+		testling.handleStanzaSent(createMessage("m1"));
+		testling.handleStanzaSent(createMessage("m2"));
+		assertEquals(0, acksRequested);
+		timerFactory.setTime(2000);
+		assertEquals(1, acksRequested);
+		timerFactory.setTime(3000);
+		assertEquals(1, acksRequested);
+	}
+
+	@Test
+	public void testMaxUnackedStanzas() {
+		StanzaAckRequester testling = createRequester();
+		testling.setAckRequestStanzaCount(10);
+		testling.setMaxUnackedStanzas(2);
+		testling.handleStanzaSent(createMessage("m1"));
+		testling.handleStanzaSent(createMessage("m2"));
+		assertEquals(1, acksRequested); // Full
+		testling.handleStanzaSent(createMessage("m3"));
+		assertEquals(2, testling.getUnackedCount());
+		assertEquals(1, testling.getDroppedStanzaCount());
+
+		testling.handleAckReceived(3);
+
+		assertEquals(2, ackedStanzas.size());
+		assertEquals("m2", ackedStanzas.get(0).getID());
+		assertEquals("m3", ackedStanzas.get(1).getID());
+		assertEquals(0, testling.getUnackedCount());
+		assertEquals(1, testling.getAckRoundTripCount());
+	}
+
+	@Test
+	public void testManyUnackedStanzas() {
+		StanzaAckRequester testling = createRequester();
+		for (int i = 0; i < 100; i++) {
+			testling.handleStanzaSent(createIQ("iq" + i));
+			if (i % 7 == 6) {
+				testling.handleAckReceived(i - 2);
+			}
+		}
+		assertEquals(100 - 95, testling.getUnackedCount());
+		testling.handleAckReceived(100);
+
+		assertEquals(100, ackedStanzas.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("iq" + i, ackedStanzas.get(i).getID());
+		}
+		assertEquals(10, testling.getMaximumUnackedCount());
+	}
 }
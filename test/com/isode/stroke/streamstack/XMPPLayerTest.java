@@ -183,6 +183,7 @@ public class XMPPLayerTest {
 		testling_.writeElement(new Presence());
 
 		assertEquals("<presence/>", lowLayer_.writtenData);
+		assertEquals(11, testling_.getLastElementSize());
 	}
 
 	@Test
@@ -53,4 +53,18 @@ public class PBKDF2Test {
 
 		assertEquals(new ByteArray("4b007901b765489abead49d926f721d065a429c1"), new ByteArray(Hexify.hexify(result)));
 	}	
+
+	@Test
+	public void testGetResult_HMACSHA256_I1() {
+		ByteArray result = PBKDF2.encode(crypto.createHMACSHA256(new SafeByteArray("password")), new ByteArray("salt"), 1);
+
+		assertEquals(new ByteArray("120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b"), new ByteArray(Hexify.hexify(result)));
+	}
+
+	@Test
+	public void testGetResult_HMACSHA256_I4096() {
+		ByteArray result = PBKDF2.encode(crypto.createHMACSHA256(new SafeByteArray("password")), new ByteArray("salt"), 4096);
+
+		assertEquals(new ByteArray("c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a"), new ByteArray(Hexify.hexify(result)));
+	}
 }
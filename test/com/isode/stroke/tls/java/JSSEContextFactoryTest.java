@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2016 Isode Limited.
+ * All rights reserved.
+ * See the COPYING file for more information.
+ */
+package com.isode.stroke.tls.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+import org.junit.Test;
+
+import com.isode.stroke.base.ByteBufferPool;
+import com.isode.stroke.base.SafeByteArray;
+import com.isode.stroke.eventloop.DummyEventLoop;
+import com.isode.stroke.eventloop.Event;
+import com.isode.stroke.signals.Slot;
+import com.isode.stroke.signals.Slot1;
+import com.isode.stroke.tls.TLSContext;
+import com.isode.stroke.tls.TLSError;
+import com.isode.stroke.tls.PKCS12Certificate;
+import com.isode.stroke.tls.TLSOptions;
+
+public class JSSEContextFactoryTest {
+
+	private int dataForNetwork_ = 0;
+	private int errors_ = 0;
+	private boolean connected_ = false;
+
+	private TLSContext createConnectedContext(JSSEContextFactory factory) {
+		TLSContext context = factory.createTLSContext(new TLSOptions());
+		context.onDataForNetwork.connect(new Slot1<SafeByteArray>() {
+			public void call(SafeByteArray data) {
+				dataForNetwork_++;
+			}
+		});
+		context.onError.connect(new Slot1<TLSError>() {
+			public void call(TLSError error) {
+				errors_++;
+			}
+		});
+		context.connect("xmpp.example.com", 5222);
+		return context;
+	}
+
+	@Test
+	public void testContextsShareSSLContext() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		assertNull(testling.getSharedSSLContext("default"));
+
+		createConnectedContext(testling);
+		SSLContext shared = testling.getSharedSSLContext("default");
+		assertNotNull(shared);
+
+		createConnectedContext(testling);
+		assertSame(shared, testling.getSharedSSLContext("default"));
+		assertEquals(0, errors_);
+		assertEquals(2, dataForNetwork_);
+	}
+
+	@Test
+	public void testFactoriesDoNotShare() {
+		JSSEContextFactory first = new JSSEContextFactory();
+		JSSEContextFactory second = new JSSEContextFactory();
+		createConnectedContext(first);
+		createConnectedContext(second);
+
+		assertFalse(first.getSharedSSLContext("default") == second.getSharedSSLContext("default"));
+	}
+
+	@Test
+	public void testClearSharedSSLContexts() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		createConnectedContext(testling);
+		SSLContext shared = testling.getSharedSSLContext("default");
+
+		testling.clearSharedSSLContexts();
+		assertNull(testling.getSharedSSLContext("default"));
+
+		createConnectedContext(testling);
+		assertNotNull(testling.getSharedSSLContext("default"));
+		assertFalse(shared == testling.getSharedSSLContext("default"));
+	}
+
+	@Test
+	public void testContextsWithSameClientCertificateShareSSLContext() throws Exception {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		File keyStoreFile = createKeyStoreFile();
+		try {
+			for (int i = 0; i < 2; i++) {
+				TLSContext context = testling.createTLSContext(new TLSOptions());
+				assertTrue(context.setClientCertificate(
+						new PKCS12Certificate(keyStoreFile.getPath(), "password".toCharArray())));
+				context.connect("xmpp.example.com", 5222);
+			}
+		}
+		finally {
+			keyStoreFile.delete();
+		}
+
+		assertEquals(1, testling.getSharedSSLContextKeys().size());
+		Object key = testling.getSharedSSLContextKeys().iterator().next();
+		assertFalse(key.toString().contains("password"));
+	}
+
+	@Test
+	public void testManyContextsReuseBuffers() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		ByteBufferPool pool = new ByteBufferPool(16);
+		testling.setBufferPool(pool);
+		for (int i = 0; i < 50; i++) {
+			createConnectedContext(testling);
+		}
+
+		assertEquals(0, errors_);
+		assertTrue(pool.getAllocatedCount() <= 2);
+		assertTrue(pool.getReusedCount() >= 98);
+	}
+
+	@Test
+	public void testPutSharedSSLContextKeepsFirst() throws Exception {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		SSLContext first = SSLContext.getInstance("TLS");
+		SSLContext second = SSLContext.getInstance("TLS");
+
+		assertSame(first, testling.putSharedSSLContext("key", first));
+		assertSame(first, testling.putSharedSSLContext("key", second));
+	}
+
+	@Test
+	public void testConnectWithDelegatedTaskExecutor() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		ExecutorService executor = JSSEContextFactory.createDelegatedTaskExecutor(2, 8);
+		try {
+			testling.setDelegatedTaskExecutor(executor);
+			createConnectedContext(testling);
+
+			assertEquals(0, errors_);
+			assertEquals(1, dataForNetwork_);
+			assertEquals(0, testling.getQueuedDelegatedTaskCount());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testDelegatedTaskExecutorRunsTasksInCallerWhenFull() throws Exception {
+		ExecutorService executor = JSSEContextFactory.createDelegatedTaskExecutor(1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread[] threads = new Thread[3];
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					threads[0] = Thread.currentThread();
+					try {
+						release.await();
+					}
+					catch (InterruptedException e) {
+					}
+				}
+			});
+			executor.execute(new Runnable() {
+				public void run() {
+					threads[1] = Thread.currentThread();
+				}
+			});
+			executor.execute(new Runnable() {
+				public void run() {
+					threads[2] = Thread.currentThread();
+				}
+			});
+			assertSame(Thread.currentThread(), threads[2]);
+		}
+		finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(threads[0].isDaemon());
+	}
+
+	@Test
+	public void testHandshakeMetrics() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		testling.handshakeCompleted(TimeUnit.MILLISECONDS.toNanos(30));
+		testling.handshakeCompleted(TimeUnit.MILLISECONDS.toNanos(50));
+		testling.handshakeCompleted(TimeUnit.MILLISECONDS.toNanos(20));
+
+		assertEquals(3, testling.getHandshakeCount());
+		assertEquals(100, testling.getTotalHandshakeMilliseconds());
+		assertEquals(50, testling.getMaximumHandshakeMilliseconds());
+	}
+
+	@Test
+	public void testIdleContextReleasesBuffers() {
+		JSSEContextFactory testling = new JSSEContextFactory();
+		ByteBufferPool pool = new ByteBufferPool(8, true);
+		testling.setBufferPool(pool);
+
+		createConnectedContext(testling);
+		assertEquals(0, errors_);
+		assertEquals(1, dataForNetwork_);
+		/* Once the ClientHello has gone, nothing is left in the buffers */
+		assertEquals(pool.getAllocatedCount(), pool.getPooledCount());
+
+		createConnectedContext(testling);
+		assertEquals(2, dataForNetwork_);
+		assertEquals(2, pool.getAllocatedCount());
+	}
+
+	/* Make a PKCS#12 file with a new self-signed key, using keytool */
+	private File createKeyStoreFile() throws Exception {
+		File keyStoreFile = File.createTempFile("JSSEContextFactoryTest", ".p12");
+		keyStoreFile.delete();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server",
+				"-keyalg", "EC", "-dname", "CN=xmpp.example.com", "-validity", "2",
+				"-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+				"-storepass", "password", "-keypass", "password").redirectErrorStream(true).start();
+		assertEquals(0, process.waitFor());
+		return keyStoreFile;
+	}
+
+	/* Make a server engine with a new self-signed key */
+	private SSLEngine createServerEngine() throws Exception {
+		SSLEngine engine = createServerSSLContext().createSSLEngine();
+		engine.setUseClientMode(false);
+		return engine;
+	}
+
+	/* Make a server SSLContext with a new self-signed key */
+	private SSLContext createServerSSLContext() throws Exception {
+		File keyStoreFile = createKeyStoreFile();
+		try {
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			FileInputStream input = new FileInputStream(keyStoreFile);
+			try {
+				keyStore.load(input, "password".toCharArray());
+			}
+			finally {
+				input.close();
+			}
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, "password".toCharArray());
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+			return sslContext;
+		}
+		finally {
+			keyStoreFile.delete();
+		}
+	}
+
+	/* Feed what the client has sent to the server, and the server's replies to the client */
+	private void pumpServer(SSLEngine server, ByteBuffer fromClient, TLSContext client) throws Exception {
+		ByteBuffer application = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+		fromClient.flip();
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			SSLEngineResult.HandshakeStatus status = server.getHandshakeStatus();
+			if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+				Runnable task;
+				while ((task = server.getDelegatedTask()) != null) {
+					task.run();
+				}
+				progress = true;
+			}
+			else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+				ByteBuffer out = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+				server.wrap(ByteBuffer.allocate(0), out);
+				out.flip();
+				byte[] data = new byte[out.remaining()];
+				out.get(data);
+				client.handleDataFromNetwork(new SafeByteArray(data));
+				progress = true;
+			}
+			else if (fromClient.hasRemaining()) {
+				application.clear();
+				SSLEngineResult result = server.unwrap(fromClient, application);
+				progress = result.bytesConsumed() > 0 || result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK;
+			}
+		}
+		fromClient.compact();
+	}
+
+	@Test
+	public void testHandshakeResumedFromEventLoopAfterDelegatedTasks() throws Exception {
+		SSLEngine server = createServerEngine();
+		server.beginHandshake();
+		JSSEContextFactory testling = new JSSEContextFactory();
+		ExecutorService executor = JSSEContextFactory.createDelegatedTaskExecutor(2, 8);
+		/* Lets the test wait for the client's delegated tasks to post
+		 * their continuation, rather than polling */
+		final Semaphore eventsPosted = new Semaphore(0);
+		DummyEventLoop eventLoop = new DummyEventLoop() {
+			@Override
+			public void post(Event event) {
+				super.post(event);
+				eventsPosted.release();
+			}
+		};
+		final ByteBuffer fromClient = ByteBuffer.allocate(65536);
+		try {
+			testling.setDelegatedTaskExecutor(executor);
+			TLSContext client = testling.forEventLoop(eventLoop).createTLSContext(new TLSOptions());
+			client.onDataForNetwork.connect(new Slot1<SafeByteArray>() {
+				public void call(SafeByteArray data) {
+					fromClient.put(data.getData());
+				}
+			});
+			client.onError.connect(new Slot1<TLSError>() {
+				public void call(TLSError error) {
+					errors_++;
+				}
+			});
+			client.onConnected.connect(new Slot() {
+				public void call() {
+					connected_ = true;
+				}
+			});
+			client.connect("xmpp.example.com", 5222);
+
+			while (!connected_ && errors_ == 0) {
+				pumpServer(server, fromClient, client);
+				if (!connected_ && errors_ == 0 && fromClient.position() == 0 && !eventLoop.hasEvents()) {
+					/* Nothing to do until the executor has run the client's tasks */
+					assertTrue(eventsPosted.tryAcquire(10, TimeUnit.SECONDS));
+				}
+				eventLoop.processEvents();
+			}
+
+			assertEquals(0, errors_);
+			assertTrue(connected_);
+			/* The client's tasks ran on the executor, and the handshake 
+			 * carried on from the event loop */
+			assertTrue(((ThreadPoolExecutor) executor).getCompletedTaskCount() > 0);
+			assertEquals(0, testling.getQueuedDelegatedTaskCount());
+			assertEquals(1, testling.getHandshakeCount());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/* Run a handshake between a new client context and a new engine from the server's SSLContext */
+	private SSLEngine handshake(SSLContext serverContext, TLSContext client) throws Exception {
+		SSLEngine server = serverContext.createSSLEngine();
+		server.setUseClientMode(false);
+		/* TLS 1.2 resumes under the same session ID, which the test can see */
+		server.setEnabledProtocols(new String[] {"TLSv1.2"});
+		server.beginHandshake();
+		/* The client answers from inside pumpServer, so collect what it
+		 * sends and hand it over between pumps */
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		client.onDataForNetwork.connect(new Slot1<SafeByteArray>() {
+			public void call(SafeByteArray data) {
+				sent.write(data.getData(), 0, data.getSize());
+			}
+		});
+		client.onError.connect(new Slot1<TLSError>() {
+			public void call(TLSError error) {
+				errors_++;
+			}
+		});
+		client.connect("xmpp.example.com", 5222);
+		ByteBuffer fromClient = ByteBuffer.allocate(65536);
+		while (sent.size() > 0) {
+			fromClient.put(sent.toByteArray());
+			sent.reset();
+			pumpServer(server, fromClient, client);
+		}
+		return server;
+	}
+
+	@Test
+	public void testResumedHandshakeKeepsPeerVerification() throws Exception {
+		SSLContext serverContext = createServerSSLContext();
+		JSSEContextFactory testling = new JSSEContextFactory();
+
+		TLSContext first = testling.createTLSContext(new TLSOptions());
+		SSLEngine firstServer = handshake(serverContext, first);
+		TLSContext second = testling.createTLSContext(new TLSOptions());
+		SSLEngine secondServer = handshake(serverContext, second);
+
+		assertEquals(0, errors_);
+		assertEquals(2, testling.getHandshakeCount());
+		assertTrue(Arrays.equals(firstServer.getSession().getId(), secondServer.getSession().getId()));
+		/* The second handshake did not see the server's certificate, so
+		 * what it reports came from the session */
+		assertNotNull(first.getPeerCertificate());
+		assertEquals(first.getPeerCertificate().toDER(), second.getPeerCertificate().toDER());
+		assertNotNull(first.getPeerCertificateVerificationError());
+		assertEquals(first.getPeerCertificateVerificationError().getType(),
+				second.getPeerCertificateVerificationError().getType());
+	}
+}